@@ -3,12 +3,14 @@ package org.bluedb.api;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.index.BlueIndex;
 import org.bluedb.api.index.IntegerIndexKeyExtractor;
 import org.bluedb.api.index.KeyExtractor;
 import org.bluedb.api.index.LongIndexKeyExtractor;
+import org.bluedb.api.index.Projection;
 import org.bluedb.api.index.StringIndexKeyExtractor;
 import org.bluedb.api.index.UUIDIndexKeyExtractor;
 import org.bluedb.api.keys.BlueKey;
@@ -22,6 +24,10 @@ import org.bluedb.api.keys.ValueKey;
  * A BlueCollection represents a persisted map of keys (of type {@link BlueKey}) to values of object type V.
  * 
  * A collection has a name (to distinguish between collections in a {@link BlueDb} instance), a key type, and a value type.
+ * 
+ * Each write method also has an async version that returns a future instead of waiting. The future completes once the change has been applied and recorded in
+ * the collection's recovery history, so many writes can be in flight without a blocked thread for each. Implementations that don't override the async
+ * versions make the synchronous call instead and return a future that is already done.
  * @param <V> the object type of values to be serialized into the collection
  */
 public interface BlueCollection<V extends Serializable> {
@@ -43,6 +49,25 @@ public interface BlueCollection<V extends Serializable> {
 	 */
 	public <K extends ValueKey> BlueIndex<K, V> createIndex(String name, Class<K> keyType, KeyExtractor<K, V> keyExtractor) throws BlueDbException;
 
+	/**
+	 * Creates (or returns existing) {@link BlueIndex} that also stores a {@link Projection} of each value, so that
+	 * {@link BlueIndex#getProjected} can answer from the index alone without reading the values from the collection.
+	 * 
+	 * @param <K> the key type of the index or the type of data that the collection is being indexed on. It must be a concretion of 
+	 * {@link ValueKey} ({@link UUIDKey}, {@link StringKey}, {@link LongKey}, or {@link IntegerKey}).
+	 * @param <P> the type of the projection
+	 * 
+	 * @param name index name (one index per name per each collection)
+	 * @param keyType the type of each key which is used to lookup a value using the index (this must match the keyType of any existing index with the same name)
+	 * @param keyExtractor a function that maps a value to the keys by which the value should be indexed
+	 * @param projection a function that maps a value to the small part of it that is stored in the index
+	 * 
+	 * @return a {@link BlueIndex} object (existing index if it exists, otherwise a newly created index)
+	 * 
+	 * @throws BlueDbException if the index exists but is not compatible with these types or was created with a different projection
+	 */
+	public <K extends ValueKey, P extends Serializable> BlueIndex<K, V> createIndex(String name, Class<K> keyType, KeyExtractor<K, V> keyExtractor, Projection<V, P> projection) throws BlueDbException;
+
 	/**
 	 * Returns existing BlueIndex that maps objects of type keyType to values in the collection.
 	 * 
@@ -73,6 +98,17 @@ public interface BlueCollection<V extends Serializable> {
 	 * @throws BlueDbException if the key type is not the type specified when the collection was created
 	 */
 	public void insert(BlueKey key, V value) throws BlueDbException;
+
+	/**
+	 * Inserts the given key value pair without waiting for it to be saved.
+	 * @param key key where value should be saved (must match the keyType specified when the collection was created)
+	 * @param value value to be saved for the key
+	 * @return a future that completes when the insert is saved, or completes exceptionally if it fails (for example if the key already exists)
+	 * @throws BlueDbException if the key type is not the type specified when the collection was created
+	 */
+	public default CompletableFuture<Void> insertAsync(BlueKey key, V value) throws BlueDbException {
+		return SynchronousWrite.runToFuture(() -> insert(key, value));
+	}
 	
 	/**
 	 * Inserts or replaces the given key value pairs. Batch methods are much more efficient than calling non-batch methods many times. 
@@ -81,6 +117,16 @@ public interface BlueCollection<V extends Serializable> {
 	 */
 	public void batchUpsert(Map<BlueKey, V> values) throws BlueDbException;
 
+	/**
+	 * Inserts or replaces the given key value pairs without waiting for them to be saved.
+	 * @param values the key value pairs to insert. Key types must match the keyType specified when the collection was created.
+	 * @return a future that completes when the values are saved, or completes exceptionally if saving them fails
+	 * @throws BlueDbException if the key types do not match the type specified when the collection was created
+	 */
+	public default CompletableFuture<Void> batchUpsertAsync(Map<BlueKey, V> values) throws BlueDbException {
+		return SynchronousWrite.runToFuture(() -> batchUpsert(values));
+	}
+
 	/**
 	 * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key
 	 * @param key the key for the desired value
@@ -89,6 +135,15 @@ public interface BlueCollection<V extends Serializable> {
 	 */
 	public V get(BlueKey key) throws BlueDbException;
 
+	/**
+	 * Returns the values to which the specified keys are mapped. The keys are looked up in the order they are stored in, so each
+	 * chunk of the collection is read once no matter how many of the keys are in it.
+	 * @param keys the keys for the desired values
+	 * @return the values mapped to by their keys, in the order they are stored in. Keys with no value are left out.
+	 * @throws BlueDbException if any of the keys are not the same type specified when the collection was created
+	 */
+	public Map<BlueKey, V> getAll(Collection<BlueKey> keys) throws BlueDbException;
+
 	/**
 	 * Mutates the value for the given key by passing it to the given updater
 	 * @param key The key for the value which will be updated
@@ -96,6 +151,17 @@ public interface BlueCollection<V extends Serializable> {
 	 * @throws BlueDbException if type of key is not the type specified when the collection was created or if updater throws an exception
 	 */
 	public void update(BlueKey key, Updater<V> updater) throws BlueDbException;
+
+	/**
+	 * Mutates the value for the given key by passing it to the given updater, without waiting for the result to be saved.
+	 * @param key The key for the value which will be updated
+	 * @param updater a function that mutates the value to which the specified key is mapped
+	 * @return a future that completes when the update is saved, or completes exceptionally if there is no value or updater throws an exception
+	 * @throws BlueDbException if type of key is not the type specified when the collection was created
+	 */
+	public default CompletableFuture<Void> updateAsync(BlueKey key, Updater<V> updater) throws BlueDbException {
+		return SynchronousWrite.runToFuture(() -> update(key, updater));
+	}
 	
 	/**
 	 * Replaces the value for the given key by passing it to the given updater
@@ -105,6 +171,17 @@ public interface BlueCollection<V extends Serializable> {
 	 */
 	public void replace(BlueKey key, Mapper<V> updater) throws BlueDbException;
 
+	/**
+	 * Replaces the value for the given key by passing it to the given updater, without waiting for the result to be saved.
+	 * @param key the key for the value which will be replaced
+	 * @param updater a function that returns the value that should replace the value to which the specified key is mapped
+	 * @return a future that completes when the replacement is saved, or completes exceptionally if there is no value or updater throws an exception
+	 * @throws BlueDbException if type of key is not the type specified when the collection was created
+	 */
+	public default CompletableFuture<Void> replaceAsync(BlueKey key, Mapper<V> updater) throws BlueDbException {
+		return SynchronousWrite.runToFuture(() -> replace(key, updater));
+	}
+
 	/**
 	 * Deletes the value for the given key
 	 * @param key the key for the value which will be deleted
@@ -112,6 +189,16 @@ public interface BlueCollection<V extends Serializable> {
 	 */
 	public void delete(BlueKey key) throws BlueDbException;
 
+	/**
+	 * Deletes the value for the given key without waiting for the delete to be saved.
+	 * @param key the key for the value which will be deleted
+	 * @return a future that completes when the delete is saved, or completes exceptionally if it fails
+	 * @throws BlueDbException if type of key is not the type specified when the collection was created
+	 */
+	public default CompletableFuture<Void> deleteAsync(BlueKey key) throws BlueDbException {
+		return SynchronousWrite.runToFuture(() -> delete(key));
+	}
+
 	/**
 	 * Deletes the values for the given keys. Batch methods are much more efficient than calling non-batch methods many times.
 	 * @param keys the keys for the values which will be deleted
@@ -119,6 +206,16 @@ public interface BlueCollection<V extends Serializable> {
 	 */
 	public void batchDelete(Collection<BlueKey> keys) throws BlueDbException;
 
+	/**
+	 * Deletes the values for the given keys without waiting for the deletes to be saved.
+	 * @param keys the keys for the values which will be deleted
+	 * @return a future that completes when the deletes are saved, or completes exceptionally if they fail
+	 * @throws BlueDbException if type of key is not the type specified when the collection was created
+	 */
+	public default CompletableFuture<Void> batchDeleteAsync(Collection<BlueKey> keys) throws BlueDbException {
+		return SynchronousWrite.runToFuture(() -> batchDelete(keys));
+	}
+
 	/**
 	 * Creates a {@link BlueQuery} object which can be used to build and execute a query against this collection.
 	 * @return a {@link BlueQuery} object which can be used to build and execute a query against this collection.
@@ -69,6 +69,17 @@ public interface BlueQuery<V extends Serializable> {
 	 */
 	BlueQuery<V> afterOrAtTime(long time);
 
+	/**
+	 * Makes the query read each segment of the queried interval on its own thread instead of one after another
+	 * whenever it gathers all of its matches, as in {@link #getList()}, {@link #count()}, {@link #delete()},
+	 * {@link #update(Updater)} and {@link #replace(Mapper)}. Results come back in the same order either way. This is
+	 * worth it for queries that cover many segments, like analytical queries over long time intervals.
+	 * {@link #getIterator()}, {@link #exists()} and {@link #first()} still read one segment at a time.
+	 * 
+	 * @return itself, set to read segments in parallel
+	 */
+	BlueQuery<V> parallel();
+
 	/**
 	 * Executes the query and returns the results as a list. Use getIterator if you don't want to load all matching 
 	 * values into memory at once.
@@ -119,4 +130,18 @@ public interface BlueQuery<V extends Serializable> {
 	 * @throws BlueDbException 
 	 */
 	public int count() throws BlueDbException;
+
+	/**
+	 * Executes the query until it finds a match
+	 * @return true if any value matches the query
+	 * @throws BlueDbException 
+	 */
+	public boolean exists() throws BlueDbException;
+
+	/**
+	 * Executes the query until it finds a match
+	 * @return the first value matching the query, in the same order as {@link #getList()}, or null if there are none
+	 * @throws BlueDbException 
+	 */
+	public V first() throws BlueDbException;
 }
@@ -0,0 +1,30 @@
+package org.bluedb.api;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.bluedb.api.exceptions.BlueDbException;
+
+/**
+ * A write made by calling one of the synchronous methods of {@link BlueCollection}, so that its async methods can fall
+ * back on it when an implementation doesn't have a way to write without waiting.
+ */
+@FunctionalInterface
+interface SynchronousWrite {
+
+	public void run() throws BlueDbException;
+
+	/**
+	 * Runs the write on the calling thread.
+	 * @return a future that is already completed, or completed exceptionally with whatever the write threw
+	 */
+	public static CompletableFuture<Void> runToFuture(SynchronousWrite write) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		try {
+			write.run();
+			future.complete(null);
+		} catch (BlueDbException | RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+}
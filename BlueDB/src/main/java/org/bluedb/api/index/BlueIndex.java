@@ -2,9 +2,11 @@ package org.bluedb.api.index;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
 
 import org.bluedb.api.BlueCollection;
 import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.keys.BlueKey;
 import org.bluedb.api.keys.IntegerKey;
 import org.bluedb.api.keys.LongKey;
 import org.bluedb.api.keys.StringKey;
@@ -14,8 +16,8 @@ import org.bluedb.api.keys.ValueKey;
 /**
  * An index on a {@link BlueCollection} that allows you to query for values faster based on specific data in those values.
  * BlueDB extracts data from each value in the collection and creates a mapping from that data to the values that contain that
- * data. Currently this only supports the retrieval of values using a specific index key, but could be extended in the future to
- * provide more powerful index based queries.
+ * data. Values can be retrieved using a specific index key or, for {@link IntegerKey} and {@link LongKey} indexes, a range of
+ * index keys.
  * 
  * @param <K> the key type of the index or the type of data that the collection is being indexed on. It must be a concretion of 
  * {@link ValueKey} ({@link UUIDKey}, {@link StringKey}, {@link LongKey}, or {@link IntegerKey}).
@@ -30,6 +32,24 @@ public interface BlueIndex<K extends ValueKey, V extends Serializable> {
 	 */
 	public List<V> get(K key) throws BlueDbException;
 
+	/**
+	 * Reads only the index, not the collection, so the index has to have been created with a {@link Projection}.
+	 * @param <P> the type of the projection the index was created with
+	 * @param key a key that maps to the desired value(s)
+	 * @param projectionType the class of the projection the index was created with
+	 * @return the projections of all the values in the collection for the given index key, mapped by the keys of those values
+	 * @throws BlueDbException if the index has no projection, its projections aren't of projectionType, or any other problems occur
+	 */
+	public <P extends Serializable> Map<BlueKey, P> getProjected(K key, Class<P> projectionType) throws BlueDbException;
+
+	/**
+	 * Creates a {@link BlueIndexQuery} for the values whose index keys fall in a range.
+	 * @return a {@link BlueIndexQuery} object which can be used to build and execute a range query against this index
+	 * @throws BlueDbException if the index key type isn't {@link IntegerKey} or {@link LongKey}, which are the only
+	 * ones stored in the order of their keys
+	 */
+	public BlueIndexQuery<K, V> query() throws BlueDbException;
+
 	/**
 	 * @return the index key with the highest grouping number
 	 */
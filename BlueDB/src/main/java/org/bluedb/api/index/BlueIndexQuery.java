@@ -0,0 +1,77 @@
+package org.bluedb.api.index;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.bluedb.api.CloseableIterator;
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.IntegerKey;
+import org.bluedb.api.keys.LongKey;
+import org.bluedb.api.keys.ValueKey;
+
+/**
+ * A query for the values of a {@link BlueIndex} whose index keys fall in a range. This is only supported on indexes
+ * with a key type of {@link IntegerKey} or {@link LongKey}, since only those are stored in the order of their keys.
+ * Results come back in index key order, and a value with several index keys in the range comes back once for each of
+ * them.
+ *
+ * @param <K> the key type of the index
+ * @param <V> the value type of the collection being indexed
+ */
+public interface BlueIndexQuery<K extends ValueKey, V extends Serializable> {
+
+	/**
+	 * @param key an exclusive min for the index keys of the results
+	 * @return itself, with the min added
+	 */
+	BlueIndexQuery<K, V> greaterThan(K key);
+
+	/**
+	 * @param key an inclusive min for the index keys of the results
+	 * @return itself, with the min added
+	 */
+	BlueIndexQuery<K, V> greaterThanOrEqual(K key);
+
+	/**
+	 * @param key an exclusive max for the index keys of the results
+	 * @return itself, with the max added
+	 */
+	BlueIndexQuery<K, V> lessThan(K key);
+
+	/**
+	 * @param key an inclusive max for the index keys of the results
+	 * @return itself, with the max added
+	 */
+	BlueIndexQuery<K, V> lessThanOrEqual(K key);
+
+	/**
+	 * Executes the query and returns the results as a list. Use getIterator if you don't want to load all matching
+	 * values into memory at once.
+	 * @return the query results as a list
+	 * @throws BlueDbException
+	 */
+	List<V> getList() throws BlueDbException;
+
+	/**
+	 * Begins executing the query and returns an iterator for processing the results. BlueDB reads the index on disk as
+	 * you iterate over it in memory and fetches the values in batches.
+	 *
+	 * <br><br>
+	 *
+	 * <b>Important: </b>Use within a try-with-resources statement and iterate through as quickly as possible
+	 * in order to ensure that you don't block other BlueDB tasks. If you fail to call next for 15 seconds then
+	 * the iterator will timeout and release resources.
+	 *
+	 * @return an iterator for the query results
+	 * @throws BlueDbException
+	 */
+	CloseableIterator<V> getIterator() throws BlueDbException;
+
+	/**
+	 * Executes the query against the index alone, without reading any values.
+	 * @return the keys of the matching values, in index key order
+	 * @throws BlueDbException
+	 */
+	List<BlueKey> getKeys() throws BlueDbException;
+}
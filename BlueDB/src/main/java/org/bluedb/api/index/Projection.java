@@ -0,0 +1,22 @@
+package org.bluedb.api.index;
+
+import java.io.Serializable;
+
+import org.bluedb.api.BlueCollection;
+
+/**
+ * This is used by a {@link BlueIndex} to store a small part of each value in the {@link BlueCollection} inline with the index,
+ * so that {@link BlueIndex#getProjected} can answer without reading the values themselves. Note that projections are serialized
+ * by {@link BlueIndex} and for this reason it is <b>NOT</b> recommended to use lambdas or anonymous inner classes to define
+ * projections.
+ * 
+ * @param <V> the value type of the collection being indexed
+ * @param <P> the type of the projection, which should be much smaller than the value
+ */
+public interface Projection<V extends Serializable, P extends Serializable> extends Serializable {
+	/**
+	 * @param value a value in the collection
+	 * @return the parts of the value that {@link BlueIndex#getProjected} should return for it
+	 */
+	public P project(V value);
+}
@@ -12,15 +12,23 @@ import org.bluedb.disk.segment.Range;
 import org.bluedb.disk.segment.Segment;
 import org.bluedb.disk.segment.SegmentBatch;
 import org.bluedb.disk.segment.SegmentManager;
+import org.bluedb.disk.segment.writer.BatchListener;
 
 public class BatchUtils {
 	public static <T extends Serializable> void apply(SegmentManager<T> segmentManager, List<IndividualChange<T>> sortedChanges) throws BlueDbException {
+		apply(segmentManager, sortedChanges, null);
+	}
+
+	/**
+	 * @param listener hears about the changes merged into each chunk with the values they replaced, or null
+	 */
+	public static <T extends Serializable> void apply(SegmentManager<T> segmentManager, List<IndividualChange<T>> sortedChanges, BatchListener<T> listener) throws BlueDbException {
 		LinkedList<IndividualChange<T>> unqueuedChanges = new LinkedList<>(sortedChanges);
 		while (!unqueuedChanges.isEmpty()) {
 			Segment<T> nextSegment = getFirstSegmentAffected(segmentManager, unqueuedChanges);
 			LinkedList<IndividualChange<T>> queuedChanges = pollChangesInSegment(unqueuedChanges, nextSegment);
 			while (!queuedChanges.isEmpty()) {
-				nextSegment.applyChanges(queuedChanges);
+				nextSegment.applyChanges(queuedChanges, listener);
 				removeChangesThatEndInOrBeforeSegment(queuedChanges, nextSegment);
 				nextSegment = segmentManager.getSegmentAfter(nextSegment);
 				queuedChanges.addAll( pollChangesInSegment(unqueuedChanges, nextSegment) );
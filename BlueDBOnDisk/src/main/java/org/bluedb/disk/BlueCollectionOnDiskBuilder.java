@@ -9,8 +9,18 @@ import org.bluedb.api.SegmentSize;
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.keys.BlueKey;
 import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.collection.CollectionSettings;
+import org.bluedb.disk.collection.WriteCoalescing;
+import org.bluedb.disk.file.CompressionMode;
+import org.bluedb.disk.file.ReadMode;
 import org.bluedb.disk.segment.SegmentSizeSetting;
+import org.bluedb.disk.segment.WriteMode;
+import org.bluedb.disk.serialization.validation.ValidationMode;
 
+/**
+ * Segment size and write mode are saved with the collection when it is created and are ignored once it exists. The
+ * other options aren't saved, so they apply whenever this builder is the first to open the collection.
+ */
 public class BlueCollectionOnDiskBuilder<K extends BlueKey, T extends Serializable> implements BlueCollectionBuilder<K, T>{
 
 	private final BlueDbOnDisk db;
@@ -18,6 +28,7 @@ public class BlueCollectionOnDiskBuilder<K extends BlueKey, T extends Serializab
 	private final Class<? extends BlueKey> requestedKeyType;
 	private final String name;
 	private SegmentSizeSetting segmentSize;
+	private final CollectionSettings settings = new CollectionSettings();
 	ArrayList<Class<? extends Serializable>> registeredClasses = new ArrayList<>();
 
 	protected BlueCollectionOnDiskBuilder(BlueDbOnDisk db, String name, Class<K> keyType, Class<T> valueType) {
@@ -39,9 +50,83 @@ public class BlueCollectionOnDiskBuilder<K extends BlueKey, T extends Serializab
 		return this;
 	}
 
+	/**
+	 * Chooses how chunk files are read from disk. {@link ReadMode#MEMORY_MAPPED} makes large scans cheaper but maps
+	 * each file it reads into the address space until the read is done.
+	 * @param readMode how chunk files should be read
+	 * @return itself, after readMode is set
+	 */
+	public BlueCollectionOnDiskBuilder<K, T> withReadMode(ReadMode readMode) {
+		settings.setReadMode(readMode);
+		return this;
+	}
+
+	/**
+	 * Requests how single key changes are written. {@link WriteMode#APPEND_DELTA} appends them to a small per segment
+	 * delta instead of rewriting the chunk that holds the key, which helps insert heavy collections.
+	 * @param writeMode the requested write mode for the collection
+	 * @return itself, after writeMode is set
+	 */
+	public BlueCollectionOnDiskBuilder<K, T> withWriteMode(WriteMode writeMode) {
+		settings.setWriteMode(writeMode);
+		return this;
+	}
+
+	/**
+	 * Chooses how much of what is read from disk gets checked for fields holding values of the wrong type.
+	 * {@link ValidationMode#SAMPLED} or {@link ValidationMode#OFF} make reads cheaper for data that is trusted.
+	 * @param validationMode how deserialized values should be validated
+	 * @return itself, after validationMode is set
+	 */
+	public BlueCollectionOnDiskBuilder<K, T> withValidationMode(ValidationMode validationMode) {
+		settings.setValidationMode(validationMode);
+		return this;
+	}
+
+	/**
+	 * Chooses whether chunk files are written in compressed blocks. {@link CompressionMode#DEFLATE} shrinks
+	 * collections with repetitive values on disk and in the page cache, at the cost of inflating a block for every
+	 * read that touches it. Files say how they were written, so it only affects chunks written from then on.
+	 * @param compressionMode how chunk files should be written
+	 * @return itself, after compressionMode is set
+	 */
+	public BlueCollectionOnDiskBuilder<K, T> withCompressionMode(CompressionMode compressionMode) {
+		settings.setCompressionMode(compressionMode);
+		return this;
+	}
+
+	/**
+	 * Gathers single key inserts, updates, replaces and deletes that arrive close together and writes them as one
+	 * batch change, which is much cheaper than writing them one at a time when there are many producers that can't
+	 * batch their own changes. Each change still completes (or fails) on its own once its batch is written.
+	 * @param maxChanges the most changes to gather into one batch
+	 * @param maxDelayMillis the longest the first change in a batch waits for others to join it, or 0 to flush as soon
+	 *        as possible
+	 * @return itself, after write coalescing is set
+	 */
+	public BlueCollectionOnDiskBuilder<K, T> withWriteCoalescing(int maxChanges, long maxDelayMillis) {
+		settings.setWriteCoalescing(new WriteCoalescing(maxChanges, maxDelayMillis));
+		return this;
+	}
+
+	/**
+	 * Has scans read the next chunk files into memory in the background while they iterate over the current one, so
+	 * that waiting on disk overlaps with deserializing. Each file read ahead is held in memory and read locked until
+	 * the scan gets to it.
+	 * @param chunkFiles how many chunk files to read ahead of the current one, or 0 to read each one when it's needed
+	 * @return itself, after read ahead is set
+	 */
+	public BlueCollectionOnDiskBuilder<K, T> withReadAhead(int chunkFiles) {
+		if (chunkFiles < 0) {
+			throw new IllegalArgumentException("read ahead can't be negative: " + chunkFiles);
+		}
+		settings.setReadAheadDepth(chunkFiles);
+		return this;
+	}
+
 	@Override
 	public BlueCollectionOnDisk<T> build() throws BlueDbException {
-		BlueCollectionOnDisk<T> collection = (BlueCollectionOnDisk<T>) db.initializeCollection(name, requestedKeyType, valueType, registeredClasses, segmentSize);
+		BlueCollectionOnDisk<T> collection = (BlueCollectionOnDisk<T>) db.initializeCollection(name, requestedKeyType, valueType, registeredClasses, segmentSize, settings);
 		return collection;
 	}
 }
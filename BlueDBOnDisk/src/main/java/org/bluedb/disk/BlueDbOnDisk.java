@@ -16,6 +16,7 @@ import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.keys.BlueKey;
 import org.bluedb.disk.backup.BackupManager;
 import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.collection.CollectionSettings;
 import org.bluedb.disk.executors.BlueExecutor;
 import org.bluedb.disk.file.FileUtils;
 import org.bluedb.disk.segment.SegmentSizeSetting;
@@ -67,11 +68,15 @@ public class BlueDbOnDisk implements BlueDb {
 	}
 
 	protected <T extends Serializable> BlueCollection<T> initializeCollection(String name, Class<? extends BlueKey> keyType, Class<T> valueType, List<Class<? extends Serializable>> additionalClassesToRegister, SegmentSizeSetting segmentSize) throws BlueDbException {
+		return initializeCollection(name, keyType, valueType, additionalClassesToRegister, segmentSize, new CollectionSettings());
+	}
+
+	protected <T extends Serializable> BlueCollection<T> initializeCollection(String name, Class<? extends BlueKey> keyType, Class<T> valueType, List<Class<? extends Serializable>> additionalClassesToRegister, SegmentSizeSetting segmentSize, CollectionSettings settings) throws BlueDbException {
 		synchronized (collections) {
 			@SuppressWarnings("unchecked")
 			BlueCollectionOnDisk<T> collection = (BlueCollectionOnDisk<T>) collections.get(name);
 			if(collection == null) {
-				collection = new BlueCollectionOnDisk<T>(this, name, keyType, valueType, additionalClassesToRegister, segmentSize);
+				collection = new BlueCollectionOnDisk<T>(this, name, keyType, valueType, additionalClassesToRegister, segmentSize, settings);
 				collections.put(name, collection);
 			} else if(!collection.getType().equals(valueType)) {
 				throw new BlueDbException("The " + name + " collection already exists for a different type [collectionType=" + collection.getType() + " invalidType=" + valueType + "]");
@@ -95,23 +100,53 @@ public class BlueDbOnDisk implements BlueDb {
 
 	@Override
 	public void shutdown() {
+		flushCoalescedWrites();  // queued while the query pool still takes tasks, so they run as part of the shutdown
 		sharedExecutor.shutdown();
+		flushCoalescedWrites();  // fails anything gathered since, instead of leaving it waiting on a flush that won't run
+		closeCollectionsIfTerminated();
 	}
 	
 	@Override
 	public void shutdownNow() {
 		sharedExecutor.shutdownNow();
+		flushCoalescedWrites();
+		closeCollectionsIfTerminated();
 	}
 	
 	@Override
 	public boolean awaitTermination(long timeout, TimeUnit timeUnit) throws BlueDbException {
 		try {
-			return sharedExecutor.awaitTermination(timeout, timeUnit);
+			boolean terminated = sharedExecutor.awaitTermination(timeout, timeUnit);
+			closeCollectionsIfTerminated();
+			return terminated;
 		} catch(Throwable t) {
 			throw new BlueDbException("Failure during shutdown", t);
 		}
 	}
 
+	private void flushCoalescedWrites() {
+		synchronized (collections) {
+			for (BlueCollectionOnDisk<?> collection: collections.values()) {
+				collection.flushCoalescedWrites();
+			}
+		}
+	}
+
+	/**
+	 * Tasks that are still running or queued when shutting down write to the change logs, so the logs are closed once
+	 * they're done.
+	 */
+	private void closeCollectionsIfTerminated() {
+		if (!sharedExecutor.isTerminated()) {
+			return;
+		}
+		synchronized (collections) {
+			for (BlueCollectionOnDisk<?> collection: collections.values()) {
+				collection.getRecoveryManager().close();
+			}
+		}
+	}
+
 	public Path getPath() {
 		return path;
 	}
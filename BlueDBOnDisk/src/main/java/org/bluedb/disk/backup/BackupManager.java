@@ -12,7 +12,9 @@ import org.bluedb.disk.Blutils;
 import org.bluedb.disk.collection.BlueCollectionOnDisk;
 import org.bluedb.disk.file.FileUtils;
 import org.bluedb.disk.lock.BlueReadLock;
+import org.bluedb.disk.recovery.Recoverable;
 import org.bluedb.disk.recovery.RecoveryManager;
+import org.bluedb.disk.recovery.WriteAheadLog;
 import org.bluedb.disk.segment.Range;
 import org.bluedb.disk.segment.Segment;
 import org.bluedb.zip.ZipUtils;
@@ -64,6 +66,7 @@ public class BackupManager {
 	}
 
 	private void copyDataFolders(Segment<?> segment, Path tempFolder) throws BlueDbException {
+		copyDelta(segment, tempFolder);  // before the chunks, in case the delta gets folded into chunks we already copied
 		Range range = new Range(Long.MIN_VALUE, Long.MAX_VALUE);
 		List<File> files = segment.getOrderedFilesInRange(range);
 		for (File file: files) {
@@ -77,16 +80,25 @@ public class BackupManager {
 		}
 	}
 
+	private void copyDelta(Segment<?> segment, Path tempFolder) throws BlueDbException {
+		try (BlueReadLock<Path> lock = segment.acquireDeltaReadLock()) {
+			if (lock != null && lock.getKey().toFile().exists()) {
+				Path src = lock.getKey();
+				Path dst = translatePath(dbPath, tempFolder, src);
+				FileUtils.copyFileWithoutLock(src, dst);
+			}
+		}
+	}
+
 	private void copyChanges(BlueCollectionOnDisk<?> collection, long backupStartTime, long backupEndTime, Path tempFolder) throws BlueDbException {
 		RecoveryManager<?> recoveryManager = collection.getRecoveryManager();
-		List<File> changesToCopy = recoveryManager.getChangeHistory(backupStartTime, backupEndTime);
-		Path historyFolderPath = recoveryManager.getHistoryFolder();
-		Path destinationFolderPath = translatePath(dbPath, tempFolder, historyFolderPath);
-		destinationFolderPath.toFile().mkdirs();
-		for (File file: changesToCopy) {
-			Path destinationPath = Paths.get(destinationFolderPath.toString(), file.getName());
-			FileUtils.copyFileWithoutLock(file.toPath(), destinationPath);
-			recoveryManager.markChangePending(destinationPath);
+		List<? extends Recoverable<?>> changesToCopy = recoveryManager.getChangeHistory(backupStartTime, backupEndTime);
+		Path logFolderPath = recoveryManager.getWriteAheadLog().getPath();
+		Path destinationFolderPath = translatePath(dbPath, tempFolder, logFolderPath);
+		try (WriteAheadLog destinationLog = new WriteAheadLog(destinationFolderPath, collection.getSerializer())) {
+			for (Recoverable<?> change: changesToCopy) {
+				destinationLog.appendPending(change);  // pending so that they are applied when the backup is restored
+			}
 		}
 	}
 
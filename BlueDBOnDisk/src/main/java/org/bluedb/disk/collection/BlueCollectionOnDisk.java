@@ -5,10 +5,16 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 
 import org.bluedb.api.BlueCollection;
 import org.bluedb.api.BlueQuery;
@@ -18,6 +24,7 @@ import org.bluedb.api.Updater;
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.index.BlueIndex;
 import org.bluedb.api.index.KeyExtractor;
+import org.bluedb.api.index.Projection;
 import org.bluedb.api.keys.BlueKey;
 import org.bluedb.api.keys.ValueKey;
 import org.bluedb.disk.BlueDbOnDisk;
@@ -25,9 +32,11 @@ import org.bluedb.disk.collection.index.BlueIndexOnDisk;
 import org.bluedb.disk.collection.index.IndexManager;
 import org.bluedb.disk.collection.task.BatchChangeTask;
 import org.bluedb.disk.collection.task.BatchDeleteTask;
+import org.bluedb.disk.collection.task.CoalescedChange;
 import org.bluedb.disk.collection.task.DeleteTask;
 import org.bluedb.disk.collection.task.InsertTask;
 import org.bluedb.disk.collection.task.ReplaceTask;
+import org.bluedb.disk.collection.task.SegmentScopedTask;
 import org.bluedb.disk.collection.task.UpdateTask;
 import org.bluedb.disk.executors.BlueExecutor;
 import org.bluedb.disk.file.FileManager;
@@ -37,6 +46,7 @@ import org.bluedb.disk.segment.Range;
 import org.bluedb.disk.segment.Segment;
 import org.bluedb.disk.segment.SegmentManager;
 import org.bluedb.disk.segment.SegmentSizeSetting;
+import org.bluedb.disk.segment.WriteMode;
 import org.bluedb.disk.segment.rollup.RollupScheduler;
 import org.bluedb.disk.segment.rollup.RollupTarget;
 import org.bluedb.disk.segment.rollup.Rollupable;
@@ -58,12 +68,17 @@ public class BlueCollectionOnDisk<T extends Serializable> implements BlueCollect
 	private final CollectionMetaData metaData;
 	private final IndexManager<T> indexManager;
 	private final BlueExecutor sharedExecutor;
+	private final WriteCoalescer<T> writeCoalescer;
 
 	public BlueCollectionOnDisk(BlueDbOnDisk db, String name, Class<? extends BlueKey> requestedKeyType, Class<T> valueType, List<Class<? extends Serializable>> additionalRegisteredClasses) throws BlueDbException {
 		this(db, name, requestedKeyType, valueType, additionalRegisteredClasses, null);
 	}
 
 	public BlueCollectionOnDisk(BlueDbOnDisk db, String name, Class<? extends BlueKey> requestedKeyType, Class<T> valueType, List<Class<? extends Serializable>> additionalRegisteredClasses, SegmentSizeSetting segmentSize) throws BlueDbException {
+		this(db, name, requestedKeyType, valueType, additionalRegisteredClasses, segmentSize, new CollectionSettings());
+	}
+
+	public BlueCollectionOnDisk(BlueDbOnDisk db, String name, Class<? extends BlueKey> requestedKeyType, Class<T> valueType, List<Class<? extends Serializable>> additionalRegisteredClasses, SegmentSizeSetting segmentSize, CollectionSettings settings) throws BlueDbException {
 		sharedExecutor = db.getSharedExecutor();
 		this.valueType = valueType;
 		collectionPath = Paths.get(db.getPath().toString(), name);
@@ -72,17 +87,20 @@ public class BlueCollectionOnDisk<T extends Serializable> implements BlueCollect
 		collectionKey = collectionPath.toString();
 		metaData = new CollectionMetaData(collectionPath);
 		Class<? extends Serializable>[] classesToRegister = metaData.getAndAddToSerializedClassList(valueType, additionalRegisteredClasses);
-		serializer = new ThreadLocalFstSerializer(classesToRegister);
-		fileManager = new FileManager(serializer);
+		serializer = new ThreadLocalFstSerializer(settings.getValidationMode(), classesToRegister);
+		fileManager = new FileManager(serializer, settings, sharedExecutor.getReadAheadExecutor());
 		segmentSize = determineSegmentSize(metaData, requestedKeyType, segmentSize, isNewCollection);
 		keyType = determineKeyType(metaData, requestedKeyType);
+		WriteMode writeMode = determineWriteMode(metaData, settings.getWriteMode(), isNewCollection);
 		SegmentSizeSetting segmentSizeSettings = segmentSize;
 		recoveryManager = new RecoveryManager<T>(this, fileManager, serializer);
 		rollupScheduler = new RollupScheduler(this);
-		segmentManager = new SegmentManager<T>(collectionPath, fileManager, this, segmentSizeSettings.getConfig());
+		segmentManager = new SegmentManager<T>(collectionPath, fileManager, this, segmentSizeSettings.getConfig(), writeMode);
 		indexManager = new IndexManager<>(this, collectionPath);
+		writeCoalescer = settings.getWriteCoalescing().isEnabled() ? new WriteCoalescer<>(this, settings.getWriteCoalescing()) : null;
 		rollupScheduler.start();
 		recoveryManager.recover();  // everything else has to be in place before running this
+		indexManager.startBuilds();
 	}
 
 	public int getQueuedTaskCount() {
@@ -107,13 +125,47 @@ public class BlueCollectionOnDisk<T extends Serializable> implements BlueCollect
 		return firstSegment.get(key);
 	}
 
+	@Override
+	public Map<BlueKey, T> getAll(Collection<BlueKey> keys) throws BlueDbException {
+		ensureCorrectKeyTypes(keys);
+		List<BlueKey> sortedKeys = keys.stream()
+				.distinct()
+				.sorted()
+				.collect(Collectors.toList());
+		Map<BlueKey, T> values = new LinkedHashMap<>();
+		int start = 0;
+		while (start < sortedKeys.size()) {
+			Segment<T> segment = segmentManager.getFirstSegment(sortedKeys.get(start));
+			int end = start + 1;
+			while (end < sortedKeys.size() && segment.getRange().containsInclusive(sortedKeys.get(end).getGroupingNumber())) {
+				end++;
+			}
+			segment.getAll(sortedKeys.subList(start, end), values);
+			start = end;
+		}
+		return values;
+	}
+
 	@Override
 	public void insert(BlueKey key, T value) throws BlueDbException {
 		ensureCorrectKeyType(key);
+		if (writeCoalescer != null) {
+			executeCoalesced(CoalescedChange.createInsert(key, value));
+			return;
+		}
 		Runnable insertTask = new InsertTask<T>(this, key, value);
 		executeTask(insertTask);
 	}
 
+	@Override
+	public CompletableFuture<Void> insertAsync(BlueKey key, T value) throws BlueDbException {
+		ensureCorrectKeyType(key);
+		if (writeCoalescer != null) {
+			return writeCoalescer.submit(CoalescedChange.createInsert(key, value));
+		}
+		return submitTaskAsync(new InsertTask<T>(this, key, value));
+	}
+
 	@Override
 	public void batchUpsert(Map<BlueKey, T> values) throws BlueDbException {
 		ensureCorrectKeyTypes(values.keySet());
@@ -121,6 +173,12 @@ public class BlueCollectionOnDisk<T extends Serializable> implements BlueCollect
 		executeTask(insertTask);
 	}
 
+	@Override
+	public CompletableFuture<Void> batchUpsertAsync(Map<BlueKey, T> values) throws BlueDbException {
+		ensureCorrectKeyTypes(values.keySet());
+		return submitTaskAsync(new BatchChangeTask<T>(this, values));
+	}
+
 	@Override
 	public void batchDelete(Collection<BlueKey> keys) throws BlueDbException {
 		ensureCorrectKeyTypes(keys);
@@ -128,27 +186,72 @@ public class BlueCollectionOnDisk<T extends Serializable> implements BlueCollect
 		executeTask(deleteTask);
 	}
 
+	@Override
+	public CompletableFuture<Void> batchDeleteAsync(Collection<BlueKey> keys) throws BlueDbException {
+		ensureCorrectKeyTypes(keys);
+		return submitTaskAsync(new BatchDeleteTask<T>(this, keys));
+	}
+
 	@Override
 	public void replace(BlueKey key, Mapper<T> mapper) throws BlueDbException {
 		ensureCorrectKeyType(key);
+		if (writeCoalescer != null) {
+			executeCoalesced(CoalescedChange.createReplace(key, mapper));
+			return;
+		}
 		Runnable updateTask = new ReplaceTask<T>(this, key, mapper);
 		executeTask(updateTask);
 	}
 
+	@Override
+	public CompletableFuture<Void> replaceAsync(BlueKey key, Mapper<T> mapper) throws BlueDbException {
+		ensureCorrectKeyType(key);
+		if (writeCoalescer != null) {
+			return writeCoalescer.submit(CoalescedChange.createReplace(key, mapper));
+		}
+		return submitTaskAsync(new ReplaceTask<T>(this, key, mapper));
+	}
+
 	@Override
 	public void update(BlueKey key, Updater<T> updater) throws BlueDbException {
 		ensureCorrectKeyType(key);
+		if (writeCoalescer != null) {
+			executeCoalesced(CoalescedChange.createUpdate(key, updater));
+			return;
+		}
 		Runnable updateTask = new UpdateTask<T>(this, key, updater);
 		executeTask(updateTask);
 	}
 
+	@Override
+	public CompletableFuture<Void> updateAsync(BlueKey key, Updater<T> updater) throws BlueDbException {
+		ensureCorrectKeyType(key);
+		if (writeCoalescer != null) {
+			return writeCoalescer.submit(CoalescedChange.createUpdate(key, updater));
+		}
+		return submitTaskAsync(new UpdateTask<T>(this, key, updater));
+	}
+
 	@Override
 	public void delete(BlueKey key) throws BlueDbException {
 		ensureCorrectKeyType(key);
+		if (writeCoalescer != null) {
+			executeCoalesced(CoalescedChange.createDelete(key));
+			return;
+		}
 		Runnable deleteTask = new DeleteTask<T>(this, key);
 		executeTask(deleteTask);
 	}
 
+	@Override
+	public CompletableFuture<Void> deleteAsync(BlueKey key) throws BlueDbException {
+		ensureCorrectKeyType(key);
+		if (writeCoalescer != null) {
+			return writeCoalescer.submit(CoalescedChange.createDelete(key));
+		}
+		return submitTaskAsync(new DeleteTask<T>(this, key));
+	}
+
 	@Override
 	public BlueKey getLastKey() {
 		LastEntityFinder lastFinder = new LastEntityFinder(this);
@@ -167,24 +270,106 @@ public class BlueCollectionOnDisk<T extends Serializable> implements BlueCollect
 		return results;
 	}
 
+	public List<BlueEntity<T>> findMatchesInParallel(Range range, List<Condition<T>> conditions, boolean byStartTime) throws BlueDbException {
+		return new ParallelSegmentReader<T>(segmentManager, range, byStartTime, conditions, sharedExecutor.getSegmentReaderExecutor()).findMatches();
+	}
+
+	public BlueEntity<T> findFirstMatch(Range range, List<Condition<T>> conditions, boolean byStartTime) throws BlueDbException {
+		try (CollectionEntityIterator<T> iterator = new CollectionEntityIterator<T>(segmentManager, range, byStartTime, conditions)) {
+			return iterator.hasNext() ? iterator.next() : null;
+		}
+	}
+
+	public int countMatches(Range range, List<Condition<T>> conditions, boolean byStartTime) throws BlueDbException {
+		try (CollectionEntityIterator<T> iterator = new CollectionEntityIterator<T>(segmentManager, range, byStartTime, conditions)) {
+			return iterator.count();
+		}
+	}
+
+	public int countMatchesInParallel(Range range, List<Condition<T>> conditions, boolean byStartTime) throws BlueDbException {
+		return new ParallelSegmentReader<T>(segmentManager, range, byStartTime, conditions, sharedExecutor.getSegmentReaderExecutor()).count();
+	}
+
 	public BlueExecutor getSharedExecutor() {
 		return sharedExecutor;
 	}
 
 	public void submitTask(Runnable task) {
-		sharedExecutor.submitQueryTask(collectionKey, task);
+		sharedExecutor.submitQueryTask(collectionKey, getSegmentRanges(task), task);
 	}
 
 	public void executeTask(Runnable task) throws BlueDbException{
-		Future<?> future = sharedExecutor.submitQueryTask(collectionKey, task);
+		flushCoalescedWrites();
+		Future<?> future = sharedExecutor.submitQueryTask(collectionKey, getSegmentRanges(task), task);
 		try {
 			future.get();
-		} catch (InterruptedException | ExecutionException e) {
+		} catch (InterruptedException | ExecutionException | CancellationException e) {
 			e.printStackTrace();
 			throw new BlueDbException("BlueDB task failed " + task.toString(), e);
 		}
 	}
 
+	/**
+	 * @return a future that completes when the task is done, or completes exceptionally with a BlueDbException if the
+	 *         task fails, is rejected, or is cancelled before it starts because the db was shut down
+	 */
+	public CompletableFuture<Void> submitTaskAsync(Runnable task) {
+		flushCoalescedWrites();
+		CompletableFuture<Void> result = new CompletableFuture<>();
+		FutureTask<Void> futureTask = new FutureTask<Void>(task, null) {
+			@Override
+			protected void done() {
+				try {
+					get();
+					result.complete(null);
+				} catch (ExecutionException e) {
+					result.completeExceptionally(new BlueDbException("BlueDB task failed " + task.toString(), e.getCause()));
+				} catch (InterruptedException | CancellationException e) {
+					result.completeExceptionally(new BlueDbException("BlueDB task failed " + task.toString(), e));
+				}
+			}
+		};
+		try {
+			sharedExecutor.submitQueryTask(collectionKey, getSegmentRanges(task), futureTask);
+		} catch (RejectedExecutionException e) {
+			result.completeExceptionally(new BlueDbException("BlueDB task failed " + task.toString(), e));
+		}
+		return result;
+	}
+
+	/**
+	 * Queues up any single key changes that are being gathered, so that a task queued after this sees them.
+	 */
+	public void flushCoalescedWrites() {
+		if (writeCoalescer != null) {
+			writeCoalescer.flush();
+		}
+	}
+
+	/**
+	 * Fails the same way as {@link #executeTask}, so that write coalescing doesn't change what callers catch.
+	 */
+	private void executeCoalesced(CoalescedChange<T> change) throws BlueDbException {
+		CompletableFuture<Void> future = writeCoalescer.submit(change);
+		try {
+			future.get();
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			throw new BlueDbException("BlueDB task failed " + change.toString(), e);
+		}
+	}
+
+	/**
+	 * Tasks that know which segments they touch run alongside other tasks on the collection, the rest run by
+	 * themselves.
+	 */
+	private static List<Range> getSegmentRanges(Runnable task) {
+		if (task instanceof SegmentScopedTask) {
+			return ((SegmentScopedTask) task).getSegmentRanges();
+		}
+		return null;
+	}
+
 	public void rollup(Range timeRange) throws BlueDbException {
 		Segment<T> segment = segmentManager.getSegment(timeRange.getStart());
 		segment.rollup(timeRange);
@@ -246,6 +431,18 @@ public class BlueCollectionOnDisk<T extends Serializable> implements BlueCollect
 		return existingSegmentSize;
 	}
 
+	protected static WriteMode determineWriteMode(CollectionMetaData metaData, WriteMode requestedWriteMode, boolean isNewCollection) throws BlueDbException {
+		WriteMode existingWriteMode = metaData.getWriteMode();
+		if (existingWriteMode == null) {
+			if (!isNewCollection) {
+				return WriteMode.REWRITE_CHUNK;
+			}
+			existingWriteMode = (requestedWriteMode != null) ? requestedWriteMode : WriteMode.REWRITE_CHUNK;
+			metaData.saveWriteMode(existingWriteMode);
+		}
+		return existingWriteMode;
+	}
+
 	protected static Class<? extends BlueKey> determineKeyType(CollectionMetaData metaData, Class<? extends BlueKey> providedKeyType) throws BlueDbException {
 		Class<? extends BlueKey> storedKeyType = metaData.getKeyType();
 		if (storedKeyType == null) {
@@ -265,6 +462,11 @@ public class BlueCollectionOnDisk<T extends Serializable> implements BlueCollect
 		return indexManager.getOrCreate(name, keyType, keyExtractor);
 	}
 
+	@Override
+	public <I extends ValueKey, P extends Serializable> BlueIndex<I, T> createIndex(String name, Class<I> keyType, KeyExtractor<I, T> keyExtractor, Projection<T, P> projection) throws BlueDbException {
+		return indexManager.getOrCreate(name, keyType, keyExtractor, projection);
+	}
+
 	@Override
 	public <I extends ValueKey> BlueIndex<I, T> getIndex(String indexName, Class<I> keyType) throws BlueDbException {
 		return indexManager.getIndex(indexName, keyType);
@@ -289,6 +491,13 @@ public class BlueCollectionOnDisk<T extends Serializable> implements BlueCollect
 		rollupScheduler.reportWrites(rollupTargets);
 	}
 
+	/**
+	 * @return the coalescer gathering single key changes, or null if write coalescing is off
+	 */
+	public WriteCoalescer<T> getWriteCoalescer() {
+		return writeCoalescer;
+	}
+
 	public RollupScheduler getRollupScheduler() {
 		return rollupScheduler;
 	}
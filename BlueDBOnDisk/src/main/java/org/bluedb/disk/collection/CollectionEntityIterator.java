@@ -9,6 +9,7 @@ import java.util.List;
 import org.bluedb.disk.segment.SegmentEntityIterator;
 import org.bluedb.disk.segment.SegmentManager;
 import org.bluedb.api.Condition;
+import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.disk.Blutils;
 import org.bluedb.disk.segment.Range;
 import org.bluedb.disk.segment.Segment;
@@ -20,6 +21,7 @@ public class CollectionEntityIterator<T extends Serializable> implements Iterato
 	final private Range range;
 	private long endGroupingValueOfCompletedSegments;
 	private SegmentEntityIterator<T> segmentIterator;
+	private SegmentEntityIterator<T> nextSegmentIterator;  // already reading ahead, once segmentIterator has read ahead all of its files
 	private BlueEntity<T> next;
 	private final List<Condition<T>> conditions;
 
@@ -44,6 +46,9 @@ public class CollectionEntityIterator<T extends Serializable> implements Iterato
 		if (segmentIterator != null) {
 			segmentIterator.close();
 		}
+		if (nextSegmentIterator != null) {
+			nextSegmentIterator.close();
+		}
 	}
 
 	@Override
@@ -72,10 +77,52 @@ public class CollectionEntityIterator<T extends Serializable> implements Iterato
 		return result;
 	}
 
+	/**
+	 * Counts the matches that haven't been iterated over yet. Without conditions the values don't matter, so whole
+	 * segments are counted by {@link Segment#count(long, long, long)} instead of being read.
+	 * @return the number of remaining matches
+	 * @throws BlueDbException if a segment can't be read
+	 */
+	public int count() throws BlueDbException {
+		int count = 0;
+		if (!conditions.isEmpty()) {
+			while (hasNext()) {
+				next();
+				count++;
+			}
+			return count;
+		}
+		if (next != null) {
+			next = null;
+			count++;
+		}
+		if (segmentIterator != null) {
+			while (segmentIterator.hasNext()) {
+				segmentIterator.next();
+				count++;
+			}
+			endGroupingValueOfCompletedSegments = segmentIterator.getSegment().getRange().getEnd();
+			segmentIterator.close();
+			segmentIterator = null;
+		}
+		if (nextSegmentIterator != null) {
+			nextSegmentIterator.close();
+			segments.add(0, nextSegmentIterator.getSegment());  // counting from footers beats reading it ahead
+			nextSegmentIterator = null;
+		}
+		while (!segments.isEmpty()) {
+			Segment<T> segment = segments.remove(0);
+			count += segment.count(endGroupingValueOfCompletedSegments, range.getStart(), range.getEnd());
+			endGroupingValueOfCompletedSegments = segment.getRange().getEnd();
+		}
+		return count;
+	}
+
 	private BlueEntity<T> nextFromSegment() {
 		while (!segments.isEmpty() || segmentIterator != null) {
 			if (segmentIterator != null) {
 				while(segmentIterator.hasNext()) {
+					readAheadNextSegment();
 					BlueEntity<T> result = segmentIterator.next();
 					if (Blutils.meetsConditions(conditions, result.getValue())) {
 						return result;
@@ -91,14 +138,26 @@ public class CollectionEntityIterator<T extends Serializable> implements Iterato
 	}
 
 	private SegmentEntityIterator<T> getNextSegmentIterator() {
-		if (segments.isEmpty()) {
-			return null;
-		}
 		if (segmentIterator != null) {
 			long endOfLastSegment =  segmentIterator.getSegment().getRange().getEnd();
 			endGroupingValueOfCompletedSegments = endOfLastSegment;
 		}
+		if (nextSegmentIterator != null) {
+			SegmentEntityIterator<T> next = nextSegmentIterator;
+			nextSegmentIterator = null;
+			return next;
+		}
+		if (segments.isEmpty()) {
+			return null;
+		}
 		Segment<T> segment = segments.remove(0);
 		return segment.getIterator(endGroupingValueOfCompletedSegments, range);
 	}
+
+	private void readAheadNextSegment() {
+		if (nextSegmentIterator == null && !segments.isEmpty() && segmentIterator.isReadingAheadLastChunk()) {
+			long endOfCurrentSegment = segmentIterator.getSegment().getRange().getEnd();
+			nextSegmentIterator = segments.remove(0).getIterator(endOfCurrentSegment, range, segmentIterator.getReadAheadTail());
+		}
+	}
 }
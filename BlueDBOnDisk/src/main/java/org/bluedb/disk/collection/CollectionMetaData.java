@@ -9,6 +9,7 @@ import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.keys.BlueKey;
 import org.bluedb.disk.file.FileManager;
 import org.bluedb.disk.segment.SegmentSizeSetting;
+import org.bluedb.disk.segment.WriteMode;
 import org.bluedb.disk.serialization.BlueSerializer;
 import org.bluedb.disk.serialization.ThreadLocalFstSerializer;
 
@@ -17,6 +18,7 @@ public class CollectionMetaData {
 	private static final String FILENAME_SERIALIZED_CLASSES = "serialized_classes";
 	private static final String FILENAME_KEY_TYPE = "key_type";
 	private static final String FILENAME_SEGMENT_SIZE = "segment_size";
+	private static final String FILENAME_WRITE_MODE = "write_mode";
 	private static final String META_DATA_FOLDER = ".meta";
 	
 	final Path folderPath;
@@ -24,6 +26,7 @@ public class CollectionMetaData {
 	final Path serializedClassesPath;
 	final Path keyTypePath;
 	final Path segmentSizePath;
+	final Path writeModePath;
 
 	public CollectionMetaData(Path collectionPath) {
 		// meta data needs its own serialized because collection doesn't know which classes to register until metadata deserializes them from disk
@@ -34,6 +37,7 @@ public class CollectionMetaData {
 		serializedClassesPath = Paths.get(folderPath.toString(), FILENAME_SERIALIZED_CLASSES);
 		keyTypePath = Paths.get(folderPath.toString(), FILENAME_KEY_TYPE);
 		segmentSizePath = Paths.get(folderPath.toString(), FILENAME_SEGMENT_SIZE);
+		writeModePath = Paths.get(folderPath.toString(), FILENAME_WRITE_MODE);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -51,6 +55,15 @@ public class CollectionMetaData {
 		fileManager.saveObject(segmentSizePath, segmentSize);
 	}
 
+	public WriteMode getWriteMode() throws BlueDbException {
+		Object savedValue = fileManager.loadObject(writeModePath);
+		return (WriteMode) savedValue;
+	}
+
+	public void saveWriteMode(WriteMode writeMode) throws BlueDbException {
+		fileManager.saveObject(writeModePath, writeMode);
+	}
+
 	public List<Class<? extends Serializable>> getSerializedClassList() throws BlueDbException {
 		Object savedValue = fileManager.loadObject(serializedClassesPath);
 		try {
@@ -0,0 +1,86 @@
+package org.bluedb.disk.collection;
+
+import org.bluedb.disk.file.CompressionMode;
+import org.bluedb.disk.file.ReadMode;
+import org.bluedb.disk.segment.WriteMode;
+import org.bluedb.disk.serialization.validation.ValidationMode;
+
+/**
+ * The options a collection is opened with besides its key type, value type and segment size. Each one starts out at
+ * its default and is set through {@link org.bluedb.disk.BlueCollectionOnDiskBuilder}.
+ */
+public class CollectionSettings {
+
+	private ReadMode readMode = ReadMode.STREAMED;
+	private WriteMode writeMode;
+	private ValidationMode validationMode = ValidationMode.FULL;
+	private CompressionMode compressionMode = CompressionMode.NONE;
+	private WriteCoalescing writeCoalescing = WriteCoalescing.OFF;
+	private int readAheadDepth = 0;
+
+	public ReadMode getReadMode() {
+		return readMode;
+	}
+
+	public CollectionSettings setReadMode(ReadMode readMode) {
+		this.readMode = readMode;
+		return this;
+	}
+
+	/**
+	 * @return the requested write mode, or null to keep whatever the collection was created with
+	 */
+	public WriteMode getWriteMode() {
+		return writeMode;
+	}
+
+	public CollectionSettings setWriteMode(WriteMode writeMode) {
+		this.writeMode = writeMode;
+		return this;
+	}
+
+	public ValidationMode getValidationMode() {
+		return validationMode;
+	}
+
+	public CollectionSettings setValidationMode(ValidationMode validationMode) {
+		this.validationMode = validationMode;
+		return this;
+	}
+
+	public CompressionMode getCompressionMode() {
+		return compressionMode;
+	}
+
+	public CollectionSettings setCompressionMode(CompressionMode compressionMode) {
+		this.compressionMode = compressionMode;
+		return this;
+	}
+
+	public WriteCoalescing getWriteCoalescing() {
+		return writeCoalescing;
+	}
+
+	public CollectionSettings setWriteCoalescing(WriteCoalescing writeCoalescing) {
+		this.writeCoalescing = writeCoalescing;
+		return this;
+	}
+
+	/**
+	 * @return how many chunk files a scan reads into memory ahead of the one it's iterating over, or 0 to read each
+	 *         one when it's needed
+	 */
+	public int getReadAheadDepth() {
+		return readAheadDepth;
+	}
+
+	public CollectionSettings setReadAheadDepth(int readAheadDepth) {
+		this.readAheadDepth = readAheadDepth;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "CollectionSettings [readMode=" + readMode + ", writeMode=" + writeMode + ", validationMode=" + validationMode + ", compressionMode=" + compressionMode + ", writeCoalescing=" + writeCoalescing + ", readAheadDepth=" + readAheadDepth + "]";
+	}
+}
@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.List;
 import org.bluedb.api.CloseableIterator;
 import org.bluedb.api.Condition;
+import org.bluedb.disk.executors.TimeoutScheduler;
 import org.bluedb.disk.lock.AutoCloseCountdown;
 import org.bluedb.disk.segment.Range;
 import org.bluedb.disk.segment.SegmentManager;
@@ -24,6 +25,11 @@ public class CollectionValueIterator<T extends Serializable> implements Closeabl
 		timeoutCloser = new AutoCloseCountdown(this, timeout);
 	}
 
+	public CollectionValueIterator(SegmentManager<T> segmentManager, Range range, boolean byStartTime, List<Condition<T>> objectConditions, TimeoutScheduler timeoutScheduler) {
+		entityIterator = new CollectionEntityIterator<T>(segmentManager, range, byStartTime, objectConditions);
+		timeoutCloser = new AutoCloseCountdown(this, TIMEOUT_DEFAULT_MILLIS, timeoutScheduler);
+	}
+
 	@Override
 	public void close() {
 		if (entityIterator != null) {
@@ -0,0 +1,117 @@
+package org.bluedb.disk.collection;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.bluedb.api.Condition;
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.disk.Blutils;
+import org.bluedb.disk.segment.Range;
+import org.bluedb.disk.segment.Segment;
+import org.bluedb.disk.segment.SegmentEntityIterator;
+import org.bluedb.disk.segment.SegmentManager;
+import org.bluedb.disk.serialization.BlueEntity;
+
+/**
+ * Reads the segments that a query covers on the given executor, one segment per task, instead of one after
+ * another like {@link CollectionEntityIterator}. Each segment skips what the segment before it covers, just like the
+ * sequential iterator, so values in more than one segment are only returned once. Results are put back together in
+ * segment order, so they come back in the same order as the sequential iterator.
+ */
+public class ParallelSegmentReader<T extends Serializable> {
+
+	private final List<Segment<T>> segments;
+	private final Range range;
+	private final long endGroupingValueBeforeFirstSegment;
+	private final List<Condition<T>> conditions;
+	private final ExecutorService executor;
+
+	public ParallelSegmentReader(SegmentManager<T> segmentManager, Range range, boolean byStartTime, List<Condition<T>> conditions, ExecutorService executor) {
+		this.range = range;
+		this.endGroupingValueBeforeFirstSegment = (!byStartTime || range.getStart() == Long.MIN_VALUE) ? Long.MIN_VALUE : range.getStart() - 1;
+		this.segments = segmentManager.getExistingSegments(range);
+		Collections.sort(segments);
+		this.conditions = conditions;
+		this.executor = executor;
+	}
+
+	public List<BlueEntity<T>> findMatches() throws BlueDbException {
+		List<BlueEntity<T>> results = new ArrayList<>();
+		for (List<BlueEntity<T>> segmentResults: readEachSegment(this::findMatches)) {
+			results.addAll(segmentResults);
+		}
+		return results;
+	}
+
+	public int count() throws BlueDbException {
+		int count = 0;
+		for (int segmentCount: readEachSegment(this::count)) {
+			count += segmentCount;
+		}
+		return count;
+	}
+
+	private List<BlueEntity<T>> findMatches(Segment<T> segment, long highestGroupingNumberCompleted) {
+		List<BlueEntity<T>> results = new ArrayList<>();
+		try (SegmentEntityIterator<T> iterator = segment.getIterator(highestGroupingNumberCompleted, range)) {
+			while (iterator.hasNext()) {
+				BlueEntity<T> entity = iterator.next();
+				if (Blutils.meetsConditions(conditions, entity.getValue())) {
+					results.add(entity);
+				}
+			}
+		}
+		return results;
+	}
+
+	private int count(Segment<T> segment, long highestGroupingNumberCompleted) throws BlueDbException {
+		if (conditions.isEmpty()) {
+			return segment.count(highestGroupingNumberCompleted, range.getStart(), range.getEnd());
+		}
+		return findMatches(segment, highestGroupingNumberCompleted).size();
+	}
+
+	/**
+	 * Runs the reader on each segment in parallel.
+	 * @return what the reader returned for each segment, in segment order
+	 */
+	public <R> List<R> readEachSegment(SegmentReader<T, R> reader) throws BlueDbException {
+		List<Callable<R>> tasks = new ArrayList<>();
+		long highestGroupingNumberCompleted = endGroupingValueBeforeFirstSegment;
+		for (Segment<T> segment: segments) {
+			long segmentStart = highestGroupingNumberCompleted;
+			tasks.add(() -> reader.read(segment, segmentStart));
+			highestGroupingNumberCompleted = segment.getRange().getEnd();
+		}
+		List<R> results = new ArrayList<>();
+		try {
+			for (Future<R> future: executor.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			throw new BlueDbException("interrupted reading segments in parallel", e);
+		} catch (RejectedExecutionException e) {
+			throw new BlueDbException("cannot read segments in parallel after shutdown", e);
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+			if (e.getCause() instanceof BlueDbException) {
+				throw (BlueDbException) e.getCause();
+			}
+			throw new BlueDbException("failed to read segments in parallel", e.getCause());
+		}
+		return results;
+	}
+
+	@FunctionalInterface
+	public interface SegmentReader<T extends Serializable, R> {
+		R read(Segment<T> segment, long highestGroupingNumberCompleted) throws BlueDbException;
+	}
+}
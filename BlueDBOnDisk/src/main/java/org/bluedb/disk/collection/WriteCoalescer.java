@@ -0,0 +1,73 @@
+package org.bluedb.disk.collection;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.disk.collection.task.CoalescedChange;
+import org.bluedb.disk.collection.task.CoalescedChangesTask;
+
+/**
+ * Gathers single key changes to a collection and queues them up as one {@link CoalescedChangesTask} once there are
+ * {@link WriteCoalescing#getMaxChanges()} of them or the first has waited {@link WriteCoalescing#getMaxDelayMillis()}.
+ * Batches are queued in the order they were gathered, and under the same lock, so changes to a key keep their order.
+ */
+public class WriteCoalescer<T extends Serializable> {
+
+	private final BlueCollectionOnDisk<T> collection;
+	private final WriteCoalescing settings;
+	private List<CoalescedChange<T>> pendingChanges = new ArrayList<>();
+	private long batchNumber = 0;
+
+	public WriteCoalescer(BlueCollectionOnDisk<T> collection, WriteCoalescing settings) {
+		this.collection = collection;
+		this.settings = settings;
+	}
+
+	public synchronized CompletableFuture<Void> submit(CoalescedChange<T> change) {
+		pendingChanges.add(change);
+		if (pendingChanges.size() >= settings.getMaxChanges()) {
+			flush();
+		} else if (pendingChanges.size() == 1) {
+			long batchToFlush = batchNumber;
+			try {
+				collection.getSharedExecutor().scheduleTask(() -> flush(batchToFlush), settings.getMaxDelayMillis(), TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				flush();  // shut down, so this fails the change instead of leaving it waiting
+			}
+		}
+		return change.getFuture();
+	}
+
+	/**
+	 * Queues up whatever has been gathered so far, so that tasks queued after this run after those changes.
+	 */
+	public synchronized void flush() {
+		if (pendingChanges.isEmpty()) {
+			return;
+		}
+		List<CoalescedChange<T>> batch = pendingChanges;
+		pendingChanges = new ArrayList<>();
+		batchNumber++;
+		CoalescedChangesTask<T> task = new CoalescedChangesTask<>(collection, batch);
+		try {
+			collection.submitTask(task);
+		} catch (RuntimeException e) {
+			batch.forEach((c) -> c.getFuture().completeExceptionally(new BlueDbException("BlueDB task failed " + task, e)));
+		}
+	}
+
+	public synchronized int getPendingChangeCount() {
+		return pendingChanges.size();
+	}
+
+	private synchronized void flush(long batchToFlush) {
+		if (batchNumber == batchToFlush) {  // otherwise it filled up and was already flushed
+			flush();
+		}
+	}
+}
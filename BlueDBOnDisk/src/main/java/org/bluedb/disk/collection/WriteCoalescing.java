@@ -0,0 +1,39 @@
+package org.bluedb.disk.collection;
+
+/**
+ * Settings for gathering single key inserts, updates, replaces and deletes into one batch change. A batch is written
+ * once it holds maxChanges changes or its first change has waited maxDelayMillis, whichever comes first. A delay of 0
+ * flushes as soon as possible, gathering only the changes that arrive before the flush gets to run.
+ */
+public final class WriteCoalescing {
+
+	public static final WriteCoalescing OFF = new WriteCoalescing(1, 0);
+
+	private final int maxChanges;
+	private final long maxDelayMillis;
+
+	public WriteCoalescing(int maxChanges, long maxDelayMillis) {
+		if (maxChanges < 1 || maxDelayMillis < 0) {
+			throw new IllegalArgumentException("invalid write coalescing of " + maxChanges + " changes or " + maxDelayMillis + " ms");
+		}
+		this.maxChanges = maxChanges;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	public boolean isEnabled() {
+		return maxChanges > 1;
+	}
+
+	public int getMaxChanges() {
+		return maxChanges;
+	}
+
+	public long getMaxDelayMillis() {
+		return maxDelayMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "WriteCoalescing [maxChanges=" + maxChanges + ", maxDelayMillis=" + maxDelayMillis + "]";
+	}
+}
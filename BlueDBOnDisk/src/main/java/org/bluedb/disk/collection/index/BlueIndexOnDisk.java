@@ -6,13 +6,26 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.index.BlueIndex;
+import org.bluedb.api.index.BlueIndexQuery;
 import org.bluedb.api.index.KeyExtractor;
+import org.bluedb.api.index.Projection;
 import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.IntegerKey;
+import org.bluedb.api.keys.LongKey;
 import org.bluedb.api.keys.ValueKey;
 import org.bluedb.disk.BatchUtils;
 import org.bluedb.disk.Blutils;
@@ -33,31 +46,44 @@ import org.bluedb.disk.serialization.BlueEntity;
 public class BlueIndexOnDisk<I extends ValueKey, T extends Serializable> implements BlueIndex<I, T>, Rollupable {
 
 	private final static String FILE_KEY_EXTRACTOR = ".extractor";
+	private final static String FILE_PROJECTION = ".projection";
 
 	private final BlueCollectionOnDisk<T> collection;
 	private final KeyExtractor<I, T> keyExtractor;
+	private final Projection<T, ?> projection;
 	private final FileManager fileManager;
-	private final SegmentManager<BlueKey> segmentManager;
+	private final SegmentManager<Serializable> segmentManager;
 	private final String indexName;
+	private volatile IndexBuilder<I, T> builder;  // null once the index is built
+	private final CompletableFuture<Void> built = new CompletableFuture<>();
+	private final AtomicBoolean buildStarted = new AtomicBoolean();
 
 	public static <K extends ValueKey, T extends Serializable> BlueIndexOnDisk<K, T> createNew(BlueCollectionOnDisk<T> collection, Path indexPath, KeyExtractor<K, T> keyExtractor) throws BlueDbException {
+		return createNew(collection, indexPath, keyExtractor, null);
+	}
+
+	/**
+	 * Creates the index without building it, see {@link #startBuild()}.
+	 * @param projection what to store in the index entries in place of the key of the value, or null for the key
+	 */
+	public static <K extends ValueKey, T extends Serializable> BlueIndexOnDisk<K, T> createNew(BlueCollectionOnDisk<T> collection, Path indexPath, KeyExtractor<K, T> keyExtractor, Projection<T, ?> projection) throws BlueDbException {
 		indexPath.toFile().mkdirs();
+		IndexBuilder.markInProgress(indexPath);  // before anything else, so that an interrupted build never looks like an empty index
 		FileManager fileManager = collection.getFileManager();
 		Path keyExtractorPath = Paths.get(indexPath.toString(), FILE_KEY_EXTRACTOR);
 		fileManager.saveObject(keyExtractorPath, keyExtractor);
-		BlueIndexOnDisk<K, T> index = new BlueIndexOnDisk<K, T>(collection, indexPath, keyExtractor);
-		populateNewIndex(collection, index);
-		return index;
+		if (projection != null) {
+			Path projectionPath = Paths.get(indexPath.toString(), FILE_PROJECTION);
+			fileManager.saveObject(projectionPath, projection);
+		}
+		return new BlueIndexOnDisk<K, T>(collection, indexPath, keyExtractor, projection);
 	}
 
-	private static <K extends ValueKey, T extends Serializable> void populateNewIndex(BlueCollectionOnDisk<T> collection, BlueIndexOnDisk<K, T> index) throws BlueDbException {
-		Range allTime = new Range(Long.MIN_VALUE, Long.MAX_VALUE);
-		try (CollectionEntityIterator<T> iterator = new CollectionEntityIterator<T>(collection.getSegmentManager(), allTime, false, Arrays.asList())) {
-			while (iterator.hasNext()) {
-				List<BlueEntity<T>> entities = iterator.next(1000);
-				index.addEntities(entities);
-			}
-		}
+	/**
+	 * @return false if creating the index was interrupted before it got as far as saving its key extractor
+	 */
+	public static boolean exists(Path indexPath) {
+		return Paths.get(indexPath.toString(), FILE_KEY_EXTRACTOR).toFile().exists();
 	}
 
 	public static <K extends ValueKey, T extends Serializable> BlueIndexOnDisk<K, T> fromExisting(BlueCollectionOnDisk<T> collection, Path indexPath) throws BlueDbException {
@@ -65,20 +91,84 @@ public class BlueIndexOnDisk<I extends ValueKey, T extends Serializable> impleme
 		Path keyExtractorPath = Paths.get(indexPath.toString(), FILE_KEY_EXTRACTOR);
 		@SuppressWarnings("unchecked")
 		KeyExtractor<K, T> keyExtractor = (KeyExtractor<K, T>) fileManager.loadObject(keyExtractorPath);
-		return new BlueIndexOnDisk<K, T>(collection, indexPath, keyExtractor);
+		Path projectionPath = Paths.get(indexPath.toString(), FILE_PROJECTION);
+		@SuppressWarnings("unchecked")
+		Projection<T, ?> projection = (Projection<T, ?>) fileManager.loadObject(projectionPath);  // null for indexes without one
+		return new BlueIndexOnDisk<K, T>(collection, indexPath, keyExtractor, projection);  // see startBuild for one that was interrupted
 	}
 
 	public Class<I> getType() {
 		return keyExtractor.getType();
 	}
 
-	private BlueIndexOnDisk(BlueCollectionOnDisk<T> collection, Path indexPath, KeyExtractor<I, T> keyExtractor) throws BlueDbException {
+	/**
+	 * @return the class of the projection the index entries hold, or null if they hold the keys of the values
+	 */
+	public Class<?> getProjectionType() {
+		return (projection == null) ? null : projection.getClass();
+	}
+
+	private BlueIndexOnDisk(BlueCollectionOnDisk<T> collection, Path indexPath, KeyExtractor<I, T> keyExtractor, Projection<T, ?> projection) throws BlueDbException {
 		this.collection = collection;
 		this.keyExtractor = keyExtractor;
+		this.projection = projection;
 		this.fileManager = collection.getFileManager();
 		this.indexName = indexPath.toFile().getName();
 		SegmentSizeSetting sizeSetting = determineSegmentSize(keyExtractor.getType());
-		segmentManager = new SegmentManager<BlueKey>(indexPath, fileManager, this, sizeSetting.getConfig());
+		segmentManager = new SegmentManager<Serializable>(indexPath, fileManager, this, sizeSetting.getConfig());
+		if (IndexBuilder.isInProgress(indexPath)) {
+			builder = new IndexBuilder<I, T>(collection, this, indexPath);
+		} else {
+			built.complete(null);
+		}
+	}
+
+	/**
+	 * Builds the index on the db's index build thread, unless it is already built. Until the build is done, changes to
+	 * the collection are recorded for the build to apply, so the index has to be where collection changes reach it
+	 * before this is called.
+	 */
+	public void startBuild() {
+		IndexBuilder<I, T> currentBuilder = builder;
+		if (currentBuilder == null || !buildStarted.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			collection.getSharedExecutor().getIndexBuildExecutor().execute(() -> build(currentBuilder));
+		} catch (RejectedExecutionException e) {
+			built.completeExceptionally(e);
+		}
+	}
+
+	private void build(IndexBuilder<I, T> currentBuilder) {
+		try {
+			currentBuilder.build();
+			builder = null;
+			built.complete(null);
+		} catch (Throwable t) {
+			t.printStackTrace();
+			built.completeExceptionally(t);  // the build folder is still there, so it resumes when the collection is reopened
+		}
+	}
+
+	public boolean isBuilding() {
+		return builder != null;
+	}
+
+	/**
+	 * Waits for the index to be built, since it doesn't hold the entries of the values that were in the collection
+	 * before it was created until then.
+	 * @throws BlueDbException if the build failed, or if the index is unbuilt and nothing has started its build
+	 */
+	public void awaitBuild() throws BlueDbException {
+		if (!built.isDone() && !buildStarted.get()) {
+			throw new BlueDbException("index " + indexName + " is not built and its build was never started");
+		}
+		try {
+			built.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new BlueDbException("index " + indexName + " failed to build", e);
+		}
 	}
 
 	protected static SegmentSizeSetting determineSegmentSize(Class<? extends BlueKey> keyType) throws BlueDbException {
@@ -92,50 +182,99 @@ public class BlueIndexOnDisk<I extends ValueKey, T extends Serializable> impleme
 	}
 
 	public void add(BlueKey key, T newItem) throws BlueDbException {
-		if (newItem == null) {
+		if (newItem == null || recordIfBuilding(Arrays.asList(new IndividualChange<T>(key, null, newItem)))) {
 			return;
 		}
+		Serializable indexValue = toIndexValue(key, newItem);
 		for (IndexCompositeKey<I> compositeKey: toCompositeKeys(key, newItem)) {
-			Segment<BlueKey> segment = segmentManager.getFirstSegment(compositeKey);
-			segment.insert(compositeKey, key);
+			Segment<Serializable> segment = segmentManager.getFirstSegment(compositeKey);
+			segment.insert(compositeKey, indexValue);
 		}
 	}
 
-	public void addEntities(Collection<BlueEntity<T>> entities) throws BlueDbException {
-		List<IndividualChange<BlueKey>> sortedIndexChanges = entities.stream()
-				.map( this::toIndexChanges )
-				.flatMap(List::stream)
-				.sorted()
-				.collect(Collectors.toList());
-		BatchUtils.apply(segmentManager, sortedIndexChanges);
+	/**
+	 * Applies a batch of collection changes to the index as one sorted batch, deleting the entries of the old values
+	 * and inserting those of the new values. Entries that would be the same for both are left alone.
+	 */
+	public void applyChanges(Collection<IndividualChange<T>> changes) throws BlueDbException {
+		if (!recordIfBuilding(changes)) {
+			applyChangesToEntries(changes);
+		}
 	}
 
-	public void add(Collection<IndividualChange<T>> changes) throws BlueDbException {
-		List<IndividualChange<BlueKey>> sortedIndexChanges = toSortedIndexChanges(changes);
-		BatchUtils.apply(segmentManager, sortedIndexChanges);
+	protected void applyChangesToEntries(Collection<IndividualChange<T>> changes) throws BlueDbException {
+		List<IndividualChange<Serializable>> sortedIndexChanges = toSortedIndexChanges(changes);
+		if (!sortedIndexChanges.isEmpty()) {
+			BatchUtils.apply(segmentManager, sortedIndexChanges);
+		}
 	}
 
 	public void remove(BlueKey key, T oldItem) throws BlueDbException {
-		if (oldItem == null) {
+		if (oldItem == null || recordIfBuilding(Arrays.asList(new IndividualChange<T>(key, oldItem, null)))) {
 			return;
 		}
 		for (IndexCompositeKey<I> compositeKey: toCompositeKeys(key, oldItem)) {
-			Segment<BlueKey> segment = segmentManager.getFirstSegment(compositeKey);
+			Segment<Serializable> segment = segmentManager.getFirstSegment(compositeKey);
 			segment.delete(compositeKey);
 		}
 	}
 
+	/**
+	 * @return true if the changes were recorded for the build to apply, instead of having to be applied now
+	 */
+	private boolean recordIfBuilding(Collection<IndividualChange<T>> changes) throws BlueDbException {
+		IndexBuilder<I, T> currentBuilder = builder;
+		return currentBuilder != null && currentBuilder.record(changes);
+	}
+
 	@Override
 	public List<T> get(I key) throws BlueDbException {
 		List<BlueKey> underlyingKeys = getKeys(key);
-		List<T> values = Blutils.map(underlyingKeys, (k) -> collection.get(k));
+		Map<BlueKey, T> valuesByKey = collection.getAll(underlyingKeys);
+		List<T> values = Blutils.map(underlyingKeys, valuesByKey::get);
 		return values;
 	}
 
-	public List<BlueKey> getKeys(I key) {
+	@Override
+	public <P extends Serializable> Map<BlueKey, P> getProjected(I key, Class<P> projectionType) throws BlueDbException {
+		if (projection == null) {
+			throw new BlueDbException("index " + indexName + " was created without a projection");
+		}
+		awaitBuild();
+		Range range = new Range(key.getGroupingNumber(), key.getGroupingNumber());
+		Map<BlueKey, P> projections = new LinkedHashMap<>();
+		try (CollectionEntityIterator<Serializable> entityIterator = new CollectionEntityIterator<>(segmentManager, range, true, new ArrayList<>())) {
+			while (entityIterator.hasNext()) {
+				BlueEntity<Serializable> indexEntity = entityIterator.next();
+				@SuppressWarnings("unchecked")
+				IndexCompositeKey<I> indexKey = (IndexCompositeKey<I>) indexEntity.getKey();
+				Serializable indexValue = indexEntity.getValue();
+				if (indexValue == NullProjection.INSTANCE) {
+					projections.put(indexKey.getValueKey(), null);
+				} else if (projectionType.isInstance(indexValue)) {
+					projections.put(indexKey.getValueKey(), projectionType.cast(indexValue));
+				} else {
+					throw new BlueDbException("index " + indexName + " has projections of type " + indexValue.getClass().getName() + ", not " + projectionType.getName());
+				}
+			}
+		}
+		return projections;
+	}
+
+	@Override
+	public BlueIndexQuery<I, T> query() throws BlueDbException {
+		Class<I> type = getType();
+		if (!IntegerKey.class.equals(type) && !LongKey.class.equals(type)) {
+			throw new BlueDbException("index " + indexName + " has keys of type " + type.getSimpleName() + ", which aren't stored in order");
+		}
+		return new BlueIndexQueryOnDisk<I, T>(this, collection);
+	}
+
+	public List<BlueKey> getKeys(I key) throws BlueDbException {
+		awaitBuild();
 		Range range = new Range(key.getGroupingNumber(), key.getGroupingNumber());
 		List<BlueKey> keys = new ArrayList<>();
-		try (CollectionEntityIterator<BlueKey> entityIterator = new CollectionEntityIterator<>(segmentManager, range, true, new ArrayList<>())) {
+		try (CollectionEntityIterator<Serializable> entityIterator = new CollectionEntityIterator<>(segmentManager, range, true, new ArrayList<>())) {
 			while (entityIterator.hasNext()) {
 				@SuppressWarnings("unchecked")
 				IndexCompositeKey<I> indexKey = (IndexCompositeKey<I>) entityIterator.next().getKey();
@@ -151,11 +290,11 @@ public class BlueIndexOnDisk<I extends ValueKey, T extends Serializable> impleme
 	}
 
 
-	public SegmentManager<BlueKey> getSegmentManager() {
+	public SegmentManager<Serializable> getSegmentManager() {
 		return segmentManager;
 	}
 
-	private List<IndividualChange<BlueKey>> toSortedIndexChanges(Collection<IndividualChange<T>> changes) {
+	private List<IndividualChange<Serializable>> toSortedIndexChanges(Collection<IndividualChange<T>> changes) {
 		return changes.stream()
 				.map( this::toIndexChanges )
 				.flatMap(List::stream)
@@ -163,35 +302,53 @@ public class BlueIndexOnDisk<I extends ValueKey, T extends Serializable> impleme
 				.collect(Collectors.toList());
 	}
 
-	private List<IndividualChange<BlueKey>> toIndexChanges(BlueEntity<T> entity) {
+	/**
+	 * @return the index entries of the value
+	 */
+	protected List<BlueEntity<Serializable>> toIndexEntities(BlueEntity<T> entity) {
 		BlueKey key = entity.getKey();
-		T newValue = entity.getValue();
-		List<IndexCompositeKey<I>> compositeKeys = toCompositeKeys(key, newValue);
-		return toIndexChanges(compositeKeys, key);
+		T value = entity.getValue();
+		Serializable indexValue = toIndexValue(key, value);
+		return toCompositeKeys(key, value).stream()
+				.map( (compositeKey) -> new BlueEntity<Serializable>(compositeKey, indexValue) )
+				.collect( Collectors.toList() );
 	}
 
-	private List<IndividualChange<BlueKey>> toIndexChanges(IndividualChange<T> change) {
-		List<IndexCompositeKey<I>> compositeKeys = toCompositeKeys(change);
+	private List<IndividualChange<Serializable>> toIndexChanges(IndividualChange<T> change) {
 		BlueKey underlyingKey = change.getKey();
-		return toIndexChanges(compositeKeys, underlyingKey);
-	}
-
-	private static <I extends ValueKey> List<IndividualChange<BlueKey>> toIndexChanges(List<IndexCompositeKey<I>> compositeKeys, BlueKey destinationKey) {
-		List<IndividualChange<BlueKey>> indexChanges = new ArrayList<>();
-		for (IndexCompositeKey<I> compositeKey: compositeKeys) {
-			IndividualChange<BlueKey> indexChange = IndividualChange.createInsertChange(compositeKey, destinationKey);
-			indexChanges.add(indexChange);
+		T oldValue = change.getOldValue();
+		T newValue = change.getNewValue();
+		Set<IndexCompositeKey<I>> removedKeys = new LinkedHashSet<>(toCompositeKeys(underlyingKey, oldValue));
+		Serializable newIndexValue = toIndexValue(underlyingKey, newValue);
+		boolean isIndexValueUnchanged = (projection == null) || Objects.equals(toIndexValue(underlyingKey, oldValue), newIndexValue);
+		List<IndividualChange<Serializable>> indexChanges = new ArrayList<>();
+		for (IndexCompositeKey<I> addedKey: toCompositeKeys(underlyingKey, newValue)) {
+			boolean isAlreadyIndexed = removedKeys.remove(addedKey) && isIndexValueUnchanged;
+			if (!isAlreadyIndexed) {
+				indexChanges.add(IndividualChange.createInsertChange(addedKey, newIndexValue));
+			}
+		}
+		for (IndexCompositeKey<I> removedKey: removedKeys) {
+			indexChanges.add(IndividualChange.createDeleteChange(removedKey));
 		}
 		return indexChanges;
 	}
 
-	private List<IndexCompositeKey<I>> toCompositeKeys(IndividualChange<T> change) {
-		BlueKey destinationKey = change.getKey();
-		T newValue = change.getNewValue();
-		return toCompositeKeys(destinationKey, newValue);
+	/**
+	 * @return what the index entries of the value hold, which is the projection of the value if the index has one
+	 */
+	private Serializable toIndexValue(BlueKey destinationKey, T newItem) {
+		if (projection == null || newItem == null) {
+			return destinationKey;
+		}
+		Serializable projected = projection.project(newItem);
+		return (projected == null) ? NullProjection.INSTANCE : projected;  // a null value would make the entry a delete
 	}
 
 	private List<IndexCompositeKey<I>> toCompositeKeys(BlueKey destination, T newItem) {
+		if (newItem == null) {
+			return new ArrayList<>();
+		}
 		List<I> indexKeys = keyExtractor.extractKeys(newItem);
 		return indexKeys.stream()
 				.map( (indexKey) -> new IndexCompositeKey<I>(indexKey, destination) )
@@ -212,6 +369,12 @@ public class BlueIndexOnDisk<I extends ValueKey, T extends Serializable> impleme
 
 	@Override
 	public I getLastKey() {
+		try {
+			awaitBuild();
+		} catch (BlueDbException e) {
+			e.printStackTrace();
+			return null;
+		}
 		LastEntityFinder lastFinder = new LastEntityFinder(this);
 		BlueEntity<?> lastIndexEntity = lastFinder.getLastEntity();
 		if (lastIndexEntity == null) {
@@ -231,4 +394,11 @@ public class BlueIndexOnDisk<I extends ValueKey, T extends Serializable> impleme
 	private IndexRollupTarget toIndexRollupTarget(RollupTarget rollupTarget) {
 		return new IndexRollupTarget(indexName, rollupTarget.getSegmentGroupingNumber(), rollupTarget.getRange() );
 	}
+
+	/**
+	 * Stored in place of a null projection.
+	 */
+	private enum NullProjection {
+		INSTANCE
+	}
 }
@@ -0,0 +1,139 @@
+package org.bluedb.disk.collection.index;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.index.BlueIndexQuery;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.ValueKey;
+import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.segment.Range;
+
+public class BlueIndexQueryOnDisk<I extends ValueKey, T extends Serializable> implements BlueIndexQuery<I, T> {
+
+	private final BlueIndexOnDisk<I, T> index;
+	private final BlueCollectionOnDisk<T> collection;
+	private I min = null;
+	private boolean minInclusive = true;
+	private I max = null;
+	private boolean maxInclusive = true;
+
+	public BlueIndexQueryOnDisk(BlueIndexOnDisk<I, T> index, BlueCollectionOnDisk<T> collection) {
+		this.index = index;
+		this.collection = collection;
+	}
+
+	@Override
+	public BlueIndexQuery<I, T> greaterThan(I key) {
+		setMin(key, false);
+		return this;
+	}
+
+	@Override
+	public BlueIndexQuery<I, T> greaterThanOrEqual(I key) {
+		setMin(key, true);
+		return this;
+	}
+
+	@Override
+	public BlueIndexQuery<I, T> lessThan(I key) {
+		setMax(key, false);
+		return this;
+	}
+
+	@Override
+	public BlueIndexQuery<I, T> lessThanOrEqual(I key) {
+		setMax(key, true);
+		return this;
+	}
+
+	@Override
+	public List<T> getList() throws BlueDbException {
+		List<T> values = new ArrayList<>();
+		try (IndexValueIterator<I, T> iterator = getIterator()) {
+			while (iterator.hasNext()) {
+				values.add(iterator.next());
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public IndexValueIterator<I, T> getIterator() throws BlueDbException {
+		return new IndexValueIterator<I, T>(collection, getKeyIterator(), collection.getSharedExecutor().getTimeoutScheduler());
+	}
+
+	@Override
+	public List<BlueKey> getKeys() throws BlueDbException {
+		List<BlueKey> keys = new ArrayList<>();
+		try (IndexKeyIterator<I> iterator = getKeyIterator()) {
+			while (iterator.hasNext()) {
+				keys.add(iterator.next());
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Since the grouping numbers of the index keys only go up with the keys, every key in the query sits between the
+	 * grouping numbers of the bounds. Keys that share a grouping number with a bound still have to be compared with it.
+	 */
+	protected Range getRange() {
+		long start = (min == null) ? Long.MIN_VALUE : min.getGroupingNumber();
+		long end = (max == null) ? Long.MAX_VALUE : max.getGroupingNumber();
+		return new Range(start, end);
+	}
+
+	protected boolean isInRange(I indexKey) {
+		if (min != null) {
+			int comparison = indexKey.compareTo(min);
+			if (comparison < 0 || (comparison == 0 && !minInclusive)) {
+				return false;
+			}
+		}
+		if (max != null) {
+			int comparison = indexKey.compareTo(max);
+			if (comparison > 0 || (comparison == 0 && !maxInclusive)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private IndexKeyIterator<I> getKeyIterator() throws BlueDbException {
+		index.awaitBuild();
+		return new IndexKeyIterator<I>(index.getSegmentManager(), getRange(), this::isInRange);
+	}
+
+	private void setMin(I key, boolean inclusive) {
+		if (min == null) {
+			min = key;
+			minInclusive = inclusive;
+			return;
+		}
+		int comparison = key.compareTo(min);
+		if (comparison > 0) {
+			min = key;
+			minInclusive = inclusive;
+		} else if (comparison == 0) {
+			minInclusive &= inclusive;
+		}
+	}
+
+	private void setMax(I key, boolean inclusive) {
+		if (max == null) {
+			max = key;
+			maxInclusive = inclusive;
+			return;
+		}
+		int comparison = key.compareTo(max);
+		if (comparison < 0) {
+			max = key;
+			maxInclusive = inclusive;
+		} else if (comparison == 0) {
+			maxInclusive &= inclusive;
+		}
+	}
+}
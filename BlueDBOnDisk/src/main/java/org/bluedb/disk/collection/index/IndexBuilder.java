@@ -0,0 +1,310 @@
+package org.bluedb.disk.collection.index;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.ValueKey;
+import org.bluedb.disk.Blutils;
+import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.collection.ParallelSegmentReader;
+import org.bluedb.disk.file.BlueObjectInput;
+import org.bluedb.disk.file.BlueObjectOutput;
+import org.bluedb.disk.file.FileManager;
+import org.bluedb.disk.file.FileUtils;
+import org.bluedb.disk.lock.BlueReadLock;
+import org.bluedb.disk.lock.BlueWriteLock;
+import org.bluedb.disk.recovery.IndividualChange;
+import org.bluedb.disk.segment.Range;
+import org.bluedb.disk.segment.Segment;
+import org.bluedb.disk.segment.SegmentEntityIterator;
+import org.bluedb.disk.serialization.BlueEntity;
+
+/**
+ * Builds a new index from the values already in the collection, as an external sort instead of a batch of index
+ * changes at a time:
+ * <ol>
+ * <li>extract: each collection segment is read on the db's segment reader threads and its index entries are sorted into a
+ * run file of their own</li>
+ * <li>merge: while there are more runs than can be merged at once, runs are merged MAX_MERGE_WIDTH at a time</li>
+ * <li>load: the last runs are merged straight into one fully rolled up chunk per index segment</li>
+ * </ol>
+ * The build folder inside the index folder holds the runs and marks the index as unfinished until the load is done.
+ * Runs are moved into place once complete and a merge deletes its runs only after its output is in place, so a build
+ * that was interrupted picks up where it left off. A run that gets merged twice that way only adds duplicate entries,
+ * which the merge drops.
+ * <p>
+ * Changes made to the collection while the index builds are appended to a change log in the build folder instead of
+ * going to the index, and applied in order once the load is done. Whether a segment was extracted before or after a
+ * change, applying the change leaves its entries right. A build that is interrupted while applying them loads and
+ * applies them all over again.
+ */
+public class IndexBuilder<I extends ValueKey, T extends Serializable> {
+
+	protected static final String BUILD_FOLDER = ".build";
+	protected static final String EXTRACTED_MARKER = ".extracted";
+	protected static final String CHANGE_LOG = ".changes";
+	protected static final int MAX_MERGE_WIDTH = 64;
+	private static final int EXTRACTED_PASS = 0;
+
+	private final BlueCollectionOnDisk<T> collection;
+	private final BlueIndexOnDisk<I, T> index;
+	private final FileManager fileManager;
+	private final Path buildPath;
+	private final Path changeLogPath;
+	private boolean isFinished = false;  // guarded by this
+
+	public IndexBuilder(BlueCollectionOnDisk<T> collection, BlueIndexOnDisk<I, T> index, Path indexPath) {
+		this.collection = collection;
+		this.index = index;
+		this.fileManager = collection.getFileManager();
+		this.buildPath = getBuildPath(indexPath);
+		this.changeLogPath = Paths.get(buildPath.toString(), CHANGE_LOG);
+	}
+
+	public static void markInProgress(Path indexPath) {
+		getBuildPath(indexPath).toFile().mkdirs();
+	}
+
+	public static boolean isInProgress(Path indexPath) {
+		return getBuildPath(indexPath).toFile().isDirectory();
+	}
+
+	public void build() throws BlueDbException {
+		extract();
+		merge();
+		load();
+		synchronized (this) {  // changes wait to be recorded until the ones already recorded are in the index
+			applyRecordedChanges();
+			finish();
+			isFinished = true;
+		}
+	}
+
+	/**
+	 * Logs changes made to the collection during the build, so that they are applied to the index once it is loaded.
+	 * @return false if the build is already finished, so the changes have to go straight to the index
+	 */
+	public synchronized boolean record(Collection<IndividualChange<T>> changes) throws BlueDbException {
+		if (isFinished) {
+			return false;
+		}
+		try (BlueWriteLock<Path> lock = fileManager.getLockManager().acquireWriteLock(changeLogPath)) {
+			fileManager.appendObject(lock, new ArrayList<>(changes));
+		}
+		return true;
+	}
+
+	protected void applyRecordedChanges() throws BlueDbException {
+		List<Object> recordedChanges;
+		try (BlueReadLock<Path> lock = fileManager.getLockManager().acquireReadLock(changeLogPath)) {
+			recordedChanges = fileManager.loadAppendedObjects(lock);
+		}
+		for (Object object: recordedChanges) {
+			@SuppressWarnings("unchecked")
+			List<IndividualChange<T>> changes = (List<IndividualChange<T>>) object;
+			index.applyChangesToEntries(changes);
+		}
+	}
+
+	protected void extract() throws BlueDbException {
+		Path extractedMarkerPath = Paths.get(buildPath.toString(), EXTRACTED_MARKER);
+		if (extractedMarkerPath.toFile().exists()) {
+			return;  // the runs may have been merged already, so don't look for missing ones
+		}
+		Range allValues = new Range(Long.MIN_VALUE, Long.MAX_VALUE);
+		ParallelSegmentReader<T> reader = new ParallelSegmentReader<T>(collection.getSegmentManager(), allValues, false, Arrays.asList(), collection.getSharedExecutor().getSegmentReaderExecutor());
+		reader.readEachSegment(this::extract);
+		fileManager.saveObject(extractedMarkerPath, Boolean.TRUE);
+	}
+
+	private Void extract(Segment<T> segment, long highestGroupingNumberCompleted) throws BlueDbException {
+		Path runPath = getRunPath(EXTRACTED_PASS, segment.getRange().getStart());
+		if (runPath.toFile().exists()) {
+			return null;  // extracted before the build was interrupted
+		}
+		List<BlueEntity<Serializable>> indexEntities = new ArrayList<>();
+		Range allValues = new Range(Long.MIN_VALUE, Long.MAX_VALUE);
+		try (SegmentEntityIterator<T> iterator = segment.getIterator(highestGroupingNumberCompleted, allValues)) {
+			while (iterator.hasNext()) {
+				indexEntities.addAll(index.toIndexEntities(iterator.next()));
+			}
+		}
+		Collections.sort(indexEntities);
+		Path tmpPath = FileUtils.createTempFilePath(runPath);
+		try (BlueObjectOutput<BlueEntity<Serializable>> output = getOutputFor(tmpPath)) {
+			for (BlueEntity<Serializable> indexEntity: indexEntities) {
+				output.write(indexEntity);
+			}
+		}
+		fileManager.lockMoveFileUnlock(tmpPath, runPath);
+		return null;
+	}
+
+	protected void merge() throws BlueDbException {
+		TreeMap<Integer, List<File>> runsByPass = getRunsByPass();
+		while (countRuns(runsByPass) > MAX_MERGE_WIDTH) {
+			int pass = runsByPass.firstKey();
+			List<File> runs = runsByPass.get(pass);
+			for (int i = 0; i < runs.size(); i += MAX_MERGE_WIDTH) {
+				List<File> runsToMerge = runs.subList(i, Math.min(i + MAX_MERGE_WIDTH, runs.size()));
+				merge(runsToMerge, getRunPath(pass + 1, getRunId(runsToMerge.get(0))));
+			}
+			runsByPass = getRunsByPass();
+		}
+	}
+
+	private void merge(List<File> runs, Path mergedRunPath) throws BlueDbException {
+		Path tmpPath = FileUtils.createTempFilePath(mergedRunPath);
+		try (SortedRunMerger merger = new SortedRunMerger(fileManager, runs)) {
+			try (BlueObjectOutput<BlueEntity<Serializable>> output = getOutputFor(tmpPath)) {
+				while (merger.peekKey() != null) {
+					merger.copyNextTo(output);
+				}
+			}
+		}
+		fileManager.lockMoveFileUnlock(tmpPath, mergedRunPath);
+		for (File run: runs) {
+			fileManager.lockDeleteUnlock(run);  // in order, so that a resumed merge either repeats this one or starts after it
+		}
+	}
+
+	protected void load() throws BlueDbException {
+		List<File> runs = new ArrayList<>();
+		getRunsByPass().values().forEach(runs::addAll);
+		try (SortedRunMerger merger = new SortedRunMerger(fileManager, runs)) {
+			BlueKey nextKey;
+			while ((nextKey = merger.peekKey()) != null) {
+				Segment<Serializable> segment = index.getSegmentManager().getSegment(nextKey.getGroupingNumber());
+				Range segmentRange = segment.getRange();
+				Path chunkPath = Paths.get(segment.getPath().toString(), segmentRange.toUnderscoreDelimitedString());
+				segment.modifyChunk(chunkPath, (input, output) -> {
+					BlueKey key;
+					while ((key = merger.peekKey()) != null && key.getGroupingNumber() <= segmentRange.getEnd()) {
+						merger.copyNextTo(output);
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Takes the build folder out of place in one move before deleting it, so that the index is never left with only
+	 * some of its runs.
+	 */
+	protected void finish() throws BlueDbException {
+		Path tmpPath = FileUtils.createTempFilePath(buildPath);
+		Blutils.recursiveDelete(tmpPath.toFile());  // left over if deleting it was interrupted last time
+		FileUtils.moveWithoutLock(buildPath, tmpPath);
+		Blutils.recursiveDelete(tmpPath.toFile());
+	}
+
+	private TreeMap<Integer, List<File>> getRunsByPass() {
+		TreeMap<Integer, List<File>> runsByPass = new TreeMap<>();
+		List<File> runs = FileUtils.getFolderContents(buildPath.toFile(), (f) -> !FileUtils.isTempFile(f) && !f.getName().equals(EXTRACTED_MARKER) && !f.getName().equals(CHANGE_LOG));
+		for (File run: runs) {
+			runsByPass.computeIfAbsent(getRunPass(run), (pass) -> new ArrayList<>()).add(run);
+		}
+		for (List<File> runsInPass: runsByPass.values()) {
+			runsInPass.sort(Comparator.comparingLong(IndexBuilder::getRunId));
+		}
+		return runsByPass;
+	}
+
+	private static int countRuns(TreeMap<Integer, List<File>> runsByPass) {
+		return runsByPass.values().stream().mapToInt(List::size).sum();
+	}
+
+	private Path getRunPath(int pass, long id) {
+		return Paths.get(buildPath.toString(), pass + "_" + id);
+	}
+
+	private static int getRunPass(File run) {
+		String name = run.getName();
+		return Integer.parseInt(name.substring(0, name.indexOf('_')));
+	}
+
+	private static long getRunId(File run) {
+		String name = run.getName();
+		return Long.parseLong(name.substring(name.indexOf('_') + 1));
+	}
+
+	private static Path getBuildPath(Path indexPath) {
+		return Paths.get(indexPath.toString(), BUILD_FOLDER);
+	}
+
+	private BlueObjectOutput<BlueEntity<Serializable>> getOutputFor(Path path) throws BlueDbException {
+		BlueWriteLock<Path> lock = fileManager.getLockManager().acquireWriteLock(path);
+		return fileManager.getBlueOutputStream(lock);
+	}
+
+	/**
+	 * Merges sorted runs by key without deserializing the values, dropping entries that are in more than one run.
+	 */
+	private static class SortedRunMerger implements Closeable {
+
+		private final PriorityQueue<BlueObjectInput<BlueEntity<Serializable>>> inputs = new PriorityQueue<>(Comparator.comparing(BlueObjectInput::peekKey));
+		private BlueKey lastKey;
+
+		public SortedRunMerger(FileManager fileManager, List<File> runs) throws BlueDbException {
+			try {
+				for (File run: runs) {
+					BlueObjectInput<BlueEntity<Serializable>> input = fileManager.getBlueInputStream(fileManager.getLockManager().acquireReadLock(run.toPath()));
+					requeue(input);
+				}
+			} catch (BlueDbException e) {
+				close();
+				throw e;
+			}
+		}
+
+		public BlueKey peekKey() {
+			while (!inputs.isEmpty()) {
+				BlueObjectInput<BlueEntity<Serializable>> input = inputs.peek();
+				BlueKey key = input.peekKey();
+				if (!key.equals(lastKey)) {
+					return key;
+				}
+				inputs.poll();
+				input.skipNext();
+				requeue(input);
+			}
+			return null;
+		}
+
+		public void copyNextTo(BlueObjectOutput<BlueEntity<Serializable>> output) throws BlueDbException {
+			BlueObjectInput<BlueEntity<Serializable>> input = inputs.poll();
+			BlueKey key = input.peekKey();
+			input.copyNextTo(output, key.getGroupingNumber());
+			lastKey = key;
+			requeue(input);
+		}
+
+		private void requeue(BlueObjectInput<BlueEntity<Serializable>> input) {
+			if (input.peekKey() != null) {
+				inputs.add(input);
+			} else {
+				input.close();
+			}
+		}
+
+		@Override
+		public void close() {
+			while (!inputs.isEmpty()) {
+				inputs.poll().close();
+			}
+		}
+	}
+}
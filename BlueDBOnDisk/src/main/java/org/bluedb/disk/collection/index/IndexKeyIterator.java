@@ -0,0 +1,75 @@
+package org.bluedb.disk.collection.index;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.ValueKey;
+import org.bluedb.disk.collection.CollectionEntityIterator;
+import org.bluedb.disk.segment.Range;
+import org.bluedb.disk.segment.SegmentManager;
+
+/**
+ * Walks the entries of an index in index key order and returns the keys of the values they point to.
+ */
+public class IndexKeyIterator<I extends ValueKey> implements Iterator<BlueKey>, Closeable {
+
+	private final CollectionEntityIterator<Serializable> entityIterator;
+	private final Predicate<I> indexKeyFilter;
+	private BlueKey next;
+
+	/**
+	 * @param range the grouping numbers of the index keys to read
+	 * @param indexKeyFilter which of the index keys in the range to keep
+	 */
+	public IndexKeyIterator(SegmentManager<Serializable> segmentManager, Range range, Predicate<I> indexKeyFilter) {
+		this.entityIterator = new CollectionEntityIterator<Serializable>(segmentManager, range, false, new ArrayList<>());
+		this.indexKeyFilter = indexKeyFilter;
+	}
+
+	@Override
+	public void close() {
+		entityIterator.close();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			next = nextFromIndex();
+		}
+		return next != null;
+	}
+
+	@Override
+	public BlueKey next() {
+		if (next == null) {
+			next = nextFromIndex();
+		}
+		BlueKey response = next;
+		next = null;
+		return response;
+	}
+
+	public List<BlueKey> next(int n) {
+		List<BlueKey> result = new ArrayList<>();
+		while (hasNext() && result.size() < n) {
+			result.add(next());
+		}
+		return result;
+	}
+
+	private BlueKey nextFromIndex() {
+		while (entityIterator.hasNext()) {
+			@SuppressWarnings("unchecked")
+			IndexCompositeKey<I> compositeKey = (IndexCompositeKey<I>) entityIterator.next().getKey();
+			if (indexKeyFilter.test(compositeKey.getIndexKey())) {
+				return compositeKey.getValueKey();
+			}
+		}
+		return null;
+	}
+}
@@ -5,12 +5,13 @@ import java.io.Serializable;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.index.BlueIndex;
 import org.bluedb.api.index.KeyExtractor;
+import org.bluedb.api.index.Projection;
 import org.bluedb.api.keys.BlueKey;
 import org.bluedb.api.keys.ValueKey;
 import org.bluedb.disk.collection.BlueCollectionOnDisk;
@@ -22,7 +23,8 @@ public class IndexManager<T extends Serializable> {
 	private static final String INDEXES_SUBFOLDER = ".index";
 
 	private final BlueCollectionOnDisk<T> collection;
-	private Map<String, BlueIndexOnDisk<ValueKey, T>> indexesByName;
+	private final Map<String, BlueIndexOnDisk<ValueKey, T>> indexesByName;  // read by the index build threads too
+	private final Object indexWriteLock = new Object();  // tasks on different segments can share index chunks
 
 	public IndexManager(BlueCollectionOnDisk<T> collection, Path collectionPath) throws BlueDbException {
 		this.collection = collection;
@@ -30,17 +32,41 @@ public class IndexManager<T extends Serializable> {
 	}
 
 	public <K extends ValueKey> BlueIndex<K, T> getOrCreate(String indexName, Class<K> keyType, KeyExtractor<K, T> keyExtractor) throws BlueDbException {
+		return getOrCreate(indexName, keyType, keyExtractor, null);
+	}
+
+	/**
+	 * A new index is returned while it is still building, and reads on it wait for the build.
+	 * @param projection the projection the index stores, or null to take an existing index with whatever it stores
+	 */
+	public synchronized <K extends ValueKey> BlueIndex<K, T> getOrCreate(String indexName, Class<K> keyType, KeyExtractor<K, T> keyExtractor, Projection<T, ?> projection) throws BlueDbException {
 		if (indexesByName.containsKey(indexName)) {
-			return getIndex(indexName, keyType);
+			BlueIndex<K, T> index = getIndex(indexName, keyType);
+			Class<?> storedProjectionType = indexesByName.get(indexName).getProjectionType();
+			if (projection != null && projection.getClass() != storedProjectionType) {
+				throw new BlueDbException("Invalid projection (" + projection.getClass().getName() + ") for index " + indexName + " with projection " + storedProjectionType);
+			}
+			return index;
 		}
 		Path indexPath = Paths.get(collection.getPath().toString(), INDEXES_SUBFOLDER, indexName);
-		BlueIndexOnDisk<K, T> index = BlueIndexOnDisk.createNew(collection, indexPath, keyExtractor);
+		BlueIndexOnDisk<K, T> index = BlueIndexOnDisk.createNew(collection, indexPath, keyExtractor, projection);
 		@SuppressWarnings("unchecked")
 		BlueIndexOnDisk<ValueKey, T> typedIndex = (BlueIndexOnDisk<ValueKey, T>) index;
-		indexesByName.put(indexName, typedIndex);
+		collection.executeTask(() -> indexesByName.put(indexName, typedIndex));  // runs alone, so every later write reaches the index
+		index.startBuild();
 		return index;
 	}
 
+	/**
+	 * Builds the indexes whose build was interrupted. Called once recovery is done, so that the changes it replays are
+	 * recorded for the builds instead of being read by them halfway.
+	 */
+	public void startBuilds() {
+		for (BlueIndexOnDisk<ValueKey, T> index: indexesByName.values()) {
+			index.startBuild();
+		}
+	}
+
 	public BlueIndexOnDisk<?, T> getUntypedIndex(String indexName) throws BlueDbException {
 		return indexesByName.get(indexName);
 	}
@@ -56,28 +82,41 @@ public class IndexManager<T extends Serializable> {
 	}
 
 	public void removeFromAllIndexes(BlueKey key, T value) throws BlueDbException {
-		for (BlueIndexOnDisk<ValueKey, T> index: indexesByName.values()) {
-			index.remove(key, value);
+		synchronized (indexWriteLock) {
+			for (BlueIndexOnDisk<ValueKey, T> index: indexesByName.values()) {
+				index.remove(key, value);
+			}
 		}
 	}
 
 	public void addToAllIndexes(BlueKey key, T value) throws BlueDbException {
-		for (BlueIndexOnDisk<ValueKey, T> index: indexesByName.values()) {
-			index.add(key,  value);
+		synchronized (indexWriteLock) {
+			for (BlueIndexOnDisk<ValueKey, T> index: indexesByName.values()) {
+				index.add(key,  value);
+			}
 		}
 	}
 
-	public void addToAllIndexes(Collection<IndividualChange<T>> changes) throws BlueDbException {
-		for (BlueIndexOnDisk<ValueKey, T> index: indexesByName.values()) {
-			index.add(changes);
+	public void applyToAllIndexes(Collection<IndividualChange<T>> changes) throws BlueDbException {
+		synchronized (indexWriteLock) {
+			for (BlueIndexOnDisk<ValueKey, T> index: indexesByName.values()) {
+				index.applyChanges(changes);
+			}
 		}
 	}
 
+	public boolean hasIndexes() {
+		return !indexesByName.isEmpty();
+	}
+
 	private Map<String, BlueIndexOnDisk<ValueKey, T>> getIndexesFromDisk(BlueCollectionOnDisk<T> collection, Path collectionPath) throws BlueDbException {
-		Map<String, BlueIndexOnDisk<ValueKey, T>> map = new HashMap<>();
+		Map<String, BlueIndexOnDisk<ValueKey, T>> map = new ConcurrentHashMap<>();
 		Path indexesPath = Paths.get(collectionPath.toString(), INDEXES_SUBFOLDER);
 		List<File> subfolders = FileUtils.getFolderContents(indexesPath.toFile(), (f) -> f.isDirectory());
 		for (File folder: subfolders) {
+			if (!BlueIndexOnDisk.exists(folder.toPath())) {
+				continue;  // createIndex will start it over
+			}
 			BlueIndexOnDisk<ValueKey, T> index = BlueIndexOnDisk.fromExisting(collection, folder.toPath());
 			String indexName = folder.getName();
 			map.put(indexName, index);
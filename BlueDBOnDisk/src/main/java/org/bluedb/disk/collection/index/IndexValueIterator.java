@@ -0,0 +1,82 @@
+package org.bluedb.disk.collection.index;
+
+import java.io.Serializable;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.bluedb.api.CloseableIterator;
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.ValueKey;
+import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.executors.TimeoutScheduler;
+import org.bluedb.disk.lock.AutoCloseCountdown;
+
+/**
+ * Turns the keys from an {@link IndexKeyIterator} into values, fetching them from the collection a batch at a time
+ * with {@link BlueCollectionOnDisk#getAll} so that values next to each other on disk are read together. Values that
+ * were deleted after their index entry was read are skipped.
+ */
+public class IndexValueIterator<I extends ValueKey, T extends Serializable> implements CloseableIterator<T> {
+
+	private final static long TIMEOUT_DEFAULT_MILLIS = 15_000;
+	protected final static int BATCH_SIZE = 1000;
+
+	private final BlueCollectionOnDisk<T> collection;
+	private IndexKeyIterator<I> keyIterator;
+	private final LinkedList<T> batch = new LinkedList<>();
+	private final AutoCloseCountdown timeoutCloser;
+
+	public IndexValueIterator(BlueCollectionOnDisk<T> collection, IndexKeyIterator<I> keyIterator, TimeoutScheduler timeoutScheduler) {
+		this.collection = collection;
+		this.keyIterator = keyIterator;
+		timeoutCloser = new AutoCloseCountdown(this, TIMEOUT_DEFAULT_MILLIS, timeoutScheduler);
+	}
+
+	@Override
+	public void close() {
+		if (keyIterator != null) {
+			keyIterator.close();
+			keyIterator = null;
+		}
+		timeoutCloser.cancel();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (keyIterator == null) {
+			throw new RuntimeException("IndexValueIterator has already been closed");
+		}
+		timeoutCloser.snooze();
+		fillBatch();
+		return !batch.isEmpty();
+	}
+
+	@Override
+	public T next() {
+		if (keyIterator == null) {
+			throw new RuntimeException("IndexValueIterator has already been closed");
+		}
+		timeoutCloser.snooze();
+		fillBatch();
+		return batch.poll();
+	}
+
+	private void fillBatch() {
+		while (batch.isEmpty() && keyIterator.hasNext()) {
+			List<BlueKey> keys = keyIterator.next(BATCH_SIZE);
+			try {
+				Map<BlueKey, T> values = collection.getAll(keys);
+				for (BlueKey key: keys) {
+					T value = values.get(key);
+					if (value != null) {
+						batch.add(value);
+					}
+				}
+			} catch (BlueDbException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -11,6 +11,7 @@ import org.bluedb.disk.collection.BlueCollectionOnDisk;
 import org.bluedb.disk.recovery.IndividualChange;
 import org.bluedb.disk.recovery.PendingBatchChange;
 import org.bluedb.disk.recovery.RecoveryManager;
+import org.bluedb.disk.segment.Range;
 
 public class BatchChangeTask<T extends Serializable> extends QueryTask {
 
@@ -31,6 +32,11 @@ public class BatchChangeTask<T extends Serializable> extends QueryTask {
 		recoveryManager.markComplete(batchChange);	
 	}	
 
+	@Override
+	public List<Range> getSegmentRanges() {
+		return getSegmentRanges(collection, sortedChanges);
+	}
+
 	@Override
 	public String toString() {
 		return "<" + getClass().getSimpleName() + " for " + sortedChanges.size() + ">";
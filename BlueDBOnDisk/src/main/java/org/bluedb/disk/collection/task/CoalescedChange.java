@@ -0,0 +1,95 @@
+package org.bluedb.disk.collection.task;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+
+import org.bluedb.api.Mapper;
+import org.bluedb.api.Updater;
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.exceptions.DuplicateKeyException;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.disk.serialization.BlueSerializer;
+
+/**
+ * A single key change that is waiting to be written as part of a {@link CoalescedChangesTask}, along with the future
+ * of the caller that made it.
+ */
+public abstract class CoalescedChange<T extends Serializable> {
+
+	private final BlueKey key;
+	private final String type;
+	private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+	private CoalescedChange(BlueKey key, String type) {
+		this.key = key;
+		this.type = type;
+	}
+
+	public BlueKey getKey() {
+		return key;
+	}
+
+	public CompletableFuture<Void> getFuture() {
+		return future;
+	}
+
+	/**
+	 * @param currentValue the value for the key after the changes ahead of this one, or null if there is none
+	 * @return the value for the key after this change, or null if it removes the value
+	 * @throws BlueDbException if the change can't be made to the current value
+	 */
+	public abstract T apply(T currentValue, BlueSerializer serializer) throws BlueDbException;
+
+	public static <T extends Serializable> CoalescedChange<T> createInsert(BlueKey key, T value) {
+		return new CoalescedChange<T>(key, "insert") {
+			@Override
+			public T apply(T currentValue, BlueSerializer serializer) throws BlueDbException {
+				if (currentValue != null) {
+					throw new DuplicateKeyException("key already exists", key);
+				}
+				return serializer.clone(value);
+			}
+		};
+	}
+
+	public static <T extends Serializable> CoalescedChange<T> createUpdate(BlueKey key, Updater<T> updater) {
+		return new CoalescedChange<T>(key, "update") {
+			@Override
+			public T apply(T currentValue, BlueSerializer serializer) throws BlueDbException {
+				T newValue = serializer.clone(ensureExists(currentValue));
+				updater.update(newValue);
+				return newValue;
+			}
+		};
+	}
+
+	public static <T extends Serializable> CoalescedChange<T> createReplace(BlueKey key, Mapper<T> mapper) {
+		return new CoalescedChange<T>(key, "replace") {
+			@Override
+			public T apply(T currentValue, BlueSerializer serializer) throws BlueDbException {
+				return mapper.update(serializer.clone(ensureExists(currentValue)));
+			}
+		};
+	}
+
+	public static <T extends Serializable> CoalescedChange<T> createDelete(BlueKey key) {
+		return new CoalescedChange<T>(key, "delete") {
+			@Override
+			public T apply(T currentValue, BlueSerializer serializer) {
+				return null;
+			}
+		};
+	}
+
+	protected T ensureExists(T currentValue) throws BlueDbException {
+		if (currentValue == null) {
+			throw new BlueDbException("Cannot find object for key: " + key.toString());
+		}
+		return currentValue;
+	}
+
+	@Override
+	public String toString() {
+		return "<" + getClass().getSimpleName() + " " + type + " for key " + key + ">";
+	}
+}
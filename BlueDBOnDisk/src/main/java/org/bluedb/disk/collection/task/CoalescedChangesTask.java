@@ -0,0 +1,99 @@
+package org.bluedb.disk.collection.task;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.recovery.IndividualChange;
+import org.bluedb.disk.recovery.PendingBatchChange;
+import org.bluedb.disk.recovery.RecoveryManager;
+import org.bluedb.disk.segment.Range;
+import org.bluedb.disk.serialization.BlueSerializer;
+
+/**
+ * Writes single key changes that were gathered by a {@link org.bluedb.disk.collection.WriteCoalescer} as one
+ * {@link PendingBatchChange}. Changes are applied in the order they were made, so later changes to a key see the
+ * earlier ones. A change that can't be made only fails its own future.
+ */
+public class CoalescedChangesTask<T extends Serializable> extends QueryTask {
+
+	private final BlueCollectionOnDisk<T> collection;
+	private final List<CoalescedChange<T>> changes;
+
+	public CoalescedChangesTask(BlueCollectionOnDisk<T> collection, List<CoalescedChange<T>> changes) {
+		this.collection = collection;
+		this.changes = changes;
+	}
+
+	@Override
+	public void execute() throws BlueDbException {
+		BlueSerializer serializer = collection.getSerializer();
+		Map<BlueKey, T> originalValues = new HashMap<>();
+		Map<BlueKey, T> currentValues = new HashMap<>();
+		List<CoalescedChange<T>> madeChanges = new ArrayList<>();
+		for (CoalescedChange<T> change: changes) {
+			BlueKey key = change.getKey();
+			if (!currentValues.containsKey(key)) {
+				T value = collection.get(key);
+				originalValues.put(key, value);
+				currentValues.put(key, value);
+			}
+			try {
+				currentValues.put(key, change.apply(currentValues.get(key), serializer));
+				madeChanges.add(change);
+			} catch (Throwable t) {
+				change.getFuture().completeExceptionally(new BlueDbException("BlueDB task failed " + change, t));
+			}
+		}
+
+		try {
+			List<IndividualChange<T>> sortedChanges = new ArrayList<>();
+			for (Map.Entry<BlueKey, T> entry: currentValues.entrySet()) {
+				T originalValue = originalValues.get(entry.getKey());
+				if (originalValue != null || entry.getValue() != null) {
+					sortedChanges.add(new IndividualChange<>(entry.getKey(), originalValue, entry.getValue()));
+				}
+			}
+			Collections.sort(sortedChanges);
+			if (!sortedChanges.isEmpty()) {
+				RecoveryManager<T> recoveryManager = collection.getRecoveryManager();
+				PendingBatchChange<T> batchChange = PendingBatchChange.createBatchChange(sortedChanges);
+				recoveryManager.saveChange(batchChange);
+				batchChange.apply(collection);
+				recoveryManager.markComplete(batchChange);
+			}
+		} catch (Throwable t) {
+			madeChanges.forEach((c) -> c.getFuture().completeExceptionally(new BlueDbException("BlueDB task failed " + this, t)));
+			throw t;
+		}
+		madeChanges.forEach((c) -> c.getFuture().complete(null));
+	}
+
+	@Override
+	public void run() {
+		try {
+			super.run();
+		} catch (Throwable t) {
+			changes.forEach((c) -> c.getFuture().completeExceptionally(new BlueDbException("BlueDB task failed " + this, t)));  // nothing that already finished is affected
+			throw t;
+		}
+	}
+
+	@Override
+	public List<Range> getSegmentRanges() {
+		List<BlueKey> keys = new ArrayList<>();
+		changes.forEach((c) -> keys.add(c.getKey()));
+		return getSegmentRangesOfKeys(collection, keys);
+	}
+
+	@Override
+	public String toString() {
+		return "<" + getClass().getSimpleName() + " for " + changes.size() + ">";
+	}
+}
@@ -10,6 +10,7 @@ import org.bluedb.disk.query.BlueQueryOnDisk;
 import org.bluedb.disk.recovery.IndividualChange;
 import org.bluedb.disk.recovery.PendingBatchChange;
 import org.bluedb.disk.recovery.RecoveryManager;
+import org.bluedb.disk.segment.Range;
 import org.bluedb.disk.serialization.BlueEntity;
 
 public class DeleteMultipleTask<T extends Serializable> extends QueryTask {
@@ -39,6 +40,11 @@ public class DeleteMultipleTask<T extends Serializable> extends QueryTask {
 				.collect(Collectors.toList());
 	}
 
+	@Override
+	public List<Range> getSegmentRanges() {
+		return getSegmentRanges(collection, query);
+	}
+
 	@Override
 	public String toString() {
 		return "<DeleteMultipleTask on query " + query.toString() + ">";
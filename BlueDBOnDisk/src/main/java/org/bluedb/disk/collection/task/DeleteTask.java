@@ -1,11 +1,13 @@
 package org.bluedb.disk.collection.task;
 
 import java.io.Serializable;
+import java.util.List;
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.keys.BlueKey;
 import org.bluedb.disk.collection.BlueCollectionOnDisk;
 import org.bluedb.disk.recovery.PendingChange;
 import org.bluedb.disk.recovery.RecoveryManager;
+import org.bluedb.disk.segment.Range;
 
 public class DeleteTask<T extends Serializable> extends QueryTask {
 	private final BlueCollectionOnDisk<T> collection;
@@ -26,6 +28,11 @@ public class DeleteTask<T extends Serializable> extends QueryTask {
 		recoveryManager.markComplete(change);
 	}
 
+	@Override
+	public List<Range> getSegmentRanges() {
+		return getSegmentRanges(collection, key);
+	}
+
 	@Override
 	public String toString() {
 		return "<" + getClass().getSimpleName() + " for key " + key + ">";
@@ -1,12 +1,14 @@
 package org.bluedb.disk.collection.task;
 
 import java.io.Serializable;
+import java.util.List;
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.exceptions.DuplicateKeyException;
 import org.bluedb.api.keys.BlueKey;
 import org.bluedb.disk.collection.BlueCollectionOnDisk;
 import org.bluedb.disk.recovery.PendingChange;
 import org.bluedb.disk.recovery.RecoveryManager;
+import org.bluedb.disk.segment.Range;
 import org.bluedb.disk.serialization.BlueSerializer;
 
 public class InsertTask<T extends Serializable> extends QueryTask {
@@ -34,6 +36,11 @@ public class InsertTask<T extends Serializable> extends QueryTask {
 		recoveryManager.markComplete(change);
 	}
 
+	@Override
+	public List<Range> getSegmentRanges() {
+		return getSegmentRanges(collection, key);
+	}
+
 	@Override
 	public String toString() {
 		return "<InsertTask for key " + key + " and value " + value + ">";
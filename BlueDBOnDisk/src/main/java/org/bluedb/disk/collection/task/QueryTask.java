@@ -1,12 +1,29 @@
 package org.bluedb.disk.collection.task;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.exceptions.DuplicateKeyException;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.TimeFrameKey;
+import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.query.BlueQueryOnDisk;
+import org.bluedb.disk.recovery.IndividualChange;
+import org.bluedb.disk.segment.Range;
+import org.bluedb.disk.segment.SegmentManager;
 
-public abstract class QueryTask implements Runnable {
+public abstract class QueryTask implements SegmentScopedTask {
 
 	public abstract void execute() throws BlueDbException;
 
+	@Override
+	public List<Range> getSegmentRanges() {
+		return null;
+	}
+
 	@Override
 	public void run() {
 		try {
@@ -19,4 +36,35 @@ public abstract class QueryTask implements Runnable {
 		}
 	}
 
+	protected static List<Range> getSegmentRanges(BlueCollectionOnDisk<?> collection, BlueKey key) {
+		return Arrays.asList(collection.getSegmentManager().getSegmentRange(key));
+	}
+
+	protected static List<Range> getSegmentRanges(BlueCollectionOnDisk<?> collection, Collection<? extends IndividualChange<?>> changes) {
+		List<BlueKey> keys = new ArrayList<>();
+		for (IndividualChange<?> change: changes) {
+			keys.add(change.getKey());
+		}
+		return getSegmentRangesOfKeys(collection, keys);
+	}
+
+	protected static List<Range> getSegmentRangesOfKeys(BlueCollectionOnDisk<?> collection, Collection<BlueKey> keys) {
+		SegmentManager<?> segmentManager = collection.getSegmentManager();
+		List<Range> segmentRanges = new ArrayList<>();
+		for (BlueKey key: keys) {
+			segmentRanges.add(segmentManager.getSegmentRange(key));
+		}
+		return Range.merge(segmentRanges);
+	}
+
+	/**
+	 * A query finds a {@link TimeFrameKey} in every segment its time frame overlaps, and changing it changes all of
+	 * those segments, so the segments a query task touches are only known when the collection can't hold one.
+	 */
+	protected static List<Range> getSegmentRanges(BlueCollectionOnDisk<?> collection, BlueQueryOnDisk<?> query) {
+		if (collection.getKeyType().isAssignableFrom(TimeFrameKey.class)) {
+			return null;
+		}
+		return Arrays.asList(collection.getSegmentManager().getSegmentRange(query.getRange()));
+	}
 }
@@ -0,0 +1,17 @@
+package org.bluedb.disk.collection.task;
+
+import java.util.List;
+
+import org.bluedb.disk.segment.Range;
+
+/**
+ * A collection task that knows up front which segments it will read and write, so that it can run alongside tasks
+ * on other segments of the same collection.
+ */
+public interface SegmentScopedTask extends Runnable {
+
+	/**
+	 * @return the ranges of the segments the task touches, or null if it may touch any part of the collection
+	 */
+	public List<Range> getSegmentRanges();
+}
@@ -13,6 +13,7 @@ import org.bluedb.disk.query.BlueQueryOnDisk;
 import org.bluedb.disk.recovery.IndividualChange;
 import org.bluedb.disk.recovery.PendingBatchChange;
 import org.bluedb.disk.recovery.RecoveryManager;
+import org.bluedb.disk.segment.Range;
 import org.bluedb.disk.serialization.BlueEntity;
 import org.bluedb.disk.serialization.BlueSerializer;
 
@@ -66,6 +67,11 @@ public class UpdateMultipleTask<T extends Serializable> extends QueryTask {
 		return new IndividualChange<T>(key, oldValue, newValue);
 	}
 
+	@Override
+	public List<Range> getSegmentRanges() {
+		return getSegmentRanges(collection, query);
+	}
+
 	@Override
 	public String toString() {
 		return "<UpdateMultipleTask on query " + query.toString() + ">";
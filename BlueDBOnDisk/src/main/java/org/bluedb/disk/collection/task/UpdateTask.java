@@ -2,12 +2,14 @@ package org.bluedb.disk.collection.task;
 
 import java.io.Serializable;
 import java.util.NoSuchElementException;
+import java.util.List;
 import org.bluedb.api.Updater;
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.keys.BlueKey;
 import org.bluedb.disk.collection.BlueCollectionOnDisk;
 import org.bluedb.disk.recovery.PendingChange;
 import org.bluedb.disk.recovery.RecoveryManager;
+import org.bluedb.disk.segment.Range;
 import org.bluedb.disk.serialization.BlueSerializer;
 
 public class UpdateTask<T extends Serializable> extends QueryTask {
@@ -41,6 +43,11 @@ public class UpdateTask<T extends Serializable> extends QueryTask {
 		recoveryManager.markComplete(change);
 	}
 
+	@Override
+	public List<Range> getSegmentRanges() {
+		return getSegmentRanges(collection, key);
+	}
+
 	@Override
 	public String toString() {
 		return "<" + getClass().getSimpleName() + " for key " + key + ">";
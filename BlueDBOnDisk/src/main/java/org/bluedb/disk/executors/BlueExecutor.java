@@ -1,16 +1,37 @@
 package org.bluedb.disk.executors;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.bluedb.disk.segment.Range;
+
 public class BlueExecutor {
+	private static final long SEGMENT_READER_KEEP_ALIVE_MILLIS = 60_000;
+
 	private final GroupedThreadPool queryTaskExecutor;
 	private final ScheduledThreadPoolExecutor scheduledTaskExecutor;
+	private final TimeoutScheduler timeoutScheduler;
+	private final ExecutorService readAheadExecutor;
+	private final ThreadPoolExecutor segmentReaderExecutor;
+	private final ExecutorService indexBuildExecutor;
 
 	public BlueExecutor(String name) {
 		queryTaskExecutor = GroupedThreadPool.createCachedPool(name + "-query-task-executor");
 		scheduledTaskExecutor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory(name + "-scheduled-task-executor"));
+		scheduledTaskExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);  // so shutdown doesn't wait on timeout sweeps
+		timeoutScheduler = new TimeoutScheduler(scheduledTaskExecutor);
+		readAheadExecutor = Executors.newCachedThreadPool(new NamedThreadFactory(name + "-read-ahead-executor"));
+		int segmentReaderThreads = Runtime.getRuntime().availableProcessors();
+		segmentReaderExecutor = new ThreadPoolExecutor(segmentReaderThreads, segmentReaderThreads, SEGMENT_READER_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory(name + "-segment-reader-executor"));
+		segmentReaderExecutor.allowCoreThreadTimeOut(true);
+		indexBuildExecutor = Executors.newCachedThreadPool(new NamedThreadFactory(name + "-index-build-executor"));
 	}
 
 	public Future<?> submitQueryTask(String collectionName, Runnable task) {
@@ -18,6 +39,21 @@ public class BlueExecutor {
 		return future;
 	}
 	
+	/**
+	 * Lets the task run alongside other tasks on the collection that don't touch the same segment ranges.
+	 */
+	public Future<?> submitQueryTask(String collectionName, List<Range> segmentRanges, Runnable task) {
+		return queryTaskExecutor.submit(collectionName, segmentRanges, task);
+	}
+	
+	/**
+	 * Like {@link #submitQueryTask(String, List, Runnable)}, but the task gets cancelled if it never starts because of
+	 * {@link #shutdownNow()}.
+	 */
+	public Future<?> submitQueryTask(String collectionName, List<Range> segmentRanges, FutureTask<Void> task) {
+		return queryTaskExecutor.submit(collectionName, segmentRanges, task);
+	}
+	
 	public int getQueryQueueSize(String collectionName) {
 		return queryTaskExecutor.getQueueSizeForGroup(collectionName);
 	}
@@ -26,19 +62,60 @@ public class BlueExecutor {
 		scheduledTaskExecutor.scheduleAtFixedRate(task, initialDelay, period, timeUnit);
 	}
 
+	public void scheduleTask(Runnable task, long delay, TimeUnit timeUnit) {
+		scheduledTaskExecutor.schedule(task, delay, timeUnit);
+	}
+
+	public TimeoutScheduler getTimeoutScheduler() {
+		return timeoutScheduler;
+	}
+
+	public ExecutorService getReadAheadExecutor() {
+		return readAheadExecutor;
+	}
+
+	/**
+	 * One thread per processor for reading segments in parallel, so that their file reads and lock waits stay off the
+	 * common fork join pool.
+	 */
+	public ExecutorService getSegmentReaderExecutor() {
+		return segmentReaderExecutor;
+	}
+
+	/**
+	 * Where new indexes are built, off of the collection's query threads so that the collection stays usable in the
+	 * meantime. A build that is cut short by a shutdown picks up where it left off when the collection is next opened.
+	 */
+	public ExecutorService getIndexBuildExecutor() {
+		return indexBuildExecutor;
+	}
+
 	public void shutdown() {
 		queryTaskExecutor.shutdown();
 		scheduledTaskExecutor.shutdown();
+		readAheadExecutor.shutdown();
+		segmentReaderExecutor.shutdown();
+		indexBuildExecutor.shutdown();
 	}
 
 	public void shutdownNow() {
 		queryTaskExecutor.shutdownNow();
 		scheduledTaskExecutor.shutdownNow();
+		readAheadExecutor.shutdownNow();
+		segmentReaderExecutor.shutdownNow();
+		indexBuildExecutor.shutdownNow();
 	}
 	
 	public boolean awaitTermination(long timeout, TimeUnit timeUnit) throws InterruptedException {
 		boolean queryExecutorTerminated = queryTaskExecutor.awaitTermination(timeout, timeUnit);
 		boolean scheduledExecutorTerminated = scheduledTaskExecutor.awaitTermination(timeout, timeUnit);
-		return queryExecutorTerminated && scheduledExecutorTerminated;
+		boolean readAheadExecutorTerminated = readAheadExecutor.awaitTermination(timeout, timeUnit);
+		boolean segmentReaderExecutorTerminated = segmentReaderExecutor.awaitTermination(timeout, timeUnit);
+		boolean indexBuildExecutorTerminated = indexBuildExecutor.awaitTermination(timeout, timeUnit);
+		return queryExecutorTerminated && scheduledExecutorTerminated && readAheadExecutorTerminated && segmentReaderExecutorTerminated && indexBuildExecutorTerminated;
+	}
+
+	public boolean isTerminated() {
+		return queryTaskExecutor.isTerminated() && scheduledTaskExecutor.isTerminated() && readAheadExecutor.isTerminated() && segmentReaderExecutor.isTerminated() && indexBuildExecutor.isTerminated();
 	}
 }
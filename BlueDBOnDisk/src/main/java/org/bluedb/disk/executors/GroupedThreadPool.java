@@ -1,6 +1,8 @@
 package org.bluedb.disk.executors;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -11,12 +13,16 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.bluedb.disk.segment.Range;
+
 /**
- * Wraps a thread pool that groups tasks based on a group id. Only one task will be allowed to run at a time for each group id.
+ * Wraps a thread pool that groups tasks based on a group id. Tasks in a group run one at a time in the order they were
+ * submitted, unless they are submitted with the segment ranges they touch. Those run alongside the other tasks in
+ * their group as long as their ranges don't overlap with a running task or with a task submitted ahead of them.
  */
 public class GroupedThreadPool {
 	private final ThreadPoolExecutor executor;
-	private final Map<String, List<FutureTask<Void>>> tasksByGroupId = new HashMap<>();
+	private final Map<String, TaskGroup> tasksByGroupId = new HashMap<>();
 	private boolean isShutdown = false;
 	
 	private final Object lock = "GroupedThreadPool Lock";
@@ -30,38 +36,86 @@ public class GroupedThreadPool {
 	}
 	
 	public Future<?> submit(String groupId, Runnable runnable) {
-		FutureTask<Void> future = new FutureTask<>(runnable, null);
-		
+		return submit(groupId, null, runnable);
+	}
+	
+	/**
+	 * @param segmentRanges the ranges the task reads and writes, or null if it has to run by itself
+	 */
+	public Future<?> submit(String groupId, List<Range> segmentRanges, Runnable runnable) {
+		return submit(groupId, segmentRanges, new FutureTask<>(runnable, null));
+	}
+	
+	/**
+	 * @param future the task to run, which gets cancelled if the pool is shut down with {@link #shutdownNow()} before
+	 *        it starts
+	 */
+	public Future<?> submit(String groupId, List<Range> segmentRanges, FutureTask<Void> future) {
 		synchronized (lock) {
 			if(isShutdown) {
 				throw new RejectedExecutionException();
 			}
 			
-			List<FutureTask<Void>> groupedTasks = tasksByGroupId.get(groupId);
-			if (groupedTasks == null) {
-				groupedTasks = new LinkedList<>();
-				tasksByGroupId.put(groupId, groupedTasks);
-				groupedTasks.add(future);
-				submitNextTaskForGroup(groupId);		
-			}
-			else {
-				groupedTasks.add(future);
+			TaskGroup group = tasksByGroupId.get(groupId);
+			if (group == null) {
+				group = new TaskGroup();
+				tasksByGroupId.put(groupId, group);
 			}
+			group.queued.add(new GroupTask(groupId, future, Range.merge(segmentRanges)));
+			startReadyTasksForGroup(groupId, false);
 			return future;
 		}
 	}
 
-	private void submitNextTaskForGroup(String groupId) {
+	/**
+	 * @param keepOne true to return one of the tasks that are ready instead of submitting it, so that a thread that
+	 *        just finished a task can go on to the next one
+	 * @return the task that was kept, or null if there was none
+	 */
+	private GroupTask startReadyTasksForGroup(String groupId, boolean keepOne) {
 		synchronized (lock) {
-			List<FutureTask<Void>> groupedTasks = tasksByGroupId.get(groupId);
-			
-			if (groupedTasks == null || groupedTasks.isEmpty()) {
+			TaskGroup group = tasksByGroupId.get(groupId);
+			if (group == null) {
+				return null;
+			}
+			if (group.isEmpty()) {
 				tasksByGroupId.remove(groupId);
-				return;
+				shutdownExecutorIfDrained();
+				return null;
 			}
 			
-			FutureTask<Void> task = groupedTasks.remove(0);
-			executor.submit(new GroupTask(groupId, task));
+			GroupTask keptTask = null;
+			List<GroupTask> blockingTasks = new ArrayList<>(group.running);
+			Iterator<GroupTask> iterator = group.queued.iterator();
+			while (iterator.hasNext()) {
+				GroupTask task = iterator.next();
+				if (task.conflictsWithAny(blockingTasks)) {
+					if (task.isWholeGroup()) {
+						break;  // nothing after it can run ahead of it
+					}
+					blockingTasks.add(task);  // so that later tasks can't jump ahead of it on the same segments
+				} else {
+					iterator.remove();
+					group.running.add(task);
+					blockingTasks.add(task);
+					if (keepOne && keptTask == null) {
+						keptTask = task;
+					} else {
+						executor.execute(task);
+					}
+				}
+			}
+			return keptTask;
+		}
+	}
+
+	private GroupTask finishTask(GroupTask task) {
+		synchronized (lock) {
+			TaskGroup group = tasksByGroupId.get(task.groupId);
+			if (group != null) {
+				group.running.remove(task);
+			}
+			return startReadyTasksForGroup(task.groupId, true);
 		}
 	}
 	
@@ -71,8 +125,8 @@ public class GroupedThreadPool {
 				return 0;
 			}
 			
-			List<FutureTask<Void>> groupedTasks = tasksByGroupId.get(groupId);
-			return groupedTasks != null ? groupedTasks.size() : 0;
+			TaskGroup group = tasksByGroupId.get(groupId);
+			return group != null ? group.queued.size() : 0;
 		}
 	}
 	
@@ -84,19 +138,32 @@ public class GroupedThreadPool {
 		return executor.getLargestPoolSize();
 	}
 
+	/**
+	 * Stops taking new tasks. Tasks that are already queued still run, so the thread pool only shuts down once every
+	 * group has run out of tasks.
+	 */
 	public void shutdown() {
 		synchronized (lock) {
 			isShutdown = true;
-			tasksByGroupId.clear();
-			executor.shutdown();
+			shutdownExecutorIfDrained();
 		}
 	}
 
+	/**
+	 * Interrupts the running tasks and cancels the ones that haven't started.
+	 */
 	public void shutdownNow() {
 		synchronized (lock) {
 			isShutdown = true;
+			for (TaskGroup group: tasksByGroupId.values()) {
+				for (GroupTask task: group.queued) {
+					task.futureTask.cancel(false);
+				}
+			}
 			tasksByGroupId.clear();
-			executor.shutdownNow();
+			for (Runnable task: executor.shutdownNow()) {
+				((GroupTask) task).futureTask.cancel(false);
+			}
 		}
 	}
 
@@ -104,20 +171,46 @@ public class GroupedThreadPool {
 		return executor.awaitTermination(timeout, timeUnit);
 	}
 
+	public boolean isTerminated() {
+		return executor.isTerminated();
+	}
+
+	private void shutdownExecutorIfDrained() {
+		synchronized (lock) {
+			if (isShutdown && tasksByGroupId.isEmpty()) {
+				executor.shutdown();
+			}
+		}
+	}
+
+	private static class TaskGroup {
+		private final List<GroupTask> running = new LinkedList<>();
+		private final List<GroupTask> queued = new LinkedList<>();
+		
+		public boolean isEmpty() {
+			return running.isEmpty() && queued.isEmpty();
+		}
+	}
+
 	private class GroupTask implements Runnable {
 		private String groupId;
 		private FutureTask<Void> futureTask;
+		private List<Range> segmentRanges;
 		
-		public GroupTask(String groupId, FutureTask<Void> futureTask) {
+		public GroupTask(String groupId, FutureTask<Void> futureTask, List<Range> segmentRanges) {
 			this.groupId = groupId;
 			this.futureTask = futureTask;
+			this.segmentRanges = segmentRanges;
 		}
 	
 		@Override
 		public void run() {
-			futureTask.run();
-			handleAnyThrownErrors();
-			submitNextTaskForGroup(groupId);
+			GroupTask task = this;
+			while (task != null) {
+				task.futureTask.run();
+				task.handleAnyThrownErrors();
+				task = finishTask(task);
+			}
 		}
 	
 		private void handleAnyThrownErrors() {
@@ -127,5 +220,18 @@ public class GroupedThreadPool {
 				t.printStackTrace();
 			}
 		}
+
+		public boolean isWholeGroup() {
+			return segmentRanges == null;
+		}
+
+		public boolean conflictsWithAny(List<GroupTask> otherTasks) {
+			for (GroupTask other: otherTasks) {
+				if (isWholeGroup() || other.isWholeGroup() || Range.anyOverlap(segmentRanges, other.segmentRanges)) {
+					return true;
+				}
+			}
+			return false;
+		}
 	}
 }
@@ -0,0 +1,97 @@
+package org.bluedb.disk.executors;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bluedb.disk.Blutils;
+import org.bluedb.disk.lock.AutoCloseCountdown;
+
+/**
+ * Expires {@link AutoCloseCountdown}s from one shared scheduled thread instead of a timer thread per countdown.
+ * Countdowns are kept in a concurrent set and snoozing only moves their deadline, so the only scheduled work is a
+ * single sweep at the earliest known deadline.
+ */
+public class TimeoutScheduler {
+
+	private static final long DEFAULT_SCHEDULER_KEEP_ALIVE_MILLIS = 60_000;
+
+	private static TimeoutScheduler defaultScheduler;
+
+	private final ScheduledExecutorService executor;
+	private final Set<AutoCloseCountdown> countdowns = ConcurrentHashMap.newKeySet();
+	private final AtomicLong nextSweepTime = new AtomicLong(Long.MAX_VALUE);
+
+	public TimeoutScheduler(ScheduledExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Used by countdowns that aren't tied to a database, like in tests. Nothing shuts it down, so its thread stops
+	 * once there's nothing left to sweep.
+	 */
+	public static synchronized TimeoutScheduler getDefault() {
+		if (defaultScheduler == null) {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("bluedb-timeout-scheduler"));
+			executor.setKeepAliveTime(DEFAULT_SCHEDULER_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+			executor.allowCoreThreadTimeOut(true);
+			defaultScheduler = new TimeoutScheduler(executor);
+		}
+		return defaultScheduler;
+	}
+
+	public void register(AutoCloseCountdown countdown) {
+		countdowns.add(countdown);
+		scheduleSweep(countdown.getExpiration());
+	}
+
+	public void unregister(AutoCloseCountdown countdown) {
+		countdowns.remove(countdown);
+	}
+
+	public int size() {
+		return countdowns.size();
+	}
+
+	protected void sweep() {
+		nextSweepTime.set(Long.MAX_VALUE);  // anything registered while we sweep schedules its own sweep
+		long now = System.currentTimeMillis();
+		long earliestDeadline = Long.MAX_VALUE;
+		for (AutoCloseCountdown countdown: countdowns) {
+			long deadline = countdown.getExpiration();
+			if (now >= deadline) {
+				if (countdowns.remove(countdown)) {
+					countdown.expire();
+				}
+			} else {
+				earliestDeadline = Math.min(earliestDeadline, deadline);
+			}
+		}
+		scheduleSweep(earliestDeadline);
+	}
+
+	private void scheduleSweep(long deadline) {
+		if (deadline == Long.MAX_VALUE) {
+			return;
+		}
+		while (true) {
+			long currentSweepTime = nextSweepTime.get();
+			if (deadline >= currentSweepTime) {
+				return;  // an earlier sweep will reschedule for this deadline
+			}
+			if (nextSweepTime.compareAndSet(currentSweepTime, deadline)) {
+				long delay = Math.max(0, deadline - System.currentTimeMillis());
+				try {
+					executor.schedule(Blutils.surroundTaskWithTryCatch(this::sweep), delay, TimeUnit.MILLISECONDS);
+				} catch (RejectedExecutionException e) {
+					// shutting down so nothing will be left to close
+				}
+				return;
+			}
+		}
+	}
+}
@@ -1,154 +1,635 @@
-package org.bluedb.disk.file;
-
-import java.io.BufferedInputStream;
-import java.io.Closeable;
-import java.io.DataInputStream;
-import java.io.EOFException;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.nio.file.Path;
-import java.util.Iterator;
-import org.bluedb.api.exceptions.BlueDbException;
-import org.bluedb.disk.lock.BlueReadLock;
-import org.bluedb.disk.lock.LockManager;
-import org.bluedb.disk.serialization.BlueSerializer;
-import org.bluedb.disk.serialization.validation.SerializationException;
-
-public class BlueObjectInput<T> implements Closeable, Iterator<T> {
-
-	private final BlueReadLock<Path> readLock;
-	private final Path path;
-	private final BlueSerializer serializer;
-	private final DataInputStream dataInputStream;
-			
-	private T next = null;
-	private byte[] nextBytes = null;
-	private byte[] lastBytes = null;
-
-	public BlueObjectInput(BlueReadLock<Path> readLock, BlueSerializer serializer) throws BlueDbException {
-		this.readLock = readLock;
-		this.path = readLock.getKey();
-		this.serializer = serializer;
-		if (path.toFile().exists()) {
-			dataInputStream = openDataInputStream(path.toFile());
-		} else {
-			dataInputStream = null;
-		}
-	}
-
-	protected static <T> BlueObjectInput<T> getTestInput(Path path, BlueSerializer serializer, DataInputStream dataInputStream) {
-		return new BlueObjectInput<T>(path, serializer, dataInputStream);
-	}
-
-	private BlueObjectInput(Path path, BlueSerializer serializer, DataInputStream dataInputStream) {
-		LockManager<Path> lockManager = new LockManager<Path>();
-		readLock = lockManager.acquireReadLock(path);
-		this.serializer = serializer;
-		this.path = null;
-		this.dataInputStream = dataInputStream;
-	}
-
-	public Path getPath() {
-		return path;
-	}
-
-	@Override
-	public void close() {
-		if (dataInputStream != null) {
-			try {
-				dataInputStream.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
-		readLock.close();
-	}
-
-	@Override
-	public boolean hasNext() {
-		return peek() != null;
-	}
-
-	@Override
-	public T next() {
-		if (next == null) {
-			next = nextValidObjectFromFile();
-		}
-		T response = next;
-		lastBytes = nextBytes;
-		next = null;
-		nextBytes = null;
-		return response;
-	}
-
-	public byte[] nextWithoutDeserializing() {
-		if (next == null) {
-			nextBytes = nextBytesFromFile();
-		}  // otherwise you've already peeked ahead
-		lastBytes = nextBytes;
-		byte[] response = nextBytes;
-		next = null;
-		nextBytes = null;
-		return response;
-	}
-
-	public byte[] getLastBytes() {
-		return lastBytes;
-	}
-
-	public T peek() {
-		if (next == null) {
-			next = nextValidObjectFromFile();
-		}
-		return next;
-	}
-
-	private T nextValidObjectFromFile() {
-		while(true) {
-			try {
-				return nextFromFile();
-			} catch(SerializationException t) {
-				t.printStackTrace(); // Object was corrupted. Print stack trace but try loading the next one
-			}
-		}
-	}
-
-	private T nextFromFile() throws SerializationException {
-		nextBytes = nextBytesFromFile();
-		if (nextBytes == null) {
-			return null;
-		}
-		Object object = serializer.deserializeObjectFromByteArray(nextBytes);
-		@SuppressWarnings("unchecked")
-		T t = (T) object;
-		return t;
-	}
-
-	protected byte[] nextBytesFromFile() {
-		if (dataInputStream == null) {
-			return null;
-		}
-		try {
-			int objectLength = dataInputStream.readInt();
-			byte[] nextBytes = new byte[objectLength];
-			dataInputStream.readFully(nextBytes, 0, objectLength);
-			return nextBytes;
-		} catch (EOFException e) {
-			return null;
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
-		}
-	}
-
-	protected static DataInputStream openDataInputStream(File file) throws BlueDbException {
-		try {
-			return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-			throw new BlueDbException("cannot open input stream on file " + file.toPath(), e);
-		}
-	}
+package org.bluedb.disk.file;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.Inflater;
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.disk.lock.BlueReadLock;
+import org.bluedb.disk.lock.LockManager;
+import org.bluedb.disk.serialization.BlueEntity;
+import org.bluedb.disk.serialization.BlueSerializer;
+import org.bluedb.disk.serialization.KeyValueRecord;
+import org.bluedb.disk.serialization.validation.SerializationException;
+
+public class BlueObjectInput<T> implements Closeable, Iterator<T> {
+
+	private final BlueReadLock<Path> readLock;
+	private final Path path;
+	private final BlueSerializer serializer;
+	private final DataInputStream dataInputStream;
+	private final FileChannel fileChannel;
+	private final ReadAheadBuffers readAheadBuffers;
+	private ByteBuffer readAheadBuffer;  // what the file was read ahead into, until it goes back to readAheadBuffers
+			
+	private T next = null;
+	private byte[] nextBytes = null;  // the record buffer holding the next record, or null if it hasn't been read yet
+	private int nextBytesLength = 0;
+	private BlueKey nextKey = null;
+	private byte[] lastBytes = null;  // the record buffer holding the record that was returned last
+	private int lastBytesLength = 0;
+	private byte[] lastBytesCopy = null;
+	private final byte[][] recordBuffers = {new byte[0], new byte[0]};  // records are read into whichever isn't lastBytes
+	private byte[] compressedBuffer = new byte[0];
+	private byte[] blockBuffer = new byte[0];
+	private long position = 0;
+	private boolean reachedEndOfRecords = false;
+	private Integer footerEntryCount = null;
+	private ByteBuffer block = null;  // the records of the current CompressedBlock that haven't been read yet
+	private long blockStart = 0;
+	private long nextBytesStart = 0;
+	private boolean isNextBytesMidBlock = false;
+	private Inflater inflater = null;
+
+	public BlueObjectInput(BlueReadLock<Path> readLock, BlueSerializer serializer) throws BlueDbException {
+		this(readLock, serializer, ReadMode.STREAMED);
+	}
+
+	public BlueObjectInput(BlueReadLock<Path> readLock, BlueSerializer serializer, ReadMode readMode) throws BlueDbException {
+		this.readLock = readLock;
+		this.path = readLock.getKey();
+		this.serializer = serializer;
+		if (path.toFile().exists()) {
+			FileInputStream fileInputStream = openFileInputStream(path.toFile());
+			fileChannel = fileInputStream.getChannel();
+			if (readMode == ReadMode.MEMORY_MAPPED) {
+				dataInputStream = openMappedDataInputStream(fileInputStream);
+			} else {
+				dataInputStream = new DataInputStream(new BufferedInputStream(fileInputStream));
+			}
+		} else {
+			fileChannel = null;
+			dataInputStream = null;
+		}
+		readAheadBuffers = null;
+	}
+
+	private BlueObjectInput(BlueReadLock<Path> readLock, BlueSerializer serializer, FileChannel fileChannel, DataInputStream dataInputStream, ReadAheadBuffers readAheadBuffers, ByteBuffer readAheadBuffer) {
+		this.readLock = readLock;
+		this.path = readLock.getKey();
+		this.serializer = serializer;
+		this.fileChannel = fileChannel;
+		this.dataInputStream = dataInputStream;
+		this.readAheadBuffers = readAheadBuffers;
+		this.readAheadBuffer = readAheadBuffer;
+	}
+
+	/**
+	 * Reads the whole file into one of the buffers before returning, so that a reader that picks it up later doesn't
+	 * wait on disk. A file too big for the buffers is streamed when it's read instead. The read lock is held until the
+	 * input is closed like any other input, so the file can't change between being read ahead and being iterated over.
+	 */
+	public static <T> BlueObjectInput<T> readAhead(BlueReadLock<Path> readLock, BlueSerializer serializer, ReadAheadBuffers buffers) throws BlueDbException {
+		BlueObjectInput<T> input = null;
+		try {
+			input = readAheadWithLock(readLock, serializer, buffers);
+			return input;
+		} finally {
+			if (input == null) {
+				readLock.release();  // nothing owns the lock if the read ahead failed, so it would never be released
+			}
+		}
+	}
+
+	private static <T> BlueObjectInput<T> readAheadWithLock(BlueReadLock<Path> readLock, BlueSerializer serializer, ReadAheadBuffers buffers) throws BlueDbException {
+		Path path = readLock.getKey();
+		if (!path.toFile().exists()) {
+			return new BlueObjectInput<T>(readLock, serializer);
+		}
+		FileInputStream fileInputStream = openFileInputStream(path.toFile());
+		FileChannel channel = fileInputStream.getChannel();
+		ByteBuffer contents = null;
+		try {
+			contents = buffers.acquire(channel.size());
+			if (contents == null) {  // too big to hold in memory, stream it when it's needed instead
+				return new BlueObjectInput<T>(readLock, serializer, channel, new DataInputStream(new BufferedInputStream(fileInputStream)), null, null);
+			}
+			while (contents.hasRemaining()) {
+				if (channel.read(contents, contents.position()) < 0) {
+					break;  // it's shorter than it was a moment ago, so just read what's there
+				}
+			}
+			contents.flip();
+			return new BlueObjectInput<T>(readLock, serializer, channel, new DataInputStream(new ByteBufferInputStream(contents)), buffers, contents);
+		} catch (IOException e) {
+			e.printStackTrace();
+			if (contents != null) {
+				buffers.release(contents);
+			}
+			try {
+				fileInputStream.close();
+			} catch (IOException e1) {
+				e1.printStackTrace();
+			}
+			throw new BlueDbException("cannot read ahead file " + path, e);
+		}
+	}
+
+	protected static <T> BlueObjectInput<T> getTestInput(Path path, BlueSerializer serializer, DataInputStream dataInputStream) {
+		return new BlueObjectInput<T>(path, serializer, dataInputStream);
+	}
+
+	private BlueObjectInput(Path path, BlueSerializer serializer, DataInputStream dataInputStream) {
+		LockManager<Path> lockManager = new LockManager<Path>();
+		readLock = lockManager.acquireReadLock(path);
+		this.serializer = serializer;
+		this.path = null;
+		this.dataInputStream = dataInputStream;
+		this.fileChannel = null;
+		this.readAheadBuffers = null;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	@Override
+	public void close() {
+		if (dataInputStream != null) {
+			try {
+				dataInputStream.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if (readAheadBuffer != null) {
+			readAheadBuffers.release(readAheadBuffer);  // the closed stream no longer reads from it
+			readAheadBuffer = null;
+		}
+		if (inflater != null) {
+			inflater.end();
+		}
+		if (fileChannel != null) {
+			try {
+				fileChannel.close();  // a mapped stream doesn't close the file for us
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		readLock.close();
+	}
+
+	@Override
+	public boolean hasNext() {
+		return peek() != null;
+	}
+
+	@Override
+	public T next() {
+		if (next == null) {
+			next = nextValidObjectFromFile();
+		}
+		T response = next;
+		moveNextToLast();
+		return response;
+	}
+
+	/**
+	 * @return a copy of the bytes of the next record, see {@link #skipNext()} and {@link #copyNextTo} for ways to
+	 *         move past it that don't allocate
+	 */
+	public byte[] nextWithoutDeserializing() {
+		if (nextBytes == null) {
+			readNextBytes();
+		}  // otherwise you've already peeked ahead
+		byte[] response = (nextBytes == null) ? null : Arrays.copyOf(nextBytes, nextBytesLength);
+		moveNextToLast();
+		lastBytesCopy = response;
+		return response;
+	}
+
+	/**
+	 * Moves past the next record without deserializing or copying it.
+	 * @return false if there was no record left
+	 */
+	public boolean skipNext() {
+		if (nextBytes == null) {
+			readNextBytes();
+		}
+		boolean skipped = nextBytes != null;
+		moveNextToLast();
+		return skipped;
+	}
+
+	/**
+	 * Writes the next record to the output as it is, without deserializing or copying it.
+	 * @return false if there was no record left
+	 */
+	public boolean copyNextTo(BlueObjectOutput<T> output, long groupingNumber) throws BlueDbException {
+		if (nextBytes == null) {
+			readNextBytes();
+		}
+		if (nextBytes == null) {
+			moveNextToLast();
+			return false;
+		}
+		output.writeBytes(nextBytes, nextBytesLength, groupingNumber);
+		moveNextToLast();
+		return true;
+	}
+
+	/**
+	 * Deserializes only the key of the next record when it was written as a {@link KeyValueRecord}, so that callers
+	 * can decide whether they want the value before paying for it.
+	 * @return the key of the next {@link BlueEntity}, or null at the end of the file
+	 */
+	public BlueKey peekKey() {
+		while (true) {
+			if (nextBytes == null) {
+				readNextBytes();
+				if (nextBytes == null) {
+					return null;
+				}
+			}
+			try {
+				if (nextKey == null) {
+					nextKey = readKey(nextBytes, nextBytesLength);
+				}
+				return nextKey;
+			} catch(SerializationException t) {
+				t.printStackTrace(); // Object was corrupted. Print stack trace but try loading the next one
+				clearNext();
+			}
+		}
+	}
+
+	/**
+	 * @return a copy of the bytes of the record returned last
+	 */
+	public byte[] getLastBytes() {
+		if (lastBytesCopy == null && lastBytes != null) {
+			lastBytesCopy = Arrays.copyOf(lastBytes, lastBytesLength);
+		}
+		return lastBytesCopy;
+	}
+
+	public T peek() {
+		if (next == null) {
+			next = nextValidObjectFromFile();
+		}
+		return next;
+	}
+
+	public boolean hasKeyOffsetFooter() {
+		if (footerEntryCount == null) {
+			footerEntryCount = readFooterEntryCount();
+		}
+		return footerEntryCount > 0;
+	}
+
+	/**
+	 * Uses the {@link KeyOffsetFooter} to jump ahead to the first record with the grouping number.
+	 * @return false if the file has no record with the grouping number at or after the current position
+	 */
+	public boolean skipToGroupingNumber(long groupingNumber) {
+		if (!hasKeyOffsetFooter()) {
+			return !reachedEndOfRecords;
+		}
+		try {
+			long offset = KeyOffsetFooter.findOffset(fileChannel, footerEntryCount, groupingNumber);
+			long currentPosition = getCurrentRecordPosition();
+			if (offset == KeyOffsetFooter.NOT_FOUND || offset < currentPosition) {
+				return false;
+			}
+			if (offset == currentPosition) {
+				return true;  // we're already there
+			}
+			clearNext();
+			block = null;
+			skipFully(offset - position);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Uses the {@link KeyOffsetFooter} to jump ahead to the first record with a grouping number at or above the one
+	 * given, or to the end of the records if there is none. Compressed blocks in front of it are skipped without being
+	 * inflated, and it lands on the start of the block holding the record.
+	 * @return false if the file has no footer, so nothing was skipped
+	 */
+	public boolean skipToGroupingNumberAtOrAbove(long groupingNumber) {
+		if (!hasKeyOffsetFooter()) {
+			return false;
+		}
+		try {
+			long offset = KeyOffsetFooter.findOffsetAtOrAbove(fileChannel, footerEntryCount, groupingNumber);
+			if (offset <= getCurrentRecordPosition()) {
+				return true;  // we're already there
+			}
+			clearNext();
+			block = null;
+			skipFully(offset - position);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Copies the records in front of the first one with a grouping number at or above the one given straight to the
+	 * output as one byte range, using the {@link KeyOffsetFooter} to find where they end.
+	 * @return false if nothing was copied, because there are no such records, the file has no footer or the output
+	 *         can't take a byte range
+	 */
+	public boolean transferRecordsBefore(long groupingNumber, BlueObjectOutput<T> output) throws BlueDbException {
+		if (!hasKeyOffsetFooter()) {
+			return false;
+		}
+		try {
+			return transferRecordsUpTo(KeyOffsetFooter.findOffsetAtOrAbove(fileChannel, footerEntryCount, groupingNumber), output);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new BlueDbException("error transferring records from file " + path, e);
+		}
+	}
+
+	/**
+	 * Copies the rest of the records straight to the output as one byte range.
+	 * @return false if nothing was copied, because there are no records left, the file has no footer or the output
+	 *         can't take a byte range
+	 */
+	public boolean transferRemainingRecords(BlueObjectOutput<T> output) throws BlueDbException {
+		if (!hasKeyOffsetFooter()) {
+			return false;
+		}
+		try {
+			return transferRecordsUpTo(KeyOffsetFooter.getEndOfRecords(fileChannel, footerEntryCount), output);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new BlueDbException("error transferring records from file " + path, e);
+		}
+	}
+
+	private boolean transferRecordsUpTo(long end, BlueObjectOutput<T> output) throws IOException, BlueDbException {
+		long start = getCurrentRecordPosition();
+		if (end <= start || isMidBlock()) {
+			return false;  // a byte range can't start partway into a compressed block
+		}
+		KeyOffsetFooter entries = KeyOffsetFooter.readEntriesBetween(fileChannel, footerEntryCount, start, end);
+		if (!output.transferFrom(fileChannel, start, end, entries)) {
+			return false;
+		}
+		clearNext();
+		block = null;
+		skipFully(end - position);
+		return true;
+	}
+
+	/**
+	 * @return where the records that haven't been read yet start, or the start of their block if they are compressed
+	 */
+	private long getCurrentRecordPosition() {
+		if (nextBytes != null) {
+			return nextBytesStart;
+		}
+		if (block != null && block.hasRemaining()) {
+			return blockStart;
+		}
+		return position;
+	}
+
+	private boolean isMidBlock() {
+		if (nextBytes != null) {
+			return isNextBytesMidBlock;
+		}
+		return block != null && block.hasRemaining() && block.position() > 0;
+	}
+
+	/**
+	 * Uses the {@link KeyOffsetFooter} to count records without reading them.
+	 * @return the number of records in the file with a grouping number from min to max, or -1 if the file has no footer
+	 */
+	public int countRecordsBetween(long min, long max) {
+		if (!hasKeyOffsetFooter()) {
+			return -1;
+		}
+		try {
+			return KeyOffsetFooter.countBetween(fileChannel, footerEntryCount, min, max);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return -1;
+		}
+	}
+
+	/**
+	 * Counts the records left in the file by their length prefixes, without deserializing them.
+	 */
+	public int countRemainingRecords() {
+		int count = 0;
+		while (skipNext()) {
+			count++;
+		}
+		return count;
+	}
+
+	private int readFooterEntryCount() {
+		if (fileChannel == null) {
+			return -1;
+		}
+		try {
+			return KeyOffsetFooter.readEntryCount(fileChannel);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return -1;
+		}
+	}
+
+	private void skipFully(long bytesToSkip) throws IOException {
+		while (bytesToSkip > 0) {
+			int skipped = dataInputStream.skipBytes((int) Math.min(bytesToSkip, Integer.MAX_VALUE));
+			if (skipped <= 0) {
+				throw new EOFException("unexpected end of file skipping to offset in " + path);
+			}
+			bytesToSkip -= skipped;
+			position += skipped;
+		}
+	}
+
+	private void clearNext() {
+		next = null;
+		nextBytes = null;
+		nextKey = null;
+	}
+
+	private void moveNextToLast() {
+		lastBytes = nextBytes;
+		lastBytesLength = nextBytesLength;
+		lastBytesCopy = null;
+		clearNext();
+	}
+
+	/**
+	 * Records are read into two buffers that take turns, so that the record returned last is still there while the
+	 * next one is peeked at. Neither is ever handed out, only copies of them.
+	 */
+	private byte[] getRecordBuffer(int length) {
+		int index = (recordBuffers[0] == lastBytes) ? 1 : 0;
+		if (recordBuffers[index].length < length) {
+			recordBuffers[index] = new byte[Math.max(length, recordBuffers[index].length * 2)];
+		}
+		return recordBuffers[index];
+	}
+
+	private T nextValidObjectFromFile() {
+		while(true) {
+			try {
+				return nextFromFile();
+			} catch(SerializationException t) {
+				t.printStackTrace(); // Object was corrupted. Print stack trace but try loading the next one
+				clearNext();
+			}
+		}
+	}
+
+	private T nextFromFile() throws SerializationException {
+		if (nextBytes == null) {
+			readNextBytes();  // otherwise the key was already peeked
+		}
+		if (nextBytes == null) {
+			return null;
+		}
+		Object object;
+		if (KeyValueRecord.isKeyValueRecord(nextBytes, nextBytesLength)) {
+			object = KeyValueRecord.readEntity(serializer, nextBytes, nextBytesLength, nextKey);
+		} else {
+			object = serializer.deserializeObjectFromByteArray(nextBytes, 0, nextBytesLength);
+		}
+		@SuppressWarnings("unchecked")
+		T t = (T) object;
+		return t;
+	}
+
+	private BlueKey readKey(byte[] bytes, int length) throws SerializationException {
+		if (KeyValueRecord.isKeyValueRecord(bytes, length)) {
+			return KeyValueRecord.readKey(serializer, bytes, length);
+		}
+		if (next == null) {
+			next = nextFromFile();  // the older layout has to be deserialized whole to get at the key
+		}
+		return ((BlueEntity<?>) next).getKey();
+	}
+
+	/**
+	 * Reads the next record into a record buffer and sets nextBytes to it, or leaves nextBytes null at the end of the
+	 * records.
+	 */
+	protected void readNextBytes() {
+		if (block != null && block.hasRemaining()) {
+			readNextBytesFromBlock();
+			return;
+		}
+		block = null;
+		if (dataInputStream == null || reachedEndOfRecords) {
+			return;
+		}
+		try {
+			long recordStart = position;
+			int objectLength = dataInputStream.readInt();
+			if (objectLength == CompressedBlock.BLOCK_MARKER) {
+				readBlock(recordStart);
+				readNextBytes();
+				return;
+			}
+			if (objectLength < 0) {
+				reachedEndOfRecords = true;  // the rest of the file is the KeyOffsetFooter
+				return;
+			}
+			byte[] buffer = getRecordBuffer(objectLength);
+			dataInputStream.readFully(buffer, 0, objectLength);
+			position += Integer.BYTES + objectLength;
+			nextBytesStart = recordStart;
+			isNextBytesMidBlock = false;
+			nextBytes = buffer;
+			nextBytesLength = objectLength;
+		} catch (EOFException e) {
+			return;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+	}
+
+	private void readNextBytesFromBlock() {
+		nextBytesStart = blockStart;
+		isNextBytesMidBlock = block.position() > 0;
+		int objectLength = (block.remaining() < Integer.BYTES) ? -1 : block.getInt();
+		if (objectLength < 0 || objectLength > block.remaining()) {
+			new IOException("invalid record length in compressed block of " + path).printStackTrace();
+			block = null;  // skip the rest of the block but try loading what comes after it
+			readNextBytes();
+			return;
+		}
+		byte[] buffer = getRecordBuffer(objectLength);
+		block.get(buffer, 0, objectLength);
+		nextBytes = buffer;
+		nextBytesLength = objectLength;
+	}
+
+	private void readBlock(long start) throws IOException {
+		int compressedLength = dataInputStream.readInt();
+		int uncompressedLength = dataInputStream.readInt();
+		if (compressedBuffer.length < compressedLength) {
+			compressedBuffer = new byte[Math.max(compressedLength, compressedBuffer.length * 2)];
+		}
+		dataInputStream.readFully(compressedBuffer, 0, compressedLength);
+		position += CompressedBlock.HEADER_SIZE + compressedLength;
+		if (inflater == null) {
+			inflater = new Inflater();
+		}
+		if (blockBuffer.length < uncompressedLength) {
+			blockBuffer = new byte[Math.max(uncompressedLength, blockBuffer.length * 2)];
+		}
+		block = CompressedBlock.inflate(inflater, compressedBuffer, compressedLength, blockBuffer, uncompressedLength);
+		blockStart = start;
+	}
+
+	protected static DataInputStream openDataInputStream(File file) throws BlueDbException {
+		return new DataInputStream(new BufferedInputStream(openFileInputStream(file)));
+	}
+
+	protected static DataInputStream openMappedDataInputStream(FileInputStream fileInputStream) throws BlueDbException {
+		try {
+			FileChannel channel = fileInputStream.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {  // too big for one mapping, fall back on streaming it
+				return new DataInputStream(new BufferedInputStream(fileInputStream));
+			}
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+			return new DataInputStream(new ByteBufferInputStream(buffer));
+		} catch (IOException e) {
+			e.printStackTrace();
+			try {
+				fileInputStream.close();
+			} catch (IOException e1) {
+				e1.printStackTrace();
+			}
+			throw new BlueDbException("cannot map file into memory", e);
+		}
+	}
+
+	protected static FileInputStream openFileInputStream(File file) throws BlueDbException {
+		try {
+			return new FileInputStream(file);
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+			throw new BlueDbException("cannot open input stream on file " + file.toPath(), e);
+		}
+	}
 }
\ No newline at end of file
@@ -7,27 +7,44 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.disk.lock.BlueWriteLock;
 import org.bluedb.disk.lock.LockManager;
+import org.bluedb.disk.serialization.BlueEntity;
 import org.bluedb.disk.serialization.BlueSerializer;
+import org.bluedb.disk.serialization.KeyValueRecord;
 
 public class BlueObjectOutput<T> implements Closeable {
 
+	private static final int INITIAL_RECORD_BUFFER_SIZE = 1024;
+
 	private final BlueWriteLock<Path> lock;
 	private final Path path;
 	private final BlueSerializer serializer;
 	private final DataOutputStream dataOutputStream;
+	private final FileChannel fileChannel;
+	private final CompressedBlock block;
+	private final KeyOffsetFooter footer = new KeyOffsetFooter();
+	private long bytesWritten = 0;
+	private byte[] recordBuffer = new byte[INITIAL_RECORD_BUFFER_SIZE];  // reused for every record this writes
 
 	public BlueObjectOutput(BlueWriteLock<Path> writeLock, BlueSerializer serializer) throws BlueDbException {
+		this(writeLock, serializer, CompressionMode.NONE);
+	}
+
+	public BlueObjectOutput(BlueWriteLock<Path> writeLock, BlueSerializer serializer, CompressionMode compressionMode) throws BlueDbException {
 		lock = writeLock;
 		path = lock.getKey();
 		this.serializer = serializer;
 		File file = path.toFile();
 		FileUtils.ensureDirectoryExists(file);
-		dataOutputStream = openDataOutputStream(file);
+		FileOutputStream fileOutputStream = openFileOutputStream(file);
+		fileChannel = fileOutputStream.getChannel();
+		dataOutputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+		block = (compressionMode == CompressionMode.DEFLATE) ? new CompressedBlock() : null;
 	}
 
 	protected static <T> BlueObjectOutput<T> getTestOutput(Path path, BlueSerializer serializer, DataOutputStream dataOutputStream) {
@@ -40,35 +57,82 @@ public class BlueObjectOutput<T> implements Closeable {
 		this.path = path;
 		this.serializer = serializer;
 		this.dataOutputStream = dataOutputStream;
+		this.fileChannel = null;
+		this.block = null;
 	}
 
 	public void writeBytes(byte[] bytes) throws BlueDbException {
 		if (bytes == null) {
 			throw new BlueDbException("cannot write null to " + this.getClass().getSimpleName());
 		}
-		try {
-			int len = bytes.length;
-			dataOutputStream.writeInt(len);
-			dataOutputStream.write(bytes);
-		} catch (Throwable t) {
-			t.printStackTrace();
-			throw new BlueDbException("error writing to file " + path, t);
+		writeBytes(bytes, bytes.length);
+	}
+
+	public void writeBytes(byte[] bytes, long groupingNumber) throws BlueDbException {
+		if (bytes == null) {
+			throw new BlueDbException("cannot write null to " + this.getClass().getSimpleName());
 		}
+		writeBytes(bytes, bytes.length, groupingNumber);
+	}
+
+	/**
+	 * Writes the record at the start of a buffer that may be longer than it.
+	 */
+	public void writeBytes(byte[] bytes, int length, long groupingNumber) throws BlueDbException {
+		footer.add(groupingNumber, bytesWritten);
+		writeBytesToFile(bytes, length);
+	}
+
+	private void writeBytes(byte[] bytes, int length) throws BlueDbException {
+		if (KeyValueRecord.isKeyValueRecord(bytes, length)) {
+			footer.add(KeyValueRecord.readGroupingNumber(bytes), bytesWritten);
+		} else {
+			footer.invalidate();  // we don't know the key so we can't index it
+		}
+		writeBytesToFile(bytes, length);
 	}
 
 	public void write(T value) throws BlueDbException {
 		if (value == null) {
 			throw new BlueDbException("cannot write null to " + this.getClass().getSimpleName());
 		}
+		int length;
 		try {
-			byte[] bytes = serializer.serializeObjectToByteArray(value);
-			int len = bytes.length;
-			dataOutputStream.writeInt(len);
-			dataOutputStream.write(bytes);
+			length = serializeToRecordBuffer(value);
 		} catch (Throwable t) {
 			t.printStackTrace();
 			throw new BlueDbException("error writing to file " + path, t);
 		}
+		if (value instanceof BlueEntity) {
+			writeBytes(recordBuffer, length, ((BlueEntity<?>) value).getKey().getGroupingNumber());
+		} else {
+			writeBytes(recordBuffer, length);
+		}
+	}
+
+	/**
+	 * Serializes into the record buffer so that writing doesn't allocate an array per record.
+	 * @return the length of the record at the start of the buffer
+	 */
+	private int serializeToRecordBuffer(T value) {
+		int length;
+		if (value instanceof BlueEntity) {
+			length = KeyValueRecord.write(serializer, (BlueEntity<?>) value, recordBuffer);
+		} else {
+			length = serializer.serializeObjectToByteArray(value, recordBuffer, 0);
+		}
+		if (length < 0) {  // it doesn't fit, so serialize it the usual way and make room for next time
+			byte[] bytes;
+			if (value instanceof BlueEntity) {
+				bytes = KeyValueRecord.toBytes(serializer, (BlueEntity<?>) value);
+			} else {
+				bytes = serializer.serializeObjectToByteArray(value);
+			}
+			recordBuffer = new byte[Math.max(bytes.length, recordBuffer.length * 2)];
+			System.arraycopy(bytes, 0, recordBuffer, 0, bytes.length);
+			length = bytes.length;
+		}
+		return length;
 	}
 
 	public void writeAll(BlueObjectInput<T> input) throws BlueDbException {
@@ -76,23 +140,95 @@ public class BlueObjectOutput<T> implements Closeable {
 		//      There's some protection against this in rollup recovery and 
 		//      from single-threaded writes.
 		while(input.hasNext()) {
-			writeBytes(input.nextWithoutDeserializing());
+			T next = input.peek();  // hasNext already deserialized it so this is free
+			if (next instanceof BlueEntity) {
+				input.copyNextTo(this, ((BlueEntity<?>) next).getKey().getGroupingNumber());
+			} else {
+				writeBytes(input.nextWithoutDeserializing());
+			}
+		}
+	}
+
+	/**
+	 * Copies a byte range of whole records from another chunk file without reading it into memory.
+	 * @param entries the footer entries of the records in the range, with offsets in the source file
+	 * @return false if this output isn't backed by a file channel or is compressing, in which case nothing was copied
+	 */
+	protected boolean transferFrom(FileChannel source, long start, long end, KeyOffsetFooter entries) throws BlueDbException {
+		if (fileChannel == null || block != null) {
+			return false;  // compressed outputs take records one at a time so that small blocks get merged into full ones
+		}
+		try {
+			dataOutputStream.flush();  // the channel writes at the end of whatever has been written so far
+			long transferred = 0;
+			while (transferred < end - start) {
+				long bytesTransferred = source.transferTo(start + transferred, end - start - transferred, fileChannel);
+				if (bytesTransferred <= 0) {
+					throw new IOException("unexpected end of file while transferring records");
+				}
+				transferred += bytesTransferred;
+			}
+			footer.addAll(entries, bytesWritten - start);
+			bytesWritten += transferred;
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new BlueDbException("error transferring records to file " + path, e);
+		}
+	}
+
+	private void writeBytesToFile(byte[] bytes, int length) throws BlueDbException {
+		if (bytes == null) {
+			throw new BlueDbException("cannot write null to " + this.getClass().getSimpleName());
+		}
+		try {
+			if (block != null) {
+				block.add(bytes, length);  // bytesWritten stays at the start of the block, which is where the footer points
+				if (block.isFull()) {
+					flushBlock();
+				}
+				return;
+			}
+			dataOutputStream.writeInt(length);
+			dataOutputStream.write(bytes, 0, length);
+			bytesWritten += Integer.BYTES + length;
+		} catch (Throwable t) {
+			t.printStackTrace();
+			throw new BlueDbException("error writing to file " + path, t);
+		}
+	}
+
+	private void flushBlock() throws IOException {
+		if (block != null && !block.isEmpty()) {
+			bytesWritten += block.writeTo(dataOutputStream);
 		}
 	}
 
 	@Override
 	public void close() {
 		try {
+			flushBlock();
+			if (footer.isWritable()) {
+				footer.writeTo(dataOutputStream, bytesWritten);
+				footer.invalidate();  // only write it once even if closed twice
+			}
 			dataOutputStream.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		if (block != null) {
+			block.close();
+		}
 		lock.close();
 	}
 
 	protected static DataOutputStream openDataOutputStream(File file) throws BlueDbException {
+		return new DataOutputStream(new BufferedOutputStream(openFileOutputStream(file)));
+	}
+
+	protected static FileOutputStream openFileOutputStream(File file) throws BlueDbException {
 		try {
-			return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			return new FileOutputStream(file);
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 			throw new BlueDbException("cannot open write to file " + file.toPath(), e);
@@ -0,0 +1,99 @@
+package org.bluedb.disk.file;
+
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Reads straight out of a {@link ByteBuffer} (typically a memory mapped file) so that it can sit underneath a
+ * {@link java.io.DataInputStream} without another layer of buffering.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	private static final ByteBuffer CLOSED = ByteBuffer.allocate(0);
+
+	private ByteBuffer buffer;
+
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) {
+		if (length == 0) {
+			return 0;
+		}
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		int bytesToRead = Math.min(length, buffer.remaining());
+		buffer.get(bytes, offset, bytesToRead);
+		return bytesToRead;
+	}
+
+	@Override
+	public long skip(long n) {
+		if (n <= 0) {
+			return 0;
+		}
+		int bytesToSkip = (int) Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + bytesToSkip);
+		return bytesToSkip;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	/**
+	 * Stops reading from the buffer and unmaps it if it's a memory mapped file, so that the file can be renamed or
+	 * deleted right away rather than once the mapping is garbage collected. Nothing reads from the buffer after this,
+	 * which is what makes unmapping it safe.
+	 */
+	@Override
+	public void close() {
+		ByteBuffer closedBuffer = buffer;
+		buffer = CLOSED;
+		if (closedBuffer instanceof MappedByteBuffer) {
+			unmap((MappedByteBuffer) closedBuffer);
+		}
+	}
+
+	/**
+	 * There's no public API for releasing a mapping, so this goes through sun.misc.Unsafe on Java 9 and up and the
+	 * buffer's cleaner on Java 8. If neither works the mapping is released when it's garbage collected, like before.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner;
+			try {
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			} catch (NoSuchMethodException e) {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+				return;
+			}
+			Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+			unsafeField.setAccessible(true);
+			invokeCleaner.invoke(unsafeField.get(null), buffer);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package org.bluedb.disk.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Records that {@link BlueObjectOutput} gathers up and deflates together for {@link CompressionMode#DEFLATE}.
+ *
+ * Layout in the chunk file, in place of the records it holds:
+ * <pre>
+ * int BLOCK_MARKER | int compressedLength | int uncompressedLength | compressedLength bytes
+ * </pre>
+ * Inflated, the block is the usual sequence of length-prefixed records. {@link KeyOffsetFooter} entries for those
+ * records point at the start of the block.
+ */
+public class CompressedBlock {
+
+	protected static final int BLOCK_MARKER = -2;
+	protected static final int MAX_RECORDS = 64;
+	protected static final int MAX_UNCOMPRESSED_SIZE = 64 * 1024;
+	protected static final int HEADER_SIZE = 12;
+
+	private final ReusableByteArrayOutputStream uncompressed = new ReusableByteArrayOutputStream();
+	private final DataOutputStream records = new DataOutputStream(uncompressed);
+	private final ReusableByteArrayOutputStream compressed = new ReusableByteArrayOutputStream();
+	private final byte[] deflateBuffer = new byte[8192];
+	private final Deflater deflater = new Deflater();
+	private int recordCount = 0;
+
+	public void add(byte[] bytes) throws IOException {
+		add(bytes, bytes.length);
+	}
+
+	public void add(byte[] bytes, int length) throws IOException {
+		records.writeInt(length);
+		records.write(bytes, 0, length);
+		recordCount++;
+	}
+
+	public boolean isEmpty() {
+		return recordCount == 0;
+	}
+
+	public boolean isFull() {
+		return recordCount >= MAX_RECORDS || uncompressed.size() >= MAX_UNCOMPRESSED_SIZE;
+	}
+
+	/**
+	 * Writes out the records added so far as one block and starts a new one.
+	 * @return the number of bytes written
+	 */
+	public long writeTo(DataOutputStream out) throws IOException {
+		int uncompressedLength = uncompressed.size();
+		deflater.reset();
+		deflater.setInput(uncompressed.getBuffer(), 0, uncompressedLength);
+		deflater.finish();
+		compressed.reset();
+		while (!deflater.finished()) {
+			int length = deflater.deflate(deflateBuffer);
+			compressed.write(deflateBuffer, 0, length);
+		}
+		int compressedLength = compressed.size();
+		out.writeInt(BLOCK_MARKER);
+		out.writeInt(compressedLength);
+		out.writeInt(uncompressedLength);
+		compressed.writeTo(out);
+		uncompressed.reset();
+		recordCount = 0;
+		return HEADER_SIZE + compressedLength;
+	}
+
+	public void close() {
+		deflater.end();
+	}
+
+	/**
+	 * @return the records in the block, as length-prefixed records
+	 */
+	protected static ByteBuffer inflate(Inflater inflater, byte[] compressed, int uncompressedLength) throws IOException {
+		return inflate(inflater, compressed, compressed.length, new byte[uncompressedLength], uncompressedLength);
+	}
+
+	/**
+	 * Inflates into a buffer that the caller reuses from block to block.
+	 * @param records where to inflate the records to, at least uncompressedLength long
+	 */
+	protected static ByteBuffer inflate(Inflater inflater, byte[] compressed, int compressedLength, byte[] records, int uncompressedLength) throws IOException {
+		inflater.reset();
+		inflater.setInput(compressed, 0, compressedLength);
+		try {
+			int inflated = 0;
+			while (inflated < uncompressedLength && !inflater.finished()) {
+				int length = inflater.inflate(records, inflated, uncompressedLength - inflated);
+				if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				inflated += length;
+			}
+			if (inflated != uncompressedLength) {
+				throw new IOException("compressed block inflated to " + inflated + " bytes instead of " + uncompressedLength);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("corrupted compressed block", e);
+		}
+		return ByteBuffer.wrap(records, 0, uncompressedLength);
+	}
+
+	/**
+	 * Keeps its array from block to block and lets the deflater read it without a copy.
+	 */
+	private static class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+		public byte[] getBuffer() {
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package org.bluedb.disk.file;
+
+/**
+ * How {@link BlueObjectOutput} writes chunk files. Compressed blocks and plain records can be mixed in a file, so
+ * the mode only affects chunks written from now on and it can be changed whenever a collection is opened.
+ */
+public enum CompressionMode {
+	/**
+	 * Each record is written as is.
+	 */
+	NONE,
+	/**
+	 * Records are gathered into blocks that are compressed with {@link java.util.zip.Deflater}. Repetitive values
+	 * take a fraction of the space on disk and in the page cache, at the cost of inflating a whole block to read any
+	 * record in it.
+	 */
+	DEFLATE,
+}
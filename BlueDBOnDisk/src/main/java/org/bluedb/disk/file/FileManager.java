@@ -3,22 +3,47 @@ package org.bluedb.disk.file;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.disk.collection.CollectionSettings;
 import org.bluedb.disk.lock.BlueReadLock;
 import org.bluedb.disk.lock.BlueWriteLock;
 import org.bluedb.disk.lock.LockManager;
 import org.bluedb.disk.serialization.BlueSerializer;
+import org.bluedb.disk.serialization.validation.SerializationException;
 
 public class FileManager {
 
 	private final BlueSerializer serializer;
 	private final LockManager<Path> lockManager;
+	private final ReadMode readMode;
+	private final CompressionMode compressionMode;
+	private final int readAheadDepth;
+	private final Executor readAheadExecutor;
+	private final ReadAheadBuffers readAheadBuffers;
 
 	public FileManager(BlueSerializer serializer) {
+		this(serializer, new CollectionSettings(), null);
+	}
+
+	/**
+	 * @param settings where the read mode, compression mode and read ahead depth come from
+	 * @param readAheadExecutor where files are read ahead, or null to read each one when it's needed
+	 */
+	public FileManager(BlueSerializer serializer, CollectionSettings settings, Executor readAheadExecutor) {
 		this.serializer = serializer;
+		this.readMode = settings.getReadMode();
+		this.compressionMode = settings.getCompressionMode();
+		this.readAheadDepth = (readAheadExecutor == null) ? 0 : settings.getReadAheadDepth();
+		this.readAheadExecutor = readAheadExecutor;
+		this.readAheadBuffers = new ReadAheadBuffers(ReadAheadBuffers.DEFAULT_MAX_BUFFER_SIZE, this.readAheadDepth + 1);  // enough for a scan's current file and the ones ahead of it
 		lockManager = new LockManager<Path>();
 	}
 
@@ -52,6 +77,90 @@ public class FileManager {
 		}
 	}
 
+	/**
+	 * Appends o to an append only file. Each record is written as [length][bytes][length] so that a record torn by a
+	 * crash can be recognized and dropped before the next append.
+	 * @return the length of the file after the append
+	 */
+	public long appendObject(BlueWriteLock<Path> writeLock, Object o) throws BlueDbException {
+		Path path = writeLock.getKey();
+		byte[] bytes = serializer.serializeObjectToByteArray(o);
+		FileUtils.ensureDirectoryExists(path.toFile());
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			long endOfRecords = findEndOfAppendedRecords(file);
+			if (endOfRecords != file.length()) {
+				file.setLength(endOfRecords);
+			}
+			ByteBuffer record = ByteBuffer.allocate(bytes.length + 2 * Integer.BYTES);
+			record.putInt(bytes.length);
+			record.put(bytes);
+			record.putInt(bytes.length);
+			file.seek(endOfRecords);
+			file.write(record.array());
+			return file.length();
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new BlueDbException("error appending to file " + path, e);
+		}
+	}
+
+	public List<Object> loadAppendedObjects(BlueReadLock<Path> readLock) throws BlueDbException {
+		List<Object> results = new ArrayList<>();
+		byte[] fileData = readBytes(readLock);
+		if (fileData == null) {
+			return results;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(fileData);
+		while (buffer.remaining() >= 2 * Integer.BYTES) {
+			int length = buffer.getInt();
+			if (length < 0 || buffer.remaining() < length + Integer.BYTES || buffer.getInt(buffer.position() + length) != length) {
+				break;  // torn by a crash, nothing after this was ever acknowledged
+			}
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			buffer.getInt();
+			try {
+				results.add(serializer.deserializeObjectFromByteArray(bytes));
+			} catch (SerializationException e) {
+				e.printStackTrace();  // Object was corrupted. Print stack trace but try loading the next one
+			}
+		}
+		return results;
+	}
+
+	protected static long findEndOfAppendedRecords(RandomAccessFile file) throws IOException {
+		long length = file.length();
+		if (length == 0) {
+			return 0;
+		}
+		if (length >= 2 * Integer.BYTES) {  // usually the last record is intact and we don't need to look at the rest
+			file.seek(length - Integer.BYTES);
+			int lastRecordLength = file.readInt();
+			long lastRecordStart = length - lastRecordLength - 2 * Integer.BYTES;
+			if (lastRecordLength >= 0 && lastRecordStart >= 0) {
+				file.seek(lastRecordStart);
+				if (file.readInt() == lastRecordLength) {
+					return length;
+				}
+			}
+		}
+		long position = 0;
+		while (position + 2 * Integer.BYTES <= length) {
+			file.seek(position);
+			int recordLength = file.readInt();
+			long nextPosition = position + recordLength + 2 * Integer.BYTES;
+			if (recordLength < 0 || nextPosition > length) {
+				break;
+			}
+			file.seek(nextPosition - Integer.BYTES);
+			if (file.readInt() != recordLength) {
+				break;
+			}
+			position = nextPosition;
+		}
+		return position;
+	}
+
 	public void lockMoveFileUnlock(Path src, Path dst) throws BlueDbException {
 		try (BlueWriteLock<Path> lock = lockManager.acquireWriteLock(dst)) {
 			FileUtils.moveFile(src, lock);
@@ -66,11 +175,15 @@ public class FileManager {
 	}
 
 	public <T> BlueObjectOutput<T> getBlueOutputStream(BlueWriteLock<Path> writeLock) throws BlueDbException {
-		return new BlueObjectOutput<T>(writeLock, serializer);
+		return new BlueObjectOutput<T>(writeLock, serializer, compressionMode);
 	}
 
 	public <T> BlueObjectInput<T> getBlueInputStream(BlueReadLock<Path> readLock) throws BlueDbException {
-		return new BlueObjectInput<T>(readLock, serializer);
+		return new BlueObjectInput<T>(readLock, serializer, readMode);
+	}
+
+	public <T> BlueObjectInput<T> readAheadBlueInputStream(BlueReadLock<Path> readLock) throws BlueDbException {
+		return BlueObjectInput.readAhead(readLock, serializer, readAheadBuffers);
 	}
 
 	public BlueReadLock<Path> getReadLockIfFileExists(Path path) throws BlueDbException {
@@ -91,6 +204,22 @@ public class FileManager {
 		return path.toFile().exists();
 	}
 
+	public ReadMode getReadMode() {
+		return readMode;
+	}
+
+	public CompressionMode getCompressionMode() {
+		return compressionMode;
+	}
+
+	public int getReadAheadDepth() {
+		return readAheadDepth;
+	}
+
+	public Executor getReadAheadExecutor() {
+		return readAheadExecutor;
+	}
+
 	public LockManager<Path> getLockManager() {
 		return lockManager;
 	}
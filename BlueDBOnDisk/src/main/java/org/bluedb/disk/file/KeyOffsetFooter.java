@@ -0,0 +1,198 @@
+package org.bluedb.disk.file;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Sorted grouping number to byte offset index that {@link BlueObjectOutput} appends to a chunk file so that a
+ * single key can be found without deserializing every record in front of it.
+ *
+ * Layout after the last record:
+ * <pre>
+ * int END_OF_RECORDS_MARKER | int count | count * (long groupingNumber, long offset) | long footerStart | int MAGIC
+ * </pre>
+ * The marker is a negative record length, so sequential readers stop at the footer. Files without a footer are
+ * still read by falling back to a sequential scan. Records in a {@link CompressedBlock} share the offset of the
+ * block.
+ */
+public class KeyOffsetFooter {
+
+	public static final long NOT_FOUND = -1;
+	protected static final int END_OF_RECORDS_MARKER = -1;
+	protected static final int MAGIC = 0x424C4B46;
+	private static final int HEADER_SIZE = 8;
+	private static final int ENTRY_SIZE = 16;
+	private static final int TRAILER_SIZE = 12;
+	private static final int GROUPING_NUMBER_FIELD = 0;
+	private static final int OFFSET_FIELD = 8;
+
+	private long[] groupingNumbers = new long[16];
+	private long[] offsets = new long[16];
+	private int size = 0;
+	private boolean isComplete = true;
+
+	public void add(long groupingNumber, long offset) {
+		if (size > 0 && groupingNumber < groupingNumbers[size - 1]) {
+			isComplete = false;  // we can only binary search records that are in order
+		}
+		if (size == groupingNumbers.length) {
+			groupingNumbers = Arrays.copyOf(groupingNumbers, size * 2);
+			offsets = Arrays.copyOf(offsets, size * 2);
+		}
+		groupingNumbers[size] = groupingNumber;
+		offsets[size] = offset;
+		size++;
+	}
+
+	/**
+	 * Adds the entries of records that were copied over from another file as a byte range.
+	 */
+	public void addAll(KeyOffsetFooter other, long offsetShift) {
+		for (int i = 0; i < other.size; i++) {
+			add(other.groupingNumbers[i], other.offsets[i] + offsetShift);
+		}
+	}
+
+	public void invalidate() {
+		isComplete = false;
+	}
+
+	public boolean isWritable() {
+		return isComplete && size > 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void writeTo(DataOutputStream out, long footerStart) throws IOException {
+		out.writeInt(END_OF_RECORDS_MARKER);
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			out.writeLong(groupingNumbers[i]);
+			out.writeLong(offsets[i]);
+		}
+		out.writeLong(footerStart);
+		out.writeInt(MAGIC);
+	}
+
+	/**
+	 * @return the number of entries in the footer of the file, or -1 if the file doesn't have a valid footer
+	 */
+	protected static int readEntryCount(FileChannel channel) throws IOException {
+		long fileSize = channel.size();
+		if (fileSize < HEADER_SIZE + TRAILER_SIZE) {
+			return -1;
+		}
+		ByteBuffer trailer = read(channel, fileSize - TRAILER_SIZE, TRAILER_SIZE);
+		long footerStart = trailer.getLong();
+		int magic = trailer.getInt();
+		if (magic != MAGIC || footerStart < 0 || footerStart > fileSize - TRAILER_SIZE - HEADER_SIZE) {
+			return -1;
+		}
+		ByteBuffer header = read(channel, footerStart, HEADER_SIZE);
+		int marker = header.getInt();
+		int count = header.getInt();
+		long expectedFileSize = footerStart + HEADER_SIZE + ((long) count) * ENTRY_SIZE + TRAILER_SIZE;
+		if (marker != END_OF_RECORDS_MARKER || count < 0 || expectedFileSize != fileSize) {
+			return -1;
+		}
+		return count;
+	}
+
+	/**
+	 * Binary searches the footer on disk without loading it into memory.
+	 * @return the offset of the first record with the grouping number, or NOT_FOUND if there is none
+	 */
+	protected static long findOffset(FileChannel channel, int entryCount, long groupingNumber) throws IOException {
+		long entriesStart = getEntriesStart(channel, entryCount);
+		int index = findFirstIndexAtOrAbove(channel, entriesStart, entryCount, groupingNumber, GROUPING_NUMBER_FIELD);
+		if (index == entryCount) {
+			return NOT_FOUND;
+		}
+		ByteBuffer entry = read(channel, entriesStart + ((long) index) * ENTRY_SIZE, ENTRY_SIZE);
+		if (entry.getLong() != groupingNumber) {
+			return NOT_FOUND;
+		}
+		return entry.getLong();
+	}
+
+	/**
+	 * Since there is one entry per record, this is the number of records with a grouping number from min to max.
+	 */
+	protected static int countBetween(FileChannel channel, int entryCount, long min, long max) throws IOException {
+		if (min > max) {
+			return 0;
+		}
+		long entriesStart = getEntriesStart(channel, entryCount);
+		int first = findFirstIndexAtOrAbove(channel, entriesStart, entryCount, min, GROUPING_NUMBER_FIELD);
+		int afterLast = (max == Long.MAX_VALUE) ? entryCount : findFirstIndexAtOrAbove(channel, entriesStart, entryCount, max + 1, GROUPING_NUMBER_FIELD);
+		return afterLast - first;
+	}
+
+	/**
+	 * @return the offset of the first record with a grouping number at or above the one given, or the end of the
+	 *         records if there is none
+	 */
+	protected static long findOffsetAtOrAbove(FileChannel channel, int entryCount, long groupingNumber) throws IOException {
+		long entriesStart = getEntriesStart(channel, entryCount);
+		int index = findFirstIndexAtOrAbove(channel, entriesStart, entryCount, groupingNumber, GROUPING_NUMBER_FIELD);
+		if (index == entryCount) {
+			return getEndOfRecords(channel, entryCount);
+		}
+		return read(channel, entriesStart + ((long) index) * ENTRY_SIZE + OFFSET_FIELD, 8).getLong();
+	}
+
+	protected static long getEndOfRecords(FileChannel channel, int entryCount) throws IOException {
+		return getEntriesStart(channel, entryCount) - HEADER_SIZE;
+	}
+
+	/**
+	 * Reads the entries of the records from startOffset up to endOffset into a new footer.
+	 */
+	protected static KeyOffsetFooter readEntriesBetween(FileChannel channel, int entryCount, long startOffset, long endOffset) throws IOException {
+		long entriesStart = getEntriesStart(channel, entryCount);
+		int first = findFirstIndexAtOrAbove(channel, entriesStart, entryCount, startOffset, OFFSET_FIELD);
+		int afterLast = findFirstIndexAtOrAbove(channel, entriesStart, entryCount, endOffset, OFFSET_FIELD);
+		KeyOffsetFooter entries = new KeyOffsetFooter();
+		ByteBuffer buffer = read(channel, entriesStart + ((long) first) * ENTRY_SIZE, (afterLast - first) * ENTRY_SIZE);
+		while (buffer.hasRemaining()) {
+			entries.add(buffer.getLong(), buffer.getLong());
+		}
+		return entries;
+	}
+
+	private static long getEntriesStart(FileChannel channel, int entryCount) throws IOException {
+		return channel.size() - TRAILER_SIZE - ((long) entryCount) * ENTRY_SIZE;
+	}
+
+	private static int findFirstIndexAtOrAbove(FileChannel channel, long entriesStart, int entryCount, long value, int field) throws IOException {
+		int low = 0;
+		int high = entryCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			long middleValue = read(channel, entriesStart + ((long) middle) * ENTRY_SIZE + field, 8).getLong();
+			if (middleValue < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			int bytesRead = channel.read(buffer, position + buffer.position());
+			if (bytesRead < 0) {
+				throw new IOException("unexpected end of file while reading footer");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+}
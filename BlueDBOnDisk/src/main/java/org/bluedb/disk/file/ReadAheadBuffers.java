@@ -0,0 +1,80 @@
+package org.bluedb.disk.file;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * The buffers that chunk files are read ahead into. A buffer goes back to the pool when the input reading from it is
+ * closed, so scans keep reusing the same few buffers instead of allocating one per file. Files bigger than the
+ * largest buffer aren't read ahead, they are streamed when they're needed instead.
+ */
+public class ReadAheadBuffers {
+
+	public static final int DEFAULT_MAX_BUFFER_SIZE = 16 * 1024 * 1024;
+
+	private final int maxBufferSize;
+	private final int maxIdleBuffers;
+	private final Deque<ByteBuffer> idleBuffers = new ArrayDeque<>();
+
+	/**
+	 * @param maxBufferSize the size of the biggest file that will be read ahead
+	 * @param maxIdleBuffers how many buffers are kept for reuse while no input is reading from them
+	 */
+	public ReadAheadBuffers(int maxBufferSize, int maxIdleBuffers) {
+		this.maxBufferSize = maxBufferSize;
+		this.maxIdleBuffers = maxIdleBuffers;
+	}
+
+	/**
+	 * @return an empty buffer with room for exactly size bytes, or null if size is more than the biggest buffer
+	 */
+	public synchronized ByteBuffer acquire(long size) {
+		if (size > maxBufferSize) {
+			return null;
+		}
+		ByteBuffer buffer = removeIdleBufferWithRoomFor((int) size);
+		if (buffer == null) {
+			idleBuffers.pollFirst();  // none of them are big enough, so make room for one that is
+			buffer = ByteBuffer.allocate(roundUpToPowerOfTwo((int) size));
+		}
+		buffer.clear();
+		buffer.limit((int) size);
+		return buffer;
+	}
+
+	public synchronized void release(ByteBuffer buffer) {
+		if (idleBuffers.size() < maxIdleBuffers) {
+			idleBuffers.addLast(buffer);
+		}
+	}
+
+	public int getMaxBufferSize() {
+		return maxBufferSize;
+	}
+
+	protected synchronized int getIdleBufferCount() {
+		return idleBuffers.size();
+	}
+
+	private ByteBuffer removeIdleBufferWithRoomFor(int size) {
+		Iterator<ByteBuffer> iterator = idleBuffers.iterator();
+		while (iterator.hasNext()) {
+			ByteBuffer buffer = iterator.next();
+			if (buffer.capacity() >= size) {
+				iterator.remove();
+				return buffer;
+			}
+		}
+		return null;
+	}
+
+	private int roundUpToPowerOfTwo(int size) {
+		int rounded = Integer.highestOneBit(Math.max(size, 1));
+		if (rounded < size) {
+			rounded <<= 1;
+		}
+		return Math.min(Math.max(rounded, size), maxBufferSize);  // rounding never goes past the biggest buffer
+	}
+}
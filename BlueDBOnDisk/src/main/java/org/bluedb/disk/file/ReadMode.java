@@ -0,0 +1,20 @@
+package org.bluedb.disk.file;
+
+/**
+ * How {@link BlueObjectInput} reads chunk files. The mode only affects how bytes get off of disk, files are the
+ * same either way so it can be changed whenever a collection is opened.
+ */
+public enum ReadMode {
+	/**
+	 * Buffered {@link java.io.FileInputStream}. Uses the least address space and releases files as soon as the
+	 * input is closed.
+	 */
+	STREAMED,
+	/**
+	 * Maps the whole file with {@link java.nio.channels.FileChannel#map} and reads records out of the mapped region
+	 * into the same reused record buffers a streamed read fills. Avoids a read syscall per buffer fill on scans. The
+	 * mapping is released when the input is closed where the JVM allows it, and otherwise when it's garbage
+	 * collected, which on some platforms (Windows) keeps the file from being deleted until then.
+	 */
+	MEMORY_MAPPED,
+}
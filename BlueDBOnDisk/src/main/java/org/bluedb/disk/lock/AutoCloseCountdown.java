@@ -2,22 +2,27 @@ package org.bluedb.disk.lock;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.bluedb.disk.executors.TimeoutScheduler;
+
 public class AutoCloseCountdown {
 
-	private Closeable target;
-	private Timer timer;
+	private final Closeable target;
+	private final TimeoutScheduler scheduler;
 	private final AtomicLong expiration;
 	private final long duration;
 
 	public AutoCloseCountdown(Closeable closeable, long countdownDuration) {
+		this(closeable, countdownDuration, TimeoutScheduler.getDefault());
+	}
+
+	public AutoCloseCountdown(Closeable closeable, long countdownDuration, TimeoutScheduler scheduler) {
 		if (closeable == null) {
 			throw new IllegalArgumentException("Cannot open a " + this.getClass().getSimpleName() + " with a null Closeable.");
 		}
 		target = closeable;
+		this.scheduler = scheduler;
 		duration = countdownDuration;
 		expiration = new AtomicLong(System.currentTimeMillis() + duration);
 		startCountdown();
@@ -29,7 +34,7 @@ public class AutoCloseCountdown {
 	}
 
 	public void cancel() {
-		clearTimer();
+		scheduler.unregister(this);
 	}
 
 	public long remainingTime() {
@@ -39,20 +44,15 @@ public class AutoCloseCountdown {
 		return remainingTime;
 	}
 
-	private void clearTimer() {
-		if (timer != null) {
-			timer.cancel();
-			timer = null;
-		}
+	public long getExpiration() {
+		return expiration.get();
 	}
 
-	private void onExpiration() {
-		long now = System.currentTimeMillis();
-		if (now >= expiration.get()) {
-			closeTarget();
-		} else {
-			startCountdown();
-		}
+	/**
+	 * Called by the {@link TimeoutScheduler} once the countdown runs out without being snoozed.
+	 */
+	public void expire() {
+		closeTarget();
 	}
 
 	private void closeTarget() {
@@ -64,18 +64,11 @@ public class AutoCloseCountdown {
 	}
 
 	private void startCountdown() {
-		clearTimer();
-		TimerTask newExpirationTask = new TimerTask() {
-			@Override public void run() {
-				onExpiration();
-			}
-		};
 		long remainingTime = remainingTime();
 		if (remainingTime == 0) {
 			closeTarget();
 		} else {
-			timer = new Timer();
-			timer.schedule(newExpirationTask, remainingTime);
+			scheduler.register(this);
 		}
 	}
-}
\ No newline at end of file
+}
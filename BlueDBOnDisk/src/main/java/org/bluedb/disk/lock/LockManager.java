@@ -1,88 +1,109 @@
 package org.bluedb.disk.lock;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.locks.StampedLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 public class LockManager <T> {
 
-	private final Map<T, StampedLock> locks;
+	private static final Object NULL_KEY = new Object();  // HashMap used to allow null keys
+
+	private final ConcurrentHashMap<Object, LockEntry> locks;
 
 	public LockManager() {
-		locks = new HashMap<>();
+		locks = new ConcurrentHashMap<>();
 	}
 
 	public boolean isLocked(T key) {
-		synchronized(locks) {
-			return locks.containsKey(key);
-		}
+		return locks.containsKey(maskNull(key));
 	}
 
 	public BlueReadLock<T> acquireReadLock(T key) {
-		boolean success = false;
-		StampedLock lock;
-		while (!success) {
-			synchronized(locks) {
-				if (!locks.containsKey(key)) {
-					locks.put(key, new StampedLock());
+		while (true) {
+			LockEntry[] writerToWaitFor = new LockEntry[1];
+			locks.compute(maskNull(key), (k, entry) -> {
+				if (entry == null) {
+					return new LockEntry(1, false);
 				}
-				lock = locks.get(key);
-				success = lock.asReadLock().tryLock();
-			}
-			if (!success) {
-				waitForLock(lock);
+				if (entry.isWriteLocked) {
+					writerToWaitFor[0] = entry;
+				} else {
+					entry.readers++;
+				}
+				return entry;
+			});
+			if (writerToWaitFor[0] == null) {
+				return new BlueReadLock<T>(this, key);
 			}
+			writerToWaitFor[0].awaitRelease();
 		}
-		return new BlueReadLock<T>(this, key);
 	}
 
 	public void releaseReadLock(T key) {
-		StampedLock lock = null;
-		synchronized(locks) {
-			lock = locks.get(key);
-			lock.asReadLock().unlock();
-			boolean noOtherThreadsAreReading = lock.getReadLockCount() == 0;
+		LockEntry[] releasedEntry = new LockEntry[1];
+		locks.computeIfPresent(maskNull(key), (k, entry) -> {
+			entry.readers--;
+			boolean noOtherThreadsAreReading = entry.readers == 0;
 			if (noOtherThreadsAreReading) {
-				locks.remove(key);
+				releasedEntry[0] = entry;
+				return null;
 			}
+			return entry;
+		});
+		if (releasedEntry[0] != null) {
+			releasedEntry[0].signalRelease();
 		}
 	}
 
 	public BlueWriteLock<T> acquireWriteLock(T key) {
-		StampedLock myLock = new StampedLock();
-		myLock.asWriteLock().lock();
-		StampedLock lockInMap = tryInsertMyLock(key, myLock);
-		while (lockInMap != myLock){
-			waitForLock(lockInMap);
-			lockInMap = tryInsertMyLock(key, myLock);
+		LockEntry myEntry = new LockEntry(0, true);
+		LockEntry entryInMap = locks.putIfAbsent(maskNull(key), myEntry);
+		while (entryInMap != null) {
+			entryInMap.awaitRelease();
+			entryInMap = locks.putIfAbsent(maskNull(key), myEntry);
 		}
 		return new BlueWriteLock<T>(this, key);
 	}
 
 	public void releaseWriteLock(T key) {
-		StampedLock lock;
-		synchronized(locks) {
-			lock = locks.remove(key);
-		}
-		lock.asWriteLock().unlock();
+		LockEntry entry = locks.remove(maskNull(key));
+		entry.signalRelease();
 	}
 
-	// Returns (a) myLock if insert is successful or (b) another thread's lock if another thread is reading or writing
-	private StampedLock tryInsertMyLock(T key, StampedLock myLock) {
-		synchronized(locks) {
-			StampedLock lock = locks.get(key);
-			if (lock != null) {
-				return lock;
-			} else {
-				locks.put(key,  myLock);
-				return myLock;
-			}
-		}
+	private static Object maskNull(Object key) {
+		return (key == null) ? NULL_KEY : key;
 	}
 
-	private void waitForLock(StampedLock lock) {
-		lock.asWriteLock().lock();  // We know that there's no readers or writers when we can get the writeLock
-		// Note that we can't just re-use this lock.  It may have already been removed from the map.
-		// We need a lock that we know is in the map and that we got the lock before another thread.
-		lock.asWriteLock().unlock();
+	/**
+	 * Readers or a writer of one key. The entry is removed from the map when the last of them releases, and
+	 * threads waiting on it park until then and retry against whatever entry is in the map next. Entries aren't
+	 * owned by a thread, since iterators can be closed by the timeout thread.
+	 */
+	private static class LockEntry {
+		private final boolean isWriteLocked;
+		private final CountDownLatch released = new CountDownLatch(1);
+		private int readers;  // only touched inside ConcurrentHashMap.compute for this key
+
+		public LockEntry(int readers, boolean isWriteLocked) {
+			this.readers = readers;
+			this.isWriteLocked = isWriteLocked;
+		}
+
+		public void signalRelease() {
+			released.countDown();
+		}
+
+		public void awaitRelease() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					released.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;  // like Lock.lock(), keep waiting but remember the interrupt
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 }
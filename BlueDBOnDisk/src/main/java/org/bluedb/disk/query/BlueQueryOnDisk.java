@@ -25,6 +25,7 @@ public class BlueQueryOnDisk<T extends Serializable> implements BlueQuery<T> {
 	private long max = Long.MAX_VALUE;
 	private long min = Long.MIN_VALUE;
 	private boolean byStartTime = false;
+	private boolean parallel = false;
 
 	public BlueQueryOnDisk(BlueCollectionOnDisk<T> collection) {
 		this.collection = collection;
@@ -68,6 +69,12 @@ public class BlueQueryOnDisk<T extends Serializable> implements BlueQuery<T> {
 		return this;
 	}
 
+	@Override
+	public BlueQuery<T> parallel() {
+		parallel = true;
+		return this;
+	}
+
 	@Override
 	public List<T> getList() throws BlueDbException {
 		return Blutils.map(getEntities(), (e) -> e.getValue());
@@ -76,7 +83,7 @@ public class BlueQueryOnDisk<T extends Serializable> implements BlueQuery<T> {
 	@Override
 	public CloseableIterator<T> getIterator() throws BlueDbException {
 		Range range = new Range(min, max);
-		return new CollectionValueIterator<T>(collection.getSegmentManager(), range, byStartTime, objectConditions);
+		return new CollectionValueIterator<T>(collection.getSegmentManager(), range, byStartTime, objectConditions, collection.getSharedExecutor().getTimeoutScheduler());
 	}
 
 	@Override
@@ -99,16 +106,27 @@ public class BlueQueryOnDisk<T extends Serializable> implements BlueQuery<T> {
 
 	@Override
 	public int count() throws BlueDbException {
-		CloseableIterator<T> iter = getIterator();
-		int count = 0;
-		while (iter.hasNext()) {
-			count++;
-			iter.next();
+		if (parallel) {
+			return collection.countMatchesInParallel(getRange(), objectConditions, byStartTime);
 		}
-		return count;
+		return collection.countMatches(getRange(), objectConditions, byStartTime);
+	}
+
+	@Override
+	public boolean exists() throws BlueDbException {
+		return collection.findFirstMatch(getRange(), objectConditions, byStartTime) != null;
+	}
+
+	@Override
+	public T first() throws BlueDbException {
+		BlueEntity<T> first = collection.findFirstMatch(getRange(), objectConditions, byStartTime);
+		return (first == null) ? null : first.getValue();
 	}
 
 	public List<BlueEntity<T>> getEntities() throws BlueDbException {
+		if (parallel) {
+			return collection.findMatchesInParallel(getRange(), objectConditions, byStartTime);
+		}
 		return collection.findMatches(getRange(), objectConditions, byStartTime);
 	}
 
@@ -118,6 +136,7 @@ public class BlueQueryOnDisk<T extends Serializable> implements BlueQuery<T> {
 		clone.min = min;
 		clone.max = max;
 		clone.byStartTime = byStartTime;
+		clone.parallel = parallel;
 		return clone;
 	}
 
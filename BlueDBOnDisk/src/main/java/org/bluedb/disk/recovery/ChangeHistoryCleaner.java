@@ -1,9 +1,6 @@
 package org.bluedb.disk.recovery;
 
-import java.io.File;
 import java.nio.file.Path;
-import java.util.Collections;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -38,21 +35,11 @@ public class ChangeHistoryCleaner {
 		holdsOnHistoryCleanup.decrementAndGet();
 	}
 
-	public List<TimeStampedFile> getCompletedTimeStampedFiles() {
-		List<File> historicChangeFiles = recoveryManager.getCompletedChangeFiles();
-		List<TimeStampedFile> timestampedFiles = Blutils.mapIgnoringExceptions(historicChangeFiles, (f) -> new TimeStampedFile(f) );
-		return timestampedFiles;
-	}
-
 	public void cleanupHistory() {
 		if (holdsOnHistoryCleanup.get() > 0) {
 			return;
 		}
-		List<TimeStampedFile> timestampedFiles = getCompletedTimeStampedFiles();
-		Collections.sort(timestampedFiles);
-		int numFilesToDelete = Math.max(0, timestampedFiles.size() - completedChangeLimit);
-		List<TimeStampedFile> filesToDelete = timestampedFiles.subList(0, numFilesToDelete);
-		filesToDelete.forEach((f) -> f.getFile().delete());
+		recoveryManager.getWriteAheadLog().deleteOldSegments(completedChangeLimit);
 	}
 
 	public void setWaitBetweenCleanups(long millis) {
@@ -6,7 +6,9 @@ import java.util.List;
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.disk.BatchUtils;
 import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.collection.index.IndexManager;
 import org.bluedb.disk.segment.SegmentManager;
+import org.bluedb.disk.segment.writer.BatchListener;
 
 public class PendingBatchChange<T extends Serializable> implements Serializable, Recoverable<T> {
 
@@ -28,8 +30,10 @@ public class PendingBatchChange<T extends Serializable> implements Serializable,
 	@Override
 	public void apply(BlueCollectionOnDisk<T> collection) throws BlueDbException {
 		SegmentManager<T> segmentManager = collection.getSegmentManager();
-		BatchUtils.apply(segmentManager, sortedChanges);
-		collection.getIndexManager().addToAllIndexes(sortedChanges);
+		IndexManager<T> indexManager = collection.getIndexManager();
+		// each chunk's index changes go in before the chunk is replaced, so a replay still reads the old values
+		BatchListener<T> indexUpdater = indexManager.hasIndexes() ? indexManager::applyToAllIndexes : null;
+		BatchUtils.apply(segmentManager, sortedChanges, indexUpdater);
 	}
 
 	@Override
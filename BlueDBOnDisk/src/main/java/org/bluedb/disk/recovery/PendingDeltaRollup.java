@@ -0,0 +1,47 @@
+package org.bluedb.disk.recovery;
+
+import java.io.Serializable;
+
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.segment.Segment;
+
+public class PendingDeltaRollup<T extends Serializable> implements Serializable, Recoverable<T>{
+
+	private static final long serialVersionUID = 1L;
+
+	long timeCreated;
+	long segmentGroupingNumber;
+	long recoverableId;
+
+	public PendingDeltaRollup(long segmentGroupingNumber) {
+		timeCreated = System.currentTimeMillis();
+		this.segmentGroupingNumber = segmentGroupingNumber;
+	}
+
+	@Override
+	public void apply(BlueCollectionOnDisk<T> collection) throws BlueDbException {
+		Segment<T> segment = collection.getSegmentManager().getSegment(segmentGroupingNumber);
+		segment.foldDelta();
+	}
+
+	@Override
+	public long getTimeCreated() {
+		return timeCreated;
+	}
+
+	@Override
+	public long getRecoverableId() {
+		return recoverableId;
+	}
+
+	@Override
+	public void setRecoverableId(long recoverableId) {
+		this.recoverableId = recoverableId;
+	}
+
+	@Override
+	public String toString() {
+		return "<PendingDeltaRollup in segment @ " + segmentGroupingNumber + ">";
+	}
+}
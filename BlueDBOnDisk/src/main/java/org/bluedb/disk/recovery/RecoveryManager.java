@@ -7,7 +7,6 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.disk.Blutils;
@@ -20,6 +19,7 @@ public class RecoveryManager<T extends Serializable> {
 	
 	protected static String RECOVERY_FOLDER = ".recovery";
 	protected static String HISTORY_SUBFOLDER = "changes_history";
+	protected static String LOG_SUBFOLDER = "changes_log";
 	protected static String SUFFIX = ".chg";
 	protected static String SUFFIX_PENDING = ".pending.chg";
 	protected static String SUFFIX_COMPLETE = ".complete.chg";
@@ -28,64 +28,72 @@ public class RecoveryManager<T extends Serializable> {
 	private final Path recoveryPath;
 	private final Path historyFolderPath;
 	private final FileManager fileManager;
-	private final AtomicLong lastRecoverableId;
+	private final WriteAheadLog writeAheadLog;
 	private final ChangeHistoryCleaner cleaner;
 
-	public RecoveryManager(BlueCollectionOnDisk<T> collection, FileManager fileManager, BlueSerializer serializer) {
+	public RecoveryManager(BlueCollectionOnDisk<T> collection, FileManager fileManager, BlueSerializer serializer) throws BlueDbException {
 		this.collection = collection;
 		this.fileManager = fileManager;
 		this.recoveryPath = Paths.get(collection.getPath().toString(), RECOVERY_FOLDER);
 		this.historyFolderPath = Paths.get(recoveryPath.toString(), HISTORY_SUBFOLDER);
-		lastRecoverableId = new AtomicLong(0);
+		this.writeAheadLog = new WriteAheadLog(Paths.get(recoveryPath.toString(), LOG_SUBFOLDER), serializer);
 		cleaner = new ChangeHistoryCleaner(this);
 	}
 
 	public void saveChange(Recoverable<?> change) throws BlueDbException {
 		change.setRecoverableId(getNewRecoverableId());
-		String filename = getPendingFileName(change);
-		Path historyPath = Paths.get(historyFolderPath.toString(), filename);
-		fileManager.saveObject(historyPath, change);
+		writeAheadLog.appendPending(change);
 	}
 
+	/**
+	 * Folder of the one-file-per-change history written by older versions. It is only read during recovery.
+	 */
 	public Path getHistoryFolder() {
 		return historyFolderPath;
 	}
 
+	public WriteAheadLog getWriteAheadLog() {
+		return writeAheadLog;
+	}
+
+	public void setSyncOnCommit(boolean syncOnCommit) {
+		writeAheadLog.setSyncOnCommit(syncOnCommit);
+	}
+
 	public BlueCollectionOnDisk<T> getCollection() {
 		return collection;
 	}
 
-	public void markComplete(Recoverable<?> change) throws BlueDbException {
-		String pendingFileName = getPendingFileName(change);
-		String completedFileName = getCompletedFileName(change);
-		Path pendingPath = Paths.get(historyFolderPath.toString(), pendingFileName);
-		Path completedPath = Paths.get(historyFolderPath.toString(), completedFileName);
-		FileUtils.moveWithoutLock(pendingPath, completedPath);
+	/**
+	 * Closes the change log, once nothing else will be written to it.
+	 */
+	public void close() {
+		writeAheadLog.close();
 	}
 
-	public void markChangePending(Path completedPath) throws BlueDbException {
-		String completedPathString = completedPath.toString();
-		String pendingPathString = completedPathString.replaceAll(SUFFIX_COMPLETE, SUFFIX_PENDING);
-		Path pendingPath = Paths.get(pendingPathString);
-		FileUtils.moveWithoutLock(completedPath, pendingPath);
+	public void markComplete(Recoverable<?> change) throws BlueDbException {
+		writeAheadLog.appendComplete(change);
 	}
 
-	public List<File> getChangeHistory(long backupStartTime, long backupEndTime) throws BlueDbException {
-		List<File> files = FileUtils.getFolderContents(historyFolderPath, SUFFIX);
-		if (files.isEmpty()) {
-			return files;
+	public List<Recoverable<T>> getChangeHistory(long backupStartTime, long backupEndTime) throws BlueDbException {
+		List<Recoverable<T>> changes = castChanges(writeAheadLog.getAllChanges());
+		if (changes.isEmpty()) {
+			return changes;
 		}
-		List<TimeStampedFile> timestampedFiles = Blutils.map(files, (f) -> new TimeStampedFile(f) );
-		Collections.sort(timestampedFiles);
 		// Note: the last change before backup might by incomplete so we'll include it
-		int lastChangeBeforeBackup = Blutils.lastIndex(timestampedFiles, (t) -> t.getTimestamp() < backupStartTime );
+		int lastChangeBeforeBackup = Blutils.lastIndex(changes, (c) -> c.getTimeCreated() < backupStartTime );
 		int firstChangeToKeep = Math.max(0,  lastChangeBeforeBackup);
-		int lastChangeToKeep = Blutils.lastIndex(timestampedFiles, (t) -> t.getTimestamp() <= backupEndTime );
-		List<TimeStampedFile> relevantTimeStampedFiles = timestampedFiles.subList(firstChangeToKeep, lastChangeToKeep + 1);
-		return Blutils.map(relevantTimeStampedFiles, (tsf) -> tsf.getFile() );
+		int lastChangeToKeep = Blutils.lastIndex(changes, (c) -> c.getTimeCreated() <= backupEndTime );
+		return new ArrayList<>(changes.subList(firstChangeToKeep, lastChangeToKeep + 1));
 	}
 
 	public List<Recoverable<T>> getPendingChanges() throws BlueDbException {
+		List<Recoverable<T>> changes = castChanges(writeAheadLog.getPendingChanges());
+		Collections.sort(changes);
+		return changes;
+	}
+
+	public List<Recoverable<T>> getLegacyPendingChanges() throws BlueDbException {
 		List<Recoverable<T>> changes = new ArrayList<>();
 		for (File file: getPendingChangeFiles()) {
 			@SuppressWarnings("unchecked")
@@ -109,12 +117,28 @@ public class RecoveryManager<T extends Serializable> {
 	}
 
 	public void recover() throws BlueDbException {
+		recoverLegacyChanges();
 		for (Recoverable<T> change: getPendingChanges()) {
 			change.apply(collection);
 			markComplete(change);
 		}
 	}
 
+	/**
+	 * Applies changes left in the history folder by older versions or restored from older backups, then removes
+	 * the folder's change files since everything new goes in the {@link WriteAheadLog}.
+	 */
+	protected void recoverLegacyChanges() throws BlueDbException {
+		if (!historyFolderPath.toFile().exists()) {
+			return;
+		}
+		for (Recoverable<T> change: getLegacyPendingChanges()) {
+			change.apply(collection);
+		}
+		getPendingChangeFiles().forEach(File::delete);
+		getCompletedChangeFiles().forEach(File::delete);
+	}
+
 	public void placeHoldOnHistoryCleanup() {
 		cleaner.placeHoldOnHistoryCleanup();
 	}
@@ -124,7 +148,7 @@ public class RecoveryManager<T extends Serializable> {
 	}
 
 	public long getNewRecoverableId() {
-		return lastRecoverableId.getAndIncrement();
+		return writeAheadLog.getNewRecoverableId();
 	}
 
 	public static String getCompletedFileName(Recoverable<?> change) {
@@ -138,4 +162,13 @@ public class RecoveryManager<T extends Serializable> {
 	public ChangeHistoryCleaner getChangeHistoryCleaner() {
 		return cleaner;
 	}
+
+	@SuppressWarnings("unchecked")
+	private List<Recoverable<T>> castChanges(List<Recoverable<?>> changes) {
+		List<Recoverable<T>> castChanges = new ArrayList<>();
+		for (Recoverable<?> change: changes) {
+			castChanges.add((Recoverable<T>) change);
+		}
+		return castChanges;
+	}
 }
@@ -0,0 +1,458 @@
+package org.bluedb.disk.recovery;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.disk.file.FileUtils;
+import org.bluedb.disk.serialization.BlueSerializer;
+import org.bluedb.disk.serialization.validation.SerializationException;
+
+/**
+ * Segmented, append-only log of {@link Recoverable} changes. Changes committed at the same time by different
+ * threads are written with one write call (and one fsync if sync on commit is turned on).
+ *
+ * Every segment starts with a checkpoint of the changes that were still pending when it was created, so recovery
+ * only has to read the newest segment with a complete checkpoint and older segments can be deleted whole.
+ *
+ * Record layout:
+ * <pre>
+ * int bodyLength | int crc32(body) | body = byte type, long recoverableId, long timeCreated, payload
+ * </pre>
+ */
+public class WriteAheadLog implements Closeable {
+
+	protected static final String SUFFIX = ".wal";
+	protected static final long DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+	protected static final byte TYPE_PENDING = 1;
+	protected static final byte TYPE_COMPLETE = 2;
+	protected static final byte TYPE_CHECKPOINT = 3;
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final int BODY_HEADER_SIZE = 17;
+
+	private final Path folder;
+	private final BlueSerializer serializer;
+	private final AtomicLong nextRecoverableId;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition commitFinished = lock.newCondition();
+	private final TreeMap<Long, byte[]> pendingRecords = new TreeMap<>();
+	private final TreeMap<Long, Integer> completedCountBySegment = new TreeMap<>();
+
+	private CommitGroup openGroup = new CommitGroup();
+	private boolean isCommitting = false;
+	private FileChannel activeChannel;
+	private long activeSegmentNumber;
+	private long activeSegmentSize;
+	private long segmentSizeLimit = DEFAULT_SEGMENT_SIZE;
+	private volatile boolean syncOnCommit = false;
+
+	public WriteAheadLog(Path folder, BlueSerializer serializer) throws BlueDbException {
+		this.folder = folder;
+		this.serializer = serializer;
+		folder.toFile().mkdirs();
+		long nextId = 0;
+		List<File> segments = getSegmentFiles();
+		for (File segment: segments) {
+			nextId = Math.max(nextId, extractSegmentNumber(segment) + 1);
+		}
+		for (int i = segments.size() - 1; i >= 0; i--) {
+			SegmentContents contents = readSegment(segments.get(i));
+			nextId = Math.max(nextId, contents.maxRecoverableId + 1);
+			if (contents.hasCheckpoint) {
+				pendingRecords.putAll(contents.pendingRecords);
+				break;
+			}  // otherwise we crashed while starting that segment so the one before it is still the last checkpoint
+		}
+		for (File segment: segments) {
+			completedCountBySegment.put(extractSegmentNumber(segment), 0);  // unknown, so don't count them toward retention
+		}
+		nextRecoverableId = new AtomicLong(nextId);
+		startNewSegment(new ArrayList<>(pendingRecords.values()));  // never append behind a possibly torn tail
+	}
+
+	public long getNewRecoverableId() {
+		return nextRecoverableId.getAndIncrement();
+	}
+
+	public void setSyncOnCommit(boolean syncOnCommit) {
+		this.syncOnCommit = syncOnCommit;
+	}
+
+	public void setSegmentSize(long segmentSizeLimit) {
+		this.segmentSizeLimit = segmentSizeLimit;
+	}
+
+	public Path getPath() {
+		return folder;
+	}
+
+	public void appendPending(Recoverable<?> change) throws BlueDbException {
+		byte[] payload;
+		try {
+			payload = serializer.serializeObjectToByteArray(change);
+		} catch (Throwable t) {
+			t.printStackTrace();
+			throw new BlueDbException("error serializing change " + change, t);
+		}
+		byte[] record = createRecord(TYPE_PENDING, change.getRecoverableId(), change.getTimeCreated(), payload);
+		commit(record, change.getRecoverableId(), true);
+	}
+
+	public void appendComplete(Recoverable<?> change) throws BlueDbException {
+		byte[] record = createRecord(TYPE_COMPLETE, change.getRecoverableId(), change.getTimeCreated(), new byte[0]);
+		commit(record, change.getRecoverableId(), false);  // losing this only means re-applying an idempotent change
+	}
+
+	public List<Recoverable<?>> getPendingChanges() {
+		List<byte[]> records;
+		lock.lock();
+		try {
+			records = new ArrayList<>(pendingRecords.values());
+		} finally {
+			lock.unlock();
+		}
+		return deserializeChanges(records);
+	}
+
+	/**
+	 * Reads every pending record that is still in the log, including ones that have since been completed, for
+	 * copying changes made during a backup.
+	 */
+	public List<Recoverable<?>> getAllChanges() throws BlueDbException {
+		Map<Long, byte[]> recordsById = new TreeMap<>();
+		for (File segment: getSegmentFiles()) {
+			SegmentContents contents = readSegment(segment);
+			for (Map.Entry<Long, byte[]> entry: contents.allPendingRecords.entrySet()) {
+				recordsById.putIfAbsent(entry.getKey(), entry.getValue());
+			}
+		}
+		List<Recoverable<?>> changes = deserializeChanges(new ArrayList<>(recordsById.values()));
+		Collections.sort(changes);
+		return changes;
+	}
+
+	/**
+	 * Deletes the oldest segments that aren't needed to keep at least completedChangeLimit completed changes
+	 * in the log. The active segment holds the last checkpoint so it is always kept.
+	 */
+	public void deleteOldSegments(int completedChangeLimit) {
+		List<Long> segmentsToDelete = new ArrayList<>();
+		lock.lock();
+		try {
+			long retainedCompletedChanges = completedCountBySegment.getOrDefault(activeSegmentNumber, 0);
+			for (Long segmentNumber: completedCountBySegment.headMap(activeSegmentNumber, false).descendingKeySet()) {
+				if (retainedCompletedChanges >= completedChangeLimit) {
+					segmentsToDelete.add(segmentNumber);
+				} else {
+					retainedCompletedChanges += completedCountBySegment.get(segmentNumber);
+				}
+			}
+			segmentsToDelete.forEach(completedCountBySegment::remove);
+		} finally {
+			lock.unlock();
+		}
+		for (Long segmentNumber: segmentsToDelete) {
+			getSegmentPath(segmentNumber).toFile().delete();
+		}
+	}
+
+	public List<File> getSegmentFiles() {
+		List<File> segmentsIncludingTemps = FileUtils.getFolderContents(folder, SUFFIX);
+		List<File> segments = new ArrayList<>();
+		for (File file: segmentsIncludingTemps) {
+			if (!FileUtils.isTempFile(file) && extractSegmentNumber(file) >= 0) {
+				segments.add(file);
+			}
+		}
+		segments.sort((f1, f2) -> Long.compare(extractSegmentNumber(f1), extractSegmentNumber(f2)));
+		return segments;
+	}
+
+	public boolean isOpen() {
+		lock.lock();
+		try {
+			return activeChannel.isOpen();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			activeChannel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void commit(byte[] record, long recoverableId, boolean isPending) throws BlueDbException {
+		CommitGroup group;
+		lock.lock();
+		try {
+			if (isPending) {
+				pendingRecords.put(recoverableId, record);
+			} else {
+				pendingRecords.remove(recoverableId);
+			}
+			group = openGroup;
+			group.add(record, recoverableId, isPending);
+			while (!group.isFinished) {
+				if (isCommitting) {
+					commitFinished.awaitUninterruptibly();
+				} else {
+					commitOpenGroup();
+				}
+			}
+			if (group.failure != null && isPending) {
+				pendingRecords.remove(recoverableId, record);  // it isn't in the log, so don't checkpoint it later
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (group.failure != null) {
+			throw group.failure;
+		}
+	}
+
+	/**
+	 * Called with the lock held. Releases it while writing so that other writers can join the next group.
+	 */
+	private void commitOpenGroup() {
+		CommitGroup group = openGroup;
+		openGroup = new CommitGroup();
+		isCommitting = true;
+		List<byte[]> checkpoint = (activeSegmentSize >= segmentSizeLimit) ? getCheckpointRecords(group) : null;
+		lock.unlock();
+		try {
+			if (checkpoint != null) {
+				startNewSegment(checkpoint);
+			}
+			writeGroup(group);
+		} catch (BlueDbException e) {
+			group.failure = e;
+		} finally {
+			lock.lock();
+			isCommitting = false;
+			group.isFinished = true;
+			commitFinished.signalAll();
+		}
+	}
+
+	/**
+	 * Called with the lock held. Leaves out the group's own pending records, they're written right after the
+	 * checkpoint and only if the group's write succeeds.
+	 */
+	private List<byte[]> getCheckpointRecords(CommitGroup group) {
+		List<byte[]> checkpoint = new ArrayList<>();
+		for (Map.Entry<Long, byte[]> entry: pendingRecords.entrySet()) {
+			if (!group.pendingIds.contains(entry.getKey())) {
+				checkpoint.add(entry.getValue());
+			}
+		}
+		return checkpoint;
+	}
+
+	private void writeGroup(CommitGroup group) throws BlueDbException {
+		ByteBuffer buffer = ByteBuffer.allocate(group.size);
+		for (byte[] record: group.records) {
+			buffer.put(record);
+		}
+		buffer.flip();
+		try {
+			writeFully(activeChannel, buffer);
+			if (syncOnCommit && group.needsSync) {
+				activeChannel.force(false);
+			}
+			activeSegmentSize += group.size;
+			lock.lock();
+			try {
+				completedCountBySegment.merge(activeSegmentNumber, group.completedCount, Integer::sum);
+			} finally {
+				lock.unlock();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new BlueDbException("unable to write to change log " + folder, e);
+		}
+	}
+
+	private void startNewSegment(List<byte[]> checkpoint) throws BlueDbException {
+		long segmentNumber = getNewRecoverableId();  // reserving an id keeps segment numbers increasing across restarts
+		Path path = getSegmentPath(segmentNumber);
+		try {
+			FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			int size = 0;
+			for (byte[] record: checkpoint) {
+				size += record.length;
+			}
+			byte[] checkpointMarker = createRecord(TYPE_CHECKPOINT, segmentNumber, System.currentTimeMillis(), new byte[0]);
+			ByteBuffer buffer = ByteBuffer.allocate(size + checkpointMarker.length);
+			checkpoint.forEach(buffer::put);
+			buffer.put(checkpointMarker);
+			buffer.flip();
+			writeFully(channel, buffer);
+			if (syncOnCommit) {
+				channel.force(true);
+			}
+			FileChannel previousChannel = activeChannel;
+			lock.lock();
+			try {
+				activeChannel = channel;
+				activeSegmentNumber = segmentNumber;
+				activeSegmentSize = buffer.limit();
+				completedCountBySegment.put(segmentNumber, 0);
+			} finally {
+				lock.unlock();
+			}
+			if (previousChannel != null) {
+				previousChannel.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new BlueDbException("unable to start change log segment " + path, e);
+		}
+	}
+
+	private List<Recoverable<?>> deserializeChanges(List<byte[]> records) {
+		List<Recoverable<?>> changes = new ArrayList<>();
+		for (byte[] record: records) {
+			try {
+				int payloadStart = RECORD_HEADER_SIZE + BODY_HEADER_SIZE;
+				byte[] payload = new byte[record.length - payloadStart];
+				System.arraycopy(record, payloadStart, payload, 0, payload.length);
+				changes.add((Recoverable<?>) serializer.deserializeObjectFromByteArray(payload));
+			} catch (SerializationException | ClassCastException e) {
+				e.printStackTrace();  // skip it like we would a corrupt change file
+			}
+		}
+		return changes;
+	}
+
+	private Path getSegmentPath(long segmentNumber) {
+		return Paths.get(folder.toString(), segmentNumber + SUFFIX);
+	}
+
+	protected static long extractSegmentNumber(File file) {
+		try {
+			String name = file.getName();
+			return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			return -1;
+		}
+	}
+
+	protected static byte[] createRecord(byte type, long recoverableId, long timeCreated, byte[] payload) {
+		int bodyLength = BODY_HEADER_SIZE + payload.length;
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + bodyLength);
+		buffer.putInt(bodyLength);
+		buffer.putInt(0);  // crc goes here once the body is in place
+		buffer.put(type);
+		buffer.putLong(recoverableId);
+		buffer.putLong(timeCreated);
+		buffer.put(payload);
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), RECORD_HEADER_SIZE, bodyLength);
+		buffer.putInt(4, (int) crc.getValue());
+		return buffer.array();
+	}
+
+	/**
+	 * Reads records until the end of the file or the first torn or corrupt record.
+	 */
+	protected static SegmentContents readSegment(File file) throws BlueDbException {
+		SegmentContents contents = new SegmentContents();
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(file.toPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new BlueDbException("unable to read change log segment " + file, e);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		CRC32 crc = new CRC32();
+		while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+			int recordStart = buffer.position();
+			int bodyLength = buffer.getInt();
+			int expectedCrc = buffer.getInt();
+			if (bodyLength < BODY_HEADER_SIZE || bodyLength > buffer.remaining()) {
+				break;
+			}
+			crc.reset();
+			crc.update(bytes, buffer.position(), bodyLength);
+			if ((int) crc.getValue() != expectedCrc) {
+				break;
+			}
+			byte type = buffer.get();
+			long recoverableId = buffer.getLong();
+			buffer.position(recordStart + RECORD_HEADER_SIZE + bodyLength);
+			if (type == TYPE_PENDING) {
+				byte[] record = new byte[RECORD_HEADER_SIZE + bodyLength];
+				System.arraycopy(bytes, recordStart, record, 0, record.length);
+				contents.pendingRecords.put(recoverableId, record);
+				contents.allPendingRecords.putIfAbsent(recoverableId, record);
+			} else if (type == TYPE_COMPLETE) {
+				contents.pendingRecords.remove(recoverableId);
+			} else if (type == TYPE_CHECKPOINT) {
+				contents.hasCheckpoint = true;
+			}
+			contents.maxRecoverableId = Math.max(contents.maxRecoverableId, recoverableId);
+		}
+		return contents;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	protected static class SegmentContents {
+		final Map<Long, byte[]> pendingRecords = new TreeMap<>();
+		final Map<Long, byte[]> allPendingRecords = new TreeMap<>();
+		boolean hasCheckpoint = false;
+		long maxRecoverableId = -1;
+	}
+
+	private static class CommitGroup {
+		final List<byte[]> records = new ArrayList<>();
+		final Set<Long> pendingIds = new HashSet<>();
+		int size = 0;
+		int completedCount = 0;
+		boolean needsSync = false;
+		boolean isFinished = false;
+		BlueDbException failure = null;
+
+		void add(byte[] record, long recoverableId, boolean isPending) {
+			records.add(record);
+			size += record.length;
+			if (isPending) {
+				pendingIds.add(recoverableId);
+				needsSync = true;
+			} else {
+				completedCount++;
+			}
+		}
+	}
+}
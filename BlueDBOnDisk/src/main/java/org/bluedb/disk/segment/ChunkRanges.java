@@ -0,0 +1,89 @@
+package org.bluedb.disk.segment;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In memory copy of the ranges of the chunk files in a segment folder, so that finding the chunk for a key doesn't
+ * have to list and parse the folder. The folder is read the first time the ranges are needed and again after
+ * {@link #invalidate()}.
+ */
+public class ChunkRanges {
+
+	private final Path segmentPath;
+	private volatile ConcurrentSkipListSet<Range> ranges;
+
+	public ChunkRanges(Path segmentPath) {
+		this.segmentPath = segmentPath;
+	}
+
+	public boolean contains(Range range) {
+		return getRanges().contains(range);
+	}
+
+	public void add(Range range) {
+		if (range != null) {
+			getRanges().add(range);
+		}
+	}
+
+	public void remove(Range range) {
+		if (range != null) {
+			getRanges().remove(range);
+		}
+	}
+
+	public void invalidate() {
+		ranges = null;
+	}
+
+	public List<Range> getRangesInOrder() {
+		return new ArrayList<>(getRanges());
+	}
+
+	public List<File> getOrderedFilesInRange(Range range) {
+		List<File> files = new ArrayList<>();
+		for (Range chunkRange: getRanges().headSet(new Range(range.getEnd(), Long.MAX_VALUE), true)) {
+			if (chunkRange.overlaps(range)) {
+				files.add(toFile(chunkRange));
+			}
+		}
+		return files;
+	}
+
+	public List<File> getOrderedFilesEnclosedInRange(Range range) {
+		List<File> files = new ArrayList<>();
+		if (range.getStart() > range.getEnd()) {
+			return files;
+		}
+		Range first = new Range(range.getStart(), Long.MIN_VALUE);
+		Range last = new Range(range.getEnd(), Long.MAX_VALUE);
+		for (Range chunkRange: getRanges().subSet(first, true, last, true)) {
+			if (range.encloses(chunkRange)) {
+				files.add(toFile(chunkRange));
+			}
+		}
+		return files;
+	}
+
+	private File toFile(Range chunkRange) {
+		return new File(segmentPath.toFile(), chunkRange.toUnderscoreDelimitedString());
+	}
+
+	private ConcurrentSkipListSet<Range> getRanges() {
+		ConcurrentSkipListSet<Range> loadedRanges = ranges;
+		if (loadedRanges == null) {
+			synchronized (this) {
+				loadedRanges = ranges;
+				if (loadedRanges == null) {
+					loadedRanges = new ConcurrentSkipListSet<>(Segment.getAllFileRangesInOrder(segmentPath));
+					ranges = loadedRanges;
+				}
+			}
+		}
+		return loadedRanges;
+	}
+}
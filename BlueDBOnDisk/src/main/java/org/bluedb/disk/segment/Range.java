@@ -1,7 +1,11 @@
 package org.bluedb.disk.segment;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
 
 import org.bluedb.disk.Blutils;
 
@@ -48,6 +52,49 @@ public final class Range implements Comparable<Range> {
 		return false;
 	}
 
+	/**
+	 * @return the ranges sorted with overlapping and adjacent ranges combined, or null if ranges is null
+	 */
+	public static List<Range> merge(Collection<Range> ranges) {
+		if (ranges == null) {
+			return null;
+		}
+		List<Range> sorted = new ArrayList<>(ranges);
+		Collections.sort(sorted);
+		LinkedList<Range> merged = new LinkedList<>();
+		for (Range range: sorted) {
+			Range last = merged.peekLast();
+			if (last != null && (last.end == Long.MAX_VALUE || range.start <= last.end + 1)) {
+				merged.removeLast();
+				merged.add(new Range(last.start, Math.max(last.end, range.end)));
+			} else {
+				merged.add(range);
+			}
+		}
+		return new ArrayList<>(merged);
+	}
+
+	/**
+	 * @return true if any range in the first list overlaps with any range in the second, both of which have to be
+	 *         sorted and not overlap within themselves, like the result of {@link #merge(Collection)}
+	 */
+	public static boolean anyOverlap(List<Range> sortedRanges, List<Range> otherSortedRanges) {
+		int i = 0;
+		int j = 0;
+		while (i < sortedRanges.size() && j < otherSortedRanges.size()) {
+			Range range = sortedRanges.get(i);
+			Range otherRange = otherSortedRanges.get(j);
+			if (range.overlaps(otherRange)) {
+				return true;
+			} else if (range.end < otherRange.start) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return false;
+	}
+
 	public String toUnderscoreDelimitedString() {
 		return start + "_" + end;
 	}
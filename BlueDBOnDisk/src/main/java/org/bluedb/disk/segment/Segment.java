@@ -5,9 +5,13 @@ import java.io.Serializable;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import org.bluedb.api.exceptions.BlueDbException;
@@ -22,8 +26,10 @@ import org.bluedb.disk.file.RangeNamedFiles;
 import org.bluedb.disk.lock.BlueReadLock;
 import org.bluedb.disk.lock.BlueWriteLock;
 import org.bluedb.disk.recovery.IndividualChange;
+import org.bluedb.disk.segment.rollup.DeltaRollupTarget;
 import org.bluedb.disk.segment.rollup.RollupTarget;
 import org.bluedb.disk.segment.rollup.Rollupable;
+import org.bluedb.disk.segment.writer.BatchListener;
 import org.bluedb.disk.segment.writer.BatchWriter;
 import org.bluedb.disk.segment.writer.DeleteWriter;
 import org.bluedb.disk.segment.writer.InsertWriter;
@@ -33,27 +39,50 @@ import org.bluedb.disk.serialization.BlueEntity;
 
 public class Segment <T extends Serializable> implements Comparable<Segment<T>> {
 
+	protected static final long DELTA_SIZE_BEFORE_FOLD = 64 * 1024;
+	protected static final long DELTA_FOLD_DELAY = 60_000;
+
 	private final Rollupable rollupable;
 	private final FileManager fileManager;
 	private final Path segmentPath;
 	private final Range segmentRange;
 	private final List<Long> rollupLevels;
 	private final Range preSegmentRange;
+	private final WriteMode writeMode;
+	private final SegmentDelta<T> delta;
+	private final SegmentManager<T> segmentManager;
+	private final ChunkRanges chunkRanges;
 
 	public Segment(Path segmentPath, Range segmentRange, Rollupable rollupable, FileManager fileManager, final List<Long> rollupLevels) {
+		this(segmentPath, segmentRange, rollupable, fileManager, rollupLevels, WriteMode.REWRITE_CHUNK);
+	}
+
+	public Segment(Path segmentPath, Range segmentRange, Rollupable rollupable, FileManager fileManager, final List<Long> rollupLevels, WriteMode writeMode) {
+		this(segmentPath, segmentRange, rollupable, fileManager, rollupLevels, writeMode, null);
+	}
+
+	public Segment(Path segmentPath, Range segmentRange, SegmentManager<T> segmentManager) {
+		this(segmentPath, segmentRange, segmentManager.getRollupable(), segmentManager.getFileManager(), segmentManager.getPathManager().getRollupLevels(), segmentManager.getWriteMode(), segmentManager);
+	}
+
+	private Segment(Path segmentPath, Range segmentRange, Rollupable rollupable, FileManager fileManager, final List<Long> rollupLevels, WriteMode writeMode, SegmentManager<T> segmentManager) {
 		this.segmentPath = segmentPath;
 		this.segmentRange = segmentRange;
 		this.fileManager = fileManager;
 		this.rollupLevels = rollupLevels;
 		this.rollupable = rollupable;
 		this.preSegmentRange = (segmentRange==null) ? null : new Range(0, segmentRange.getStart() - 1);
+		this.writeMode = writeMode;
+		this.delta = (writeMode == WriteMode.APPEND_DELTA) ? new SegmentDelta<T>(segmentPath, fileManager) : null;
+		this.segmentManager = segmentManager;
+		this.chunkRanges = new ChunkRanges(segmentPath);
 	}
 
 	protected static <T extends Serializable> Segment<T> getTestSegment () {
 		return new Segment<T>();
 	}
 
-	protected Segment() {segmentPath = null;segmentRange = null;fileManager = null;rollupLevels = null;rollupable = null;preSegmentRange = null;}
+	protected Segment() {segmentPath = null;segmentRange = null;fileManager = null;rollupLevels = null;rollupable = null;preSegmentRange = null;writeMode = WriteMode.REWRITE_CHUNK;delta = null;segmentManager = null;chunkRanges = null;}
 
 	@Override
 	public String toString() {
@@ -65,20 +94,73 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 	}
 
 	public void update(BlueKey newKey, T newValue) throws BlueDbException {
+		if (delta != null) {
+			appendToDelta(IndividualChange.createInsertChange(newKey, newValue));  // updates are only made to values that were read first
+			return;
+		}
 		long groupingNumber = newKey.getGroupingNumber();
 		modifyChunk(groupingNumber, new UpdateWriter<T>(newKey, newValue));
 	}
 
 	public void insert(BlueKey newKey, T newValue) throws BlueDbException {
+		if (delta != null) {
+			appendToDelta(IndividualChange.createInsertChange(newKey, newValue));
+			return;
+		}
 		long groupingNumber = newKey.getGroupingNumber();
 		modifyChunk(groupingNumber, new InsertWriter<T>(newKey, newValue));
 	}
 
 	public void delete(BlueKey key) throws BlueDbException {
+		if (delta != null) {
+			appendToDelta(IndividualChange.createDeleteChange(key));
+			return;
+		}
 		long groupingNumber = key.getGroupingNumber();
 		modifyChunk(groupingNumber, new DeleteWriter<T>(key));
 	}
 
+	private void appendToDelta(IndividualChange<T> change) throws BlueDbException {
+		reportSegmentExists();
+		long deltaSize = getDelta().append(change);
+		if (deltaSize > DELTA_SIZE_BEFORE_FOLD) {
+			foldDelta();
+		} else {
+			RollupTarget target = new DeltaRollupTarget(segmentRange.getStart(), segmentRange, DELTA_FOLD_DELAY);
+			rollupable.reportWrites(Arrays.asList(target));
+		}
+	}
+
+	/**
+	 * Applies the changes in the delta to the chunk files and removes the delta. Safe to repeat if interrupted since
+	 * the delta only holds the final state of each key.
+	 */
+	public void foldDelta() throws BlueDbException {
+		if (delta == null || !getDelta().exists()) {
+			return;
+		}
+		LinkedList<IndividualChange<T>> changes = getDelta().getChangesInOrder();
+		if (!changes.isEmpty()) {
+			applyChangesToChunks(changes, null);
+		}
+		getDelta().delete();
+	}
+
+	public LinkedList<IndividualChange<T>> getDeltaChanges() throws BlueDbException {
+		if (delta == null) {
+			return new LinkedList<>();
+		}
+		return getDelta().getChangesInOrder();
+	}
+
+	public BlueReadLock<Path> acquireDeltaReadLock() {
+		return (delta == null) ? null : acquireReadLock(getDelta().getPath());
+	}
+
+	public WriteMode getWriteMode() {
+		return writeMode;
+	}
+
 	public void modifyChunk(long groupingNumber, StreamingWriter<T> processor) throws BlueDbException {
 		Path targetPath, tmpPath;
 		try (BlueObjectInput<BlueEntity<T>> input = getObjectInputFor(groupingNumber)) {
@@ -91,17 +173,61 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 
 		try (BlueWriteLock<Path> targetFileLock = acquireWriteLock(targetPath)) {
 			FileUtils.moveFile(tmpPath, targetFileLock);
+			getChunkRanges().add(Range.fromFileWithUnderscoreDelmimitedName(targetPath.toFile()));
 		}
 		reportWrite(targetPath);
 	}
 
 	public T get(BlueKey key) throws BlueDbException {
+		if (delta != null) {
+			IndividualChange<T> change = getDelta().getLatestChange(key);
+			if (change != null) {
+				return change.getNewValue();
+			}
+		}
 		long groupingNumber = key.getGroupingNumber();
 		try(BlueObjectInput<BlueEntity<T>> inputStream = getObjectInputFor(groupingNumber)) {
 			return get(key, inputStream);
 		}
 	}
 
+	/**
+	 * Looks up the keys in one pass over each chunk they're in, instead of opening and scanning the chunk per key.
+	 * @param sortedKeys keys in this segment, sorted in the order they are stored in
+	 * @param values where to put the values that are found
+	 */
+	public void getAll(List<BlueKey> sortedKeys, Map<BlueKey, T> values) throws BlueDbException {
+		Map<BlueKey, IndividualChange<T>> deltaChanges = (delta == null) ? Collections.emptyMap() : getDelta().getLatestChanges();
+		BlueObjectInput<BlueEntity<T>> inputStream = null;
+		Range chunkRange = null;
+		try {
+			for (BlueKey key: sortedKeys) {
+				IndividualChange<T> change = deltaChanges.get(key);
+				T value;
+				if (change != null) {
+					value = change.getNewValue();
+				} else {
+					long groupingNumber = key.getGroupingNumber();
+					if (inputStream == null || !chunkRange.containsInclusive(groupingNumber)) {
+						if (inputStream != null) {
+							inputStream.close();
+						}
+						inputStream = getObjectInputFor(groupingNumber);
+						chunkRange = Range.fromFileWithUnderscoreDelmimitedName(inputStream.getPath().toFile());
+					}
+					value = getNext(key, inputStream);
+				}
+				if (value != null) {
+					values.put(key, value);
+				}
+			}
+		} finally {
+			if (inputStream != null) {
+				inputStream.close();
+			}
+		}
+	}
+
 	public Range getRange() {
 		return segmentRange;
 	}
@@ -110,6 +236,14 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 		return new SegmentEntityIterator<>(this, highestGroupingNumberCompleted, range.getStart(), range.getEnd());
 	}
 
+	/**
+	 * @param readAheadAfter when the iterator may start reading ahead, so that read locks are taken in the same order
+	 *        as a scan that reads each file when it's needed
+	 */
+	public SegmentEntityIterator<T> getIterator(long highestGroupingNumberCompleted, Range range, CompletableFuture<?> readAheadAfter) {
+		return new SegmentEntityIterator<>(this, highestGroupingNumberCompleted, range.getStart(), range.getEnd(), readAheadAfter);
+	}
+
 	public SegmentEntityIterator<T> getIterator(long highestGroupingNumberCompleted, long rangeMin, long rangeMax) {
 		return new SegmentEntityIterator<>(this, highestGroupingNumberCompleted, rangeMin, rangeMax);
 	}
@@ -118,20 +252,96 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 		return new SegmentEntityIterator<>(this, min, max);
 	}
 
+	/**
+	 * Counts what {@link #getIterator(long, long, long)} would return. Records are counted from the chunk footers or
+	 * their length prefixes, and only records that might be in range without their grouping number being in range,
+	 * like a TimeFrameKey that started earlier, are deserialized.
+	 */
+	public int count(long highestGroupingNumberCompleted, long rangeMin, long rangeMax) throws BlueDbException {
+		if (delta != null && getDelta().exists()) {
+			int count = 0;
+			try (SegmentEntityIterator<T> iterator = getIterator(highestGroupingNumberCompleted, rangeMin, rangeMax)) {
+				while (iterator.hasNext()) {  // the delta has to be merged over the chunks one key at a time
+					iterator.next();
+					count++;
+				}
+			}
+			return count;
+		}
+		int count = 0;
+		for (File file: getOrderedFilesInRange(new Range(highestGroupingNumberCompleted, rangeMax))) {
+			Range fileRange = Range.fromFileWithUnderscoreDelmimitedName(file);
+			if (highestGroupingNumberCompleted >= fileRange.getEnd()) {
+				continue;  // we've already counted the rolled up file that includes this range
+			}
+			try (BlueObjectInput<BlueEntity<T>> input = getObjectInputFor(fileRange.getStart())) {
+				count += count(input, highestGroupingNumberCompleted, rangeMin, rangeMax);
+				highestGroupingNumberCompleted = SegmentEntityIterator.extractMaxGroupingNumber(input);
+			}
+		}
+		return count;
+	}
+
+	protected static <T extends Serializable> int count(BlueObjectInput<BlueEntity<T>> input, long highestGroupingNumberCompleted, long rangeMin, long rangeMax) {
+		long firstGroupingNumberInRange = Math.max(rangeMin, highestGroupingNumberCompleted + 1);
+		int countInRange = input.countRecordsBetween(firstGroupingNumberInRange, rangeMax);
+		if (countInRange < 0) {
+			return countWithoutFooter(input, highestGroupingNumberCompleted, rangeMin, rangeMax);
+		}
+		if (firstGroupingNumberInRange == rangeMin && input.countRecordsBetween(highestGroupingNumberCompleted + 1, rangeMin - 1) > 0) {
+			BlueKey key;
+			while ((key = input.peekKey()) != null && key.getGroupingNumber() < rangeMin) {
+				input.skipNext();
+				if (key.getGroupingNumber() > highestGroupingNumberCompleted && key.isInRange(rangeMin, rangeMax)) {
+					countInRange++;
+				}
+			}
+		}
+		return countInRange;
+	}
+
+	private static <T extends Serializable> int countWithoutFooter(BlueObjectInput<BlueEntity<T>> input, long highestGroupingNumberCompleted, long rangeMin, long rangeMax) {
+		Range fileRange = Range.fromUnderscoreDelmimitedString(input.getPath().getFileName().toString());
+		if (fileRange != null && fileRange.getStart() > highestGroupingNumberCompleted && fileRange.getStart() >= rangeMin && fileRange.getEnd() <= rangeMax) {
+			return input.countRemainingRecords();  // every record in the file is in range
+		}
+		int count = 0;
+		BlueKey key;
+		while ((key = input.peekKey()) != null) {
+			input.skipNext();
+			if (key.getGroupingNumber() > highestGroupingNumberCompleted && key.isInRange(rangeMin, rangeMax)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
 	public void applyChanges(LinkedList<IndividualChange<T>> changeQueueForSegment) throws BlueDbException {
+		applyChanges(changeQueueForSegment, null);
+	}
+
+	/**
+	 * @param listener hears about each chunk's changes with the values they replaced before the chunk is replaced, or null
+	 */
+	public void applyChanges(LinkedList<IndividualChange<T>> changeQueueForSegment, BatchListener<T> listener) throws BlueDbException {
+		foldDelta();  // the batch has to land on top of anything in the delta
+		applyChangesToChunks(changeQueueForSegment, listener);
+	}
+
+	private void applyChangesToChunks(LinkedList<IndividualChange<T>> changeQueueForSegment, BatchListener<T> listener) throws BlueDbException {
 		performPreBatchRollups();
 		SegmentBatch<T> segmentBatch = new SegmentBatch<>(changeQueueForSegment);
-		List<Range> existingChunkRanges = getAllFileRangesInOrder(getPath());
+		List<Range> existingChunkRanges = getChunkRangesInOrder();
 		List<ChunkBatch<T>> chunkBatches = segmentBatch.breakIntoChunks(existingChunkRanges, this);
 		for (ChunkBatch<T> chunkBatch: chunkBatches) {
 			String fileName = chunkBatch.getRange().toUnderscoreDelimitedString();
 			Path path = Paths.get(segmentPath.toString(), fileName);
-			modifyChunk(path, new BatchWriter<T>(chunkBatch.getChangesInOrder()));
+			modifyChunk(path, new BatchWriter<T>(chunkBatch.getChangesInOrder(), listener));
 		}
 	}
 
 	private void performPreBatchRollups() throws BlueDbException {
-		List<Range> existingChunkRanges = getAllFileRangesInOrder(getPath());
+		List<Range> existingChunkRanges = getChunkRangesInOrder();
 		List<Range> rangesToRollup = determineRangesRequiringRollup(existingChunkRanges, getMinimumRollupSizeBeforeBatch());
 		for (Range rangeToRollup: rangesToRollup) {
 			rollup(rangeToRollup, false);
@@ -160,14 +370,17 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 		}
 		try (BlueWriteLock<Path> targetFileLock = acquireWriteLock(targetPath)) {
 			FileUtils.moveFile(tmpPath, targetFileLock);
+			getChunkRanges().add(Range.fromFileWithUnderscoreDelmimitedName(targetPath.toFile()));
 		}
 		reportWrite(targetPath);
 	}
 
 	public void rollup(Range timeRange) throws BlueDbException {
 		rollup(timeRange, true);
-		if (getAllFileRangesInOrder(segmentPath).size() == 0) {
-			segmentPath.toFile().delete();
+		if (getChunkRangesInOrder().size() == 0) {
+			if (segmentPath.toFile().delete() && segmentManager != null) {
+				segmentManager.reportSegmentDeleted(this);
+			}
 		}
 	}
 
@@ -175,6 +388,7 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 		if (!isValidRollupRange(timeRange)) {
 			throw new BlueDbException("Not a valid rollup size: " + timeRange);
 		}
+		getChunkRanges().invalidate();  // this is also how an interrupted rollup gets finished, so start from what's on disk
 		List<File> filesToRollup = getOrderedFilesEnclosedInRange(timeRange);
 		filesToRollup = filterAndDeleteEmptyFiles(filesToRollup);
 		if (abortIfOnlyOneFile && filesToRollup.size() < 2) {
@@ -197,6 +411,7 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 		for (File file: orderedFiles) {
 			if (file.length() == 0) {
 				fileManager.lockDeleteUnlock(file);
+				getChunkRanges().remove(Range.fromFileWithUnderscoreDelmimitedName(file));
 			} else {
 				results.add(file);
 			}
@@ -218,16 +433,26 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 		try(BlueObjectOutput<BlueEntity<T>> output = getObjectOutputFor(destination)) {
 			for (File file: sources) {
 				try(BlueObjectInput<BlueEntity<T>> inputStream = getObjectInputFor(file.toPath())) {
-					output.writeAll(inputStream);
+					if (!inputStream.transferRemainingRecords(output)) {  // splice the whole file in if it has a footer
+						copyRecords(inputStream, output);
+					}
 				}
 			}
 		}
 	}
 
+	private static <T extends Serializable> void copyRecords(BlueObjectInput<BlueEntity<T>> input, BlueObjectOutput<BlueEntity<T>> output) throws BlueDbException {
+		BlueKey key;
+		while ((key = input.peekKey()) != null) {
+			input.copyNextTo(output, key.getGroupingNumber());
+		}
+	}
+
 	private void cleanupFiles(List<File> filesToRollup) throws BlueDbException {
 		for (File file: filesToRollup) {
 			try (BlueWriteLock<Path> writeLock = acquireWriteLock(file.toPath())){
 				FileUtils.deleteFile(writeLock);
+				getChunkRanges().remove(Range.fromFileWithUnderscoreDelmimitedName(file));
 			}
 		}
 	}
@@ -240,8 +465,10 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 			}
 
 			FileUtils.moveFile(tempRolledupPath, targetFileLock);
+			getChunkRanges().add(Range.fromFileWithUnderscoreDelmimitedName(newRolledupPath.toFile()));
 			for (BlueWriteLock<Path> writeLock: sourceFileWriteLocks) {
 				FileUtils.deleteFile(writeLock);
+				getChunkRanges().remove(Range.fromFileWithUnderscoreDelmimitedName(writeLock.getKey().toFile()));
 			}
 		} finally {
 			for (BlueWriteLock<Path> lock: sourceFileWriteLocks) {
@@ -260,15 +487,50 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 				.collect(Collectors.toList());
 	}
 
+	public List<Range> getChunkRangesInOrder() {
+		return getChunkRanges().getRangesInOrder();
+	}
+
 	public List<File> getOrderedFilesEnclosedInRange(Range range) {
-		return RangeNamedFiles.getOrderedFilesEnclosedInRange(segmentPath, range);
+		return getChunkRanges().getOrderedFilesEnclosedInRange(range);
 	}
 
 	public List<File> getOrderedFilesInRange(Range range) {
-		return RangeNamedFiles.getOrderedFilesInRange(segmentPath, range);
+		return getChunkRanges().getOrderedFilesInRange(range);
+	}
+
+	/**
+	 * A segment that exists on disk shares the ranges of the instance the SegmentManager keeps for it, so every
+	 * instance sees the same chunks.
+	 */
+	protected ChunkRanges getChunkRanges() {
+		if (segmentManager == null) {
+			return chunkRanges;
+		}
+		Segment<T> existingSegment = segmentManager.getExistingSegment(this);
+		if (existingSegment == null) {
+			return new ChunkRanges(segmentPath);  // no folder yet, so nothing worth caching
+		}
+		return existingSegment.chunkRanges;
+	}
+
+	/**
+	 * Like the chunk ranges, a segment that exists on disk shares the delta of the instance the SegmentManager keeps
+	 * for it, so that the changes the delta keeps in memory are the same for every instance.
+	 */
+	protected SegmentDelta<T> getDelta() {
+		if (delta == null || segmentManager == null) {
+			return delta;
+		}
+		Segment<T> existingSegment = segmentManager.getExistingSegment(this);
+		if (existingSegment == null) {
+			return delta;  // nothing written yet, so there's nothing to keep in memory
+		}
+		return existingSegment.delta;
 	}
 
 	protected BlueObjectOutput<BlueEntity<T>> getObjectOutputFor(Path path) throws BlueDbException {
+		reportSegmentExists();  // the output creates the segment folder if it isn't there yet
 		BlueWriteLock<Path> lock = acquireWriteLock(path);
 		return fileManager.getBlueOutputStream(lock);
 	}
@@ -284,19 +546,25 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 		return fileManager.getBlueInputStream(lock);
 	}
 
+	protected BlueObjectInput<BlueEntity<T>> readAheadObjectInputFor(long groupingNumber) throws BlueDbException {
+		BlueReadLock<Path> lock = getReadLockFor(groupingNumber);
+		reportRead(lock.getKey());
+		return fileManager.readAheadBlueInputStream(lock);
+	}
+
+	public FileManager getFileManager() {
+		return fileManager;
+	}
+
 	public BlueReadLock<Path> getReadLockFor(long groupingNumber) throws BlueDbException {
-		for (long rollupLevel: rollupLevels) {
-			Path path = getPathFor(groupingNumber, rollupLevel);
-			BlueReadLock<Path> lock = fileManager.getReadLockIfFileExists(path);
-			if (lock != null) {
-				return lock;
-			}
-		}
-		if (groupingNumber < segmentRange.getStart()) {
-			Path path = getPathFor(preSegmentRange);
-			BlueReadLock<Path> lock = fileManager.getReadLockIfFileExists(path);
-			if (lock != null) {
-				return lock;
+		ChunkRanges existingChunkRanges = getChunkRanges();
+		for (Range chunkRange: calculatePossibleChunkRanges(groupingNumber)) {
+			if (existingChunkRanges.contains(chunkRange)) {
+				BlueReadLock<Path> lock = fileManager.getReadLockIfFileExists(getPathFor(chunkRange));
+				if (lock != null) {
+					return lock;
+				}
+				existingChunkRanges.invalidate();  // rolled up while we waited for the lock, so look at the folder again
 			}
 		}
 		Path path = getPathFor(groupingNumber, 1);
@@ -307,6 +575,12 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 		return segmentPath;
 	}
 
+	private void reportSegmentExists() {
+		if (segmentManager != null) {
+			segmentManager.reportSegmentExists(this);
+		}
+	}
+
 	protected void reportWrite(Path path) {
 		String fileName = path.toFile().getName();
 		Range targetRange = Range.fromUnderscoreDelmimitedString(fileName);
@@ -376,15 +650,66 @@ public class Segment <T extends Serializable> implements Comparable<Segment<T>>
 	}
 
 	protected static <T extends Serializable> T get(BlueKey key, BlueObjectInput<BlueEntity<T>> inputStream) {
-		while(inputStream.hasNext()) {
-			BlueEntity<T> next = inputStream.next();
-			if (next.getKey().equals(key)) {
-				return next.getValue();
+		if (inputStream.hasKeyOffsetFooter()) {
+			return getUsingFooter(key, inputStream);
+		}
+		BlueKey nextKey;
+		while((nextKey = inputStream.peekKey()) != null) {
+			if (nextKey.equals(key)) {
+				return valueOfNext(key, inputStream);
+			}
+			inputStream.skipNext();
+		}
+		return null;
+	}
+
+	private static <T extends Serializable> T getUsingFooter(BlueKey key, BlueObjectInput<BlueEntity<T>> inputStream) {
+		long groupingNumber = key.getGroupingNumber();
+		if (!inputStream.skipToGroupingNumber(groupingNumber)) {
+			return null;
+		}
+		BlueKey nextKey;
+		while((nextKey = inputStream.peekKey()) != null) {
+			if (nextKey.equals(key)) {
+				return valueOfNext(key, inputStream);
+			} else if (nextKey.getGroupingNumber() > groupingNumber) {
+				return null;  // records are sorted so we've passed where it would be
 			}
+			inputStream.skipNext();
 		}
 		return null;
 	}
 
+	/**
+	 * Moves forward to the key without going back, so keys have to be asked for in the order they are stored in.
+	 */
+	protected static <T extends Serializable> T getNext(BlueKey key, BlueObjectInput<BlueEntity<T>> inputStream) {
+		BlueKey nextKey = inputStream.peekKey();
+		if (nextKey != null && nextKey.getGroupingNumber() < key.getGroupingNumber() && inputStream.hasKeyOffsetFooter()) {
+			if (!inputStream.skipToGroupingNumber(key.getGroupingNumber())) {
+				return null;
+			}
+		}
+		while((nextKey = inputStream.peekKey()) != null) {
+			int comparison = nextKey.compareTo(key);
+			if (comparison == 0) {
+				return valueOfNext(key, inputStream);
+			} else if (comparison > 0) {
+				return null;  // records are sorted so we've passed where it would be
+			}
+			inputStream.skipNext();
+		}
+		return null;
+	}
+
+	private static <T extends Serializable> T valueOfNext(BlueKey key, BlueObjectInput<BlueEntity<T>> inputStream) {
+		BlueEntity<T> next = inputStream.next();
+		if (next == null || !next.getKey().equals(key)) {
+			return null;  // the value was corrupted so the record was skipped
+		}
+		return next.getValue();
+	}
+
 	@Override
 	public int hashCode() {
 		return 31 + ((segmentPath == null) ? 0 : segmentPath.hashCode());
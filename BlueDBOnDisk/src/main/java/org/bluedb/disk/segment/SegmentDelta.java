@@ -0,0 +1,120 @@
+package org.bluedb.disk.segment;
+
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedList;
+import java.util.TreeMap;
+
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.disk.file.FileManager;
+import org.bluedb.disk.file.FileUtils;
+import org.bluedb.disk.lock.BlueReadLock;
+import org.bluedb.disk.lock.BlueWriteLock;
+import org.bluedb.disk.recovery.IndividualChange;
+
+/**
+ * Append only log of single key changes that haven't been folded into a segment's chunk files yet. Changes in the
+ * delta are always newer than what is in the chunk files.
+ * 
+ * The latest change to each key is kept in memory once the delta has been read, and kept up to date as changes are
+ * appended, so that looking up a key doesn't read the whole file. The delta is folded before it gets big, which keeps
+ * this small.
+ */
+public class SegmentDelta<T extends Serializable> {
+
+	public static final String FILENAME = "delta";
+
+	private final Path path;
+	private final FileManager fileManager;
+	private TreeMap<BlueKey, IndividualChange<T>> latestChanges;  // null until the delta is first read
+
+	public SegmentDelta(Path segmentPath, FileManager fileManager) {
+		this.path = Paths.get(segmentPath.toString(), FILENAME);
+		this.fileManager = fileManager;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public boolean exists() {
+		return fileManager.exists(path);
+	}
+
+	/**
+	 * @return the size of the delta file after the append
+	 */
+	public long append(IndividualChange<T> change) throws BlueDbException {
+		try (BlueWriteLock<Path> writeLock = fileManager.getLockManager().acquireWriteLock(path)) {
+			long size = fileManager.appendObject(writeLock, change);
+			synchronized (this) {
+				if (latestChanges != null) {
+					latestChanges.put(change.getKey(), change);
+				}
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * @return the latest change to key, or null if key hasn't been changed since the delta was last folded
+	 */
+	public IndividualChange<T> getLatestChange(BlueKey key) throws BlueDbException {
+		loadLatestChanges();
+		synchronized (this) {
+			return latestChanges.get(key);
+		}
+	}
+
+	/**
+	 * @return a copy of the latest change to each key, sorted by key
+	 */
+	public TreeMap<BlueKey, IndividualChange<T>> getLatestChanges() throws BlueDbException {
+		loadLatestChanges();
+		synchronized (this) {
+			return new TreeMap<>(latestChanges);
+		}
+	}
+
+	/**
+	 * @return the latest change to each key, sorted by key
+	 */
+	public LinkedList<IndividualChange<T>> getChangesInOrder() throws BlueDbException {
+		return new LinkedList<>(getLatestChanges().values());
+	}
+
+	public void delete() {
+		try (BlueWriteLock<Path> writeLock = fileManager.getLockManager().acquireWriteLock(path)) {
+			FileUtils.deleteFile(writeLock);
+			synchronized (this) {
+				latestChanges = new TreeMap<>();
+			}
+		}
+	}
+
+	/**
+	 * Takes the file lock before the monitor, like append and delete, so that they can't deadlock.
+	 */
+	private void loadLatestChanges() throws BlueDbException {
+		synchronized (this) {
+			if (latestChanges != null) {
+				return;
+			}
+		}
+		try (BlueReadLock<Path> readLock = fileManager.getLockManager().acquireReadLock(path)) {
+			synchronized (this) {
+				if (latestChanges == null) {
+					TreeMap<BlueKey, IndividualChange<T>> changes = new TreeMap<>();
+					for (Object object: fileManager.loadAppendedObjects(readLock)) {
+						@SuppressWarnings("unchecked")
+						IndividualChange<T> change = (IndividualChange<T>) object;
+						changes.put(change.getKey(), change);
+					}
+					latestChanges = changes;
+				}
+			}
+		}
+	}
+}
@@ -7,9 +7,16 @@ import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.TimeFrameKey;
 import org.bluedb.disk.file.BlueObjectInput;
+import org.bluedb.disk.file.FileManager;
+import org.bluedb.disk.recovery.IndividualChange;
 import org.bluedb.disk.serialization.BlueEntity;
 
 public class SegmentEntityIterator<T extends Serializable> implements Iterator<BlueEntity<T>>, Closeable {
@@ -21,8 +28,20 @@ public class SegmentEntityIterator<T extends Serializable> implements Iterator<B
 	final List<Range> timeRanges;
 	BlueObjectInput<BlueEntity<T>> currentInput;
 	BlueEntity<T> next = null;
+	final LinkedList<IndividualChange<T>> deltaChanges;
+	BlueEntity<T> nextFromChunks = null;
+	final int readAheadDepth;
+	final LinkedList<CompletableFuture<BlueObjectInput<BlueEntity<T>>>> readAheadInputs = new LinkedList<>();
+	CompletableFuture<?> readAheadTail;
 	
 	public SegmentEntityIterator(final Segment<T> segment, final long highestGroupingNumberCompleted, final long rangeMin, final long rangeMax) {
+		this(segment, highestGroupingNumberCompleted, rangeMin, rangeMax, CompletableFuture.completedFuture(null));
+	}
+
+	/**
+	 * @param readAheadAfter when this may start reading chunk files ahead, see {@link #getReadAheadTail()}
+	 */
+	public SegmentEntityIterator(final Segment<T> segment, final long highestGroupingNumberCompleted, final long rangeMin, final long rangeMax, CompletableFuture<?> readAheadAfter) {
 		this.highestGroupingNumberCompleted =highestGroupingNumberCompleted;
 		this.segment = segment;
 		this.rangeMin = rangeMin;
@@ -30,6 +49,11 @@ public class SegmentEntityIterator<T extends Serializable> implements Iterator<B
 		Range timeRange = new Range(highestGroupingNumberCompleted, rangeMax);
 		List<File> relevantFiles = segment.getOrderedFilesInRange(timeRange);
 		timeRanges = filesToRanges(relevantFiles);
+		deltaChanges = loadDeltaChanges(segment, highestGroupingNumberCompleted, rangeMin, rangeMax);
+		FileManager fileManager = segment.getFileManager();
+		readAheadDepth = (fileManager == null) ? 0 : fileManager.getReadAheadDepth();
+		readAheadTail = readAheadAfter;
+		readAhead();
 	}
 
 	public SegmentEntityIterator(final Segment<T> segment, final long rangeMin, final long rangeMax) {
@@ -41,6 +65,9 @@ public class SegmentEntityIterator<T extends Serializable> implements Iterator<B
 		if (currentInput != null) {
 			currentInput.close();
 		}
+		while (!readAheadInputs.isEmpty()) {
+			closeWhenDone(readAheadInputs.poll());
+		}
 	}
 
 	@Override
@@ -65,15 +92,65 @@ public class SegmentEntityIterator<T extends Serializable> implements Iterator<B
 		return segment;
 	}
 
+	/**
+	 * @return true if every chunk file that's left is already being read ahead, so the next segment can start
+	 */
+	public boolean isReadingAheadLastChunk() {
+		return readAheadDepth > 0 && readAheadInputs.size() == timeRanges.size();
+	}
+
+	/**
+	 * Files are read ahead one after another, each once the one before it is read, so read locks are taken in the
+	 * same order as when each file is opened as it's needed. Otherwise a rollup holding a lock on one file while
+	 * waiting for the next could deadlock with a scan holding them the other way around.
+	 * @return the last file being read ahead, or what this started after if there is none
+	 */
+	public CompletableFuture<?> getReadAheadTail() {
+		return readAheadTail;
+	}
+
 	protected BlueEntity<T> nextFromFile() {
+		if (deltaChanges.isEmpty() && nextFromChunks == null) {
+			return nextFromChunks();
+		}
+		while (true) {  // merge the delta over the chunk files, both are sorted by key
+			if (nextFromChunks == null) {
+				nextFromChunks = nextFromChunks();
+			}
+			IndividualChange<T> change = deltaChanges.peek();
+			if (change == null) {
+				return pollNextFromChunks();
+			}
+			if (nextFromChunks == null || change.getKey().compareTo(nextFromChunks.getKey()) < 0) {
+				deltaChanges.poll();
+			} else if (change.getKey().equals(nextFromChunks.getKey())) {
+				deltaChanges.poll();
+				nextFromChunks = null;  // replaced or deleted by the delta
+			} else {
+				return pollNextFromChunks();
+			}
+			BlueEntity<T> newEntity = change.getNewEntity();
+			if (newEntity != null) {
+				return newEntity;
+			}  // else it's a delete so keep going
+		}
+	}
+
+	private BlueEntity<T> pollNextFromChunks() {
+		BlueEntity<T> response = nextFromChunks;
+		nextFromChunks = null;
+		return response;
+	}
+
+	protected BlueEntity<T> nextFromChunks() {
 		while (true) {
-			while (currentInput != null && currentInput.hasNext()) {
-				BlueEntity<T> next = currentInput.next();
-				BlueKey key = next.getKey();
-				if (key.getGroupingNumber() <= highestGroupingNumberCompleted) {
+			while (currentInput != null && currentInput.peekKey() != null) {
+				if (!isWanted(currentInput.peekKey())) {
+					currentInput.skipNext();  // skip it without deserializing the value
 					continue;
 				}
-				if (key.isInRange(rangeMin, rangeMax)) {
+				BlueEntity<T> next = currentInput.next();
+				if (next != null && isWanted(next.getKey())) {  // a corrupted value is skipped to the next record
 					return next;
 				}
 			}
@@ -88,23 +165,119 @@ public class SegmentEntityIterator<T extends Serializable> implements Iterator<B
 		}
 	}
 
+	private boolean isWanted(BlueKey key) {
+		return key.getGroupingNumber() > highestGroupingNumberCompleted && key.isInRange(rangeMin, rangeMax);
+	}
+
+	protected static <X extends Serializable> LinkedList<IndividualChange<X>> loadDeltaChanges(Segment<X> segment, long highestGroupingNumberCompleted, long rangeMin, long rangeMax) {
+		LinkedList<IndividualChange<X>> changesInRange = new LinkedList<>();
+		try {
+			for (IndividualChange<X> change: segment.getDeltaChanges()) {
+				BlueKey key = change.getKey();
+				if (key.getGroupingNumber() > highestGroupingNumberCompleted && key.isInRange(rangeMin, rangeMax)) {
+					changesInRange.add(change);
+				}
+			}
+		} catch (BlueDbException e) {
+			e.printStackTrace();
+		}
+		return changesInRange;
+	}
+
 	protected BlueObjectInput<BlueEntity<T>> getNextStream() {
 		Range range;
 		while (!timeRanges.isEmpty()) {
 			range = timeRanges.remove(0);
+			CompletableFuture<BlueObjectInput<BlueEntity<T>>> readAheadInput = readAheadInputs.poll();
+			readAhead();
 			if (highestGroupingNumberCompleted >= range.getEnd()) {
+				closeWhenDone(readAheadInput);
 				continue;  // we've already read the rolled up file that includes this range
 			}
-			try {
-				return segment.getObjectInputFor(range.getStart());
-			} catch (BlueDbException e) {
-				e.printStackTrace();
-				return null;
+			BlueObjectInput<BlueEntity<T>> input = waitForReadAhead(readAheadInput);
+			if (input == null) {
+				try {
+					input = segment.getObjectInputFor(range.getStart());
+				} catch (BlueDbException e) {
+					e.printStackTrace();
+					return null;
+				}
 			}
+			skipToFirstWanted(input, range);
+			return input;
 		}
 		return null;
 	}
 
+	/**
+	 * Uses the footer to jump over the records in front of the first one that's wanted, so that compressed blocks
+	 * holding only those aren't inflated. Records below rangeMin are still wanted when their key reaches into the
+	 * range, like a {@link TimeFrameKey} that started before it, so those are only jumped over for other keys.
+	 */
+	private void skipToFirstWanted(BlueObjectInput<BlueEntity<T>> input, Range range) {
+		if (highestGroupingNumberCompleted == Long.MAX_VALUE) {
+			return;  // nothing is wanted, and the reads will find that out without the footer
+		}
+		long firstWanted = highestGroupingNumberCompleted + 1;
+		if (Math.max(firstWanted, rangeMin) <= range.getStart()) {
+			return;  // the file doesn't start with records that aren't wanted, so don't bother reading its footer
+		}
+		if (!input.skipToGroupingNumberAtOrAbove(firstWanted) || rangeMin <= firstWanted) {
+			return;
+		}
+		BlueKey key = input.peekKey();
+		if (key != null && key.getGroupingNumber() < rangeMin && !(key instanceof TimeFrameKey)) {
+			input.skipToGroupingNumberAtOrAbove(rangeMin);
+		}
+	}
+
+	private void readAhead() {
+		while (readAheadInputs.size() < readAheadDepth && readAheadInputs.size() < timeRanges.size()) {
+			Range range = timeRanges.get(readAheadInputs.size());
+			CompletableFuture<BlueObjectInput<BlueEntity<T>>> input = readAheadTail
+					.handle((result, error) -> null)
+					.thenCompose((ignored) -> readAheadAsync(range));  // chained instead of waiting on a read ahead thread
+			readAheadInputs.add(input);
+			readAheadTail = input;
+		}
+	}
+
+	private CompletableFuture<BlueObjectInput<BlueEntity<T>>> readAheadAsync(Range range) {
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					return segment.readAheadObjectInputFor(range.getStart());
+				} catch (BlueDbException e) {
+					throw new CompletionException(e);
+				}
+			}, segment.getFileManager().getReadAheadExecutor());
+		} catch (RejectedExecutionException e) {
+			CompletableFuture<BlueObjectInput<BlueEntity<T>>> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(e);  // shutting down, so it's read when it's needed instead
+			return rejected;
+		}
+	}
+
+	private static <X> BlueObjectInput<X> waitForReadAhead(CompletableFuture<BlueObjectInput<X>> readAheadInput) {
+		if (readAheadInput == null) {
+			return null;
+		}
+		try {
+			return readAheadInput.join();
+		} catch (CompletionException | CancellationException e) {
+			if (!(e.getCause() instanceof RejectedExecutionException)) {
+				e.printStackTrace();
+			}
+			return null;  // try reading it the usual way
+		}
+	}
+
+	private static <X> void closeWhenDone(CompletableFuture<BlueObjectInput<X>> readAheadInput) {
+		if (readAheadInput != null) {
+			readAheadInput.thenAccept(BlueObjectInput::close);
+		}
+	}
+
 	protected Path getCurrentPath() {
 		if (currentInput == null) {
 			return null;
@@ -1,11 +1,15 @@
 package org.bluedb.disk.segment;
 
 import java.io.Serializable;
+import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.stream.Collectors;
 
 import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.TimeFrameKey;
 import org.bluedb.disk.file.FileManager;
 import org.bluedb.disk.segment.path.SegmentPathManager;
 import org.bluedb.disk.segment.path.SegmentSizeConfiguration;
@@ -17,17 +21,49 @@ public class SegmentManager<T extends Serializable> {
 	private final SegmentPathManager pathManager;
 	private final FileManager fileManager;
 	private final Rollupable rollupable;
+	private final WriteMode writeMode;
+	private final ConcurrentSkipListMap<Long, Segment<T>> existingSegments;
 
 	public SegmentManager(Path collectionPath, FileManager fileManager, Rollupable rollupable, SegmentSizeConfiguration sizeConfig) {
+		this(collectionPath, fileManager, rollupable, sizeConfig, WriteMode.REWRITE_CHUNK);
+	}
+
+	public SegmentManager(Path collectionPath, FileManager fileManager, Rollupable rollupable, SegmentSizeConfiguration sizeConfig, WriteMode writeMode) {
 		this.fileManager = fileManager;
 		this.rollupable = rollupable;
+		this.writeMode = writeMode;
 		this.pathManager = createSegmentPathManager(sizeConfig, collectionPath);
+		this.existingSegments = new ConcurrentSkipListMap<>();
+		loadExistingSegments();
 	}
 
 	public Range getSegmentRange(long groupingValue) {
 		return Range.forValueAndRangeSize(groupingValue, getSegmentSize());
 	}
 
+	/**
+	 * @return the range of the segments that hold the key, which is more than one segment for a {@link TimeFrameKey}
+	 *         that crosses into later segments
+	 */
+	public Range getSegmentRange(BlueKey key) {
+		Range firstSegmentRange = getSegmentRange(key.getGroupingNumber());
+		if (!(key instanceof TimeFrameKey)) {
+			return firstSegmentRange;
+		}
+		long endTime = ((TimeFrameKey) key).getEndTime();
+		if (endTime <= firstSegmentRange.getEnd()) {
+			return firstSegmentRange;
+		}
+		return new Range(firstSegmentRange.getStart(), getSegmentRange(endTime).getEnd());
+	}
+
+	/**
+	 * @return the range of the segments that hold grouping numbers from the start to the end of the range
+	 */
+	public Range getSegmentRange(Range range) {
+		return new Range(getSegmentRange(range.getStart()).getStart(), getSegmentRange(range.getEnd()).getEnd());
+	}
+
 	public Segment<T> getFirstSegment(BlueKey key) {
 		long groupingNumber = key.getGroupingNumber();
 		return getSegment(groupingNumber);
@@ -39,6 +75,10 @@ public class SegmentManager<T extends Serializable> {
 	}
 
 	public Segment<T> getSegment(long groupingNumber) {
+		Segment<T> existingSegment = existingSegments.get(Math.floorDiv(groupingNumber, getSegmentSize()));
+		if (existingSegment != null) {
+			return existingSegment;
+		}
 		Path segmentPath = pathManager.getSegmentPath(groupingNumber);
 		return toSegment(segmentPath);
 	}
@@ -55,10 +95,38 @@ public class SegmentManager<T extends Serializable> {
 	}
 
 	public List<Segment<T>> getExistingSegments(Range range) {
-		return pathManager.getExistingSegmentFiles(range).stream()
-				.map((f) -> (toSegment(f.toPath())))
-				.sorted()
-				.collect(Collectors.toList());
+		long minSegmentNumber = Math.floorDiv(range.getStart(), getSegmentSize());
+		long maxSegmentNumber = Math.floorDiv(range.getEnd(), getSegmentSize());
+		if (minSegmentNumber > maxSegmentNumber) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(existingSegments.subMap(minSegmentNumber, true, maxSegmentNumber, true).values());
+	}
+
+	/**
+	 * Walks the segment folders once so that range lookups after that are a sorted map lookup. Segments keep it
+	 * current by reporting when they create or delete their folder.
+	 */
+	protected void loadExistingSegments() {
+		for (File segmentFolder: pathManager.getExistingSegmentFiles(Long.MIN_VALUE, Long.MAX_VALUE)) {
+			reportSegmentExists(toSegment(segmentFolder.toPath()));
+		}
+	}
+
+	protected Segment<T> getExistingSegment(Segment<T> segment) {
+		return existingSegments.get(toSegmentNumber(segment));
+	}
+
+	protected void reportSegmentExists(Segment<T> segment) {
+		existingSegments.putIfAbsent(toSegmentNumber(segment), segment);
+	}
+
+	protected void reportSegmentDeleted(Segment<T> segment) {
+		existingSegments.remove(toSegmentNumber(segment));
+	}
+
+	private long toSegmentNumber(Segment<T> segment) {
+		return Math.floorDiv(segment.getRange().getStart(), getSegmentSize());
 	}
 
 	public SegmentPathManager getPathManager() {
@@ -67,7 +135,7 @@ public class SegmentManager<T extends Serializable> {
 
 	protected Segment<T> toSegment(Path path) {
 		Range range = toRange(path);
-		return new Segment<T>(path, range, rollupable, fileManager, pathManager.getRollupLevels());
+		return new Segment<T>(path, range, this);
 	}
 
 	public Range toRange(Path path) {
@@ -77,6 +145,18 @@ public class SegmentManager<T extends Serializable> {
 		return range;
 	}
 
+	public FileManager getFileManager() {
+		return fileManager;
+	}
+
+	public Rollupable getRollupable() {
+		return rollupable;
+	}
+
+	public WriteMode getWriteMode() {
+		return writeMode;
+	}
+
 	public long getSegmentSize() {
 		return pathManager.getSegmentSize();
 	}
@@ -0,0 +1,17 @@
+package org.bluedb.disk.segment;
+
+/*
+ * Serialized in collection meta data. Do NOT move the enum to a new package, remove an enum constant, or change the ordering.
+ * You may add enum constants to the end.
+ *
+ * REWRITE_CHUNK - Every single insert, update or delete streams the whole chunk file that holds the key into a new file. Reads
+ * only ever look at chunk files.
+ *
+ * APPEND_DELTA - Single key changes are appended to a small per segment delta file and reads merge the delta over the chunk files.
+ * The delta is folded into the chunk files when it gets big, when the segment goes quiet, and before any batch change. Better for
+ * insert heavy collections that keep hitting the same chunk, such as time series collections writing to the current hour.
+ */
+public enum WriteMode {
+	REWRITE_CHUNK,
+	APPEND_DELTA,
+}
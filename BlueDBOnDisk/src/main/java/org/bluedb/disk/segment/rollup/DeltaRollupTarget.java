@@ -0,0 +1,13 @@
+package org.bluedb.disk.segment.rollup;
+
+import org.bluedb.disk.segment.Range;
+
+/**
+ * Target for folding a segment's delta file into its chunk files. The range is always the whole segment.
+ */
+public class DeltaRollupTarget extends RollupTarget {
+
+	public DeltaRollupTarget(long segmentGroupingNumber, Range segmentRange, long rollupDelay) {
+		super(segmentGroupingNumber, segmentRange, rollupDelay);
+	}
+}
@@ -0,0 +1,51 @@
+package org.bluedb.disk.segment.rollup;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.collection.task.SegmentScopedTask;
+import org.bluedb.disk.recovery.PendingDeltaRollup;
+import org.bluedb.disk.recovery.Recoverable;
+import org.bluedb.disk.recovery.RecoveryManager;
+import org.bluedb.disk.segment.Range;
+
+public class DeltaRollupTask<T extends Serializable> implements SegmentScopedTask {
+
+	private final BlueCollectionOnDisk<T> collection;
+	private final DeltaRollupTarget rollupTarget;
+
+	public DeltaRollupTask(BlueCollectionOnDisk<T> collection, DeltaRollupTarget rollupTarget) {
+		this.collection = collection;
+		this.rollupTarget = rollupTarget;
+	}
+
+	public DeltaRollupTarget getTarget() {
+		return rollupTarget;
+	}
+
+	@Override
+	public void run() {
+		RecoveryManager<T> recoveryManager = collection.getRecoveryManager();
+		Recoverable<T> change = new PendingDeltaRollup<>(rollupTarget.getSegmentGroupingNumber());
+		try {
+			recoveryManager.saveChange(change);
+			change.apply(collection);
+			recoveryManager.markComplete(change);
+		} catch (BlueDbException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public List<Range> getSegmentRanges() {
+		return Arrays.asList(collection.getSegmentManager().getSegmentRange(rollupTarget.getSegmentGroupingNumber()));
+	}
+
+	@Override
+	public String toString() {
+		return "DeltaRollupTask [@" + rollupTarget.getSegmentGroupingNumber() + "]";
+	}
+}
@@ -106,6 +106,9 @@ public class RollupScheduler {
 		if (target instanceof IndexRollupTarget) {
 			IndexRollupTarget indexTarget = (IndexRollupTarget) target;
 			rollupRunnable = new IndexRollupTask<>(collection, indexTarget);
+		} else if (target instanceof DeltaRollupTarget) {
+			DeltaRollupTarget deltaTarget = (DeltaRollupTarget) target;
+			rollupRunnable = new DeltaRollupTask<>(collection, deltaTarget);
 		} else {
 			rollupRunnable = new RollupTask<>(collection, target);
 		}
@@ -1,14 +1,18 @@
 package org.bluedb.disk.segment.rollup;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.collection.task.SegmentScopedTask;
 import org.bluedb.disk.recovery.PendingRollup;
 import org.bluedb.disk.recovery.Recoverable;
 import org.bluedb.disk.recovery.RecoveryManager;
+import org.bluedb.disk.segment.Range;
 
-public class RollupTask<T extends Serializable> implements Runnable {
+public class RollupTask<T extends Serializable> implements SegmentScopedTask {
 
 	private final BlueCollectionOnDisk<T> collection;
 	private final RollupTarget rollupTarget;
@@ -35,6 +39,11 @@ public class RollupTask<T extends Serializable> implements Runnable {
 		}
 	}
 
+	@Override
+	public List<Range> getSegmentRanges() {
+		return Arrays.asList(collection.getSegmentManager().getSegmentRange(rollupTarget.getSegmentGroupingNumber()));
+	}
+
 	@Override
 	public String toString() {
 		return "RollupTask [@" + rollupTarget.getSegmentGroupingNumber() + ", " + rollupTarget.getRange().getStart() + "_" + rollupTarget.getRange().getEnd() + "]";
@@ -0,0 +1,16 @@
+package org.bluedb.disk.segment.writer;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.disk.recovery.IndividualChange;
+
+/**
+ * Hears about the changes a {@link BatchWriter} merged into a chunk, with the values they replaced, before the new
+ * chunk replaces the old one.
+ */
+@FunctionalInterface
+public interface BatchListener<T extends Serializable> {
+	public void merged(List<IndividualChange<T>> changesWithOldValues) throws BlueDbException;
+}
@@ -1,8 +1,10 @@
 package org.bluedb.disk.segment.writer;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
 
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.keys.BlueKey;
@@ -14,35 +16,68 @@ import org.bluedb.disk.serialization.BlueEntity;
 public class BatchWriter<T extends Serializable> implements StreamingWriter<T> {
 
 	LinkedList<IndividualChange<T>> changes;
+	private final BatchListener<T> listener;
+	private final List<IndividualChange<T>> mergedChanges = new ArrayList<>();
 
 	public BatchWriter(Collection<IndividualChange<T>> changes) {
+		this(changes, null);
+	}
+
+	/**
+	 * @param listener hears about the merged changes with the values they replaced, or null if nothing needs them
+	 */
+	public BatchWriter(Collection<IndividualChange<T>> changes, BatchListener<T> listener) {
 		this.changes = new LinkedList<IndividualChange<T>>(changes);
+		this.listener = listener;
 	}
 
 	public void process(BlueObjectInput<BlueEntity<T>> input, BlueObjectOutput<BlueEntity<T>> output) throws BlueDbException {
-		while (input.hasNext() && !changes.isEmpty()) {
-			BlueKey peekFromInput = input.peek().getKey();
+		while (input.peekKey() != null && !changes.isEmpty()) {
+			BlueKey peekFromInput = input.peekKey();
 			BlueKey peekFromChanges = changes.peek().getKey();
 			if (peekFromInput.equals(peekFromChanges)) {
-				input.next(); // this is the value that is being replaced or deleted so throw it out
-				pollOneChangeAndWrite(changes, output);
+				replaceNext(input, output);
 			} else if (peekFromInput.compareTo(peekFromChanges) > 0) {
-				pollOneChangeAndWrite(changes, output);
-			} else {
-				output.write(input.next());
-			}
+				pollOneChangeAndWrite(null, output);
+			} else if (!input.transferRecordsBefore(peekFromChanges.getGroupingNumber(), output)) {
+				copyNext(input, output);
+			}  // else no change lands in that stretch so it was copied as one byte range
 		}
 		// drain out the remaining items from whichever is not empty
-		while (input.hasNext()) {
-			output.write(input.next());
+		if (!input.transferRemainingRecords(output)) {
+			while (input.peekKey() != null) {
+				copyNext(input, output);
+			}
 		}
 		while (!changes.isEmpty()) {
-			pollOneChangeAndWrite(changes, output);
+			pollOneChangeAndWrite(null, output);
+		}
+		if (listener != null) {
+			listener.merged(mergedChanges);
 		}
 	}
 
-	private static <T extends Serializable> void pollOneChangeAndWrite(LinkedList<IndividualChange<T>> changes, BlueObjectOutput<BlueEntity<T>> output) throws BlueDbException {
-		BlueEntity<T> newEntity = changes.poll().getNewEntity();
+	private void replaceNext(BlueObjectInput<BlueEntity<T>> input, BlueObjectOutput<BlueEntity<T>> output) throws BlueDbException {
+		if (listener == null) {
+			input.skipNext(); // this is the value that is being replaced or deleted so throw it out
+			pollOneChangeAndWrite(null, output);
+		} else {
+			T oldValue = input.next().getValue();  // the listener needs the value that is being replaced or deleted
+			pollOneChangeAndWrite(oldValue, output);
+		}
+	}
+
+	private static <T extends Serializable> void copyNext(BlueObjectInput<BlueEntity<T>> input, BlueObjectOutput<BlueEntity<T>> output) throws BlueDbException {
+		long groupingNumber = input.peekKey().getGroupingNumber();
+		input.copyNextTo(output, groupingNumber);
+	}
+
+	private void pollOneChangeAndWrite(T oldValue, BlueObjectOutput<BlueEntity<T>> output) throws BlueDbException {
+		IndividualChange<T> change = changes.poll();
+		if (listener != null) {
+			mergedChanges.add(new IndividualChange<T>(change.getKey(), oldValue, change.getNewValue()));
+		}
+		BlueEntity<T> newEntity = change.getNewEntity();
 		if (newEntity != null) {
 			output.write(newEntity);
 		} // else it's a delete anyway
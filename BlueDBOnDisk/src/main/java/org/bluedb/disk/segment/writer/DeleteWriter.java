@@ -17,10 +17,12 @@ public class DeleteWriter<T extends Serializable> implements StreamingWriter<T>
 
 	@Override
 	public void process(BlueObjectInput<BlueEntity<T>> input, BlueObjectOutput<BlueEntity<T>> output) throws BlueDbException {
-		while (input.hasNext()) {
-			BlueEntity<T> entry = input.next();
-			if (!entry.getKey().equals(key)) {
-				output.writeBytes(input.getLastBytes());
+		BlueKey iterKey;
+		while ((iterKey = input.peekKey()) != null) {
+			if (iterKey.equals(key)) {
+				input.skipNext();
+			} else {
+				input.copyNextTo(output, iterKey.getGroupingNumber());
 			}
 		}
 	}
@@ -20,18 +20,18 @@ public class InsertWriter<T extends Serializable> implements StreamingWriter<T>
 	public void process(BlueObjectInput<BlueEntity<T>> input, BlueObjectOutput<BlueEntity<T>> output) throws BlueDbException {
 		BlueEntity<T> newEntity = new BlueEntity<T>(newKey, newValue);
 		BlueEntity<T> toInsert = newEntity;
-		while (input.hasNext()) {
-			BlueEntity<T> iterEntity = input.next();
-			BlueKey iterKey = iterEntity.getKey();
+		BlueKey iterKey;
+		while ((iterKey = input.peekKey()) != null) {
 			if (iterKey.equals(newKey)) {
+				input.skipNext();
 				output.write(newEntity);
 				toInsert = null;
 			} else if (toInsert != null && iterKey.compareTo(newKey) > 0) {
 				output.write(newEntity);
 				toInsert = null;
-				output.writeBytes(input.getLastBytes());
+				input.copyNextTo(output, iterKey.getGroupingNumber());
 			} else {
-				output.writeBytes(input.getLastBytes());
+				input.copyNextTo(output, iterKey.getGroupingNumber());
 			}
 		}
 		if (toInsert != null) {
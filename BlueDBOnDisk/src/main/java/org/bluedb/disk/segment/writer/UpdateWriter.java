@@ -20,14 +20,14 @@ public class UpdateWriter<T extends Serializable> implements StreamingWriter<T>
 	@Override
 	public void process(BlueObjectInput<BlueEntity<T>> input, BlueObjectOutput<BlueEntity<T>> output) throws BlueDbException {
 		BlueEntity<T> newEntity = new BlueEntity<T>(newKey, newValue);
-		while (input.hasNext()) {
-			BlueEntity<T> iterEntity = input.next();
-			BlueKey iterKey = iterEntity.getKey();
+		BlueKey iterKey;
+		while ((iterKey = input.peekKey()) != null) {
 			if (iterKey.equals(newKey)) {
+				input.skipNext();
 				output.write(newEntity);
 				newEntity = null;
 			} else {
-				output.writeBytes(input.getLastBytes());
+				input.copyNextTo(output, iterKey.getGroupingNumber());
 			}
 		}
 	}
@@ -8,7 +8,16 @@ public interface BlueSerializer {
 
 	public byte[] serializeObjectToByteArray(Object o);
 
+	/**
+	 * Serializes into a buffer that the caller reuses, instead of a new array.
+	 * @return the number of bytes written, or -1 if they don't fit after offset, in which case the caller should
+	 *         try again with a bigger buffer
+	 */
+	public int serializeObjectToByteArray(Object o, byte[] buffer, int offset);
+
 	public Object deserializeObjectFromByteArray(byte[] bytes) throws SerializationException;
 
+	public Object deserializeObjectFromByteArray(byte[] bytes, int offset, int length) throws SerializationException;
+
 	public <T extends Serializable> T clone(T object);
 }
@@ -0,0 +1,137 @@
+package org.bluedb.disk.serialization;
+
+import java.io.Serializable;
+
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.disk.serialization.validation.SerializationException;
+
+/**
+ * Record layout that stores the key of a {@link BlueEntity} in its own length-prefixed field ahead of the value, so
+ * that readers can filter and compare on keys and only deserialize the values they keep.
+ *
+ * <pre>
+ * int MAGIC | long groupingNumber | int keyLength | keyLength bytes of key | value bytes
+ * </pre>
+ * Records written before this layout are a single serialized BlueEntity. FST starts those with a zero byte since
+ * BlueEntity is a registered class, so they can't be mistaken for this layout.
+ *
+ * Records can sit at the start of a reused buffer that is longer than they are, so everything takes the length of
+ * the record rather than going by the length of the array.
+ */
+public class KeyValueRecord {
+
+	protected static final int MAGIC = 0x7F424B56;
+	private static final int HEADER_SIZE = 16;
+	private static final int GROUPING_NUMBER_POSITION = 4;
+	private static final int KEY_LENGTH_POSITION = 12;
+
+	public static byte[] toBytes(BlueSerializer serializer, BlueEntity<?> entity) {
+		BlueKey key = entity.getKey();
+		byte[] keyBytes = serializer.serializeObjectToByteArray(key);
+		byte[] valueBytes = serializer.serializeObjectToByteArray(entity.getValue());
+		byte[] bytes = new byte[HEADER_SIZE + keyBytes.length + valueBytes.length];
+		writeHeader(bytes, key.getGroupingNumber(), keyBytes.length);
+		System.arraycopy(keyBytes, 0, bytes, HEADER_SIZE, keyBytes.length);
+		System.arraycopy(valueBytes, 0, bytes, HEADER_SIZE + keyBytes.length, valueBytes.length);
+		return bytes;
+	}
+
+	/**
+	 * Writes the record to the start of a buffer that the caller reuses, instead of a new array.
+	 * @return the length of the record, or -1 if it doesn't fit in the buffer
+	 */
+	public static int write(BlueSerializer serializer, BlueEntity<?> entity, byte[] buffer) {
+		if (buffer.length < HEADER_SIZE) {
+			return -1;
+		}
+		BlueKey key = entity.getKey();
+		int keyLength = serializer.serializeObjectToByteArray(key, buffer, HEADER_SIZE);
+		if (keyLength < 0) {
+			return -1;
+		}
+		int valueLength = serializer.serializeObjectToByteArray(entity.getValue(), buffer, HEADER_SIZE + keyLength);
+		if (valueLength < 0) {
+			return -1;
+		}
+		writeHeader(buffer, key.getGroupingNumber(), keyLength);
+		return HEADER_SIZE + keyLength + valueLength;
+	}
+
+	public static boolean isKeyValueRecord(byte[] bytes) {
+		return bytes != null && isKeyValueRecord(bytes, bytes.length);
+	}
+
+	public static boolean isKeyValueRecord(byte[] bytes, int length) {
+		return length >= HEADER_SIZE && getInt(bytes, 0) == MAGIC;
+	}
+
+	public static long readGroupingNumber(byte[] bytes) {
+		return getLong(bytes, GROUPING_NUMBER_POSITION);
+	}
+
+	public static BlueKey readKey(BlueSerializer serializer, byte[] bytes) throws SerializationException {
+		return readKey(serializer, bytes, bytes.length);
+	}
+
+	public static BlueKey readKey(BlueSerializer serializer, byte[] bytes, int length) throws SerializationException {
+		Object key = serializer.deserializeObjectFromByteArray(bytes, HEADER_SIZE, readKeyLength(bytes, length));
+		if (!(key instanceof BlueKey)) {
+			throw new SerializationException("record doesn't start with a key: " + key);
+		}
+		return (BlueKey) key;
+	}
+
+	/**
+	 * @param key the already deserialized key of the record, or null to deserialize it here
+	 */
+	public static BlueEntity<?> readEntity(BlueSerializer serializer, byte[] bytes, BlueKey key) throws SerializationException {
+		return readEntity(serializer, bytes, bytes.length, key);
+	}
+
+	/**
+	 * @param key the already deserialized key of the record, or null to deserialize it here
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static BlueEntity<?> readEntity(BlueSerializer serializer, byte[] bytes, int length, BlueKey key) throws SerializationException {
+		if (key == null) {
+			key = readKey(serializer, bytes, length);
+		}
+		int valueStart = HEADER_SIZE + readKeyLength(bytes, length);
+		Object value = serializer.deserializeObjectFromByteArray(bytes, valueStart, length - valueStart);
+		return new BlueEntity(key, (Serializable) value);
+	}
+
+	private static int readKeyLength(byte[] bytes, int length) throws SerializationException {
+		int keyLength = getInt(bytes, KEY_LENGTH_POSITION);
+		if (keyLength < 0 || keyLength > length - HEADER_SIZE) {
+			throw new SerializationException("invalid key length " + keyLength + " in record of " + length + " bytes");
+		}
+		return keyLength;
+	}
+
+	private static void writeHeader(byte[] bytes, long groupingNumber, int keyLength) {
+		putInt(bytes, 0, MAGIC);
+		putLong(bytes, GROUPING_NUMBER_POSITION, groupingNumber);
+		putInt(bytes, KEY_LENGTH_POSITION, keyLength);
+	}
+
+	private static int getInt(byte[] bytes, int position) {
+		return ((bytes[position] & 0xFF) << 24) | ((bytes[position + 1] & 0xFF) << 16) | ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+	}
+
+	private static long getLong(byte[] bytes, int position) {
+		return (((long) getInt(bytes, position)) << 32) | (getInt(bytes, position + 4) & 0xFFFFFFFFL);
+	}
+
+	private static void putInt(byte[] bytes, int position, int value) {
+		bytes[position] = (byte) (value >>> 24);
+		bytes[position + 1] = (byte) (value >>> 16);
+		bytes[position + 2] = (byte) (value >>> 8);
+		bytes[position + 3] = (byte) value;
+	}
+
+	private static void putLong(byte[] bytes, int position, long value) {
+		putInt(bytes, position, (int) (value >>> 32));
+		putInt(bytes, position + 4, (int) value);
+	}
+}
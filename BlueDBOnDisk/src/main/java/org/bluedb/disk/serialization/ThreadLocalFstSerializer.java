@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.bluedb.api.keys.IntegerKey;
 import org.bluedb.api.keys.LongKey;
@@ -17,15 +18,24 @@ import org.bluedb.disk.collection.index.IndexCompositeKey;
 import org.bluedb.disk.recovery.PendingChange;
 import org.bluedb.disk.serialization.validation.ObjectValidation;
 import org.bluedb.disk.serialization.validation.SerializationException;
+import org.bluedb.disk.serialization.validation.ValidationMode;
 import org.nustaq.serialization.simpleapi.DefaultCoder;
+import org.nustaq.serialization.simpleapi.FSTBufferTooSmallException;
 
 public class ThreadLocalFstSerializer extends ThreadLocal<DefaultCoder> implements BlueSerializer {
 	
+	public static final int VALIDATION_SAMPLE_RATE = 32;
 	private static final int MAX_DESERIALIZE_ATTEMPTS = 5;
 	
 	private Class<?>[] registeredSerializableClasses;
+	private final ValidationMode validationMode;
 	
 	public ThreadLocalFstSerializer(Class<?>...registeredSerializableClasses) {
+		this(ValidationMode.FULL, registeredSerializableClasses);
+	}
+	
+	public ThreadLocalFstSerializer(ValidationMode validationMode, Class<?>...registeredSerializableClasses) {
+		this.validationMode = validationMode;
 		this.registeredSerializableClasses = registeredSerializableClasses;
 	}
 
@@ -54,15 +64,32 @@ public class ThreadLocalFstSerializer extends ThreadLocal<DefaultCoder> implemen
 		return get().toByteArray(o);
 	}
 
+	@Override
+	public int serializeObjectToByteArray(Object o, byte[] buffer, int offset) {
+		try {
+			return get().toByteArray(o, buffer, offset, buffer.length - offset);
+		} catch (FSTBufferTooSmallException e) {
+			return -1;
+		}
+	}
+
 	@Override
 	public Object deserializeObjectFromByteArray(byte[] bytes) throws SerializationException {
+		return deserializeObjectFromByteArray(bytes, 0, bytes.length);
+	}
+
+	@Override
+	public Object deserializeObjectFromByteArray(byte[] bytes, int offset, int length) throws SerializationException {
 		Throwable failureCause = null;
+		boolean validate = shouldValidate();  // decided once so that retries after a failed validation are checked too
 		
 		int retryCount = 0;
 		while(retryCount < MAX_DESERIALIZE_ATTEMPTS) {
 			try {
-				Object obj = toObject(bytes);
-				ObjectValidation.validateFieldValueTypesForObject(obj);
+				Object obj = toObject(bytes, offset, length);
+				if(validate) {
+					ObjectValidation.validateFieldValueTypesForObject(obj);
+				}
 				return obj;
 			} catch(Throwable t) {
 				failureCause = t;
@@ -70,14 +97,29 @@ public class ThreadLocalFstSerializer extends ThreadLocal<DefaultCoder> implemen
 			}
 		}
 		
-		throw new SerializationException("Failed to deserialize object from bytes: " + Blutils.toHex(bytes), failureCause);
+		throw new SerializationException("Failed to deserialize object from bytes: " + Blutils.toHex(Arrays.copyOfRange(bytes, offset, offset + length)), failureCause);
+	}
+
+	private boolean shouldValidate() {
+		switch(validationMode) {
+			case OFF:
+				return false;
+			case SAMPLED:
+				return ThreadLocalRandom.current().nextInt(VALIDATION_SAMPLE_RATE) == 0;
+			default:
+				return true;
+		}
+	}
+
+	public ValidationMode getValidationMode() {
+		return validationMode;
 	}
 
-	private Object toObject(byte[] bytes) {
+	private Object toObject(byte[] bytes, int offset, int length) {
 		try {
-			return get().toObject(bytes);
+			return get().toObject(bytes, offset, length);  // FST reads straight out of the array when offset is 0
 		} catch(Throwable t) {
-			byte[] bytesToTry = ByteUtils.replaceClassPathBytes(bytes, "io.bluedb", "org.bluedb");
+			byte[] bytesToTry = ByteUtils.replaceClassPathBytes(Arrays.copyOfRange(bytes, offset, offset + length), "io.bluedb", "org.bluedb");
 			return get().toObject(bytesToTry);
 		}
 	}
@@ -1,18 +1,38 @@
 package org.bluedb.disk.serialization.validation;
 
-import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
 
 public class ObjectValidation {
+
+	private static final ClassValue<ValidationPlan> validationPlans = new ClassValue<ValidationPlan>() {
+		@Override
+		protected ValidationPlan computeValue(Class<?> type) {
+			return new ValidationPlan(type);
+		}
+	};
 	
 	protected ObjectValidation() {} // just to get 100% test coverage
 
 	public static void validateFieldValueTypesForObject(Object obj) throws IllegalArgumentException, IllegalAccessException, SerializationException {
-		validateFieldValueTypesForObject(obj, new HashSet<>());
+		if(obj == null || canSkip(obj.getClass())) {
+			return;
+		}
+		validateFieldValueTypesForObject(obj, Collections.newSetFromMap(new IdentityHashMap<>()));
+	}
+
+	/**
+	 * @return true if no value of this type can hold a field value of the wrong type, such as primitive arrays and
+	 * classes whose fields are all primitives
+	 */
+	public static boolean canSkip(Class<?> type) {
+		return validationPlans.get(type).canSkip;
 	}
 	
 	private static void validateFieldValueTypesForObject(Object obj, Set<Object> previouslyValidatedObjects) throws IllegalArgumentException, IllegalAccessException, SerializationException {
@@ -28,36 +48,30 @@ public class ObjectValidation {
 	}
 
 	private static void handleArray(Object objArray, Set<Object> previouslyValidatedObjects) throws IllegalArgumentException, IllegalAccessException, SerializationException {
-		for(int i = 0; i < Array.getLength(objArray); i++) {
-			Object obj = Array.get(objArray, i);
-			if(!previouslyValidatedObjects.contains(obj)) {
-				previouslyValidatedObjects.add(obj);
+		if(canSkip(objArray.getClass())) {
+			return;  // primitive elements always match the array type
+		}
+		for(Object obj : (Object[]) objArray) {
+			if(obj != null && !canSkip(obj.getClass()) && previouslyValidatedObjects.add(obj)) {
 				validateFieldValueTypesForObject(obj, previouslyValidatedObjects);
 			}
 		}
 	}
 
 	private static void handleObject(Object obj, Set<Object> previouslyValidatedObjects) throws IllegalArgumentException, IllegalAccessException, SerializationException {
-		Class<?> currentClass = obj.getClass();
-		while(currentClass != Object.class && currentClass != null) {
-			Field[] fields = currentClass.getDeclaredFields();
-			if(fields != null) {
-				for(Field field : fields) {
-					if(!Modifier.isStatic(field.getModifiers())) {
-						field.setAccessible(true);
-						Object fieldValue = field.get(obj);
-						if(fieldValue != null) {
-							validateFieldValueType(field, fieldValue);
-							
-							if(shouldDelveIntoObject(field, fieldValue, previouslyValidatedObjects)) {
-								previouslyValidatedObjects.add(fieldValue);
-								validateFieldValueTypesForObject(fieldValue, previouslyValidatedObjects);
-							}
-						}
-					}
+		ValidationPlan plan = validationPlans.get(obj.getClass());
+		for(int i = 0; i < plan.fields.length; i++) {
+			Field field = plan.fields[i];
+			Object fieldValue = field.get(obj);
+			if(fieldValue != null) {
+				if(!plan.fieldTypes[i].isInstance(fieldValue)) {
+					throw new SerializationException("Field " + field + " cannot hold a value of type " + fieldValue.getClass());
+				}
+				
+				if(plan.delveIntoField[i] && shouldDelveIntoObject(fieldValue, previouslyValidatedObjects)) {
+					validateFieldValueTypesForObject(fieldValue, previouslyValidatedObjects);
 				}
 			}
-			currentClass = currentClass.getSuperclass();
 		}
 	}
 
@@ -94,13 +108,11 @@ public class ObjectValidation {
 		}
 	}
 
-	private static boolean shouldDelveIntoObject(Field field, Object fieldValue, Set<Object> previouslyValidatedObjects) {
-		return 	
-			!field.getType().isPrimitive() && 
-			field.getType() != String.class && 
-			!field.getType().isEnum() &&
+	private static boolean shouldDelveIntoObject(Object fieldValue, Set<Object> previouslyValidatedObjects) {
+		return
+			!canSkip(fieldValue.getClass()) &&
 			isNotEmptyCollection(fieldValue) &&
-			!previouslyValidatedObjects.contains(fieldValue);
+			previouslyValidatedObjects.add(fieldValue);
 	}
 
 	private static boolean isNotEmptyCollection(Object obj) {
@@ -109,4 +121,38 @@ public class ObjectValidation {
 		}
 		return true;
 	}
+
+	/**
+	 * The reflection for one class, worked out the first time an object of that class is validated. Primitive fields
+	 * are left out since reading one always returns the matching boxed type.
+	 */
+	private static class ValidationPlan {
+		private final Field[] fields;
+		private final Class<?>[] fieldTypes;
+		private final boolean[] delveIntoField;
+		private final boolean canSkip;
+
+		public ValidationPlan(Class<?> type) {
+			List<Field> referenceFields = new ArrayList<>();
+			Class<?> currentClass = type;
+			while(currentClass != Object.class && currentClass != null) {
+				for(Field field : currentClass.getDeclaredFields()) {
+					if(!Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive()) {
+						field.setAccessible(true);
+						referenceFields.add(field);
+					}
+				}
+				currentClass = currentClass.getSuperclass();
+			}
+			fields = referenceFields.toArray(new Field[referenceFields.size()]);
+			fieldTypes = new Class<?>[fields.length];
+			delveIntoField = new boolean[fields.length];
+			for(int i = 0; i < fields.length; i++) {
+				Class<?> fieldType = fields[i].getType();
+				fieldTypes[i] = fieldType;
+				delveIntoField[i] = fieldType != String.class && !fieldType.isEnum();
+			}
+			canSkip = type.isArray() ? type.getComponentType().isPrimitive() : fields.length == 0;
+		}
+	}
 }
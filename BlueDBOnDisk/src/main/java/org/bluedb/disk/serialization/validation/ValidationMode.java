@@ -0,0 +1,22 @@
+package org.bluedb.disk.serialization.validation;
+
+/**
+ * How much of what is read back from disk gets checked by {@link ObjectValidation}. FST can occasionally hand back an
+ * object with a field holding a value of the wrong type, and validation is what catches it so the read can be
+ * retried. The mode isn't saved with the collection, so it can be changed whenever a collection is opened.
+ */
+public enum ValidationMode {
+	/**
+	 * Every deserialized object is validated.
+	 */
+	FULL,
+	/**
+	 * About one in {@link org.bluedb.disk.serialization.ThreadLocalFstSerializer#VALIDATION_SAMPLE_RATE} deserialized
+	 * objects is validated. Still notices when a collection starts coming back corrupted, at a fraction of the cost.
+	 */
+	SAMPLED,
+	/**
+	 * Nothing is validated. Only for data that is trusted to have been written by the same class versions.
+	 */
+	OFF,
+}
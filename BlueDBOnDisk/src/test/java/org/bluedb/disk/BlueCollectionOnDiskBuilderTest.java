@@ -5,25 +5,39 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import org.bluedb.api.CloseableIterator;
 import org.bluedb.api.SegmentSize;
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.exceptions.DuplicateKeyException;
 import org.bluedb.api.keys.BlueKey;
 import org.bluedb.api.keys.TimeKey;
 import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.file.CompressionMode;
 import org.bluedb.disk.file.FileUtils;
+import org.bluedb.disk.file.ReadMode;
+import org.bluedb.disk.lock.LockManager;
+import org.bluedb.disk.segment.Range;
+import org.bluedb.disk.segment.Segment;
 import org.bluedb.disk.segment.SegmentSizeSetting;
+import org.bluedb.disk.segment.WriteMode;
+import org.bluedb.disk.serialization.ThreadLocalFstSerializer;
+import org.bluedb.disk.serialization.validation.ValidationMode;
 import org.junit.Test;
 
 public class BlueCollectionOnDiskBuilderTest extends BlueDbDiskTestBase {
 
     @Test
     public void test_differentSegmentSizes() throws Exception {
-		BlueCollectionOnDisk<TestValue> hourCollection = (BlueCollectionOnDisk<TestValue>) db.collectionBuilder("hours", TimeKey.class, TestValue.class)
+		BlueCollectionOnDisk<TestValue> hourCollection = db.collectionBuilder("hours", TimeKey.class, TestValue.class)
 				.withSegmentSize(SegmentSize.TIME_1_HOUR)
 				.build();
-		BlueCollectionOnDisk<TestValue> dayCollection = (BlueCollectionOnDisk<TestValue>) db.collectionBuilder("days", TimeKey.class, TestValue.class)
+		BlueCollectionOnDisk<TestValue> dayCollection = db.collectionBuilder("days", TimeKey.class, TestValue.class)
 				.withSegmentSize(SegmentSize.TIME_1_DAY)
 				.build();
 
@@ -44,6 +58,229 @@ public class BlueCollectionOnDiskBuilderTest extends BlueDbDiskTestBase {
 		assertTrue(dataFoldersForHourly > dataFoldersForDaily);
     }
 
+    @Test
+    public void test_withReadMode() throws Exception {
+		BlueCollectionOnDisk<TestValue> mappedCollection = db.collectionBuilder("mapped", TimeKey.class, TestValue.class)
+				.withReadMode(ReadMode.MEMORY_MAPPED)
+				.build();
+		BlueCollectionOnDisk<TestValue> defaultCollection = db.collectionBuilder("default", TimeKey.class, TestValue.class)
+				.build();
+		assertEquals(ReadMode.MEMORY_MAPPED, mappedCollection.getFileManager().getReadMode());
+		assertEquals(ReadMode.STREAMED, defaultCollection.getFileManager().getReadMode());
+
+		TestValue value1 = new TestValue("Joe");
+		TestValue value2 = new TestValue("Bob");
+		BlueKey key1 = createTimeKey(1, value1);
+		BlueKey key2 = createTimeKey(2, value2);
+		mappedCollection.insert(key1, value1);
+		mappedCollection.insert(key2, value2);
+		assertEquals(value1, mappedCollection.get(key1));
+		assertEquals(value2, mappedCollection.get(key2));
+		assertEquals(2, mappedCollection.query().getList().size());
+    }
+
+    @Test
+    public void test_withWriteMode() throws Exception {
+		BlueCollectionOnDisk<TestValue> deltaCollection = db.collectionBuilder("delta", TimeKey.class, TestValue.class)
+				.withWriteMode(WriteMode.APPEND_DELTA)
+				.build();
+		assertEquals(WriteMode.APPEND_DELTA, deltaCollection.getSegmentManager().getSegment(0).getWriteMode());
+		TestValue value = new TestValue("Joe");
+		BlueKey key = createTimeKey(1558043675317L, value);
+		deltaCollection.insert(key, value);
+
+		db.shutdown();
+		db.awaitTermination(1, TimeUnit.MINUTES);
+		db = new BlueDbOnDiskBuilder().withPath(dbPath).build();  // reopen
+		BlueCollectionOnDisk<TestValue> reopened = db.collectionBuilder("delta", TimeKey.class, TestValue.class)
+				.withWriteMode(WriteMode.REWRITE_CHUNK)
+				.build();
+		assertEquals(WriteMode.APPEND_DELTA, reopened.getSegmentManager().getSegment(0).getWriteMode());  // saved with the collection
+		assertEquals(value, reopened.get(key));
+
+		BlueCollectionOnDisk<TestValue> defaultCollection = db.collectionBuilder("default", TimeKey.class, TestValue.class)
+				.build();
+		assertEquals(WriteMode.REWRITE_CHUNK, defaultCollection.getSegmentManager().getSegment(0).getWriteMode());
+    }
+
+    @Test
+    public void test_withValidationMode() throws Exception {
+		BlueCollectionOnDisk<TestValue> sampledCollection = db.collectionBuilder("sampled", TimeKey.class, TestValue.class)
+				.withValidationMode(ValidationMode.SAMPLED)
+				.build();
+		BlueCollectionOnDisk<TestValue> defaultCollection = db.collectionBuilder("default", TimeKey.class, TestValue.class)
+				.build();
+		assertEquals(ValidationMode.SAMPLED, ((ThreadLocalFstSerializer) sampledCollection.getSerializer()).getValidationMode());
+		assertEquals(ValidationMode.FULL, ((ThreadLocalFstSerializer) defaultCollection.getSerializer()).getValidationMode());
+
+		TestValue value = new TestValue("Joe");
+		BlueKey key = createTimeKey(1, value);
+		sampledCollection.insert(key, value);
+		assertEquals(value, sampledCollection.get(key));
+		assertEquals(1, sampledCollection.query().getList().size());
+    }
+
+    @Test
+    public void test_withCompressionMode() throws Exception {
+		BlueCollectionOnDisk<TestValue> compressedCollection = db.collectionBuilder("compressed", TimeKey.class, TestValue.class)
+				.withCompressionMode(CompressionMode.DEFLATE)
+				.build();
+		BlueCollectionOnDisk<TestValue> defaultCollection = db.collectionBuilder("default", TimeKey.class, TestValue.class)
+				.build();
+		assertEquals(CompressionMode.DEFLATE, compressedCollection.getFileManager().getCompressionMode());
+		assertEquals(CompressionMode.NONE, defaultCollection.getFileManager().getCompressionMode());
+
+		List<TestValue> values = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			TestValue value = new TestValue("Joe", i);
+			values.add(value);
+			compressedCollection.insert(new TimeKey(i, i), value);
+			defaultCollection.insert(new TimeKey(i, i), value);
+		}
+		rollupFirstSegment(compressedCollection);
+		rollupFirstSegment(defaultCollection);  // one chunk of 200 values in each, so there are full blocks to compress
+		assertEquals(values, compressedCollection.query().getList());
+		assertEquals(values.subList(50, 61), compressedCollection.query().afterOrAtTime(50).beforeOrAtTime(60).getList());
+		assertEquals(11, compressedCollection.query().afterOrAtTime(50).beforeOrAtTime(60).count());
+		assertEquals(values.get(123), compressedCollection.get(new TimeKey(123, 123)));
+		assertTrue(getChunkBytes(compressedCollection) < getChunkBytes(defaultCollection) / 2);
+    }
+
+    @Test
+    public void test_withWriteCoalescing() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = db.collectionBuilder("coalesced", TimeKey.class, TestValue.class)
+				.withWriteCoalescing(10, TimeUnit.MINUTES.toMillis(1))
+				.build();
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < 9; i++) {
+			futures.add(collection.insertAsync(new TimeKey(i, i), new TestValue("Joe", i)));
+		}
+		assertFalse(futures.get(0).isDone());  // waiting for the batch to fill up
+		futures.add(collection.updateAsync(new TimeKey(0, 0), (v) -> v.addCupcake()));
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+		assertEquals(1, collection.get(new TimeKey(0, 0)).getCupcakes());
+		assertEquals(9, collection.query().count());
+
+		CompletableFuture<Void> duplicate = collection.insertAsync(new TimeKey(1, 1), new TestValue("Bob"));
+		CompletableFuture<Void> delete = collection.deleteAsync(new TimeKey(2, 2));
+		collection.flushCoalescedWrites();
+		try {
+			duplicate.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof BlueDbException);  // the same as without write coalescing
+			assertTrue(e.getCause().getCause() instanceof DuplicateKeyException);
+		}
+		delete.get();  // only the duplicate fails
+		assertEquals(new TestValue("Joe", 1), collection.get(new TimeKey(1, 1)));
+		assertNull(collection.get(new TimeKey(2, 2)));
+
+		BlueCollectionOnDisk<TestValue> shortDelayCollection = db.collectionBuilder("short_delay", TimeKey.class, TestValue.class)
+				.withWriteCoalescing(1000, 10)
+				.build();
+		shortDelayCollection.insert(new TimeKey(1, 1), new TestValue("Joe"));  // flushed by the delay rather than filling up
+		assertEquals(new TestValue("Joe"), shortDelayCollection.get(new TimeKey(1, 1)));
+		try {
+			shortDelayCollection.insert(new TimeKey(1, 1), new TestValue("Bob"));
+			fail();
+		} catch (BlueDbException e) {
+			assertFalse(e instanceof DuplicateKeyException);  // wrapped the same as without write coalescing
+		}
+
+		BlueCollectionOnDisk<TestValue> noDelayCollection = db.collectionBuilder("no_delay", TimeKey.class, TestValue.class)
+				.withWriteCoalescing(1000, 0)
+				.build();
+		assertNotNull(noDelayCollection.getWriteCoalescer());
+		noDelayCollection.insert(new TimeKey(1, 1), new TestValue("Joe"));  // still coalesced, just flushed right away
+		assertEquals(new TestValue("Joe"), noDelayCollection.get(new TimeKey(1, 1)));
+    }
+
+    @Test
+    public void test_withWriteCoalescing_flushedOnShutdown() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = db.collectionBuilder("coalesced", TimeKey.class, TestValue.class)
+				.withWriteCoalescing(10, TimeUnit.MINUTES.toMillis(1))
+				.build();
+		CompletableFuture<Void> insert = collection.insertAsync(new TimeKey(1, 1), new TestValue("Joe"));
+		assertFalse(insert.isDone());  // waiting for the batch to fill up
+
+		db.shutdown();
+		insert.get(1, TimeUnit.MINUTES);
+		assertTrue(db.awaitTermination(1, TimeUnit.MINUTES));
+		assertEquals(new TestValue("Joe"), collection.get(new TimeKey(1, 1)));
+		try {
+			collection.insertAsync(new TimeKey(2, 2), new TestValue("Bob")).get(1, TimeUnit.MINUTES);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().getCause() instanceof RejectedExecutionException);
+		}
+    }
+
+    @Test
+    public void test_withReadAhead() throws Exception {
+		BlueCollectionOnDisk<TestValue> readAheadCollection = db.collectionBuilder("read_ahead", TimeKey.class, TestValue.class)
+				.withReadAhead(3)
+				.build();
+		assertEquals(3, readAheadCollection.getFileManager().getReadAheadDepth());
+		assertEquals(0, getTimeCollection().getFileManager().getReadAheadDepth());
+		try {
+			db.collectionBuilder("negative", TimeKey.class, TestValue.class).withReadAhead(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+		long segmentSize = readAheadCollection.getSegmentManager().getSegmentSize();
+		List<TestValue> values = new ArrayList<>();
+		for (int i = 0; i < 60; i++) {
+			long time = i * segmentSize / 10;  // a chunk file for each, ten to a segment
+			TestValue value = new TestValue("Joe", i);
+			values.add(value);
+			readAheadCollection.insert(new TimeKey(time, time), value);
+		}
+		assertEquals(values, readAheadCollection.query().getList());
+		assertEquals(values.subList(15, 46), readAheadCollection.query().afterOrAtTime(segmentSize * 3 / 2).beforeOrAtTime(segmentSize * 9 / 2).getList());
+		assertEquals(values.subList(0, 30), readAheadCollection.query().where((v) -> v.getCupcakes() < 30).getList());
+		assertEquals(60, readAheadCollection.query().count());
+
+		try (CloseableIterator<TestValue> iterator = readAheadCollection.query().getIterator()) {
+			assertEquals(values.get(0), iterator.next());  // stop early while files are still being read ahead
+		}
+		LockManager<Path> lockManager = readAheadCollection.getFileManager().getLockManager();
+		long giveUpTime = System.currentTimeMillis() + 10_000;
+		while (anyChunkIsLocked(readAheadCollection, lockManager) && System.currentTimeMillis() < giveUpTime) {
+			Thread.sleep(10);
+		}
+		assertFalse(anyChunkIsLocked(readAheadCollection, lockManager));
+		readAheadCollection.query().delete();
+		assertEquals(0, readAheadCollection.query().count());
+    }
+
+    private static boolean anyChunkIsLocked(BlueCollectionOnDisk<?> collection, LockManager<Path> lockManager) {
+		for (Segment<?> segment: collection.getSegmentManager().getExistingSegments(new Range(Long.MIN_VALUE, Long.MAX_VALUE))) {
+			for (File chunk: segment.getPath().toFile().listFiles()) {
+				if (lockManager.isLocked(chunk.toPath())) {
+					return true;
+				}
+			}
+		}
+		return false;
+    }
+
+    private static void rollupFirstSegment(BlueCollectionOnDisk<TestValue> collection) throws Exception {
+		Segment<TestValue> segment = collection.getSegmentManager().getSegment(0);
+		segment.rollup(new Range(0, collection.getSegmentManager().getSegmentSize() - 1));
+		assertEquals(1, segment.getPath().toFile().listFiles().length);
+    }
+
+    private static long getChunkBytes(BlueCollectionOnDisk<?> collection) {
+		long bytes = 0;
+		for (Segment<?> segment: collection.getSegmentManager().getExistingSegments(new Range(Long.MIN_VALUE, Long.MAX_VALUE))) {
+			for (File chunk: segment.getPath().toFile().listFiles()) {
+				bytes += chunk.length();
+			}
+		}
+		return bytes;
+    }
+
     @Test
     public void test_reopeningSegmentWithDifferentSizes() throws Exception {
 		db.collectionBuilder("hours", TimeKey.class, TestValue.class)
@@ -53,7 +290,7 @@ public class BlueCollectionOnDiskBuilderTest extends BlueDbDiskTestBase {
 		db.awaitTermination(1, TimeUnit.MINUTES);
 		db = new BlueDbOnDiskBuilder().setPath(dbPath).build();  // reopen
 		
-		BlueCollectionOnDisk<TestValue> hourCollectionReopenedAsDaily = (BlueCollectionOnDisk<TestValue>) db.collectionBuilder("hours", TimeKey.class, TestValue.class)
+		BlueCollectionOnDisk<TestValue> hourCollectionReopenedAsDaily = db.collectionBuilder("hours", TimeKey.class, TestValue.class)
 				.withSegmentSize(SegmentSize.TIME_1_DAY)
 				.build();
 
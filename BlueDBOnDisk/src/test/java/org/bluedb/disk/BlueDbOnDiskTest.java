@@ -6,6 +6,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -17,6 +19,7 @@ import org.bluedb.api.keys.BlueKey;
 import org.bluedb.api.keys.HashGroupedKey;
 import org.bluedb.api.keys.TimeKey;
 import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.segment.Range;
 import org.bluedb.tasks.AsynchronousTestTask;
 import org.bluedb.tasks.TestTask;
 import org.bluedb.zip.ZipUtils;
@@ -113,6 +116,104 @@ public class BlueDbOnDiskTest extends BlueDbDiskTestBase {
         assertEquals(0, getTimeCollection().query().count());
 	}
 
+	@Test
+	public void test_query_count_sameAsIterating() throws Exception {
+		long segmentSize = getTimeCollection().getSegmentManager().getSegmentSize();
+		for (int i = 0; i < 20; i++) {
+			long start = i * segmentSize / 4;
+			insertAtTimeFrame(start, start + segmentSize * (i % 3), new TestValue("Joe" + i, i));  // some span segments
+			insertAtTime(start + 1, new TestValue("Bob" + i, i));
+		}
+		getTimeCollection().rollup(new Range(0, segmentSize - 1));  // some chunks rolled up, some not
+
+		long[][] ranges = {{Long.MIN_VALUE, Long.MAX_VALUE}, {0, segmentSize}, {segmentSize / 2, segmentSize * 2}, {segmentSize * 3 + 1, segmentSize * 4}, {segmentSize * 10, segmentSize * 11}};
+		for (long[] range: ranges) {
+			assertEquals(getTimeCollection().query().afterOrAtTime(range[0]).beforeOrAtTime(range[1]).getList().size(),
+					getTimeCollection().query().afterOrAtTime(range[0]).beforeOrAtTime(range[1]).count());
+			assertEquals(getTimeCollection().query().byStartTime().afterOrAtTime(range[0]).beforeOrAtTime(range[1]).getList().size(),
+					getTimeCollection().query().byStartTime().afterOrAtTime(range[0]).beforeOrAtTime(range[1]).count());
+			assertEquals(getTimeCollection().query().where((v) -> v.getCupcakes() % 2 == 0).afterOrAtTime(range[0]).beforeOrAtTime(range[1]).getList().size(),
+					getTimeCollection().query().where((v) -> v.getCupcakes() % 2 == 0).afterOrAtTime(range[0]).beforeOrAtTime(range[1]).count());
+		}
+		assertEquals(40, getTimeCollection().query().count());
+	}
+
+	@Test
+	public void test_query_parallel() throws Exception {
+		long segmentSize = getTimeCollection().getSegmentManager().getSegmentSize();
+		for (int i = 0; i < 20; i++) {
+			long start = i * segmentSize / 4;
+			insertAtTimeFrame(start, start + segmentSize * (i % 3), new TestValue("Joe" + i, i));  // some span segments
+			insertAtTime(start + 1, new TestValue("Bob" + i, i));
+		}
+		getTimeCollection().rollup(new Range(0, segmentSize - 1));  // some chunks rolled up, some not
+
+		long[][] ranges = {{Long.MIN_VALUE, Long.MAX_VALUE}, {0, segmentSize}, {segmentSize / 2, segmentSize * 2}, {segmentSize * 3 + 1, segmentSize * 4}, {segmentSize * 10, segmentSize * 11}};
+		for (long[] range: ranges) {
+			assertEquals(getTimeCollection().query().afterOrAtTime(range[0]).beforeOrAtTime(range[1]).getList(),
+					getTimeCollection().query().parallel().afterOrAtTime(range[0]).beforeOrAtTime(range[1]).getList());
+			assertEquals(getTimeCollection().query().byStartTime().afterOrAtTime(range[0]).beforeOrAtTime(range[1]).getList(),
+					getTimeCollection().query().parallel().byStartTime().afterOrAtTime(range[0]).beforeOrAtTime(range[1]).getList());
+			assertEquals(getTimeCollection().query().where((v) -> v.getCupcakes() % 2 == 0).afterOrAtTime(range[0]).beforeOrAtTime(range[1]).count(),
+					getTimeCollection().query().parallel().where((v) -> v.getCupcakes() % 2 == 0).afterOrAtTime(range[0]).beforeOrAtTime(range[1]).count());
+			assertEquals(getTimeCollection().query().afterOrAtTime(range[0]).beforeOrAtTime(range[1]).count(),
+					getTimeCollection().query().parallel().afterOrAtTime(range[0]).beforeOrAtTime(range[1]).count());
+		}
+
+		getTimeCollection().query().parallel().where((v) -> v.getCupcakes() < 10).delete();
+		assertEquals(20, getTimeCollection().query().count());
+	}
+
+	@Test
+	public void test_query_parallel_onDbThreads() throws Exception {
+		long segmentSize = getTimeCollection().getSegmentManager().getSegmentSize();
+		for (int i = 0; i < 10; i++) {
+			insertAtTime(i * segmentSize, new TestValue("Joe" + i, i));
+		}
+		Set<String> threadNames = ConcurrentHashMap.newKeySet();
+		assertEquals(10, getTimeCollection().query().parallel().where((v) -> {
+			threadNames.add(Thread.currentThread().getName());
+			return true;
+		}).count());
+		String threadPrefix = db.getPath().getFileName().toString() + "-segment-reader-executor";
+		for (String threadName: threadNames) {
+			assertTrue(threadName.startsWith(threadPrefix));
+		}
+
+		db.shutdown();
+		assertTrue(db.awaitTermination(1, TimeUnit.MINUTES));
+		try {
+			getTimeCollection().query().parallel().getList();
+			fail();
+		} catch (BlueDbException e) {
+		}
+	}
+
+	@Test
+	public void test_query_exists() throws Exception {
+		assertFalse(getTimeCollection().query().exists());
+		insertAtTime(10, new TestValue("Joe", 1));
+		insertAtTime(20, new TestValue("Bob", 2));
+		assertTrue(getTimeCollection().query().exists());
+		assertTrue(getTimeCollection().query().afterTime(10).exists());
+		assertFalse(getTimeCollection().query().afterTime(20).exists());
+		assertTrue(getTimeCollection().query().where((v) -> v.getCupcakes() == 2).exists());
+		assertFalse(getTimeCollection().query().where((v) -> v.getCupcakes() == 3).exists());
+	}
+
+	@Test
+	public void test_query_first() throws Exception {
+		TestValue joe = new TestValue("Joe", 1);
+		TestValue bob = new TestValue("Bob", 2);
+		assertNull(getTimeCollection().query().first());
+		insertAtTime(20, bob);
+		insertAtTime(10, joe);
+		assertEquals(joe, getTimeCollection().query().first());
+		assertEquals(bob, getTimeCollection().query().afterTime(10).first());
+		assertEquals(bob, getTimeCollection().query().where((v) -> v.getCupcakes() == 2).first());
+		assertNull(getTimeCollection().query().afterTime(20).first());
+	}
+
 	@Test
 	public void test_query_where() throws Exception {
         TestValue valueJoe = new TestValue("Joe");
@@ -727,6 +828,15 @@ public class BlueDbOnDiskTest extends BlueDbDiskTestBase {
 		TestUtils.assertThrowable(InterruptedException.class, updateAndSleepTask.getError());
 	}
 
+	@Test
+	public void test_shutdown_withIteratorTimeoutPending() throws Exception {
+		insertAtTime(10, new TestValue("Joe Dirt"));
+		getTimeCollection().query().getIterator().close();  // leaves a timeout sweep scheduled
+
+		db.shutdown();
+		assertTrue(db.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
 	private void validateShutdown() {
 		TestTask scheduledTask = TestTask.run(() -> {
 			db.getSharedExecutor().scheduleTaskAtFixedRate(() -> System.out.println("Hi!"), 10, 10, TimeUnit.MINUTES);
@@ -26,6 +26,7 @@ import org.bluedb.disk.recovery.PendingChange;
 import org.bluedb.disk.recovery.PendingRollup;
 import org.bluedb.disk.recovery.Recoverable;
 import org.bluedb.disk.segment.Range;
+import org.bluedb.disk.segment.WriteMode;
 import org.bluedb.disk.segment.rollup.RollupTarget;
 import org.bluedb.zip.ZipUtils;
 
@@ -48,6 +49,26 @@ public class BackupManagerTest extends BlueDbDiskTestBase {
 		assertEquals(value1, restoredCollection.get(key1At1));
 	}
 
+	@Test
+	public void test_backupToTempDirectory_delta() throws Exception {
+		BlueCollectionOnDisk<TestValue> deltaCollection = db().collectionBuilder("delta_collection", TimeKey.class, TestValue.class)
+				.withWriteMode(WriteMode.APPEND_DELTA)
+				.build();
+		BlueKey key1At1 = createKey(1, 1);
+		TestValue value1 = createValue("Anna");
+		deltaCollection.insert(key1At1, value1);
+		List<BlueCollectionOnDisk<?>> collectionsToBackup = Arrays.asList(deltaCollection);
+
+		Path backedUpPath = createTempFolder().toPath();
+		BackupManager backupTask = db().getBackupManager();
+		backupTask.backupToTempDirectory(collectionsToBackup, backedUpPath);
+
+		BlueDbOnDisk restoredDb = new BlueDbOnDiskBuilder().withPath(backedUpPath).build();
+		BlueCollectionOnDisk<TestValue> restoredCollection = restoredDb.collectionBuilder("delta_collection", TimeKey.class, TestValue.class).build();
+		assertEquals(value1, restoredCollection.get(key1At1));
+		assertEquals(1, restoredCollection.query().getList().size());
+	}
+
 	@Test
 	public void test_backupToTempDirectory_change_pending() throws Exception {
 		BlueKey key1At1 = createKey(1, 1);
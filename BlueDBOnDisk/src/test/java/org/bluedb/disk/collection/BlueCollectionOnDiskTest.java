@@ -5,6 +5,7 @@ import static org.junit.Assert.assertNotEquals;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -12,6 +13,10 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bluedb.api.Condition;
@@ -74,6 +79,44 @@ public class BlueCollectionOnDiskTest extends BlueDbDiskTestBase {
 		assertNotEquals(value, getTimeCollection().get(differentValueAndTime));
 	}
 
+	@Test
+	public void test_getAll() throws Exception {
+		long segmentSize = getTimeCollection().getSegmentManager().getSegmentSize();
+		List<BlueKey> keys = new ArrayList<>();
+		Map<BlueKey, TestValue> expected = new HashMap<>();
+		for (int i = 0; i < 30; i++) {
+			long time = (i % 3 == 0) ? segmentSize + i : i / 2;  // some in a second segment and some sharing a time
+			BlueKey key = createKey(i, time);
+			TestValue value = createValue("Anna" + i, i);
+			getTimeCollection().insert(key, value);
+			keys.add(key);
+			expected.put(key, value);
+		}
+		getTimeCollection().rollup(new Range(0, segmentSize - 1));  // so that the first segment's keys share a chunk
+
+		BlueKey missingKey = createKey(100, 3);
+		List<BlueKey> requestedKeys = new ArrayList<>(keys);
+		requestedKeys.add(missingKey);
+		requestedKeys.add(keys.get(4));  // asked for twice
+		Collections.shuffle(requestedKeys, new Random(7));
+
+		Map<BlueKey, TestValue> values = getTimeCollection().getAll(requestedKeys);
+		assertEquals(expected, values);
+		List<BlueKey> sortedKeys = new ArrayList<>(keys);
+		Collections.sort(sortedKeys);
+		assertEquals(sortedKeys, new ArrayList<>(values.keySet()));
+		for (BlueKey key: keys) {
+			assertEquals(getTimeCollection().get(key), values.get(key));
+		}
+		assertTrue(getTimeCollection().getAll(Arrays.asList(missingKey)).isEmpty());
+		assertTrue(getTimeCollection().getAll(new ArrayList<>()).isEmpty());
+		try {
+			getTimeCollection().getAll(Arrays.asList(new LongKey(1)));
+			fail();
+		} catch (BlueDbException e) {
+		}
+	}
+
 	@Test
 	public void test_insert() {
 		TestValue value = new TestValue("Joe");
@@ -87,6 +130,101 @@ public class BlueCollectionOnDiskTest extends BlueDbDiskTestBase {
 		}
 	}
 
+	@Test
+	public void test_insertAsync() throws Exception {
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		List<BlueKey> keys = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			TestValue value = new TestValue("Joe" + i, i);
+			BlueKey key = createTimeKey(i, value);
+			keys.add(key);
+			futures.add(getTimeCollection().insertAsync(key, value));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+		for (int i = 0; i < 50; i++) {
+			assertValueAtKey(keys.get(i), new TestValue("Joe" + i, i));
+		}
+
+		CompletableFuture<Void> duplicate = getTimeCollection().insertAsync(keys.get(0), new TestValue("Bob"));
+		try {
+			duplicate.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof BlueDbException);
+		}
+		assertValueAtKey(keys.get(0), new TestValue("Joe0", 0));
+
+		try {
+			getTimeCollection().insertAsync(new LongKey(1), new TestValue("Bob"));  // wrong key type
+			fail();
+		} catch (BlueDbException e) {
+		}
+	}
+
+	@Test
+	public void test_insertAsync_shutdownNow() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CompletableFuture<Void> running = getTimeCollection().submitTaskAsync(() -> {
+			started.countDown();
+			try {
+				Thread.sleep(60_000);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		started.await();
+		TestValue value = new TestValue("Joe");
+		CompletableFuture<Void> queued = getTimeCollection().insertAsync(createTimeKey(1, value), value);
+
+		db().shutdownNow();
+		CompletableFuture<Void> rejected = getTimeCollection().insertAsync(createTimeKey(2, value), value);
+
+		for (CompletableFuture<Void> future: Arrays.asList(running, queued, rejected)) {
+			try {
+				future.get(1, TimeUnit.MINUTES);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof BlueDbException);
+			}
+		}
+	}
+
+	@Test
+	public void test_updateAsync_replaceAsync_deleteAsync() throws Exception {
+		TestValue value = new TestValue("Joe", 0);
+		BlueKey key = insertAtTime(10, value);
+		getTimeCollection().updateAsync(key, (v) -> v.addCupcake()).get();
+		assertCupcakes(key, 1);
+		getTimeCollection().replaceAsync(key, (v) -> new TestValue("Joe", 5)).get();
+		assertCupcakes(key, 5);
+		getTimeCollection().deleteAsync(key).get();
+		assertNull(getTimeCollection().get(key));
+
+		try {
+			getTimeCollection().updateAsync(key, (v) -> v.addCupcake()).get();  // nothing left to update
+			fail();
+		} catch (ExecutionException e) {
+		}
+	}
+
+	@Test
+	public void test_batchUpsertAsync_batchDeleteAsync() throws Exception {
+		TestValue value1 = new TestValue("Joe");
+		TestValue value2 = new TestValue("Bob");
+		BlueKey key1 = createTimeKey(10, value1);
+		BlueKey key2 = createTimeKey(20, value2);
+		Map<BlueKey, TestValue> batchInserts = new HashMap<>();
+		batchInserts.put(key1, value1);
+		batchInserts.put(key2, value2);
+		getTimeCollection().batchUpsertAsync(batchInserts).get();
+		assertValueAtKey(key1, value1);
+		assertValueAtKey(key2, value2);
+
+		getTimeCollection().batchDeleteAsync(Arrays.asList(key1)).get();
+		assertValueNotAtKey(key1, value1);
+		assertValueAtKey(key2, value2);
+	}
+
 	@Test
 	public void test_batchInsert() throws Exception {
 		TestValue value1 = new TestValue("Joe");
@@ -373,6 +511,38 @@ public class BlueCollectionOnDiskTest extends BlueDbDiskTestBase {
 		assertTrue(hasRun.get());
 	}
 
+	@Test
+	public void test_insert_concurrentSegments() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		BlueIndex<IntegerKey, TestValue> index = collection.createIndex("test_index", IntegerKey.class, new TestRetrievalKeyExtractor());
+		long segmentSize = getTimeSegmentManager().getSegmentSize();
+		int threadCount = 4;
+		int valuesPerThread = 20;
+		List<Thread> threads = new ArrayList<>();
+		List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+		for (int i = 0; i < threadCount; i++) {
+			long segmentStart = i * segmentSize;
+			threads.add(new Thread(() -> {
+				try {
+					for (int j = 0; j < valuesPerThread; j++) {
+						TestValue value = new TestValue("value" + j, 7);  // all of them share an index chunk
+						collection.insert(createTimeKey(segmentStart + j, value), value);
+					}
+				} catch (Throwable t) {
+					errors.add(t);
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread thread: threads) {
+			thread.join();
+		}
+
+		assertEquals(Arrays.asList(), errors);
+		assertEquals(threadCount * valuesPerThread, collection.query().count());
+		assertEquals(threadCount * valuesPerThread, index.get(new IntegerKey(7)).size());
+	}
+
 	@Test
 	public void test_rollup() throws Exception {
 		BlueKey key1At1 = createKey(1, 1);
@@ -3,13 +3,16 @@ package org.bluedb.disk.collection;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import org.junit.Test;
+import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.keys.BlueKey;
 import org.bluedb.disk.BlueDbDiskTestBase;
 import org.bluedb.disk.Blutils;
 import org.bluedb.disk.TestValue;
 import org.bluedb.disk.collection.CollectionValueIterator;
+import org.bluedb.disk.executors.TimeoutScheduler;
 import org.bluedb.disk.lock.LockManager;
 import org.bluedb.disk.segment.Segment;
 import org.bluedb.disk.segment.Range;
@@ -146,4 +149,45 @@ public class CollectionValueIteratorTest extends BlueDbDiskTestBase {
 			} catch (Exception e) {}
 		}
 	}
+
+	@Test
+	public void test_manyConcurrentIterators() throws Exception {
+		getTimeCollection().insert(createKey(1, 1), createValue("Anna"));
+		int iteratorCount = 10_000;
+		int threadCount = 16;
+		List<CollectionValueIterator<TestValue>> iterators = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < threadCount; t++) {
+			Thread thread = new Thread(() -> {
+				try {
+					for (int i = 0; i < iteratorCount / threadCount; i++) {
+						iterators.add((CollectionValueIterator<TestValue>) getTimeCollection().query().getIterator());
+					}
+				} catch (BlueDbException e) {
+					e.printStackTrace();
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		TimeoutScheduler timeoutScheduler = getTimeCollection().getSharedExecutor().getTimeoutScheduler();
+		assertEquals(iteratorCount, iterators.size());
+		assertEquals(iteratorCount, timeoutScheduler.size());
+		assertEquals(1, countSchedulerThreads());  // used to be a timer thread per iterator
+
+		for (CollectionValueIterator<TestValue> iterator: iterators) {
+			iterator.close();
+		}
+		assertEquals(0, timeoutScheduler.size());
+	}
+
+	private long countSchedulerThreads() {
+		String schedulerThreadPrefix = db().getPath().getFileName().toString() + "-scheduled-task-executor";
+		return Thread.getAllStackTraces().keySet().stream()
+				.filter((thread) -> thread.getName().startsWith(schedulerThreadPrefix))
+				.count();
+	}
 }
\ No newline at end of file
@@ -2,6 +2,8 @@ package org.bluedb.disk.collection.index;
 
 import java.io.File;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import org.junit.Test;
@@ -96,6 +98,70 @@ public class BlueIndexOnDiskTest extends BlueDbDiskTestBase {
 		assertEquals(emptyList, indexOnDisk.getKeys(integerKey3));
 	}
 
+	@Test
+	public void test_applyChanges_batchUpsertAndDelete() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		BlueIndex<IntegerKey, TestValue> index = collection.createIndex("test_index", IntegerKey.class, new TestRetrievalKeyExtractor());
+		BlueIndexOnDisk<IntegerKey, TestValue> indexOnDisk = (BlueIndexOnDisk<IntegerKey, TestValue>) index;
+
+		TestValue valueFred1 = new TestValue("Fred", 1);
+		TestValue valueFred2 = new TestValue("Fred", 2);
+		TestValue valueBob3 = new TestValue("Bob", 3);
+		TimeKey timeKeyFred = createTimeKey(1, valueFred1);
+		TimeKey timeKeyBob = createTimeKey(2, valueBob3);
+		List<BlueKey> emptyList = Arrays.asList();
+
+		Map<BlueKey, TestValue> batch = new LinkedHashMap<>();
+		batch.put(timeKeyFred, valueFred1);
+		batch.put(timeKeyBob, valueBob3);
+		collection.batchUpsert(batch);
+		assertEquals(Arrays.asList(timeKeyFred), indexOnDisk.getKeys(new IntegerKey(1)));
+		assertEquals(Arrays.asList(timeKeyBob), indexOnDisk.getKeys(new IntegerKey(3)));
+
+		collection.batchUpsert(Collections.singletonMap(timeKeyFred, valueFred2));
+		assertEquals(emptyList, indexOnDisk.getKeys(new IntegerKey(1)));
+		assertEquals(Arrays.asList(timeKeyFred), indexOnDisk.getKeys(new IntegerKey(2)));
+
+		collection.batchDelete(Arrays.asList(timeKeyFred, timeKeyBob));
+		assertEquals(emptyList, indexOnDisk.getKeys(new IntegerKey(2)));
+		assertEquals(emptyList, indexOnDisk.getKeys(new IntegerKey(3)));
+	}
+
+	@Test
+	public void test_applyChanges_onlyChangedKeys() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		BlueIndex<IntegerKey, TestValue> index = collection.createIndex("test_index", IntegerKey.class, new TestMultiRetrievalKeyExtractor());
+		BlueIndexOnDisk<IntegerKey, TestValue> indexOnDisk = (BlueIndexOnDisk<IntegerKey, TestValue>) index;
+
+		TestValue valueFred1 = new TestValue("Fred", 1);
+		TimeKey timeKeyFred = createTimeKey(1, valueFred1);
+		collection.insert(timeKeyFred, valueFred1);
+		List<BlueKey> justFred = Arrays.asList(timeKeyFred);
+		List<BlueKey> emptyList = Arrays.asList();
+
+		collection.query().update((v) -> v.setCupcakes(3));  // keys 1 and 3 become 3 and 5
+		assertEquals(emptyList, indexOnDisk.getKeys(new IntegerKey(1)));
+		assertEquals(justFred, indexOnDisk.getKeys(new IntegerKey(3)));
+		assertEquals(justFred, indexOnDisk.getKeys(new IntegerKey(5)));
+
+		collection.query().delete();
+		assertEquals(emptyList, indexOnDisk.getKeys(new IntegerKey(3)));
+		assertEquals(emptyList, indexOnDisk.getKeys(new IntegerKey(5)));
+	}
+
+	@Test
+	public void test_applyChanges_projectionChanged() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		BlueIndex<IntegerKey, TestValue> index = collection.createIndex("test_index", IntegerKey.class, new TestRetrievalKeyExtractor(), new TestNameProjection());
+
+		TestValue valueFred3 = new TestValue("Fred", 3);
+		TimeKey timeKey = createTimeKey(1, valueFred3);
+		collection.insert(timeKey, valueFred3);
+
+		collection.batchUpsert(Collections.singletonMap(timeKey, new TestValue("Frederick", 3)));  // same index key
+		assertEquals(Collections.singletonMap(timeKey, "Frederick"), index.getProjected(new IntegerKey(3), String.class));
+	}
+
 	@Test
 	public void test_get() throws Exception {
 		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
@@ -138,6 +204,79 @@ public class BlueIndexOnDiskTest extends BlueDbDiskTestBase {
 		assertEquals(justBob, indexOnDisk.get(integerKey3));
 	}
 
+	@Test
+	public void test_getProjected() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		TestValue valueFred1 = new TestValue("Fred", 1);
+		TestValue valueBob3 = new TestValue("Bob", 3);
+		TestValue valueJoe3 = new TestValue("Joe", 3);
+		TestValue valueNoName3 = new TestValue(null, 3);
+		TimeKey timeKeyFred1 = createTimeKey(1, valueFred1);
+		TimeKey timeKeyBob3 = createTimeKey(2, valueBob3);
+		TimeKey timeKeyJoe3 = createTimeKey(3, valueJoe3);
+		TimeKey timeKeyNoName3 = createTimeKey(4, valueNoName3);
+		collection.insert(timeKeyFred1, valueFred1);
+		collection.insert(timeKeyBob3, valueBob3);  // before the index, so it's added when the index is populated
+
+		BlueIndex<IntegerKey, TestValue> index = collection.createIndex("test_index", IntegerKey.class, new TestRetrievalKeyExtractor(), new TestNameProjection());
+		collection.insert(timeKeyJoe3, valueJoe3);
+		collection.insert(timeKeyNoName3, valueNoName3);
+
+		Map<BlueKey, String> bobJoeAndNoName = new LinkedHashMap<>();
+		bobJoeAndNoName.put(timeKeyBob3, "Bob");
+		bobJoeAndNoName.put(timeKeyJoe3, "Joe");
+		bobJoeAndNoName.put(timeKeyNoName3, null);
+		assertEquals(Collections.singletonMap(timeKeyFred1, "Fred"), index.getProjected(new IntegerKey(1), String.class));
+		assertEquals(Collections.emptyMap(), index.getProjected(new IntegerKey(2), String.class));
+		assertEquals(bobJoeAndNoName, index.getProjected(new IntegerKey(3), String.class));
+		assertEquals(Arrays.asList(valueBob3, valueJoe3, valueNoName3), index.get(new IntegerKey(3)));
+
+		collection.update(timeKeyJoe3, (v) -> v.setName("Joseph"));
+		collection.delete(timeKeyBob3);
+		Map<BlueKey, String> josephAndNoName = new LinkedHashMap<>();
+		josephAndNoName.put(timeKeyJoe3, "Joseph");
+		josephAndNoName.put(timeKeyNoName3, null);
+		assertEquals(josephAndNoName, index.getProjected(new IntegerKey(3), String.class));
+
+		@SuppressWarnings({"rawtypes", "unchecked"})
+		IndexManager<TestValue> restoredIndexManager = new IndexManager(collection, collection.getPath());
+		BlueIndex<IntegerKey, TestValue> restoredIndex = restoredIndexManager.getIndex("test_index", IntegerKey.class);
+		assertEquals(josephAndNoName, restoredIndex.getProjected(new IntegerKey(3), String.class));
+
+		BlueIndex<IntegerKey, TestValue> indexWithoutProjection = collection.createIndex("test_index_without_projection", IntegerKey.class, new TestRetrievalKeyExtractor());
+		try {
+			indexWithoutProjection.getProjected(new IntegerKey(3), String.class);
+			fail();
+		} catch (BlueDbException e) {
+		}
+
+		try {
+			index.getProjected(new IntegerKey(3), Integer.class);
+			fail();
+		} catch (BlueDbException e) {
+		}
+	}
+
+	@Test
+	public void test_createIndex_projectionMismatch() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		BlueIndex<IntegerKey, TestValue> index = collection.createIndex("test_index", IntegerKey.class, new TestRetrievalKeyExtractor(), new TestNameProjection());
+		assertSame(index, collection.createIndex("test_index", IntegerKey.class, new TestRetrievalKeyExtractor(), new TestNameProjection()));
+		assertSame(index, collection.createIndex("test_index", IntegerKey.class, new TestRetrievalKeyExtractor()));
+		try {
+			collection.createIndex("test_index", IntegerKey.class, new TestRetrievalKeyExtractor(), (v) -> v.getCupcakes());
+			fail();
+		} catch (BlueDbException e) {
+		}
+
+		collection.createIndex("test_index_without_projection", IntegerKey.class, new TestRetrievalKeyExtractor());
+		try {
+			collection.createIndex("test_index_without_projection", IntegerKey.class, new TestRetrievalKeyExtractor(), new TestNameProjection());
+			fail();
+		} catch (BlueDbException e) {
+		}
+	}
+
 	@Test
 	public void test_createNew_populateNewIndex() throws Exception {
 		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
@@ -183,6 +322,7 @@ public class BlueIndexOnDiskTest extends BlueDbDiskTestBase {
 		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
 		BlueIndex<IntegerKey, TestValue> index = collection.createIndex("test_index", IntegerKey.class, keyExtractor);
 		BlueIndexOnDisk<IntegerKey, TestValue> indexOnDisk = (BlueIndexOnDisk<IntegerKey, TestValue>) index;
+		indexOnDisk.awaitBuild();  // the index entries are only written once it is built
 
 		BlueKey key1At1 = createKey(1, 1);
 		BlueKey key3At3 = createKey(3, 3);
@@ -228,7 +368,8 @@ public class BlueIndexOnDiskTest extends BlueDbDiskTestBase {
 		String indexName = "test_index";
 		TestRetrievalKeyExtractor keyExtractor = new TestRetrievalKeyExtractor();
 		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
-		collection.createIndex(indexName, IntegerKey.class, keyExtractor);
+		BlueIndexOnDisk<?, TestValue> indexOnDisk = (BlueIndexOnDisk<?, TestValue>) collection.createIndex(indexName, IntegerKey.class, keyExtractor);
+		indexOnDisk.awaitBuild();  // the index writes are only reported once it is built
 
 		BlueKey key1At1 = createKey(1, 1);
 		BlueKey key3At3 = createKey(3, 3);
@@ -0,0 +1,111 @@
+package org.bluedb.disk.collection.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.bluedb.api.CloseableIterator;
+import org.bluedb.api.index.BlueIndex;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.IntegerKey;
+import org.bluedb.api.keys.LongKey;
+import org.bluedb.api.keys.TimeKey;
+import org.bluedb.disk.BlueDbDiskTestBase;
+import org.bluedb.disk.TestValue;
+import org.bluedb.disk.collection.BlueCollectionOnDisk;
+
+public class BlueIndexQueryOnDiskTest extends BlueDbDiskTestBase {
+
+	@Test
+	public void test_getList() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		BlueIndex<IntegerKey, TestValue> index = collection.createIndex("test_index", IntegerKey.class, new TestRetrievalKeyExtractor());
+
+		TestValue valueFred1 = new TestValue("Fred", 1);
+		TestValue valueBob3 = new TestValue("Bob", 3);
+		TestValue valueJoe3 = new TestValue("Joe", 3);
+		TestValue valueSue5 = new TestValue("Sue", 5);
+		collection.insert(createTimeKey(4, valueSue5), valueSue5);
+		collection.insert(createTimeKey(3, valueJoe3), valueJoe3);
+		collection.insert(createTimeKey(2, valueBob3), valueBob3);
+		collection.insert(createTimeKey(1, valueFred1), valueFred1);
+
+		List<TestValue> everything = Arrays.asList(valueFred1, valueBob3, valueJoe3, valueSue5);
+		List<TestValue> fromThree = Arrays.asList(valueBob3, valueJoe3, valueSue5);
+		List<TestValue> justThrees = Arrays.asList(valueBob3, valueJoe3);
+		List<TestValue> empty = Arrays.asList();
+
+		assertEquals(everything, index.query().getList());
+		assertEquals(fromThree, index.query().greaterThan(new IntegerKey(1)).getList());
+		assertEquals(fromThree, index.query().greaterThanOrEqual(new IntegerKey(3)).getList());
+		assertEquals(Arrays.asList(valueSue5), index.query().greaterThan(new IntegerKey(3)).getList());
+		assertEquals(Arrays.asList(valueFred1), index.query().lessThan(new IntegerKey(3)).getList());
+		assertEquals(justThrees, index.query().greaterThan(new IntegerKey(1)).lessThanOrEqual(new IntegerKey(3)).getList());
+		assertEquals(justThrees, index.query().greaterThanOrEqual(new IntegerKey(3)).lessThanOrEqual(new IntegerKey(3)).getList());
+		assertEquals(empty, index.query().greaterThan(new IntegerKey(3)).lessThan(new IntegerKey(5)).getList());
+		assertEquals(empty, index.query().greaterThan(new IntegerKey(5)).lessThan(new IntegerKey(1)).getList());
+		assertEquals(justThrees, index.query().greaterThan(new IntegerKey(0)).greaterThan(new IntegerKey(2)).lessThan(new IntegerKey(5)).lessThan(new IntegerKey(9)).getList());
+
+		collection.delete(createTimeKey(3, valueJoe3));
+		assertEquals(Arrays.asList(valueBob3), index.query().greaterThan(new IntegerKey(1)).lessThanOrEqual(new IntegerKey(3)).getList());
+	}
+
+	@Test
+	public void test_getList_longKeysSharingGroupingNumber() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		BlueIndex<LongKey, TestValue> index = collection.createIndex("test_index", LongKey.class, new TestLongRetrievalKeyExtractor());
+
+		TestValue valueFred2 = new TestValue("Fred", 2);
+		TestValue valueBob3 = new TestValue("Bob", 3);
+		TestValue valueJoe4 = new TestValue("Joe", 4);
+		collection.insert(createTimeKey(1, valueFred2), valueFred2);
+		collection.insert(createTimeKey(2, valueBob3), valueBob3);
+		collection.insert(createTimeKey(3, valueJoe4), valueJoe4);
+		assertEquals(new LongKey(2).getGroupingNumber(), new LongKey(3).getGroupingNumber());
+
+		assertEquals(Arrays.asList(valueBob3, valueJoe4), index.query().greaterThan(new LongKey(2)).getList());
+		assertEquals(Arrays.asList(valueFred2), index.query().lessThan(new LongKey(3)).getList());
+		assertEquals(Arrays.asList(valueBob3), index.query().greaterThanOrEqual(new LongKey(3)).lessThanOrEqual(new LongKey(3)).getList());
+	}
+
+	@Test
+	public void test_getIterator() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		BlueIndex<IntegerKey, TestValue> index = collection.createIndex("test_index", IntegerKey.class, new TestRetrievalKeyExtractor());
+
+		List<TestValue> expected = new ArrayList<>();
+		int count = IndexValueIterator.BATCH_SIZE * 2 + 1;
+		for (int i = 0; i < count; i++) {
+			TestValue value = new TestValue("Joe" + i, i);
+			collection.insert(createTimeKey(i, value), value);
+			if (i >= 10) {
+				expected.add(value);
+			}
+		}
+
+		List<TestValue> values = new ArrayList<>();
+		try (CloseableIterator<TestValue> iterator = index.query().greaterThanOrEqual(new IntegerKey(10)).getIterator()) {
+			while (iterator.hasNext()) {
+				values.add(iterator.next());
+			}
+		}
+		assertEquals(expected, values);
+	}
+
+	@Test
+	public void test_getKeys() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		BlueIndex<IntegerKey, TestValue> index = collection.createIndex("test_index", IntegerKey.class, new TestRetrievalKeyExtractor());
+
+		TestValue valueFred1 = new TestValue("Fred", 1);
+		TestValue valueBob3 = new TestValue("Bob", 3);
+		TimeKey timeKeyFred1 = createTimeKey(1, valueFred1);
+		TimeKey timeKeyBob3 = createTimeKey(2, valueBob3);
+		collection.insert(timeKeyFred1, valueFred1);
+		collection.insert(timeKeyBob3, valueBob3);
+
+		List<BlueKey> justBob = Arrays.asList(timeKeyBob3);
+		assertEquals(justBob, index.query().greaterThan(new IntegerKey(1)).getKeys());
+		assertEquals(Arrays.asList(timeKeyFred1, timeKeyBob3), index.query().getKeys());
+	}
+}
@@ -0,0 +1,171 @@
+package org.bluedb.disk.collection.index;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.IntegerKey;
+import org.bluedb.disk.BlueDbDiskTestBase;
+import org.bluedb.disk.Blutils;
+import org.bluedb.disk.TestValue;
+import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.recovery.IndividualChange;
+import org.bluedb.disk.segment.Segment;
+
+public class IndexBuilderTest extends BlueDbDiskTestBase {
+
+	@Test
+	public void test_build() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		long segmentSize = collection.getSegmentManager().getSegmentSize();
+		int valueCount = IndexBuilder.MAX_MERGE_WIDTH * 2 + 1;  // one run per segment, so it takes a merge pass
+		List<TestValue> values = new ArrayList<>();
+		for (int i = 0; i < valueCount; i++) {
+			TestValue value = new TestValue("Joe" + i, i);
+			insertAtTime(i * segmentSize, value);
+			values.add(value);
+		}
+		TestValue valueAcrossSegments = new TestValue("Bob", 0);
+		insertAtTimeFrame(segmentSize / 2, segmentSize * 3, valueAcrossSegments);
+
+		Path indexPath = Paths.get(collection.getPath().toString(), ".index", "test_index");
+		BlueIndexOnDisk<IntegerKey, TestValue> index = BlueIndexOnDisk.createNew(collection, indexPath, new TestRetrievalKeyExtractor());
+		index.startBuild();
+		index.awaitBuild();
+
+		assertFalse(IndexBuilder.isInProgress(indexPath));
+		assertEquals(Arrays.asList(values.get(0), valueAcrossSegments), index.get(new IntegerKey(0)));
+		for (int i = 1; i < valueCount; i++) {
+			assertEquals(Arrays.asList(values.get(i)), index.get(new IntegerKey(i)));
+		}
+		List<Segment<Serializable>> indexSegments = index.getSegmentManager().getAllExistingSegments();
+		assertFalse(indexSegments.isEmpty());
+		for (Segment<Serializable> segment: indexSegments) {
+			assertEquals(Arrays.asList(segment.getRange()), segment.getChunkRangesInOrder());  // loaded fully rolled up
+		}
+	}
+
+	@Test
+	public void test_build_resume() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		long segmentSize = collection.getSegmentManager().getSegmentSize();
+		List<TestValue> values = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			TestValue value = new TestValue("Joe" + i, i);
+			insertAtTime(i * segmentSize, value);
+			values.add(value);
+		}
+		Path indexPath = Paths.get(collection.getPath().toString(), ".index", "test_index");
+		BlueIndexOnDisk<IntegerKey, TestValue> index = BlueIndexOnDisk.createNew(collection, indexPath, new TestRetrievalKeyExtractor());
+		index.startBuild();
+		index.awaitBuild();
+
+		// start over and get interrupted partway through extracting
+		for (Segment<?> segment: index.getSegmentManager().getAllExistingSegments()) {
+			Blutils.recursiveDelete(segment.getPath().toFile());
+		}
+		IndexBuilder.markInProgress(indexPath);
+		new IndexBuilder<>(collection, index, indexPath).extract();
+		File buildFolder = Paths.get(indexPath.toString(), IndexBuilder.BUILD_FOLDER).toFile();
+		new File(buildFolder, IndexBuilder.EXTRACTED_MARKER).delete();
+		new File(buildFolder, "0_" + segmentSize * 2).delete();
+		assertTrue(IndexBuilder.isInProgress(indexPath));
+
+		BlueIndexOnDisk<IntegerKey, TestValue> resumedIndex = BlueIndexOnDisk.fromExisting(collection, indexPath);
+		assertTrue(resumedIndex.isBuilding());  // waits for startBuild
+		try {
+			resumedIndex.awaitBuild();
+			fail();
+		} catch (BlueDbException e) {}
+		resumedIndex.startBuild();
+		resumedIndex.awaitBuild();
+
+		assertFalse(IndexBuilder.isInProgress(indexPath));
+		for (int i = 0; i < values.size(); i++) {
+			assertEquals(Arrays.asList(values.get(i)), resumedIndex.get(new IntegerKey(i)));
+		}
+	}
+
+	@Test
+	public void test_build_resumeAfterMerge() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		long segmentSize = collection.getSegmentManager().getSegmentSize();
+		List<TestValue> values = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			TestValue value = new TestValue("Joe" + i, i);
+			insertAtTime(i * segmentSize, value);
+			values.add(value);
+		}
+		Path indexPath = Paths.get(collection.getPath().toString(), ".index", "test_index");
+		BlueIndexOnDisk<IntegerKey, TestValue> index = BlueIndexOnDisk.createNew(collection, indexPath, new TestRetrievalKeyExtractor());
+		index.startBuild();
+		index.awaitBuild();
+
+		// get interrupted after merging the runs but before deleting them, so every entry is in two runs
+		for (Segment<?> segment: index.getSegmentManager().getAllExistingSegments()) {
+			Blutils.recursiveDelete(segment.getPath().toFile());
+		}
+		IndexBuilder.markInProgress(indexPath);
+		IndexBuilder<IntegerKey, TestValue> builder = new IndexBuilder<>(collection, index, indexPath);
+		builder.extract();
+		File buildFolder = Paths.get(indexPath.toString(), IndexBuilder.BUILD_FOLDER).toFile();
+		File run = new File(buildFolder, "0_0");
+		File copyOfRun = new File(buildFolder, "1_0");
+		Files.copy(run.toPath(), copyOfRun.toPath());
+
+		BlueIndexOnDisk<IntegerKey, TestValue> resumedIndex = BlueIndexOnDisk.fromExisting(collection, indexPath);
+		resumedIndex.startBuild();
+		resumedIndex.awaitBuild();
+
+		assertFalse(IndexBuilder.isInProgress(indexPath));
+		for (int i = 0; i < values.size(); i++) {
+			assertEquals(Arrays.asList(values.get(i)), resumedIndex.get(new IntegerKey(i)));
+		}
+	}
+
+	@Test
+	public void test_build_recordsChanges() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
+		long segmentSize = collection.getSegmentManager().getSegmentSize();
+		List<TestValue> values = new ArrayList<>();
+		List<BlueKey> keys = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			TestValue value = new TestValue("Joe" + i, i);
+			keys.add(insertAtTime(i * segmentSize, value));
+			values.add(value);
+		}
+		Path indexPath = Paths.get(collection.getPath().toString(), ".index", "test_index");
+		BlueIndexOnDisk<IntegerKey, TestValue> index = BlueIndexOnDisk.createNew(collection, indexPath, new TestRetrievalKeyExtractor());
+		assertTrue(index.isBuilding());
+
+		// what the index manager does for writes that come in while the index is building
+		TestValue newValue = new TestValue("Bob", 9);
+		BlueKey newKey = insertAtTime(segmentSize * 9, newValue);
+		index.add(newKey, newValue);
+		collection.delete(keys.get(0));
+		index.remove(keys.get(0), values.get(0));
+		TestValue updatedValue = new TestValue("Joe1", 7);
+		collection.update(keys.get(1), (v) -> v.setCupcakes(7));
+		index.applyChanges(Arrays.asList(new IndividualChange<TestValue>(keys.get(1), values.get(1), updatedValue)));
+		assertTrue(Paths.get(indexPath.toString(), IndexBuilder.BUILD_FOLDER, IndexBuilder.CHANGE_LOG).toFile().exists());
+
+		index.startBuild();
+		index.awaitBuild();
+
+		assertFalse(index.isBuilding());
+		assertEquals(Arrays.asList(), index.get(new IntegerKey(0)));
+		assertEquals(Arrays.asList(), index.get(new IntegerKey(1)));
+		assertEquals(Arrays.asList(updatedValue), index.get(new IntegerKey(7)));
+		assertEquals(Arrays.asList(newValue), index.get(new IntegerKey(9)));
+		for (int i = 2; i < values.size(); i++) {
+			assertEquals(Arrays.asList(values.get(i)), index.get(new IntegerKey(i)));
+		}
+	}
+}
@@ -37,7 +37,9 @@ public class IndexManagerTest extends BlueDbDiskTestBase {
 	public void test_getIndexesFromDisk() throws Exception {
 		String indexName = "test_index";
 		BlueCollectionOnDisk<TestValue> collection = getTimeCollection();
-		collection.createIndex(indexName, IntegerKey.class, new TestRetrievalKeyExtractor());
+		BlueIndex<IntegerKey, TestValue> index = collection.createIndex(indexName, IntegerKey.class, new TestRetrievalKeyExtractor());
+		BlueIndexOnDisk<IntegerKey, TestValue> indexOnDisk = (BlueIndexOnDisk<IntegerKey, TestValue>) index;
+		indexOnDisk.awaitBuild();  // otherwise the restored index finds the build folder and waits for a build nobody starts
 
 		TestValue valueFred1 = new TestValue("Fred", 1);
 		TestValue valueBob3 = new TestValue("Bob", 3);
@@ -0,0 +1,16 @@
+package org.bluedb.disk.collection.index;
+
+import java.util.Arrays;
+import java.util.List;
+import org.bluedb.api.index.LongIndexKeyExtractor;
+import org.bluedb.disk.TestValue;
+
+public class TestLongRetrievalKeyExtractor implements LongIndexKeyExtractor<TestValue> {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public List<Long> extractLongsForIndex(TestValue value) {
+		return Arrays.asList((long) value.getCupcakes());
+	}
+}
@@ -0,0 +1,14 @@
+package org.bluedb.disk.collection.index;
+
+import org.bluedb.api.index.Projection;
+import org.bluedb.disk.TestValue;
+
+public class TestNameProjection implements Projection<TestValue, String> {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public String project(TestValue value) {
+		return value.getName();
+	}
+}
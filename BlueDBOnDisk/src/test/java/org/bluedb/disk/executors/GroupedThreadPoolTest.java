@@ -3,12 +3,18 @@ package org.bluedb.disk.executors;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.bluedb.TestUtils;
+import org.bluedb.disk.segment.Range;
 import org.bluedb.tasks.TestTask;
 import org.junit.Test;
 
@@ -37,7 +43,7 @@ public class GroupedThreadPoolTest {
 		assertTrue("There should be <= 3 max threads - actual: " + largestPoolSize, largestPoolSize <= 3);
 		
 		
-		pool.submit("B", () -> appendAfterSleep(breads, "b", 50)); //this should use the ZZZ thread
+		pool.submit("B", () -> appendAfterSleep(breads, "b", 50)); //this uses the ZZZ thread if it is back in the pool, otherwise a 4th one
 		pool.submit("B", () -> appendAfterSleep(breads, "r", 0)); pool.submit("C", () -> appendAfterSleep(cat, "t", 0));
 		pool.submit("B", () -> appendAfterSleep(breads, "e", 40));
 		pool.submit("B", () -> appendAfterSleep(breads, "a", 30));
@@ -47,7 +53,7 @@ public class GroupedThreadPoolTest {
 		
 		activeCount = pool.getActiveCount();
 		largestPoolSize = pool.getLargestPoolSize();
-		assertTrue("There should be <= 3 active threads - actual: " + activeCount, activeCount <= 3);
+		assertTrue("There should be <= 4 active threads - actual: " + activeCount, activeCount <= 4);
 		assertTrue("There should be <= 4 max threads - actual: " + largestPoolSize, largestPoolSize <= 4);
 		
 		angleTest.get();
@@ -74,6 +80,45 @@ public class GroupedThreadPoolTest {
 		
 	}
 	
+	@Test
+	public void test_submit_segmentRanges() throws InterruptedException, ExecutionException {
+		GroupedThreadPool pool = GroupedThreadPool.createCachedPool("test");
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		
+		TestTask firstSegment = new TestTask(() -> release.await());
+		TestTask secondSegment = new TestTask(() -> release.await());
+		Future<?> first = pool.submit("A", Arrays.asList(new Range(0, 9)), firstSegment);
+		Future<?> second = pool.submit("A", Arrays.asList(new Range(10, 19)), secondSegment);
+		firstSegment.awaitStart();
+		secondSegment.awaitStart();  // disjoint segments of the same group run at the same time
+		
+		Future<?> bothSegments = pool.submit("A", Arrays.asList(new Range(5, 14)), () -> order.add("both"));
+		Future<?> afterBoth = pool.submit("A", Arrays.asList(new Range(14, 14)), () -> order.add("after both"));
+		TestTask thirdSegment = new TestTask(() -> order.add("third"));
+		Future<?> third = pool.submit("A", Arrays.asList(new Range(20, 29)), thirdSegment);
+		thirdSegment.awaitCompletion();  // doesn't wait on the queued tasks since it doesn't overlap them
+		assertEquals(Arrays.asList("third"), order);
+		assertEquals(2, pool.getQueueSizeForGroup("A"));
+		
+		Future<?> wholeGroup = pool.submit("A", () -> order.add("whole group"));
+		Future<?> afterWholeGroup = pool.submit("A", Arrays.asList(new Range(100, 109)), () -> order.add("after whole group"));
+		assertEquals(4, pool.getQueueSizeForGroup("A"));
+		
+		release.countDown();
+		Arrays.asList(first, second, bothSegments, afterBoth, third, wholeGroup, afterWholeGroup).forEach((f) -> {
+			try {
+				f.get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		assertEquals(Arrays.asList("third", "both", "after both", "whole group", "after whole group"), order);
+		assertEquals(0, pool.getQueueSizeForGroup("A"));
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+	}
+	
 	private void appendAfterSleep(StringBuilder sb, String stringToAppend, long timeout) {
 		try {
 			if (timeout > 0)
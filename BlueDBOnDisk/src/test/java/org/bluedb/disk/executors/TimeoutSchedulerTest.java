@@ -0,0 +1,99 @@
+package org.bluedb.disk.executors;
+
+import static org.junit.Assert.*;
+
+import java.io.Closeable;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.bluedb.disk.Blutils;
+import org.bluedb.disk.lock.AutoCloseCountdown;
+
+public class TimeoutSchedulerTest {
+
+	private ScheduledThreadPoolExecutor executor;
+	private TimeoutScheduler scheduler;
+
+	@Before
+	public void setUp() {
+		executor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("timeout-scheduler-test"));
+		scheduler = new TimeoutScheduler(executor);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void test_expire() {
+		AtomicInteger closeCount = new AtomicInteger();
+		Closeable closeable = () -> closeCount.incrementAndGet();
+		new AutoCloseCountdown(closeable, 20, scheduler);
+		new AutoCloseCountdown(closeable, 40, scheduler);
+		assertEquals(2, scheduler.size());
+		assertTrue(waitFor(() -> closeCount.get() == 2, 2000));
+		assertEquals(0, scheduler.size());
+	}
+
+	@Test
+	public void test_earlierDeadlineRegisteredLater() {
+		AtomicInteger closeCount = new AtomicInteger();
+		new AutoCloseCountdown(() -> {}, 60_000, scheduler);
+		new AutoCloseCountdown(() -> closeCount.incrementAndGet(), 20, scheduler);
+		assertTrue(waitFor(() -> closeCount.get() == 1, 2000));
+		assertEquals(1, scheduler.size());
+	}
+
+	@Test
+	public void test_snooze() {
+		AtomicInteger closeCount = new AtomicInteger();
+		AutoCloseCountdown countdown = new AutoCloseCountdown(() -> closeCount.incrementAndGet(), 100, scheduler);
+		for (int i = 0; i < 5; i++) {
+			Blutils.trySleep(50);
+			countdown.snooze();
+		}
+		assertEquals(0, closeCount.get());
+		assertTrue(waitFor(() -> closeCount.get() == 1, 2000));
+	}
+
+	@Test
+	public void test_unregister() {
+		AtomicInteger closeCount = new AtomicInteger();
+		AutoCloseCountdown countdown = new AutoCloseCountdown(() -> closeCount.incrementAndGet(), 20, scheduler);
+		countdown.cancel();
+		assertEquals(0, scheduler.size());
+		Blutils.trySleep(60);
+		assertEquals(0, closeCount.get());
+	}
+
+	@Test
+	public void test_shutdown() {
+		executor.shutdownNow();
+		AtomicInteger closeCount = new AtomicInteger();
+		new AutoCloseCountdown(() -> closeCount.incrementAndGet(), 20, scheduler);  // shouldn't throw
+		assertEquals(0, closeCount.get());
+	}
+
+	@Test
+	public void test_getDefault() {
+		assertNotNull(TimeoutScheduler.getDefault());
+		assertSame(TimeoutScheduler.getDefault(), TimeoutScheduler.getDefault());
+	}
+
+	private boolean waitFor(BooleanSupplier condition, long timeLimit) {
+		long legSize = 10;
+		for (int i=0; i < timeLimit / legSize; i++) {
+			if (condition.getAsBoolean()) {
+				return true;
+			}
+			Blutils.trySleep(legSize);
+		}
+		return condition.getAsBoolean();
+	}
+}
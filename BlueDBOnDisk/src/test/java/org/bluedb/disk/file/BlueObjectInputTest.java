@@ -1,288 +1,635 @@
-package org.bluedb.disk.file;
-
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.concurrent.atomic.AtomicBoolean;
-
-import static org.junit.Assert.assertArrayEquals;
-import org.junit.Test;
-import org.bluedb.TestUtils;
-import org.bluedb.api.exceptions.BlueDbException;
-import org.bluedb.disk.Blutils;
-import org.bluedb.disk.TestValue;
-import org.bluedb.disk.lock.BlueReadLock;
-import org.bluedb.disk.lock.BlueWriteLock;
-import org.bluedb.disk.lock.LockManager;
-import org.bluedb.disk.models.calls.Call;
-import org.bluedb.disk.serialization.BlueSerializer;
-import org.bluedb.disk.serialization.ThreadLocalFstSerializer;
-import junit.framework.TestCase;
-
-public class BlueObjectInputTest extends TestCase {
-
-	BlueSerializer serializer;
-	FileManager fileManager;
-	LockManager<Path> lockManager;
-	Path testingFolderPath;
-	Path targetFilePath;
-	Path tempFilePath;
-
-	@Override
-	protected void setUp() throws Exception {
-		testingFolderPath = Files.createTempDirectory(this.getClass().getSimpleName());
-		targetFilePath = Paths.get(testingFolderPath.toString(), "BlueObjectOutputStreamTest.test_junk");
-		tempFilePath = FileUtils.createTempFilePath(targetFilePath);
-		serializer = new ThreadLocalFstSerializer(new Class[]{});
-		fileManager = new FileManager(serializer);
-		lockManager = fileManager.getLockManager();
-	}
-
-	@Override
-	public void tearDown() throws Exception {
-		targetFilePath.toFile().delete();
-		tempFilePath.toFile().delete();
-		Blutils.recursiveDelete(targetFilePath.toFile());
-		Blutils.recursiveDelete(testingFolderPath.toFile());
-	}
-
-
-
-	@Test
-	public void test_close() throws Exception {
-		File emptyFile = createEmptyFile("your_cold_heart");
-		
-		try (BlueReadLock<Path> writeLock = lockManager.acquireReadLock(emptyFile.toPath())) {
-			BlueObjectInput<TestValue> stream = fileManager.getBlueInputStream(writeLock);
-			stream.close();
-			stream.close();  // make sure it doesn't throw an exception if you close it twice
-			assertTrue(emptyFile.exists());
-		}
-	}
-
-	@Test
-	public void test_openDataInputStream() {
-		File nonExistentFile = Paths.get(testingFolderPath.toString(), "Santa_Clause").toFile();
-		try {
-			BlueObjectInput.openDataInputStream(nonExistentFile);
-			fail();
-		} catch (BlueDbException e) {
-		}
-	}
-
-	@Test
-	public void test_hasNext() throws Exception {
-		TestValue value = new TestValue("Jobodo Monobodo");
-		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
-			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
-			outStream.write(value);
-			outStream.close();
-		}
-
-		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
-			try (BlueObjectInput<TestValue> inStream = fileManager.getBlueInputStream(readLock)) {
-				assertTrue(inStream.hasNext());
-				assertTrue(inStream.hasNext());  // just to make sure it works multiple times
-				assertEquals(value, inStream.next());
-				assertNull(inStream.next());
-				inStream.close();
-			}
-		}
-	}
-
-	@Test
-	public void test_readLastBytes() throws Exception {
-		TestValue firstValue = new TestValue("Jobodo Monobodo");
-		TestValue secondValue = new TestValue("la la la");
-		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
-			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
-			outStream.write(firstValue);
-			outStream.write(secondValue);
-			outStream.close();
-		}
-
-		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
-			try (BlueObjectInput<TestValue> inStream = fileManager.getBlueInputStream(readLock)) {
-				assertNull(inStream.getLastBytes());
-
-				assertTrue(inStream.hasNext());
-				assertNull(inStream.getLastBytes());  // hasNext should not populate lastBytes
-
-				assertEquals(firstValue, inStream.next());
-				byte[] firstValueBytes = inStream.getLastBytes();
-				TestValue restoredFirstValue = (TestValue) serializer.deserializeObjectFromByteArray(firstValueBytes);
-				assertEquals(firstValue, restoredFirstValue);
-				assertEquals(firstValue, restoredFirstValue);
-
-				assertTrue(inStream.hasNext());
-				assertEquals(firstValueBytes, inStream.getLastBytes());  // hasNext should not re-populate out lastBytes
-
-				assertEquals(secondValue, inStream.next());
-				byte[] secondValueBytes = inStream.getLastBytes();
-				TestValue restoredSecondValue = (TestValue) serializer.deserializeObjectFromByteArray(secondValueBytes);
-				assertEquals(secondValue, restoredSecondValue);
-
-				assertFalse(inStream.hasNext());
-				assertEquals(secondValueBytes, inStream.getLastBytes());  // hasNext should not clear out lastBytes
-
-				inStream.close();
-			}
-		}
-	}
-
-	@Test
-	public void test_peek() throws Exception {
-		TestValue value = new TestValue("Jobodo Monobodo");
-		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
-			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
-			outStream.write(value);
-			outStream.close();
-		}
-
-		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
-			try (BlueObjectInput<TestValue> inStream = fileManager.getBlueInputStream(readLock)) {
-				assertNotNull(inStream.peek());
-				assertNotNull(inStream.peek());  // just to make sure it works multiple times
-				assertEquals(value, inStream.next());
-				assertNull(inStream.peek());
-				inStream.close();
-			}
-		}
-	}
-
-	@Test
-	public void test_next() throws Exception {
-		TestValue value = new TestValue("Jobodo Monobodo");
-		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
-			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
-			outStream.write(value);
-			outStream.close();
-		}
-
-		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
-			try (BlueObjectInput<TestValue> inStream = fileManager.getBlueInputStream(readLock)) {
-				assertEquals(value, inStream.next());
-				assertNull(inStream.next());
-				inStream.close();
-			}
-		}
-	}
-
-	@Test
-	public void test_nextWithoutDeserializing() throws Exception {
-		TestValue value = new TestValue("Jobodo Monobodo");
-		byte[] valueBytes = serializer.serializeObjectToByteArray(value);
-		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
-			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
-			outStream.write(value);
-			outStream.close();
-		}
-
-		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
-			try (BlueObjectInput<TestValue> inStream = fileManager.getBlueInputStream(readLock)) {
-				assertArrayEquals(valueBytes, inStream.nextWithoutDeserializing());
-				assertNull(inStream.next());
-				inStream.close();
-			}
-		}
-	}
-
-	@Test
-	public void test_nextFromFile() throws Exception {
-		File corruptedFile = createEmptyFile("test_nextFromFile");
-		
-		try(DataOutputStream outStream = new DataOutputStream(new FileOutputStream(corruptedFile))) {
-			outStream.writeInt(20);
-			byte[] junk = new byte[]{1, 2, 3};
-			outStream.write(junk);
-			outStream.close();
-		}
-
-		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(corruptedFile.toPath())) {
-			try (BlueObjectInput<TestValue> inStream = fileManager.getBlueInputStream(readLock)) {
-				assertNull(inStream.next());
-				inStream.close();
-			}
-		}
-	}
-
-
-	@Test
-	public void test_nextFromFile_IOException() {
-		AtomicBoolean readCalled = new AtomicBoolean(false);
-		DataInputStream dataInputStream = createDataInputStreamThatThrowsExceptionOnRead(readCalled);
-		BlueObjectInput<TestValue> inStream = BlueObjectInput.getTestInput(targetFilePath, serializer, dataInputStream);
-		assertFalse(readCalled.get());
-		assertNull(inStream.next());
-		assertTrue(readCalled.get());
-		inStream.close();
-	}
-
-	@Test
-	public void test_close_exception() {
-		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
-			Path path = readLock.getKey();
-			AtomicBoolean streamClosed = new AtomicBoolean(false);
-			DataInputStream inStream = createDataInputStreamThatThrowsExceptionOnClose(streamClosed);
-			BlueObjectInput<TestValue> mockStream = BlueObjectInput.getTestInput(path, serializer, inStream);
-			mockStream.close();  // BlueObjectInput should handle the exception
-			assertTrue(streamClosed.get());  // make sure it actually closed the underlying stream
-		}
-	}
-	
-
-	@Test
-	public void test_nextValidObjectFromFile_invalid() throws Exception {
-		ThreadLocalFstSerializer serializer = new ThreadLocalFstSerializer(Call.getClassesToRegister());
-		
-		Path garbagePath = TestUtils.getResourcePath("good-bad-good-stream.bin");
-		BlueReadLock<Path> readLock = lockManager.acquireReadLock(garbagePath);
-		BlueObjectInput<Call> inStream = new BlueObjectInput<>(readLock, serializer);
-		int count = 0;
-		while (inStream.hasNext()) {
-			count += 1;
-			inStream.next();
-		}
-		assertEquals(2, count);
-		inStream.close();
-	}
-
-	private File createEmptyFile(String filename) throws IOException {
-		File file = Paths.get(testingFolderPath.toString(), filename).toFile();
-		file.getParentFile().mkdirs();
-		file.createNewFile();
-		return file;
-	}
-
-	private static DataInputStream createDataInputStreamThatThrowsExceptionOnRead(AtomicBoolean isRead){
-		InputStream inputStream = new InputStream() {
-			@Override
-			public int read() throws IOException {
-				isRead.set(true);
-				throw new IOException();
-			}
-		};
-		return new DataInputStream(inputStream);
-	}
-
-	private static DataInputStream createDataInputStreamThatThrowsExceptionOnClose(AtomicBoolean isClosed) {
-		InputStream inputStream = new InputStream() {
-			@Override
-			public int read() throws IOException {
-				return 0;
-			}
-			@Override
-			public void close() throws IOException {
-				isClosed.set(true);
-				throw new IOException("fail!");
-			}
-		};
-		return new DataInputStream(inputStream);
-	}
+package org.bluedb.disk.file;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import org.junit.Test;
+import org.bluedb.TestUtils;
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.LongKey;
+import org.bluedb.api.keys.TimeKey;
+import org.bluedb.disk.Blutils;
+import org.bluedb.disk.TestValue;
+import org.bluedb.disk.lock.BlueReadLock;
+import org.bluedb.disk.lock.BlueWriteLock;
+import org.bluedb.disk.lock.LockManager;
+import org.bluedb.disk.models.calls.Call;
+import org.bluedb.disk.serialization.BlueEntity;
+import org.bluedb.disk.serialization.BlueSerializer;
+import org.bluedb.disk.serialization.ThreadLocalFstSerializer;
+
+import com.sun.management.ThreadMXBean;
+import junit.framework.TestCase;
+
+public class BlueObjectInputTest extends TestCase {
+
+	BlueSerializer serializer;
+	FileManager fileManager;
+	LockManager<Path> lockManager;
+	Path testingFolderPath;
+	Path targetFilePath;
+	Path tempFilePath;
+
+	@Override
+	protected void setUp() throws Exception {
+		testingFolderPath = Files.createTempDirectory(this.getClass().getSimpleName());
+		targetFilePath = Paths.get(testingFolderPath.toString(), "BlueObjectOutputStreamTest.test_junk");
+		tempFilePath = FileUtils.createTempFilePath(targetFilePath);
+		serializer = new ThreadLocalFstSerializer(new Class[]{});
+		fileManager = new FileManager(serializer);
+		lockManager = fileManager.getLockManager();
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		targetFilePath.toFile().delete();
+		tempFilePath.toFile().delete();
+		Blutils.recursiveDelete(targetFilePath.toFile());
+		Blutils.recursiveDelete(testingFolderPath.toFile());
+	}
+
+
+
+	@Test
+	public void test_close() throws Exception {
+		File emptyFile = createEmptyFile("your_cold_heart");
+		
+		try (BlueReadLock<Path> writeLock = lockManager.acquireReadLock(emptyFile.toPath())) {
+			BlueObjectInput<TestValue> stream = fileManager.getBlueInputStream(writeLock);
+			stream.close();
+			stream.close();  // make sure it doesn't throw an exception if you close it twice
+			assertTrue(emptyFile.exists());
+		}
+	}
+
+	@Test
+	public void test_openDataInputStream() {
+		File nonExistentFile = Paths.get(testingFolderPath.toString(), "Santa_Clause").toFile();
+		try {
+			BlueObjectInput.openDataInputStream(nonExistentFile);
+			fail();
+		} catch (BlueDbException e) {
+		}
+	}
+
+	@Test
+	public void test_hasNext() throws Exception {
+		TestValue value = new TestValue("Jobodo Monobodo");
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
+			outStream.write(value);
+			outStream.close();
+		}
+
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<TestValue> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertTrue(inStream.hasNext());
+				assertTrue(inStream.hasNext());  // just to make sure it works multiple times
+				assertEquals(value, inStream.next());
+				assertNull(inStream.next());
+				inStream.close();
+			}
+		}
+	}
+
+	@Test
+	public void test_memoryMapped() throws Exception {
+		TestValue firstValue = new TestValue("Jobodo Monobodo");
+		TestValue secondValue = new TestValue("la la la");
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
+			outStream.write(firstValue);
+			outStream.write(secondValue);
+			outStream.close();
+		}
+
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<TestValue> inStream = new BlueObjectInput<>(readLock, serializer, ReadMode.MEMORY_MAPPED)) {
+				assertTrue(inStream.hasNext());
+				assertEquals(firstValue, inStream.next());
+				assertArrayEquals(serializer.serializeObjectToByteArray(secondValue), inStream.nextWithoutDeserializing());
+				assertFalse(inStream.hasNext());
+				assertNull(inStream.next());
+			}
+		}
+	}
+
+	@Test
+	public void test_memoryMapped_close() throws Exception {
+		TestValue value = new TestValue("Jobodo Monobodo");
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
+			outStream.write(value);
+			outStream.write(value);
+			outStream.close();
+		}
+
+		BlueObjectInput<TestValue> inStream = new BlueObjectInput<>(lockManager.acquireReadLock(targetFilePath), serializer, ReadMode.MEMORY_MAPPED);
+		assertEquals(value, inStream.next());
+		inStream.close();
+		assertFalse(inStream.hasNext());  // the mapping is gone, so nothing more is read from it
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			FileUtils.deleteFile(writeLock);
+		}
+		assertFalse(targetFilePath.toFile().exists());
+	}
+
+	@Test
+	public void test_memoryMapped_emptyAndMissingFiles() throws Exception {
+		File emptyFile = createEmptyFile("empty");
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(emptyFile.toPath())) {
+			try (BlueObjectInput<TestValue> inStream = new BlueObjectInput<>(readLock, serializer, ReadMode.MEMORY_MAPPED)) {
+				assertFalse(inStream.hasNext());
+			}
+		}
+		Path missingPath = Paths.get(testingFolderPath.toString(), "missing");
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(missingPath)) {
+			try (BlueObjectInput<TestValue> inStream = new BlueObjectInput<>(readLock, serializer, ReadMode.MEMORY_MAPPED)) {
+				assertFalse(inStream.hasNext());
+			}
+		}
+	}
+
+	@Test
+	public void test_readLastBytes() throws Exception {
+		TestValue firstValue = new TestValue("Jobodo Monobodo");
+		TestValue secondValue = new TestValue("la la la");
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
+			outStream.write(firstValue);
+			outStream.write(secondValue);
+			outStream.close();
+		}
+
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<TestValue> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertNull(inStream.getLastBytes());
+
+				assertTrue(inStream.hasNext());
+				assertNull(inStream.getLastBytes());  // hasNext should not populate lastBytes
+
+				assertEquals(firstValue, inStream.next());
+				byte[] firstValueBytes = inStream.getLastBytes();
+				TestValue restoredFirstValue = (TestValue) serializer.deserializeObjectFromByteArray(firstValueBytes);
+				assertEquals(firstValue, restoredFirstValue);
+				assertEquals(firstValue, restoredFirstValue);
+
+				assertTrue(inStream.hasNext());
+				assertEquals(firstValueBytes, inStream.getLastBytes());  // hasNext should not re-populate out lastBytes
+
+				assertEquals(secondValue, inStream.next());
+				byte[] secondValueBytes = inStream.getLastBytes();
+				TestValue restoredSecondValue = (TestValue) serializer.deserializeObjectFromByteArray(secondValueBytes);
+				assertEquals(secondValue, restoredSecondValue);
+
+				assertFalse(inStream.hasNext());
+				assertEquals(secondValueBytes, inStream.getLastBytes());  // hasNext should not clear out lastBytes
+
+				inStream.close();
+			}
+		}
+	}
+
+	@Test
+	public void test_peek() throws Exception {
+		TestValue value = new TestValue("Jobodo Monobodo");
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
+			outStream.write(value);
+			outStream.close();
+		}
+
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<TestValue> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertNotNull(inStream.peek());
+				assertNotNull(inStream.peek());  // just to make sure it works multiple times
+				assertEquals(value, inStream.next());
+				assertNull(inStream.peek());
+				inStream.close();
+			}
+		}
+	}
+
+	@Test
+	public void test_next() throws Exception {
+		TestValue value = new TestValue("Jobodo Monobodo");
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
+			outStream.write(value);
+			outStream.close();
+		}
+
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<TestValue> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertEquals(value, inStream.next());
+				assertNull(inStream.next());
+				inStream.close();
+			}
+		}
+	}
+
+	@Test
+	public void test_nextWithoutDeserializing() throws Exception {
+		TestValue value = new TestValue("Jobodo Monobodo");
+		byte[] valueBytes = serializer.serializeObjectToByteArray(value);
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
+			outStream.write(value);
+			outStream.close();
+		}
+
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<TestValue> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertArrayEquals(valueBytes, inStream.nextWithoutDeserializing());
+				assertNull(inStream.next());
+				inStream.close();
+			}
+		}
+	}
+
+	@Test
+	public void test_skipNext_and_copyNextTo() throws Exception {
+		List<BlueEntity<TestValue>> entities = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			String name = (i % 3 == 0) ? String.join("", Collections.nCopies(2000, "x")) : "Name";  // records bigger than the buffers so far
+			entities.add(new BlueEntity<>(new TimeKey(i, i), new TestValue(name, i)));
+		}
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			try (BlueObjectOutput<BlueEntity<TestValue>> outStream = fileManager.getBlueOutputStream(writeLock)) {
+				for (BlueEntity<TestValue> entity: entities) {
+					outStream.write(entity);
+				}
+			}
+		}
+
+		List<BlueEntity<TestValue>> copied = new ArrayList<>();
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> inStream = fileManager.getBlueInputStream(readLock)) {
+				try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(tempFilePath)) {
+					try (BlueObjectOutput<BlueEntity<TestValue>> outStream = fileManager.getBlueOutputStream(writeLock)) {
+						BlueKey key;
+						while ((key = inStream.peekKey()) != null) {
+							if (key.getGroupingNumber() % 2 == 0) {
+								assertTrue(inStream.skipNext());
+							} else {
+								assertTrue(inStream.copyNextTo(outStream, key.getGroupingNumber()));
+								copied.add(entities.get((int) key.getGroupingNumber()));
+							}
+						}
+						assertFalse(inStream.skipNext());
+						assertFalse(inStream.copyNextTo(outStream, 0));
+					}
+				}
+			}
+		}
+
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(tempFilePath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertTrue(inStream.hasKeyOffsetFooter());
+				List<BlueEntity<TestValue>> read = new ArrayList<>();
+				while (inStream.hasNext()) {
+					read.add(inStream.next());
+				}
+				assertEquals(copied, read);
+			}
+		}
+	}
+
+	@Test
+	public void test_skipNext_doesNotAllocatePerRecord() throws Exception {
+		int count = 5_000;
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			try (BlueObjectOutput<BlueEntity<TestValue>> outStream = fileManager.getBlueOutputStream(writeLock)) {
+				for (int i = 0; i < count; i++) {
+					outStream.write(new BlueEntity<>(new TimeKey(i, i), new TestValue("Name", i)));
+				}
+			}
+		}
+		ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertTrue(inStream.skipNext());  // the first record sizes the buffers
+				long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+				int skipped = 1;
+				while (inStream.skipNext()) {
+					skipped++;
+				}
+				long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+				assertEquals(count, skipped);
+				assertTrue("allocated " + allocated + " bytes skipping " + count + " records", allocated < count);
+			}
+		}
+	}
+
+	@Test
+	public void test_peekKey() throws Exception {
+		BlueKey key1 = new LongKey(1);
+		BlueKey key2 = new LongKey(2);
+		BlueKey key3 = new LongKey(3);
+		BlueEntity<TestValue> entity1 = new BlueEntity<>(key1, new TestValue("Anna"));
+		BlueEntity<TestValue> entity2 = new BlueEntity<>(key2, new TestValue("Bob"));
+		BlueEntity<TestValue> entity3 = new BlueEntity<>(key3, new TestValue("Chuck"));
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			try (BlueObjectOutput<BlueEntity<TestValue>> outStream = fileManager.getBlueOutputStream(writeLock)) {
+				outStream.write(entity1);
+				outStream.writeBytes(serializer.serializeObjectToByteArray(entity2));  // the older single blob layout
+				outStream.write(entity3);
+			}
+		}
+
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertEquals(key1, inStream.peekKey());
+				assertEquals(key1, inStream.peekKey());
+				assertEquals(entity1, inStream.next());
+				assertEquals(key2, inStream.peekKey());
+				assertEquals(entity2, inStream.peek());
+				assertNotNull(inStream.nextWithoutDeserializing());
+				assertEquals(key3, inStream.peekKey());
+				assertEquals(entity3, inStream.next());
+				assertNull(inStream.peekKey());
+				assertNull(inStream.next());
+			}
+		}
+	}
+
+	@Test
+	public void test_transferRecords() throws Exception {
+		List<BlueEntity<TestValue>> entities = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			entities.add(new BlueEntity<>(new TimeKey(i, i), new TestValue("Name" + i, i)));
+		}
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			try (BlueObjectOutput<BlueEntity<TestValue>> outStream = fileManager.getBlueOutputStream(writeLock)) {
+				for (BlueEntity<TestValue> entity: entities) {
+					outStream.write(entity);
+				}
+			}
+		}
+
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> inStream = fileManager.getBlueInputStream(readLock)) {
+				try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(tempFilePath)) {
+					try (BlueObjectOutput<BlueEntity<TestValue>> outStream = fileManager.getBlueOutputStream(writeLock)) {
+						outStream.write(inStream.next());
+						assertEquals(new TimeKey(1, 1), inStream.peekKey());
+						assertTrue(inStream.transferRecordsBefore(4, outStream));
+						assertFalse(inStream.transferRecordsBefore(4, outStream));  // already there
+						assertEquals(new TimeKey(4, 4), inStream.peekKey());
+						inStream.nextWithoutDeserializing();  // leave out the record at 4
+						assertTrue(inStream.transferRemainingRecords(outStream));
+						assertFalse(inStream.transferRemainingRecords(outStream));
+						assertNull(inStream.peekKey());
+					}
+				}
+			}
+		}
+
+		entities.remove(4);
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(tempFilePath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertTrue(inStream.hasKeyOffsetFooter());
+				assertEquals(9, inStream.countRecordsBetween(Long.MIN_VALUE, Long.MAX_VALUE));
+				assertEquals(2, inStream.countRecordsBetween(3, 5));
+				assertTrue(inStream.skipToGroupingNumber(7));
+				assertEquals(entities.get(6), inStream.next());
+			}
+			try (BlueObjectInput<BlueEntity<TestValue>> inStream = fileManager.getBlueInputStream(readLock)) {
+				List<BlueEntity<TestValue>> copied = new ArrayList<>();
+				while (inStream.hasNext()) {
+					copied.add(inStream.next());
+				}
+				assertEquals(entities, copied);
+			}
+		}
+	}
+
+	@Test
+	public void test_compressedBlocks() throws Exception {
+		int count = CompressedBlock.MAX_RECORDS * 3 + 5;  // a partial block at the end
+		List<BlueEntity<TestValue>> entities = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			entities.add(new BlueEntity<>(new TimeKey(i, i), new TestValue("Name", i)));
+		}
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			try (BlueObjectOutput<BlueEntity<TestValue>> outStream = new BlueObjectOutput<>(writeLock, serializer, CompressionMode.DEFLATE)) {
+				for (BlueEntity<TestValue> entity: entities) {
+					outStream.write(entity);
+				}
+			}
+		}
+
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> inStream = fileManager.getBlueInputStream(readLock)) {
+				List<BlueEntity<TestValue>> read = new ArrayList<>();
+				while (inStream.hasNext()) {
+					read.add(inStream.next());
+				}
+				assertEquals(entities, read);
+			}
+			try (BlueObjectInput<BlueEntity<TestValue>> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertTrue(inStream.hasKeyOffsetFooter());
+				assertEquals(count, inStream.countRecordsBetween(Long.MIN_VALUE, Long.MAX_VALUE));
+				assertEquals(11, inStream.countRecordsBetween(60, 70));
+				assertTrue(inStream.skipToGroupingNumber(100));  // lands on the start of the block holding it
+				while (inStream.peekKey().getGroupingNumber() < 100) {
+					inStream.nextWithoutDeserializing();
+				}
+				assertEquals(entities.get(100), inStream.next());
+				try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(tempFilePath)) {
+					try (BlueObjectOutput<BlueEntity<TestValue>> outStream = fileManager.getBlueOutputStream(writeLock)) {
+						assertFalse(inStream.transferRemainingRecords(outStream));  // can't start partway into a block
+					}
+				}
+			}
+			try (BlueObjectInput<BlueEntity<TestValue>> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertTrue(inStream.skipToGroupingNumberAtOrAbove(100));  // lands on the start of the block holding it
+				assertEquals(CompressedBlock.MAX_RECORDS, inStream.peekKey().getGroupingNumber());
+				assertTrue(inStream.skipToGroupingNumberAtOrAbove(0));  // already past it
+				assertEquals(CompressedBlock.MAX_RECORDS, inStream.peekKey().getGroupingNumber());
+				assertTrue(inStream.skipToGroupingNumberAtOrAbove(count));
+				assertNull(inStream.peekKey());
+			}
+			try (BlueObjectInput<BlueEntity<TestValue>> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertEquals(0, inStream.peekKey().getGroupingNumber());
+				try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(tempFilePath)) {
+					try (BlueObjectOutput<BlueEntity<TestValue>> outStream = fileManager.getBlueOutputStream(writeLock)) {
+						assertTrue(inStream.transferRemainingRecords(outStream));  // whole blocks are copied as is
+					}
+				}
+			}
+		}
+		try(BlueReadLock<Path> readLock = lockManager.acquireReadLock(tempFilePath)) {
+			assertEquals(targetFilePath.toFile().length(), tempFilePath.toFile().length());
+			try (BlueObjectInput<BlueEntity<TestValue>> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertEquals(count, inStream.countRecordsBetween(Long.MIN_VALUE, Long.MAX_VALUE));
+				assertTrue(inStream.skipToGroupingNumber(count - 1));
+				while (inStream.peekKey().getGroupingNumber() < count - 1) {
+					inStream.nextWithoutDeserializing();
+				}
+				assertEquals(entities.get(count - 1), inStream.next());
+			}
+		}
+	}
+
+	@Test
+	public void test_nextFromFile() throws Exception {
+		File corruptedFile = createEmptyFile("test_nextFromFile");
+		
+		try(DataOutputStream outStream = new DataOutputStream(new FileOutputStream(corruptedFile))) {
+			outStream.writeInt(20);
+			byte[] junk = new byte[]{1, 2, 3};
+			outStream.write(junk);
+			outStream.close();
+		}
+
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(corruptedFile.toPath())) {
+			try (BlueObjectInput<TestValue> inStream = fileManager.getBlueInputStream(readLock)) {
+				assertNull(inStream.next());
+				inStream.close();
+			}
+		}
+	}
+
+
+	@Test
+	public void test_nextFromFile_IOException() {
+		AtomicBoolean readCalled = new AtomicBoolean(false);
+		DataInputStream dataInputStream = createDataInputStreamThatThrowsExceptionOnRead(readCalled);
+		BlueObjectInput<TestValue> inStream = BlueObjectInput.getTestInput(targetFilePath, serializer, dataInputStream);
+		assertFalse(readCalled.get());
+		assertNull(inStream.next());
+		assertTrue(readCalled.get());
+		inStream.close();
+	}
+
+	@Test
+	public void test_close_exception() {
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			Path path = readLock.getKey();
+			AtomicBoolean streamClosed = new AtomicBoolean(false);
+			DataInputStream inStream = createDataInputStreamThatThrowsExceptionOnClose(streamClosed);
+			BlueObjectInput<TestValue> mockStream = BlueObjectInput.getTestInput(path, serializer, inStream);
+			mockStream.close();  // BlueObjectInput should handle the exception
+			assertTrue(streamClosed.get());  // make sure it actually closed the underlying stream
+		}
+	}
+	
+
+	@Test
+	public void test_readAhead() throws Exception {
+		TestValue firstValue = new TestValue("Jobodo Monobodo");
+		TestValue secondValue = new TestValue("la la la");
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
+			outStream.write(firstValue);
+			outStream.write(secondValue);
+			outStream.close();
+		}
+
+		ReadAheadBuffers buffers = new ReadAheadBuffers(ReadAheadBuffers.DEFAULT_MAX_BUFFER_SIZE, 1);
+		for (int i = 0; i < 2; i++) {
+			try (BlueObjectInput<TestValue> inStream = BlueObjectInput.readAhead(lockManager.acquireReadLock(targetFilePath), serializer, buffers)) {
+				assertEquals(0, buffers.getIdleBufferCount());  // the input holds onto the buffer
+				assertEquals(firstValue, inStream.next());
+				assertEquals(secondValue, inStream.next());
+				assertFalse(inStream.hasNext());
+			}
+			assertEquals(1, buffers.getIdleBufferCount());  // and hands it back for the next file
+		}
+	}
+
+	@Test
+	public void test_readAhead_tooBigForBuffers() throws Exception {
+		TestValue value = new TestValue("Jobodo Monobodo");
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			BlueObjectOutput<TestValue> outStream = fileManager.getBlueOutputStream(writeLock);
+			outStream.write(value);
+			outStream.close();
+		}
+
+		ReadAheadBuffers buffers = new ReadAheadBuffers(8, 1);
+		try (BlueObjectInput<TestValue> inStream = BlueObjectInput.readAhead(lockManager.acquireReadLock(targetFilePath), serializer, buffers)) {
+			assertEquals(value, inStream.next());  // streamed instead
+			assertFalse(inStream.hasNext());
+		}
+		assertEquals(0, buffers.getIdleBufferCount());
+		assertFalse(lockManager.isLocked(targetFilePath));
+	}
+
+	@Test
+	public void test_readAhead_failureReleasesLock() throws Exception {
+		targetFilePath.toFile().mkdirs();  // a folder can't be opened as a file
+		BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath);
+		try {
+			fileManager.readAheadBlueInputStream(readLock);
+			fail();
+		} catch (BlueDbException e) {
+		}
+		assertFalse(lockManager.isLocked(targetFilePath));
+	}
+
+	@Test
+	public void test_nextValidObjectFromFile_invalid() throws Exception {
+		ThreadLocalFstSerializer serializer = new ThreadLocalFstSerializer(Call.getClassesToRegister());
+		
+		Path garbagePath = TestUtils.getResourcePath("good-bad-good-stream.bin");
+		BlueReadLock<Path> readLock = lockManager.acquireReadLock(garbagePath);
+		BlueObjectInput<Call> inStream = new BlueObjectInput<>(readLock, serializer);
+		int count = 0;
+		while (inStream.hasNext()) {
+			count += 1;
+			inStream.next();
+		}
+		assertEquals(2, count);
+		inStream.close();
+	}
+
+	private File createEmptyFile(String filename) throws IOException {
+		File file = Paths.get(testingFolderPath.toString(), filename).toFile();
+		file.getParentFile().mkdirs();
+		file.createNewFile();
+		return file;
+	}
+
+	private static DataInputStream createDataInputStreamThatThrowsExceptionOnRead(AtomicBoolean isRead){
+		InputStream inputStream = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				isRead.set(true);
+				throw new IOException();
+			}
+		};
+		return new DataInputStream(inputStream);
+	}
+
+	private static DataInputStream createDataInputStreamThatThrowsExceptionOnClose(AtomicBoolean isClosed) {
+		InputStream inputStream = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				return 0;
+			}
+			@Override
+			public void close() throws IOException {
+				isClosed.set(true);
+				throw new IOException("fail!");
+			}
+		};
+		return new DataInputStream(inputStream);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package org.bluedb.disk.file;
+
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class ByteBufferInputStreamTest extends TestCase {
+
+	@Test
+	public void test_read() {
+		ByteBufferInputStream stream = new ByteBufferInputStream(ByteBuffer.wrap(new byte[] {1, -1}));
+		assertEquals(2, stream.available());
+		assertEquals(1, stream.read());
+		assertEquals(255, stream.read());  // unsigned like any other InputStream
+		assertEquals(-1, stream.read());
+	}
+
+	@Test
+	public void test_read_array() {
+		ByteBufferInputStream stream = new ByteBufferInputStream(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+		byte[] bytes = new byte[4];
+		assertEquals(0, stream.read(bytes, 0, 0));
+		assertEquals(3, stream.read(bytes, 1, 3));
+		assertArrayEquals(new byte[] {0, 1, 2, 3}, bytes);
+		assertEquals(-1, stream.read(bytes, 0, 4));
+	}
+
+	@Test
+	public void test_skip() {
+		ByteBufferInputStream stream = new ByteBufferInputStream(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+		assertEquals(0, stream.skip(-1));
+		assertEquals(2, stream.skip(2));
+		assertEquals(3, stream.read());
+		assertEquals(0, stream.skip(5));
+	}
+
+	@Test
+	public void test_dataInputStream() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(12);
+		buffer.putInt(42);
+		buffer.putLong(Long.MIN_VALUE);
+		buffer.flip();
+		try (DataInputStream stream = new DataInputStream(new ByteBufferInputStream(buffer))) {
+			assertEquals(42, stream.readInt());
+			assertEquals(Long.MIN_VALUE, stream.readLong());
+		}
+	}
+
+	@Test
+	public void test_close() {
+		ByteBufferInputStream stream = new ByteBufferInputStream(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+		stream.close();
+		assertEquals(0, stream.available());
+		assertEquals(-1, stream.read());
+		assertEquals(-1, stream.read(new byte[3], 0, 3));
+		assertEquals(0, stream.skip(1));
+	}
+
+	@Test
+	public void test_close_mapped() throws Exception {
+		Path path = Files.createTempFile(getClass().getSimpleName(), ".bin");
+		Files.write(path, new byte[] {1, 2, 3});
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(MapMode.READ_ONLY, 0, 3);
+		}
+		ByteBufferInputStream stream = new ByteBufferInputStream(buffer);
+		assertEquals(1, stream.read());
+		stream.close();  // unmaps it, so reading now would crash rather than fail if close didn't stop it
+		assertEquals(-1, stream.read());
+		Files.delete(path);
+	}
+}
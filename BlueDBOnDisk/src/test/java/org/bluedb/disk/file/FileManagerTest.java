@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -250,6 +251,63 @@ public class FileManagerTest extends TestCase {
 		return file;
 	}
 
+	@Test
+	public void test_appendObject() throws Exception {
+		Path path = Paths.get(testPath.toString(), "appended");
+		TestValue value1 = new TestValue("joe", 1);
+		TestValue value2 = new TestValue("bob", 2);
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(path)) {
+			assertEquals(0, fileManager.loadAppendedObjects(readLock).size());
+		}
+		long sizeAfterFirst;
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(path)) {
+			sizeAfterFirst = fileManager.appendObject(writeLock, value1);
+			long sizeAfterSecond = fileManager.appendObject(writeLock, value2);
+			assertEquals(path.toFile().length(), sizeAfterSecond);
+			assertTrue(sizeAfterSecond > sizeAfterFirst);
+		}
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(path)) {
+			List<Object> loaded = fileManager.loadAppendedObjects(readLock);
+			assertEquals(2, loaded.size());
+			assertEquals(value1, loaded.get(0));
+			assertEquals(value2, loaded.get(1));
+		}
+	}
+
+	@Test
+	public void test_appendObject_tornTail() throws Exception {
+		Path path = Paths.get(testPath.toString(), "appended");
+		TestValue value1 = new TestValue("joe", 1);
+		TestValue value2 = new TestValue("bob", 2);
+		TestValue value3 = new TestValue("ann", 3);
+		long sizeAfterFirst;
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(path)) {
+			sizeAfterFirst = fileManager.appendObject(writeLock, value1);
+			fileManager.appendObject(writeLock, value2);
+		}
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.setLength(file.length() - 3);  // crash part way through writing value2
+		}
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(path)) {
+			List<Object> loaded = fileManager.loadAppendedObjects(readLock);
+			assertEquals(1, loaded.size());
+			assertEquals(value1, loaded.get(0));
+		}
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+			assertEquals(sizeAfterFirst, FileManager.findEndOfAppendedRecords(file));
+		}
+
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(path)) {
+			fileManager.appendObject(writeLock, value3);  // should replace the torn record
+		}
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(path)) {
+			List<Object> loaded = fileManager.loadAppendedObjects(readLock);
+			assertEquals(2, loaded.size());
+			assertEquals(value1, loaded.get(0));
+			assertEquals(value3, loaded.get(1));
+		}
+	}
+
 	private File createCorruptedFile(String fileName) throws FileNotFoundException, IOException {
 		File file = new File(fileName);
 		byte[] junk = new byte[] { 3, 1, 2 };
@@ -0,0 +1,253 @@
+package org.bluedb.disk.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.TimeKey;
+import org.bluedb.disk.Blutils;
+import org.bluedb.disk.TestValue;
+import org.bluedb.disk.lock.BlueReadLock;
+import org.bluedb.disk.lock.BlueWriteLock;
+import org.bluedb.disk.lock.LockManager;
+import org.bluedb.disk.serialization.BlueEntity;
+import org.bluedb.disk.serialization.BlueSerializer;
+import org.bluedb.disk.serialization.ThreadLocalFstSerializer;
+import junit.framework.TestCase;
+
+public class KeyOffsetFooterTest extends TestCase {
+
+	BlueSerializer serializer;
+	FileManager fileManager;
+	LockManager<Path> lockManager;
+	Path testingFolderPath;
+	Path targetFilePath;
+
+	@Override
+	protected void setUp() throws Exception {
+		testingFolderPath = Files.createTempDirectory(this.getClass().getSimpleName());
+		targetFilePath = Paths.get(testingFolderPath.toString(), "KeyOffsetFooterTest.test_junk");
+		serializer = new ThreadLocalFstSerializer();
+		fileManager = new FileManager(serializer);
+		lockManager = fileManager.getLockManager();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Blutils.recursiveDelete(testingFolderPath.toFile());
+	}
+
+	@Test
+	public void test_isWritable() {
+		KeyOffsetFooter footer = new KeyOffsetFooter();
+		assertFalse(footer.isWritable());  // empty files shouldn't get a footer
+		footer.add(1, 0);
+		footer.add(1, 10);
+		footer.add(2, 20);
+		assertTrue(footer.isWritable());
+		footer.add(1, 30);
+		assertFalse(footer.isWritable());  // out of order
+
+		footer = new KeyOffsetFooter();
+		footer.add(1, 0);
+		footer.invalidate();
+		assertFalse(footer.isWritable());
+	}
+
+	@Test
+	public void test_add_grows() {
+		KeyOffsetFooter footer = new KeyOffsetFooter();
+		for (int i = 0; i < 1000; i++) {
+			footer.add(i, i * 10);
+		}
+		assertEquals(1000, footer.size());
+		assertTrue(footer.isWritable());
+	}
+
+	@Test
+	public void test_findOffset() throws Exception {
+		KeyOffsetFooter footer = new KeyOffsetFooter();
+		footer.add(2, 0);
+		footer.add(4, 10);
+		footer.add(4, 20);
+		footer.add(8, 30);
+		writeFooterToFile(footer, 40);
+
+		try (FileInputStream fis = new FileInputStream(targetFilePath.toFile())) {
+			FileChannel channel = fis.getChannel();
+			int count = KeyOffsetFooter.readEntryCount(channel);
+			assertEquals(4, count);
+			assertEquals(KeyOffsetFooter.NOT_FOUND, KeyOffsetFooter.findOffset(channel, count, 1));
+			assertEquals(0, KeyOffsetFooter.findOffset(channel, count, 2));
+			assertEquals(KeyOffsetFooter.NOT_FOUND, KeyOffsetFooter.findOffset(channel, count, 3));
+			assertEquals(10, KeyOffsetFooter.findOffset(channel, count, 4));  // first of the duplicates
+			assertEquals(30, KeyOffsetFooter.findOffset(channel, count, 8));
+			assertEquals(KeyOffsetFooter.NOT_FOUND, KeyOffsetFooter.findOffset(channel, count, 9));
+		}
+	}
+
+	@Test
+	public void test_countBetween() throws Exception {
+		KeyOffsetFooter footer = new KeyOffsetFooter();
+		footer.add(2, 0);
+		footer.add(4, 10);
+		footer.add(4, 20);
+		footer.add(8, 30);
+		writeFooterToFile(footer, 40);
+
+		try (FileInputStream fis = new FileInputStream(targetFilePath.toFile())) {
+			FileChannel channel = fis.getChannel();
+			int count = KeyOffsetFooter.readEntryCount(channel);
+			assertEquals(4, KeyOffsetFooter.countBetween(channel, count, Long.MIN_VALUE, Long.MAX_VALUE));
+			assertEquals(3, KeyOffsetFooter.countBetween(channel, count, 2, 4));
+			assertEquals(2, KeyOffsetFooter.countBetween(channel, count, 3, 7));
+			assertEquals(0, KeyOffsetFooter.countBetween(channel, count, 5, 7));
+			assertEquals(1, KeyOffsetFooter.countBetween(channel, count, 8, 8));
+			assertEquals(0, KeyOffsetFooter.countBetween(channel, count, 9, Long.MAX_VALUE));
+			assertEquals(0, KeyOffsetFooter.countBetween(channel, count, 4, 2));
+		}
+	}
+
+	@Test
+	public void test_countRecords() throws Exception {
+		writeEntries(targetFilePath, 1, 3, 5, 7, 9);
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> input = fileManager.getBlueInputStream(readLock)) {
+				assertEquals(3, input.countRecordsBetween(3, 7));
+				assertEquals(new TimeKey(1, 1), input.next().getKey());
+				assertEquals(4, input.countRemainingRecords());
+			}
+		}
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			try (BlueObjectOutput<TestValue> output = fileManager.getBlueOutputStream(writeLock)) {
+				output.write(new TestValue("Joe"));
+				output.write(new TestValue("Bob"));
+			}
+		}
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> input = fileManager.getBlueInputStream(readLock)) {
+				assertEquals(-1, input.countRecordsBetween(Long.MIN_VALUE, Long.MAX_VALUE));  // no footer
+				assertEquals(2, input.countRemainingRecords());
+			}
+		}
+	}
+
+	@Test
+	public void test_readEntryCount_invalid() throws Exception {
+		Files.write(targetFilePath, new byte[] {});
+		assertEquals(-1, readEntryCount());
+
+		Files.write(targetFilePath, new byte[100]);
+		assertEquals(-1, readEntryCount());
+
+		KeyOffsetFooter footer = new KeyOffsetFooter();
+		footer.add(2, 0);
+		writeFooterToFile(footer, 40);
+		assertEquals(1, readEntryCount());
+		try (RandomAccessFile file = new RandomAccessFile(targetFilePath.toFile(), "rw")) {
+			file.setLength(file.length() + 1);  // trailer no longer lines up
+		}
+		assertEquals(-1, readEntryCount());
+	}
+
+	@Test
+	public void test_outputWritesFooter() throws Exception {
+		writeEntries(targetFilePath, 1, 3, 5, 7, 9);
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> input = fileManager.getBlueInputStream(readLock)) {
+				assertTrue(input.hasKeyOffsetFooter());
+				assertTrue(input.skipToGroupingNumber(5));
+				assertEquals(new TimeKey(5, 5), input.next().getKey());
+				assertFalse(input.skipToGroupingNumber(6));
+				assertTrue(input.skipToGroupingNumber(9));
+				assertEquals(new TimeKey(9, 9), input.next().getKey());
+				assertFalse(input.hasNext());  // footer must not be read as a record
+			}
+		}
+	}
+
+	@Test
+	public void test_inputSkipsBackwards() throws Exception {
+		writeEntries(targetFilePath, 1, 3, 5);
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> input = fileManager.getBlueInputStream(readLock)) {
+				assertEquals(new TimeKey(1, 1), input.next().getKey());
+				assertEquals(new TimeKey(3, 3), input.peek().getKey());
+				assertTrue(input.skipToGroupingNumber(3));  // already peeked at it
+				assertEquals(new TimeKey(3, 3), input.next().getKey());
+				assertFalse(input.skipToGroupingNumber(1));  // can't go backwards
+				assertEquals(new TimeKey(5, 5), input.next().getKey());
+			}
+		}
+	}
+
+	@Test
+	public void test_writeAllPreservesFooter() throws Exception {
+		Path copyPath = Paths.get(testingFolderPath.toString(), "copy");
+		writeEntries(targetFilePath, 1, 2, 3);
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(copyPath)) {
+				try (BlueObjectInput<BlueEntity<TestValue>> input = fileManager.getBlueInputStream(readLock)) {
+					try (BlueObjectOutput<BlueEntity<TestValue>> output = fileManager.getBlueOutputStream(writeLock)) {
+						output.writeAll(input);
+					}
+				}
+			}
+		}
+		assertEquals(Files.size(targetFilePath), Files.size(copyPath));
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(copyPath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> input = fileManager.getBlueInputStream(readLock)) {
+				assertTrue(input.hasKeyOffsetFooter());
+			}
+		}
+	}
+
+	@Test
+	public void test_writeBytesWithoutKey() throws Exception {
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(targetFilePath)) {
+			try (BlueObjectOutput<TestValue> output = fileManager.getBlueOutputStream(writeLock)) {
+				output.write(new TestValue("Joe"));
+			}
+		}
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(targetFilePath)) {
+			try (BlueObjectInput<TestValue> input = fileManager.getBlueInputStream(readLock)) {
+				assertFalse(input.hasKeyOffsetFooter());
+				assertEquals(new TestValue("Joe"), input.next());
+				assertFalse(input.hasNext());
+			}
+		}
+	}
+
+	private void writeEntries(Path path, long... ids) throws Exception {
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(path)) {
+			try (BlueObjectOutput<BlueEntity<TestValue>> output = fileManager.getBlueOutputStream(writeLock)) {
+				for (long id: ids) {
+					BlueKey key = new TimeKey(id, id);
+					output.write(new BlueEntity<TestValue>(key, new TestValue("Joe" + id)));
+				}
+			}
+		}
+	}
+
+	private void writeFooterToFile(KeyOffsetFooter footer, int recordBytes) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(new byte[recordBytes]);
+		footer.writeTo(out, recordBytes);
+		out.close();
+		Files.write(targetFilePath, bytes.toByteArray());
+	}
+
+	private int readEntryCount() throws Exception {
+		try (FileInputStream fis = new FileInputStream(targetFilePath.toFile())) {
+			return KeyOffsetFooter.readEntryCount(fis.getChannel());
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package org.bluedb.disk.file;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import junit.framework.TestCase;
+
+public class ReadAheadBuffersTest extends TestCase {
+
+	@Test
+	public void test_acquire() {
+		ReadAheadBuffers buffers = new ReadAheadBuffers(100, 1);
+		ByteBuffer buffer = buffers.acquire(10);
+		assertEquals(0, buffer.position());
+		assertEquals(10, buffer.limit());
+		assertEquals(16, buffer.capacity());  // rounded up so that slightly bigger files fit later
+		assertEquals(100, buffers.acquire(100).limit());
+		assertEquals(100, buffers.acquire(90).capacity());  // never rounded past the biggest buffer
+		assertNull(buffers.acquire(101));
+		assertNull(buffers.acquire(Integer.MAX_VALUE + 1L));
+	}
+
+	@Test
+	public void test_release() {
+		ReadAheadBuffers buffers = new ReadAheadBuffers(100, 1);
+		ByteBuffer buffer = buffers.acquire(10);
+		buffer.put((byte) 1);
+		buffers.release(buffer);
+		assertEquals(1, buffers.getIdleBufferCount());
+
+		ByteBuffer reused = buffers.acquire(12);
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+		assertEquals(12, reused.limit());
+		assertEquals(0, buffers.getIdleBufferCount());
+	}
+
+	@Test
+	public void test_release_bounded() {
+		ReadAheadBuffers buffers = new ReadAheadBuffers(100, 1);
+		ByteBuffer first = buffers.acquire(10);
+		ByteBuffer second = buffers.acquire(10);
+		buffers.release(first);
+		buffers.release(second);
+		assertEquals(1, buffers.getIdleBufferCount());
+		assertSame(first, buffers.acquire(10));
+	}
+
+	@Test
+	public void test_acquire_replacesBuffersThatAreTooSmall() {
+		ReadAheadBuffers buffers = new ReadAheadBuffers(100, 1);
+		buffers.release(buffers.acquire(10));
+		ByteBuffer bigger = buffers.acquire(50);
+		assertEquals(64, bigger.capacity());
+		assertEquals(0, buffers.getIdleBufferCount());  // the small one was dropped to make room for this one
+		buffers.release(bigger);
+		assertSame(bigger, buffers.acquire(10));
+	}
+}
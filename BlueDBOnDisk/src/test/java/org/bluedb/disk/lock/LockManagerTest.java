@@ -2,7 +2,11 @@ package org.bluedb.disk.lock;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -98,4 +102,64 @@ public class LockManagerTest {
 		Blutils.trySleep(20);  // give the second writer time to grab the lock;
 		assertTrue(secondWriteSuccess.get());
 	}
+
+	@Test
+	public void test_release_from_other_thread() throws Exception {
+		LockManager<String> lockManager = new LockManager<>();
+		String key = "key";
+		BlueReadLock<String> readLock = lockManager.acquireReadLock(key);
+		Thread releaser = new Thread(() -> readLock.release());  // like an iterator closed by the timeout thread
+		releaser.start();
+		releaser.join();
+		assertFalse(lockManager.isLocked(key));
+	}
+
+	@Test
+	public void test_contention() throws Exception {
+		LockManager<Integer> lockManager = new LockManager<>();
+		int keyCount = 4;
+		AtomicInteger[] writersInside = new AtomicInteger[keyCount];
+		AtomicInteger[] readersInside = new AtomicInteger[keyCount];
+		for (int i = 0; i < keyCount; i++) {
+			writersInside[i] = new AtomicInteger();
+			readersInside[i] = new AtomicInteger();
+		}
+		AtomicBoolean violation = new AtomicBoolean(false);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread(() -> {
+				Random random = new Random();
+				for (int i = 0; i < 2_000; i++) {
+					int key = random.nextInt(keyCount);
+					if (random.nextInt(10) == 0) {
+						try (BlueWriteLock<Integer> lock = lockManager.acquireWriteLock(key)) {
+							int lockedKey = lock.getKey();
+							if (writersInside[lockedKey].incrementAndGet() != 1 || readersInside[lockedKey].get() != 0) {
+								violation.set(true);
+							}
+							writersInside[lockedKey].decrementAndGet();
+						}
+					} else {
+						try (BlueReadLock<Integer> lock = lockManager.acquireReadLock(key)) {
+							int lockedKey = lock.getKey();
+							readersInside[lockedKey].incrementAndGet();
+							if (writersInside[lockedKey].get() != 0) {
+								violation.set(true);
+							}
+							readersInside[lockedKey].decrementAndGet();
+						}
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		assertFalse(violation.get());
+		for (int key = 0; key < keyCount; key++) {
+			assertFalse(lockManager.isLocked(key));
+		}
+	}
 }
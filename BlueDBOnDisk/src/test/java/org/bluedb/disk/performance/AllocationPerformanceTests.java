@@ -0,0 +1,135 @@
+package org.bluedb.disk.performance;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.TimeKey;
+import org.bluedb.disk.TestValue;
+import org.bluedb.disk.collection.CollectionSettings;
+import org.bluedb.disk.file.BlueObjectInput;
+import org.bluedb.disk.file.BlueObjectOutput;
+import org.bluedb.disk.file.CompressionMode;
+import org.bluedb.disk.file.FileManager;
+import org.bluedb.disk.file.ReadMode;
+import org.bluedb.disk.lock.BlueReadLock;
+import org.bluedb.disk.lock.BlueWriteLock;
+import org.bluedb.disk.lock.LockManager;
+import org.bluedb.disk.serialization.BlueEntity;
+import org.bluedb.disk.serialization.ThreadLocalFstSerializer;
+
+/**
+ * Counts the bytes the current thread allocates per record when writing, scanning and copying chunk files, to
+ * show that the record buffers are reused rather than allocated per record. Run it with main.
+ */
+public class AllocationPerformanceTests {
+
+	private static final int NUMBER_OF_VALUES = 20_000;
+	private static final int ROUNDS = 5;
+
+	private Path tempDir;
+	private FileManager fileManager;
+	private LockManager<Path> lockManager;
+	private BlueEntity<TestValue> entity;
+
+	public void setUp(ReadMode readMode, CompressionMode compressionMode) throws Exception {
+		tempDir = Files.createTempDirectory("AllocationPerformanceTests");
+		ThreadLocalFstSerializer serializer = new ThreadLocalFstSerializer(TestValue.class);
+		fileManager = new FileManager(serializer, new CollectionSettings().setReadMode(readMode).setCompressionMode(compressionMode), null);
+		lockManager = fileManager.getLockManager();
+		entity = new BlueEntity<>(new TimeKey(1, 1), new TestValue(UUID.randomUUID().toString(), 1));
+	}
+
+	public void tearDown() throws Exception {
+		Files.walk(tempDir)
+		.sorted(Comparator.reverseOrder())
+		.map(Path::toFile)
+		.forEach(File::delete);
+	}
+
+	public long allocatedBytesPerRecordWriting() throws Exception {
+		long start = getAllocatedBytes();
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(getSourcePath())) {
+			try (BlueObjectOutput<BlueEntity<TestValue>> output = fileManager.getBlueOutputStream(writeLock)) {
+				for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+					output.write(entity);
+				}
+			}
+		}
+		return (getAllocatedBytes() - start) / NUMBER_OF_VALUES;
+	}
+
+	public long allocatedBytesPerRecordSkipping() throws Exception {
+		long start = getAllocatedBytes();
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(getSourcePath())) {
+			try (BlueObjectInput<BlueEntity<TestValue>> input = fileManager.getBlueInputStream(readLock)) {
+				while (input.skipNext()) {
+				}
+			}
+		}
+		return (getAllocatedBytes() - start) / NUMBER_OF_VALUES;
+	}
+
+	/**
+	 * The keys are the only objects deserialized when copying records, so this is what copying allocates at best.
+	 */
+	public long allocatedBytesPerRecordPeekingKeys() throws Exception {
+		long start = getAllocatedBytes();
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(getSourcePath())) {
+			try (BlueObjectInput<BlueEntity<TestValue>> input = fileManager.getBlueInputStream(readLock)) {
+				while (input.peekKey() != null) {
+					input.skipNext();
+				}
+			}
+		}
+		return (getAllocatedBytes() - start) / NUMBER_OF_VALUES;
+	}
+
+	public long allocatedBytesPerRecordCopying() throws Exception {
+		long start = getAllocatedBytes();
+		try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(getSourcePath())) {
+			try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(tempDir.resolve("copy"))) {
+				try (BlueObjectInput<BlueEntity<TestValue>> input = fileManager.getBlueInputStream(readLock)) {
+					try (BlueObjectOutput<BlueEntity<TestValue>> output = fileManager.getBlueOutputStream(writeLock)) {
+						BlueKey key;
+						while ((key = input.peekKey()) != null) {
+							input.copyNextTo(output, key.getGroupingNumber());  // only the key is deserialized
+						}
+					}
+				}
+			}
+		}
+		return (getAllocatedBytes() - start) / NUMBER_OF_VALUES;
+	}
+
+	private Path getSourcePath() {
+		return tempDir.resolve("chunk");
+	}
+
+	private static long getAllocatedBytes() {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	public static void main(String[] args) throws Exception {
+		for (ReadMode readMode : ReadMode.values()) {
+			for (CompressionMode compressionMode : CompressionMode.values()) {
+				AllocationPerformanceTests tests = new AllocationPerformanceTests();
+				tests.setUp(readMode, compressionMode);
+				long writing = 0, skipping = 0, peekingKeys = 0, copying = 0;
+				for (int i = 0; i < ROUNDS; i++) {  // the last round is after warm up
+					writing = tests.allocatedBytesPerRecordWriting();
+					skipping = tests.allocatedBytesPerRecordSkipping();
+					peekingKeys = tests.allocatedBytesPerRecordPeekingKeys();
+					copying = tests.allocatedBytesPerRecordCopying();
+				}
+				System.out.println(readMode + ", " + compressionMode + ": bytes allocated per record writing " + writing + ", skipping " + skipping + ", peeking keys " + peekingKeys + ", copying " + copying);
+				tests.tearDown();
+			}
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package org.bluedb.disk.performance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bluedb.disk.lock.LockManager;
+
+/**
+ * Measures how many lock/release pairs per second LockManager handles as more threads contend for a few keys, with
+ * one write lock for every nine read locks. Run it with main.
+ */
+public class LockPerformanceTests {
+
+	private static final int KEY_COUNT = 16;
+	private static final long DURATION_MILLIS = 1_000;
+
+	public long countOperations(int threadCount) throws InterruptedException {
+		LockManager<Integer> lockManager = new LockManager<>();
+		AtomicLong operations = new AtomicLong();
+		long endTime = System.currentTimeMillis() + DURATION_MILLIS;
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < threadCount; t++) {
+			Thread thread = new Thread(() -> {
+				Random random = new Random();
+				long count = 0;
+				while (System.currentTimeMillis() < endTime) {
+					int key = random.nextInt(KEY_COUNT);
+					if (random.nextInt(10) == 0) {
+						lockManager.acquireWriteLock(key).release();
+					} else {
+						lockManager.acquireReadLock(key).release();
+					}
+					count++;
+				}
+				operations.addAndGet(count);
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		return operations.get();
+	}
+
+	public static void main(String[] args) throws Exception {
+		LockPerformanceTests tests = new LockPerformanceTests();
+		tests.countOperations(4);  // warm up
+		for (int threadCount: new int[] {1, 2, 4, 8, 16, 32, 64}) {
+			long operations = tests.countOperations(threadCount);
+			System.out.println("LockManager " + threadCount + " threads: " + (operations * 1000 / DURATION_MILLIS) + " lock/release pairs per second");
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package org.bluedb.disk.performance;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.UUID;
+
+import org.bluedb.api.keys.TimeKey;
+import org.bluedb.disk.TestValue;
+import org.bluedb.disk.file.BlueObjectInput;
+import org.bluedb.disk.file.BlueObjectOutput;
+import org.bluedb.disk.file.FileManager;
+import org.bluedb.disk.lock.BlueReadLock;
+import org.bluedb.disk.lock.BlueWriteLock;
+import org.bluedb.disk.lock.LockManager;
+import org.bluedb.disk.serialization.BlueEntity;
+import org.bluedb.disk.serialization.ThreadLocalFstSerializer;
+
+/**
+ * Compares rolling up chunk files record by record with splicing them together with FileChannel.transferTo.
+ */
+public class RollupPerformanceTests {
+
+	private static final int NUMBER_OF_FILES = 60;
+	private static final int VALUES_PER_FILE = 2_000;
+	private static final int ROUNDS = 5;
+
+	private Path tempDir;
+	private FileManager fileManager;
+	private LockManager<Path> lockManager;
+
+	public void setUp() throws Exception {
+		tempDir = Files.createTempDirectory("RollupPerformanceTests");
+		ThreadLocalFstSerializer serializer = new ThreadLocalFstSerializer(TestValue.class);
+		fileManager = new FileManager(serializer);
+		lockManager = fileManager.getLockManager();
+		long time = 0;
+		for (int i = 0; i < NUMBER_OF_FILES; i++) {
+			try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(getSourcePath(i))) {
+				try (BlueObjectOutput<BlueEntity<TestValue>> output = fileManager.getBlueOutputStream(writeLock)) {
+					for (int j = 0; j < VALUES_PER_FILE; j++, time++) {
+						output.write(new BlueEntity<>(new TimeKey(time, time), new TestValue(UUID.randomUUID().toString(), j)));
+					}
+				}
+			}
+		}
+	}
+
+	public void tearDown() throws Exception {
+		Files.walk(tempDir)
+		.sorted(Comparator.reverseOrder())
+		.map(Path::toFile)
+		.forEach(File::delete);
+	}
+
+	public Duration rollup(boolean useTransfer) throws Exception {
+		Path target = tempDir.resolve("rolled_up");
+		Instant start = Instant.now();
+		try (BlueWriteLock<Path> writeLock = lockManager.acquireWriteLock(target)) {
+			try (BlueObjectOutput<BlueEntity<TestValue>> output = fileManager.getBlueOutputStream(writeLock)) {
+				for (int i = 0; i < NUMBER_OF_FILES; i++) {
+					try (BlueReadLock<Path> readLock = lockManager.acquireReadLock(getSourcePath(i))) {
+						try (BlueObjectInput<BlueEntity<TestValue>> input = fileManager.getBlueInputStream(readLock)) {
+							if (!useTransfer || !input.transferRemainingRecords(output)) {
+								output.writeAll(input);
+							}
+						}
+					}
+				}
+			}
+		}
+		Duration duration = Duration.between(start, Instant.now());
+		Files.delete(target);
+		return duration;
+	}
+
+	private Path getSourcePath(int i) {
+		return tempDir.resolve("chunk_" + i);
+	}
+
+	public static void main(String[] args) throws Exception {
+		RollupPerformanceTests tests = new RollupPerformanceTests();
+		tests.setUp();
+		tests.rollup(false);  // warm up
+		tests.rollup(true);
+		Duration recordByRecord = Duration.ZERO;
+		Duration transferred = Duration.ZERO;
+		for (int i = 0; i < ROUNDS; i++) {
+			recordByRecord = recordByRecord.plus(tests.rollup(false));
+			transferred = transferred.plus(tests.rollup(true));
+		}
+		System.out.println("Rolling up " + NUMBER_OF_FILES + " files of " + VALUES_PER_FILE + " values, " + ROUNDS + " rounds");
+		System.out.println("Record by record: " + recordByRecord);
+		System.out.println("transferTo: " + transferred);
+		tests.tearDown();
+	}
+}
@@ -1,6 +1,5 @@
 package org.bluedb.disk.recovery;
 
-import java.io.File;
 import java.util.List;
 import org.junit.Test;
 import org.bluedb.disk.BlueDbDiskTestBase;
@@ -19,13 +18,9 @@ public class ChangeHistoryCleanerTest extends BlueDbDiskTestBase {
 		Recoverable<TestValue> change60 = createRecoverable(sixtyMinutesAgo);
 		Recoverable<TestValue> change90 = createRecoverable(ninetyMinutesAgo);
 		Recoverable<TestValue> change100 = createRecoverable(oneHundredMinutesAgo);
-		assertEquals(thirtyMinutesAgo, change30.getTimeCreated());
-		assertEquals(sixtyMinutesAgo, change60.getTimeCreated());
-		assertEquals(ninetyMinutesAgo, change90.getTimeCreated());
-		assertEquals(oneHundredMinutesAgo, change100.getTimeCreated());
 		getRecoveryManager().getChangeHistoryCleaner().setWaitBetweenCleanups(100_000);  // to prevent automatic cleanup
-//		getRecoveryManager().cleanupHistory(); // to reset timer and prevent automatic cleanup
-		List<File> changesBeforeInsert = getRecoveryManager().getChangeHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+		getRecoveryManager().getWriteAheadLog().setSegmentSize(1);  // every commit starts a new segment
+		List<Recoverable<TestValue>> changesBeforeInsert = getRecoveryManager().getChangeHistory(Long.MIN_VALUE, Long.MAX_VALUE);
 		getRecoveryManager().saveChange(changePending);
 		getRecoveryManager().saveChange(change30);
 		getRecoveryManager().saveChange(change60);
@@ -35,28 +30,33 @@ public class ChangeHistoryCleanerTest extends BlueDbDiskTestBase {
 		getRecoveryManager().markComplete(change60);
 		getRecoveryManager().markComplete(change90);
 		getRecoveryManager().markComplete(change100);
-		List<File> changesBeforeCleanup = getRecoveryManager().getChangeHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+		List<Recoverable<TestValue>> changesBeforeCleanup = getRecoveryManager().getChangeHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+		int segmentsBeforeCleanup = getRecoveryManager().getWriteAheadLog().getSegmentFiles().size();
 
 		getRecoveryManager().placeHoldOnHistoryCleanup();
 		getRecoveryManager().getChangeHistoryCleaner().setRetentionLimit(2);
 
 		getRecoveryManager().getChangeHistoryCleaner().cleanupHistory();
-		List<File> changesAfterCleanupDuringHold = getRecoveryManager().getChangeHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+		int segmentsAfterCleanupDuringHold = getRecoveryManager().getWriteAheadLog().getSegmentFiles().size();
 		getRecoveryManager().removeHoldOnHistoryCleanup();
 
 		getRecoveryManager().getChangeHistoryCleaner().cleanupHistory();
-		List<File> changesAfterCleanup2 = getRecoveryManager().getChangeHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+		int segmentsAfterCleanup2 = getRecoveryManager().getWriteAheadLog().getSegmentFiles().size();
 
 		getRecoveryManager().getChangeHistoryCleaner().setRetentionLimit(0);
 		getRecoveryManager().getChangeHistoryCleaner().cleanupHistory();
-		List<File> changesAfterCleanup0 = getRecoveryManager().getChangeHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+		int segmentsAfterCleanup0 = getRecoveryManager().getWriteAheadLog().getSegmentFiles().size();
+		List<Recoverable<TestValue>> changesAfterCleanup0 = getRecoveryManager().getChangeHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+		List<Recoverable<TestValue>> pendingAfterCleanup0 = getRecoveryManager().getPendingChanges();
 
-//		assertFalse(getRecoveryManager().isTimeForHistoryCleanup());  // since we already just did cleanup
 		assertEquals(0, changesBeforeInsert.size());
 		assertEquals(5, changesBeforeCleanup.size());
-		assertEquals(5, changesAfterCleanupDuringHold.size());
-		assertEquals(3, changesAfterCleanup2.size());  // two completed stay, plus the pending
-		assertEquals(1, changesAfterCleanup0.size());  // everything goes except pending
+		assertEquals(segmentsBeforeCleanup, segmentsAfterCleanupDuringHold);
+		assertEquals(2, segmentsAfterCleanup2);  // the active segment and the one before it each hold one completed change
+		assertEquals(1, segmentsAfterCleanup0);  // everything goes except the active segment
+		assertEquals(1, changesAfterCleanup0.size());  // the pending change is checkpointed into every segment
+		assertEquals(changePending.getRecoverableId(), changesAfterCleanup0.get(0).getRecoverableId());
+		assertEquals(1, pendingAfterCleanup0.size());
 	}
 
 	private Recoverable<TestValue> createRecoverable(long time){
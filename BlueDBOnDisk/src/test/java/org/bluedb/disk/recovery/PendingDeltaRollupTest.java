@@ -0,0 +1,19 @@
+package org.bluedb.disk.recovery;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+
+import org.junit.Test;
+
+public class PendingDeltaRollupTest {
+
+	@Test
+	public void test_toString() {
+		long segmentGroupingNumber = 123;
+		PendingDeltaRollup<?> rollup = new PendingDeltaRollup<Serializable>(segmentGroupingNumber);
+		String rollupString = rollup.toString();
+		assertTrue(rollupString.contains(String.valueOf(segmentGroupingNumber)));
+		assertTrue(rollupString.contains(rollup.getClass().getSimpleName()));
+	}
+}
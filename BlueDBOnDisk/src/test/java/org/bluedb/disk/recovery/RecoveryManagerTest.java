@@ -6,6 +6,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 
 import org.bluedb.api.Updater;
@@ -41,6 +42,17 @@ public class RecoveryManagerTest extends BlueDbDiskTestBase {
 		assertTrue(fileName1.compareTo(fileName2) < 0);
 	}
 
+	@Test
+	public void test_close_onShutdown() throws Exception {
+		insertAtTime(1, createValue("Joe"));
+		WriteAheadLog writeAheadLog = getTimeCollection().getRecoveryManager().getWriteAheadLog();
+		assertTrue(writeAheadLog.isOpen());
+
+		db().shutdown();
+		assertTrue(db().awaitTermination(5, TimeUnit.SECONDS));
+		assertFalse(writeAheadLog.isOpen());
+	}
+
 	@Test
 	public void test_getCompletedFileName() throws Exception {
 		BlueKey key = createKey(1, 2);
@@ -112,18 +124,24 @@ public class RecoveryManagerTest extends BlueDbDiskTestBase {
 
 		getRecoveryManager().saveChange(change);
 		changes = getRecoveryManager().getPendingChangeFiles();
+		assertEquals(0, changes.size());  // new changes go in the write ahead log
+
+		Path historyFolderPath = getRecoveryManager().getHistoryFolder();
+		Path pendingPath = Paths.get(historyFolderPath.toString(), RecoveryManager.getPendingFileName(change));
+		getTimeCollection().getFileManager().saveObject(pendingPath, change);
+		changes = getRecoveryManager().getPendingChangeFiles();
 		assertEquals(1, changes.size());
 		
 		File changeFile = changes.get(0);
 		File tempFile = FileUtils.createTempFilePath(changeFile.toPath()).toFile();
 		tempFile.createNewFile();
-		Path historyFolderPath = changeFile.getParentFile().toPath();
 		List<File> allPendingFilesInChangeFolder = FileUtils.getFolderContents(historyFolderPath, RecoveryManager.SUFFIX_PENDING);
 		assertEquals(2, allPendingFilesInChangeFolder.size());
 		changes = getRecoveryManager().getPendingChangeFiles();
 		assertEquals(1, changes.size());
 
-		getRecoveryManager().markComplete(change);
+		Path completedPath = Paths.get(historyFolderPath.toString(), RecoveryManager.getCompletedFileName(change));
+		FileUtils.moveWithoutLock(pendingPath, completedPath);
 		changes = getRecoveryManager().getPendingChangeFiles();
 		assertEquals(0, changes.size());
 
@@ -139,6 +157,51 @@ public class RecoveryManagerTest extends BlueDbDiskTestBase {
 		assertEquals(1, completedChanges.size());
 	}
 
+	@Test
+	public void test_recover_legacyPendingChange() throws Exception {
+		BlueKey key = createKey(1, 2);
+		TestValue value = createValue("Joe");
+		PendingChange<TestValue> change = PendingChange.createInsert(key, value, serializer);
+		PendingChange<TestValue> completedChange = PendingChange.createInsert(key, value, serializer);
+		change.setRecoverableId(1);
+		completedChange.setRecoverableId(2);
+		Path historyFolderPath = getRecoveryManager().getHistoryFolder();
+		Path pendingPath = Paths.get(historyFolderPath.toString(), RecoveryManager.getPendingFileName(change));
+		Path completedPath = Paths.get(historyFolderPath.toString(), RecoveryManager.getCompletedFileName(completedChange));
+		getTimeCollection().getFileManager().saveObject(pendingPath, change);
+		getTimeCollection().getFileManager().saveObject(completedPath, completedChange);
+		assertEquals(1, getRecoveryManager().getLegacyPendingChanges().size());
+
+		getRecoveryManager().recover();
+		List<TestValue> allValues = getTimeCollection().query().getList();
+		assertEquals(1, allValues.size());
+		assertEquals(value, allValues.get(0));
+		assertEquals(0, getRecoveryManager().getPendingChangeFiles().size());
+		assertEquals(0, getRecoveryManager().getCompletedChangeFiles().size());
+		assertEquals(0, getRecoveryManager().getPendingChanges().size());
+	}
+
+	@Test
+	public void test_recover_afterRestart() throws Exception {
+		BlueKey key = createKey(1, 2);
+		TestValue value = createValue("Joe");
+		PendingChange<TestValue> change = PendingChange.createInsert(key, value, serializer);
+		getRecoveryManager().saveChange(change);
+		long recoverableId = change.getRecoverableId();
+
+		RecoveryManager<TestValue> restartedRecoveryManager = new RecoveryManager<>(getTimeCollection(), getTimeCollection().getFileManager(), getTimeCollection().getSerializer());
+		assertTrue(restartedRecoveryManager.getNewRecoverableId() > recoverableId);
+		List<Recoverable<TestValue>> changes = restartedRecoveryManager.getPendingChanges();
+		assertEquals(1, changes.size());
+		assertEquals(recoverableId, changes.get(0).getRecoverableId());
+
+		restartedRecoveryManager.recover();
+		List<TestValue> allValues = getTimeCollection().query().getList();
+		assertEquals(1, allValues.size());
+		assertEquals(value, allValues.get(0));
+		assertEquals(0, restartedRecoveryManager.getPendingChanges().size());
+	}
+
 	@Test
 	public void test_getChangeHistory() throws Exception {
 		long thirtyMinutesAgo = System.currentTimeMillis() - 30 * 60 * 1000;
@@ -151,16 +214,16 @@ public class RecoveryManagerTest extends BlueDbDiskTestBase {
 		assertEquals(sixtyMinutesAgo, change60.getTimeCreated());
 		assertEquals(ninetyMinutesAgo, change90.getTimeCreated());
 		getRecoveryManager().getChangeHistoryCleaner().setWaitBetweenCleanups(100_000);  // to prevent automatic cleanup
-		List<File> changesInitial = getRecoveryManager().getChangeHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+		List<Recoverable<TestValue>> changesInitial = getRecoveryManager().getChangeHistory(Long.MIN_VALUE, Long.MAX_VALUE);
 		getRecoveryManager().saveChange(change30);
 		getRecoveryManager().saveChange(change60);
 		getRecoveryManager().saveChange(change90);
-		List<File> changesAll = getRecoveryManager().getChangeHistory(Long.MIN_VALUE, Long.MAX_VALUE);
-		List<File> changes30to60 = getRecoveryManager().getChangeHistory(sixtyMinutesAgo, thirtyMinutesAgo);
-		List<File> changes30to30 = getRecoveryManager().getChangeHistory(thirtyMinutesAgo, thirtyMinutesAgo);
-		List<File> changesJustBefore30to30 = getRecoveryManager().getChangeHistory(thirtyMinutesAgo-1, thirtyMinutesAgo);
-		List<File> changes30to90 = getRecoveryManager().getChangeHistory(ninetyMinutesAgo, thirtyMinutesAgo);
-		List<File> changes0to0 = getRecoveryManager().getChangeHistory(0, 0);
+		List<Recoverable<TestValue>> changesAll = getRecoveryManager().getChangeHistory(Long.MIN_VALUE, Long.MAX_VALUE);
+		List<Recoverable<TestValue>> changes30to60 = getRecoveryManager().getChangeHistory(sixtyMinutesAgo, thirtyMinutesAgo);
+		List<Recoverable<TestValue>> changes30to30 = getRecoveryManager().getChangeHistory(thirtyMinutesAgo, thirtyMinutesAgo);
+		List<Recoverable<TestValue>> changesJustBefore30to30 = getRecoveryManager().getChangeHistory(thirtyMinutesAgo-1, thirtyMinutesAgo);
+		List<Recoverable<TestValue>> changes30to90 = getRecoveryManager().getChangeHistory(ninetyMinutesAgo, thirtyMinutesAgo);
+		List<Recoverable<TestValue>> changes0to0 = getRecoveryManager().getChangeHistory(0, 0);
 		assertEquals(0, changesInitial.size());
 		assertEquals(3, changesAll.size());
 		assertEquals(3, changes30to60.size()); // includes change before time period that may be partly completed at backup
@@ -0,0 +1,207 @@
+package org.bluedb.disk.recovery;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.disk.Blutils;
+import org.bluedb.disk.serialization.BlueSerializer;
+import org.bluedb.disk.serialization.ThreadLocalFstSerializer;
+import junit.framework.TestCase;
+
+public class WriteAheadLogTest extends TestCase {
+
+	BlueSerializer serializer;
+	Path logPath;
+
+	@Override
+	protected void setUp() throws Exception {
+		serializer = new ThreadLocalFstSerializer();
+		logPath = Files.createTempDirectory(this.getClass().getSimpleName());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Blutils.recursiveDelete(logPath.toFile());
+	}
+
+	@Test
+	public void test_appendPending_appendComplete() throws Exception {
+		try (WriteAheadLog log = new WriteAheadLog(logPath, serializer)) {
+			Recoverable<?> change1 = createRecoverable(log, 1);
+			Recoverable<?> change2 = createRecoverable(log, 2);
+			log.appendPending(change1);
+			log.appendPending(change2);
+			assertEquals(2, log.getPendingChanges().size());
+
+			log.appendComplete(change1);
+			List<Recoverable<?>> pending = log.getPendingChanges();
+			assertEquals(1, pending.size());
+			assertEquals(change2.getRecoverableId(), pending.get(0).getRecoverableId());
+			assertEquals(2, log.getAllChanges().size());
+		}
+	}
+
+	@Test
+	public void test_appendPending_failure() throws Exception {
+		WriteAheadLog log = new WriteAheadLog(logPath, serializer);
+		Recoverable<?> change1 = createRecoverable(log, 1);
+		Recoverable<?> change2 = createRecoverable(log, 2);
+		log.appendPending(change1);
+		log.close();  // so that the next write fails
+		try {
+			log.appendPending(change2);
+			fail();
+		} catch (BlueDbException e) {
+		}
+		List<Recoverable<?>> pending = log.getPendingChanges();
+		assertEquals(1, pending.size());
+		assertEquals(change1.getRecoverableId(), pending.get(0).getRecoverableId());
+	}
+
+	@Test
+	public void test_reopen() throws Exception {
+		long lastId;
+		Recoverable<?> pendingChange;
+		try (WriteAheadLog log = new WriteAheadLog(logPath, serializer)) {
+			Recoverable<?> completedChange = createRecoverable(log, 1);
+			pendingChange = createRecoverable(log, 2);
+			log.appendPending(completedChange);
+			log.appendPending(pendingChange);
+			log.appendComplete(completedChange);
+			lastId = log.getNewRecoverableId();
+		}
+
+		try (WriteAheadLog reopenedLog = new WriteAheadLog(logPath, serializer)) {
+			assertTrue(reopenedLog.getNewRecoverableId() > lastId);
+			List<Recoverable<?>> pending = reopenedLog.getPendingChanges();
+			assertEquals(1, pending.size());
+			assertEquals(pendingChange.getRecoverableId(), pending.get(0).getRecoverableId());
+			assertEquals(pendingChange.getTimeCreated(), pending.get(0).getTimeCreated());
+			assertEquals(2, reopenedLog.getSegmentFiles().size());
+		}
+	}
+
+	@Test
+	public void test_reopen_tornTail() throws Exception {
+		Recoverable<?> pendingChange;
+		File segment;
+		try (WriteAheadLog log = new WriteAheadLog(logPath, serializer)) {
+			pendingChange = createRecoverable(log, 1);
+			log.appendPending(pendingChange);
+			log.appendPending(createRecoverable(log, 2));
+			segment = log.getSegmentFiles().get(0);
+		}
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			file.setLength(file.length() - 3);  // crash part way through writing the second change
+		}
+
+		try (WriteAheadLog reopenedLog = new WriteAheadLog(logPath, serializer)) {
+			List<Recoverable<?>> pending = reopenedLog.getPendingChanges();
+			assertEquals(1, pending.size());
+			assertEquals(pendingChange.getRecoverableId(), pending.get(0).getRecoverableId());
+		}
+	}
+
+	@Test
+	public void test_reopen_incompleteCheckpoint() throws Exception {
+		Recoverable<?> pendingChange;
+		try (WriteAheadLog log = new WriteAheadLog(logPath, serializer)) {
+			pendingChange = createRecoverable(log, 1);
+			log.appendPending(pendingChange);
+		}
+		File newestSegment = new File(logPath.toFile(), Long.MAX_VALUE / 2 + WriteAheadLog.SUFFIX);
+		byte[] checkpointedChange = WriteAheadLog.createRecord(WriteAheadLog.TYPE_PENDING, 99, 1, new byte[] {1, 2, 3});
+		Files.write(newestSegment.toPath(), checkpointedChange);  // crashed before the checkpoint marker
+
+		try (WriteAheadLog reopenedLog = new WriteAheadLog(logPath, serializer)) {
+			List<Recoverable<?>> pending = reopenedLog.getPendingChanges();
+			assertEquals(1, pending.size());
+			assertEquals(pendingChange.getRecoverableId(), pending.get(0).getRecoverableId());
+		}
+	}
+
+	@Test
+	public void test_segmentRollover() throws Exception {
+		try (WriteAheadLog log = new WriteAheadLog(logPath, serializer)) {
+			log.setSegmentSize(1);
+			Recoverable<?> pendingChange = createRecoverable(log, 1);
+			Recoverable<?> completedChange = createRecoverable(log, 2);
+			log.appendPending(pendingChange);
+			log.appendPending(completedChange);
+			log.appendComplete(completedChange);
+			assertEquals(4, log.getSegmentFiles().size());
+
+			log.deleteOldSegments(0);
+			assertEquals(1, log.getSegmentFiles().size());
+			List<Recoverable<?>> allChanges = log.getAllChanges();
+			assertEquals(1, allChanges.size());  // the active segment's checkpoint still has the pending change
+			assertEquals(pendingChange.getRecoverableId(), allChanges.get(0).getRecoverableId());
+		}
+		try (WriteAheadLog reopenedLog = new WriteAheadLog(logPath, serializer)) {
+			assertEquals(1, reopenedLog.getPendingChanges().size());
+		}
+	}
+
+	@Test
+	public void test_groupCommit() throws Exception {
+		int threadCount = 8;
+		int changesPerThread = 50;
+		List<Thread> threads = new ArrayList<>();
+		List<Throwable> failures = new ArrayList<>();
+		CountDownLatch start = new CountDownLatch(1);
+		try (WriteAheadLog log = new WriteAheadLog(logPath, serializer)) {
+			log.setSyncOnCommit(true);
+			for (int t = 0; t < threadCount; t++) {
+				Thread thread = new Thread(() -> {
+					try {
+						start.await();
+						for (int i = 0; i < changesPerThread; i++) {
+							Recoverable<?> change = createRecoverable(log, i);
+							log.appendPending(change);
+							if (i % 2 == 0) {
+								log.appendComplete(change);
+							}
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			start.countDown();
+			for (Thread thread: threads) {
+				thread.join();
+			}
+			assertEquals(0, failures.size());
+			assertEquals(threadCount * changesPerThread / 2, log.getPendingChanges().size());
+			assertEquals(threadCount * changesPerThread, log.getAllChanges().size());
+		}
+		try (WriteAheadLog reopenedLog = new WriteAheadLog(logPath, serializer)) {
+			assertEquals(threadCount * changesPerThread / 2, reopenedLog.getPendingChanges().size());
+		}
+	}
+
+	@Test
+	public void test_extractSegmentNumber() {
+		assertEquals(12, WriteAheadLog.extractSegmentNumber(new File("12" + WriteAheadLog.SUFFIX)));
+		assertEquals(-1, WriteAheadLog.extractSegmentNumber(new File("garbage" + WriteAheadLog.SUFFIX)));
+		assertEquals(-1, WriteAheadLog.extractSegmentNumber(new File("x")));
+	}
+
+	private Recoverable<?> createRecoverable(WriteAheadLog log, long time) throws BlueDbException {
+		TestRecoverable recoverable = new TestRecoverable(time);
+		recoverable.setRecoverableId(log.getNewRecoverableId());
+		return recoverable;
+	}
+}
@@ -0,0 +1,92 @@
+package org.bluedb.disk.segment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.bluedb.disk.BlueDbDiskTestBase;
+
+public class ChunkRangesTest extends BlueDbDiskTestBase {
+
+	@Test
+	public void test_loadedFromFolder() throws Exception {
+		Path segmentPath = createTempFolder().toPath();
+		createFile(segmentPath, "2_2");
+		createFile(segmentPath, "0_1");
+		createFile(segmentPath, "delta");
+		ChunkRanges chunkRanges = new ChunkRanges(segmentPath);
+		assertEquals(Arrays.asList(new Range(0, 1), new Range(2, 2)), chunkRanges.getRangesInOrder());
+		assertTrue(chunkRanges.contains(new Range(2, 2)));
+		assertFalse(chunkRanges.contains(new Range(1, 1)));
+	}
+
+	@Test
+	public void test_add_remove() throws Exception {
+		Path segmentPath = createTempFolder().toPath();
+		ChunkRanges chunkRanges = new ChunkRanges(segmentPath);
+		assertEquals(0, chunkRanges.getRangesInOrder().size());
+		chunkRanges.add(new Range(5, 5));
+		chunkRanges.add(new Range(1, 1));
+		chunkRanges.add(null);
+		assertEquals(Arrays.asList(new Range(1, 1), new Range(5, 5)), chunkRanges.getRangesInOrder());
+		chunkRanges.remove(new Range(1, 1));
+		chunkRanges.remove(null);
+		assertEquals(Arrays.asList(new Range(5, 5)), chunkRanges.getRangesInOrder());
+	}
+
+	@Test
+	public void test_invalidate() throws Exception {
+		Path segmentPath = createTempFolder().toPath();
+		ChunkRanges chunkRanges = new ChunkRanges(segmentPath);
+		assertEquals(0, chunkRanges.getRangesInOrder().size());
+		createFile(segmentPath, "3_3");
+		assertEquals(0, chunkRanges.getRangesInOrder().size());  // not looking at the folder anymore
+		chunkRanges.invalidate();
+		assertEquals(Arrays.asList(new Range(3, 3)), chunkRanges.getRangesInOrder());
+	}
+
+	@Test
+	public void test_getOrderedFilesInRange() throws Exception {
+		Path segmentPath = createTempFolder().toPath();
+		ChunkRanges chunkRanges = new ChunkRanges(segmentPath);
+		chunkRanges.add(new Range(0, 5));
+		chunkRanges.add(new Range(6, 6));
+		chunkRanges.add(new Range(7, 7));
+		chunkRanges.add(new Range(10, 19));
+
+		List<File> files = chunkRanges.getOrderedFilesInRange(new Range(3, 7));
+		assertEquals(Arrays.asList(toFile(segmentPath, "0_5"), toFile(segmentPath, "6_6"), toFile(segmentPath, "7_7")), files);
+		files = chunkRanges.getOrderedFilesInRange(new Range(8, 9));
+		assertEquals(0, files.size());
+		files = chunkRanges.getOrderedFilesInRange(new Range(19, 30));
+		assertEquals(Arrays.asList(toFile(segmentPath, "10_19")), files);
+	}
+
+	@Test
+	public void test_getOrderedFilesEnclosedInRange() throws Exception {
+		Path segmentPath = createTempFolder().toPath();
+		ChunkRanges chunkRanges = new ChunkRanges(segmentPath);
+		chunkRanges.add(new Range(0, 5));
+		chunkRanges.add(new Range(6, 6));
+		chunkRanges.add(new Range(7, 7));
+		chunkRanges.add(new Range(10, 19));
+
+		List<File> files = chunkRanges.getOrderedFilesEnclosedInRange(new Range(3, 7));
+		assertEquals(Arrays.asList(toFile(segmentPath, "6_6"), toFile(segmentPath, "7_7")), files);
+		files = chunkRanges.getOrderedFilesEnclosedInRange(new Range(0, 19));
+		assertEquals(4, files.size());
+		files = chunkRanges.getOrderedFilesEnclosedInRange(new Range(7, 6));
+		assertEquals(0, files.size());
+	}
+
+	private static File toFile(Path segmentPath, String fileName) {
+		return new File(segmentPath.toFile(), fileName);
+	}
+
+	private static void createFile(Path segmentPath, String fileName) throws IOException {
+		assertTrue(toFile(segmentPath, fileName).createNewFile());
+	}
+}
@@ -201,4 +201,28 @@ public class RangeTest {
 		assertTrue(minLongRange.getEnd() > minLongRange.getStart());
 		assertEquals(Long.MIN_VALUE, minLongRange.getStart());
 	}
+
+	@Test
+	public void test_merge() {
+		assertNull(Range.merge(null));
+		assertEquals(Arrays.asList(), Range.merge(Arrays.asList()));
+
+		List<Range> ranges = Arrays.asList(new Range(20, 29), new Range(0, 9), new Range(5, 12), new Range(13, 15), new Range(40, 49), new Range(41, 42));
+		List<Range> expected = Arrays.asList(new Range(0, 15), new Range(20, 29), new Range(40, 49));
+		assertEquals(expected, Range.merge(ranges));
+
+		List<Range> rangesAtMax = Arrays.asList(new Range(0, Long.MAX_VALUE), new Range(Long.MAX_VALUE, Long.MAX_VALUE));
+		assertEquals(Arrays.asList(new Range(0, Long.MAX_VALUE)), Range.merge(rangesAtMax));
+	}
+
+	@Test
+	public void test_anyOverlap() {
+		List<Range> ranges = Arrays.asList(new Range(0, 9), new Range(20, 29), new Range(40, 49));
+		assertFalse(Range.anyOverlap(ranges, Arrays.asList()));
+		assertFalse(Range.anyOverlap(ranges, Arrays.asList(new Range(10, 19), new Range(30, 39), new Range(50, 59))));
+		assertFalse(Range.anyOverlap(Arrays.asList(new Range(10, 19), new Range(30, 39)), ranges));
+		assertTrue(Range.anyOverlap(ranges, Arrays.asList(new Range(10, 19), new Range(49, 49))));
+		assertTrue(Range.anyOverlap(Arrays.asList(new Range(-10, 0)), ranges));
+		assertTrue(Range.anyOverlap(Arrays.asList(new Range(Long.MIN_VALUE, Long.MAX_VALUE)), ranges));
+	}
 }
@@ -0,0 +1,99 @@
+package org.bluedb.disk.segment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.junit.Test;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.disk.BlueDbDiskTestBase;
+import org.bluedb.disk.TestValue;
+import org.bluedb.disk.recovery.IndividualChange;
+
+public class SegmentDeltaTest extends BlueDbDiskTestBase {
+
+	@Test
+	public void test_append() throws Exception {
+		Path segmentPath = createTempFolder().toPath();
+		SegmentDelta<TestValue> delta = new SegmentDelta<>(segmentPath, getFileManager());
+		BlueKey key1 = createKey(1, 1);
+		BlueKey key2 = createKey(2, 2);
+		TestValue value1 = createValue("Anna");
+		TestValue value2 = createValue("Bob");
+		TestValue value1b = createValue("Anna 2");
+
+		assertFalse(delta.exists());
+		assertNull(delta.getLatestChange(key1));
+		assertEquals(0, delta.getChangesInOrder().size());
+
+		delta.append(IndividualChange.createInsertChange(key2, value2));
+		delta.append(IndividualChange.createInsertChange(key1, value1));
+		delta.append(IndividualChange.createInsertChange(key1, value1b));
+		assertTrue(delta.exists());
+		assertEquals(value1b, delta.getLatestChange(key1).getNewValue());
+		assertEquals(value2, delta.getLatestChange(key2).getNewValue());
+
+		delta.append(IndividualChange.createDeleteChange(key2));
+		IndividualChange<TestValue> deleteChange = delta.getLatestChange(key2);
+		assertNotNull(deleteChange);
+		assertNull(deleteChange.getNewValue());
+	}
+
+	@Test
+	public void test_getChangesInOrder() throws Exception {
+		Path segmentPath = createTempFolder().toPath();
+		SegmentDelta<TestValue> delta = new SegmentDelta<>(segmentPath, getFileManager());
+		BlueKey key1 = createKey(1, 1);
+		BlueKey key2 = createKey(2, 2);
+		BlueKey key3 = createKey(3, 3);
+		delta.append(IndividualChange.createInsertChange(key3, createValue("Chuck")));
+		delta.append(IndividualChange.createInsertChange(key1, createValue("Anna")));
+		delta.append(IndividualChange.createInsertChange(key2, createValue("Bob")));
+		delta.append(IndividualChange.createDeleteChange(key1));
+
+		LinkedList<IndividualChange<TestValue>> changes = delta.getChangesInOrder();
+		assertEquals(3, changes.size());  // only the latest change per key
+		assertEquals(key1, changes.get(0).getKey());
+		assertNull(changes.get(0).getNewValue());
+		assertEquals(key2, changes.get(1).getKey());
+		assertEquals(key3, changes.get(2).getKey());
+
+		Map<BlueKey, IndividualChange<TestValue>> latestChanges = delta.getLatestChanges();
+		assertEquals(3, latestChanges.size());
+		assertNull(latestChanges.get(key1).getNewValue());
+		assertEquals(createValue("Bob"), latestChanges.get(key2).getNewValue());
+	}
+
+	@Test
+	public void test_latestChanges_inMemory() throws Exception {
+		Path segmentPath = createTempFolder().toPath();
+		SegmentDelta<TestValue> delta = new SegmentDelta<>(segmentPath, getFileManager());
+		BlueKey key1 = createKey(1, 1);
+		BlueKey key2 = createKey(2, 2);
+		delta.append(IndividualChange.createInsertChange(key1, createValue("Anna")));
+		SegmentDelta<TestValue> restartedDelta = new SegmentDelta<>(segmentPath, getFileManager());
+		assertEquals(createValue("Anna"), restartedDelta.getLatestChange(key1).getNewValue());  // loaded from the file
+		assertEquals(createValue("Anna"), delta.getLatestChange(key1).getNewValue());
+
+		delta.append(IndividualChange.createInsertChange(key2, createValue("Bob")));
+		Files.delete(delta.getPath());  // behind its back, so lookups can only come from memory
+		assertEquals(createValue("Anna"), delta.getLatestChange(key1).getNewValue());
+		assertEquals(createValue("Bob"), delta.getLatestChange(key2).getNewValue());
+		assertEquals(2, delta.getLatestChanges().size());
+
+		delta.delete();
+		assertNull(delta.getLatestChange(key1));
+	}
+
+	@Test
+	public void test_delete() throws Exception {
+		Path segmentPath = createTempFolder().toPath();
+		SegmentDelta<TestValue> delta = new SegmentDelta<>(segmentPath, getFileManager());
+		delta.append(IndividualChange.createInsertChange(createKey(1, 1), createValue("Anna")));
+		assertTrue(delta.getPath().toFile().exists());
+		delta.delete();
+		assertFalse(delta.exists());
+		assertEquals(0, delta.getChangesInOrder().size());
+	}
+}
@@ -131,6 +131,32 @@ public class SegmentEntityIteratorTest extends BlueDbDiskTestBase {
 		iterator.close();
 	}
 
+	@Test
+	public void test_next_range_inside_chunk() throws Exception {
+		Segment<TestValue> segment = getSegment(0);
+		List<TestValue> values = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			TestValue value = new TestValue("Joe", i);
+			values.add(value);
+			insertAtTime(i, value);
+		}
+		long segmentSize = getTimeCollection().getSegmentManager().getSegmentSize();
+		segment.rollup(new Range(0, segmentSize - 1));  // one chunk, so the iterator has to skip into it
+
+		try (SegmentEntityIterator<TestValue> iterator = segment.getIterator(10, 15)) {
+			assertEquals(values.subList(10, 16), toValueList(iterator));
+		}
+		try (SegmentEntityIterator<TestValue> iterator = segment.getIterator(12, 10, 15)) {
+			assertEquals(values.subList(13, 16), toValueList(iterator));
+		}
+		try (SegmentEntityIterator<TestValue> iterator = segment.getIterator(4, 0, 15)) {
+			assertEquals(values.subList(5, 16), toValueList(iterator));
+		}
+		try (SegmentEntityIterator<TestValue> iterator = segment.getIterator(20, 25)) {
+			assertEquals(0, toValueList(iterator).size());
+		}
+	}
+
 	@Test
 	public void test_next_rollup_during_reads() throws Exception {
 		Segment<TestValue> segment = getSegment(1);
@@ -260,6 +286,23 @@ public class SegmentEntityIteratorTest extends BlueDbDiskTestBase {
 	}
 
 
+	@Test
+	public void test_getNext_time_frame_starting_before_range() throws Exception {
+		long segmentSize = getTimeCollection().getSegmentManager().getSegmentSize();
+		Segment<TestValue> secondSegment = getSegment(segmentSize);
+		TestValue valueStartingBefore = new TestValue("before");
+		TestValue valueEndingBefore = new TestValue("ending before");
+		TestValue valueInRange = new TestValue("in range");
+		insertAtTimeFrame(1, segmentSize + 5, valueStartingBefore);
+		insertAtTimeFrame(segmentSize + 1, segmentSize + 2, valueEndingBefore);
+		insertAtTimeFrame(segmentSize + 4, segmentSize + 4, valueInRange);
+		secondSegment.rollup(new Range(segmentSize, segmentSize * 2 - 1));
+
+		try (SegmentEntityIterator<TestValue> iterator = secondSegment.getIterator(segmentSize + 3, segmentSize * 2 - 1)) {
+			assertEquals(Arrays.asList(valueStartingBefore, valueInRange), toValueList(iterator));  // not skipped over
+		}
+	}
+
 	@Test
 	public void test_insert_longs() throws Exception {
 		BlueCollectionOnDisk<String> stringCollection = db().collectionBuilder("test_strings", LongKey.class, String.class).build();
@@ -32,6 +32,22 @@ public class SegmentManagerTest extends BlueDbDiskTestBase {
 		assertEquals(timePaths, segmentPaths);
 	}
 
+	@Test
+	public void test_getSegmentRange() {
+		long segmentSize = getSegmentManager().getSegmentSize();
+		Range firstSegmentRange = new Range(0, segmentSize - 1);
+		Range secondSegmentRange = new Range(segmentSize, segmentSize * 2 - 1);
+
+		assertEquals(firstSegmentRange, getSegmentManager().getSegmentRange(new TimeKey(1, 1)));
+		assertEquals(secondSegmentRange, getSegmentManager().getSegmentRange(new TimeKey(1, segmentSize)));
+		assertEquals(firstSegmentRange, getSegmentManager().getSegmentRange(new TimeFrameKey(1, 0, segmentSize - 1)));
+		assertEquals(new Range(0, segmentSize * 2 - 1), getSegmentManager().getSegmentRange(new TimeFrameKey(1, 0, segmentSize)));
+
+		assertEquals(new Range(0, segmentSize * 2 - 1), getSegmentManager().getSegmentRange(new Range(1, segmentSize + 1)));
+		Range allValues = new Range(Long.MIN_VALUE, Long.MAX_VALUE);
+		assertEquals(allValues, getSegmentManager().getSegmentRange(allValues));
+	}
+
 	@Test
 	public void test_getExistingSegments() {
 		emptyAndDelete(getTimeCollection().getPath().toFile());
@@ -57,6 +73,57 @@ public class SegmentManagerTest extends BlueDbDiskTestBase {
 		emptyAndDelete(getTimeCollection().getPath().toFile());
 	}
 
+	@Test
+	public void test_getExistingSegments_loadedFromDisk() throws Exception {
+		long segmentSize = getSegmentManager().getSegmentSize();
+		insertAtTime(0, new TestValue("Bob", 0));
+		insertAtTime(segmentSize * 5, new TestValue("Joe", 0));
+		SegmentManager<TestValue> reloadedSegmentManager = new SegmentManager<TestValue>(getTimeCollection().getPath(), getTimeCollection().getFileManager(), getTimeCollection(), SegmentSizeSetting.TIME_1_HOUR.getConfig());
+		List<Segment<TestValue>> existingSegments = reloadedSegmentManager.getExistingSegments(new Range(0, segmentSize * 10));
+		assertEquals(2, existingSegments.size());
+		assertEquals(getSegmentManager().getSegment(0).getPath(), existingSegments.get(0).getPath());
+		assertEquals(getSegmentManager().getSegment(segmentSize * 5).getPath(), existingSegments.get(1).getPath());
+	}
+
+	@Test
+	public void test_getExistingSegments_afterSegmentDeleted() throws Exception {
+		long segmentSize = getSegmentManager().getSegmentSize();
+		BlueKey key = insertAtTime(0, new TestValue("Bob", 0));
+		insertAtTime(segmentSize, new TestValue("Joe", 0));
+		Range range = new Range(0, segmentSize * 2);
+		assertEquals(2, getSegmentManager().getExistingSegments(range).size());
+
+		getTimeCollection().delete(key);
+		Segment<TestValue> segment = getSegmentManager().getSegment(0);
+		segment.rollup(segment.getRange());
+		assertFalse(segment.getPath().toFile().exists());
+		List<Segment<TestValue>> existingSegments = getSegmentManager().getExistingSegments(range);
+		assertEquals(1, existingSegments.size());
+		assertEquals(segmentSize, existingSegments.get(0).getRange().getStart());
+	}
+
+	@Test
+	public void test_getExistingSegments_negative() throws Exception {
+		long segmentSize = getSegmentManager().getSegmentSize();
+		BlueKey key = insertAtTime(-1, new TestValue("Bob", 0));
+		insertAtTime(0, new TestValue("Joe", 0));
+		Range negativeSegmentRange = new Range(-segmentSize, -1);
+
+		Segment<TestValue> segment = getSegmentManager().getSegment(-1);
+		assertEquals(negativeSegmentRange, segment.getRange());
+		assertEquals(segment, getSegmentManager().getFirstSegment(key));
+		List<Segment<TestValue>> existingSegments = getSegmentManager().getExistingSegments(new Range(-segmentSize, -1));
+		assertEquals(1, existingSegments.size());
+		assertEquals(negativeSegmentRange, existingSegments.get(0).getRange());
+		assertEquals(2, getSegmentManager().getExistingSegments(new Range(-1, 0)).size());
+		assertEquals(new TestValue("Bob", 0), getTimeCollection().get(key));
+	}
+
+	@Test
+	public void test_getExistingSegments_invertedRange() {
+		assertEquals(0, getSegmentManager().getExistingSegments(new Range(10, 0)).size());
+	}
+
 	@Test
 	public void test_getFirstSegment() {
 		long segmentSize = getSegmentManager().getSegmentSize();
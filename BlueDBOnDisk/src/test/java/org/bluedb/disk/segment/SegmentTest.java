@@ -6,6 +6,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -20,13 +21,17 @@ import org.bluedb.api.keys.TimeKey;
 import org.bluedb.disk.BlueDbDiskTestBase;
 import org.bluedb.disk.TestValue;
 import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.file.BlueObjectInput;
+import org.bluedb.disk.file.BlueObjectOutput;
 import org.bluedb.disk.file.FileManager;
 import org.bluedb.disk.file.FileUtils;
+import org.bluedb.disk.lock.BlueReadLock;
 import org.bluedb.disk.lock.BlueWriteLock;
 import org.bluedb.disk.recovery.IndividualChange;
 import org.bluedb.disk.recovery.PendingRollup;
 import org.bluedb.disk.segment.rollup.RollupTarget;
 import org.bluedb.disk.segment.rollup.Rollupable;
+import org.bluedb.disk.serialization.BlueEntity;
 
 public class SegmentTest extends BlueDbDiskTestBase {
 
@@ -276,6 +281,183 @@ public class SegmentTest extends BlueDbDiskTestBase {
 		assertEquals(value3, segment.get(key3At3));
 	}
 
+	@Test
+	public void testGet_legacyFileWithoutFooter() throws Exception {
+		Segment<TestValue> segment = getSegment();
+		BlueKey key1At1 = createKey(1, 1);
+		BlueKey key2At1 = createKey(2, 1);
+		BlueKey key3At1 = createKey(3, 1);
+		TestValue value1 = createValue("Anna");
+		TestValue value3 = createValue("Chuck");
+		segment.insert(key1At1, value1);
+		segment.insert(key3At1, value3);
+
+		File[] chunkFiles = segment.getPath().toFile().listFiles();
+		assertEquals(1, chunkFiles.length);
+		Path chunkPath = chunkFiles[0].toPath();
+		Path legacyPath = FileUtils.createTempFilePath(chunkPath);
+		try (BlueReadLock<Path> readLock = getLockManager().acquireReadLock(chunkPath)) {
+			try (BlueWriteLock<Path> writeLock = getLockManager().acquireWriteLock(legacyPath)) {
+				try (BlueObjectInput<BlueEntity<TestValue>> input = getFileManager().getBlueInputStream(readLock)) {
+					try (BlueObjectOutput<BlueEntity<TestValue>> output = getFileManager().getBlueOutputStream(writeLock)) {
+						assertTrue(input.hasKeyOffsetFooter());
+						while (input.hasNext()) {
+							output.writeBytes(getSerializer().serializeObjectToByteArray(input.next()));  // written the old way, as one blob without a footer
+						}
+					}
+				}
+			}
+		}
+		try (BlueWriteLock<Path> writeLock = getLockManager().acquireWriteLock(chunkPath)) {
+			FileUtils.moveFile(legacyPath, writeLock);
+		}
+
+		try (BlueReadLock<Path> readLock = getLockManager().acquireReadLock(chunkPath)) {
+			try (BlueObjectInput<BlueEntity<TestValue>> input = getFileManager().getBlueInputStream(readLock)) {
+				assertFalse(input.hasKeyOffsetFooter());
+			}
+		}
+		assertEquals(value1, segment.get(key1At1));
+		assertEquals(null, segment.get(key2At1));
+		assertEquals(value3, segment.get(key3At1));
+	}
+
+	@Test
+	public void testGet_manyRecordsInChunk() throws Exception {
+		Segment<TestValue> segment = getSegment();
+		List<IndividualChange<TestValue>> changes = new ArrayList<>();
+		for (int i = 0; i < 200; i += 2) {
+			BlueKey key = createKey(i, i % 10);
+			changes.add(IndividualChange.createInsertChange(key, createValue("value" + i)));
+		}
+		Collections.sort(changes);
+		segment.applyChanges(new LinkedList<>(changes));
+
+		for (int i = 0; i < 200; i++) {
+			BlueKey key = createKey(i, i % 10);
+			if (i % 2 == 0) {
+				assertEquals(createValue("value" + i), segment.get(key));
+			} else {
+				assertNull(segment.get(key));
+			}
+		}
+	}
+
+	@Test
+	public void test_deltaWrites() throws Exception {
+		Segment<TestValue> segment = getDeltaSegment();
+		BlueKey key1At1 = createKey(1, 1);
+		BlueKey key2At1 = createKey(2, 1);
+		BlueKey key3At3 = createKey(3, 3);
+		TestValue value1 = createValue("Anna");
+		TestValue value2 = createValue("Bob");
+		TestValue value3 = createValue("Chuck");
+		TestValue value3b = createValue("Chuck 2");
+
+		segment.insert(key3At3, value3);
+		segment.insert(key1At1, value1);
+		segment.insert(key2At1, value2);
+		assertEquals(0, getAllFileRangesInOrder(segment).size());  // nothing but the delta
+		assertEquals(value1, segment.get(key1At1));
+		assertEquals(value2, segment.get(key2At1));
+		assertEquals(value3, segment.get(key3At3));
+		assertEquals(Arrays.asList(value1, value2, value3), getAll(segment));
+
+		segment.update(key3At3, value3b);
+		segment.delete(key2At1);
+		assertNull(segment.get(key2At1));
+		assertEquals(value3b, segment.get(key3At3));
+		assertEquals(Arrays.asList(value1, value3b), getAll(segment));
+
+		segment.foldDelta();
+		assertFalse(deltaExists(segment));
+		assertTrue(getAllFileRangesInOrder(segment).size() > 0);
+		assertEquals(value1, segment.get(key1At1));
+		assertNull(segment.get(key2At1));
+		assertEquals(value3b, segment.get(key3At3));
+		assertEquals(Arrays.asList(value1, value3b), getAll(segment));
+	}
+
+	@Test
+	public void test_deltaWrites_sharedDelta() throws Exception {
+		BlueCollectionOnDisk<TestValue> collection = db().collectionBuilder("delta_collection", TimeKey.class, TestValue.class)
+				.withWriteMode(WriteMode.APPEND_DELTA)
+				.build();
+		Segment<TestValue> segment = collection.getSegmentManager().getSegment(42);
+		BlueKey key1At1 = createKey(1, 1);
+		TestValue value1 = createValue("Anna");
+		segment.insert(key1At1, value1);
+
+		Segment<TestValue> sameSegment = collection.getSegmentManager().getAllSegments(key1At1).get(0);  // like writes get it
+		assertNotSame(segment, sameSegment);
+		assertSame(segment.getDelta(), sameSegment.getDelta());
+		assertEquals(value1, sameSegment.get(key1At1));
+		sameSegment.foldDelta();
+		assertNull(segment.getDelta().getLatestChange(key1At1));
+		assertEquals(value1, segment.get(key1At1));
+	}
+
+	@Test
+	public void test_deltaWrites_mergedWithChunks() throws Exception {
+		Segment<TestValue> segment = getDeltaSegment();
+		BlueKey key1At1 = createKey(1, 1);
+		BlueKey key2At2 = createKey(2, 2);
+		BlueKey key3At3 = createKey(3, 3);
+		BlueKey key4At4 = createKey(4, 4);
+		TestValue value1 = createValue("Anna");
+		TestValue value2 = createValue("Bob");
+		TestValue value3 = createValue("Chuck");
+		TestValue value4 = createValue("Dan");
+		TestValue value2b = createValue("Bob 2");
+
+		segment.insert(key1At1, value1);
+		segment.insert(key3At3, value3);
+		segment.foldDelta();
+		segment.insert(key4At4, value4);
+		segment.insert(key2At2, value2);
+		segment.delete(key1At1);
+		segment.update(key2At2, value2b);
+		assertEquals(Arrays.asList(value2b, value3, value4), getAll(segment));
+
+		List<TestValue> onlyTwoAndThree = new ArrayList<>();
+		try (SegmentEntityIterator<TestValue> iterator = segment.getIterator(2, 3)) {
+			iterator.forEachRemaining((e) -> onlyTwoAndThree.add(e.getValue()));
+		}
+		assertEquals(Arrays.asList(value2b, value3), onlyTwoAndThree);
+	}
+
+	@Test
+	public void test_deltaWrites_foldedBeforeBatch() throws Exception {
+		Segment<TestValue> segment = getDeltaSegment();
+		BlueKey key1At1 = createKey(1, 1);
+		BlueKey key2At2 = createKey(2, 2);
+		TestValue value1 = createValue("Anna");
+		TestValue value2 = createValue("Bob");
+		TestValue value1b = createValue("Anna 2");
+
+		segment.insert(key1At1, value1);
+		segment.insert(key2At2, value2);
+		IndividualChange<TestValue> batchUpdate = IndividualChange.createInsertChange(key1At1, value1b);
+		segment.applyChanges(new LinkedList<>(Arrays.asList(batchUpdate)));
+		assertFalse(deltaExists(segment));
+		assertEquals(value1b, segment.get(key1At1));
+		assertEquals(value2, segment.get(key2At2));
+	}
+
+	@Test
+	public void test_deltaWrites_foldedWhenLarge() throws Exception {
+		Segment<TestValue> segment = getDeltaSegment();
+		int i = 0;
+		while (!deltaExists(segment) || getAllFileRangesInOrder(segment).isEmpty()) {
+			segment.insert(createKey(i, i % 10), createValue("value" + i));
+			i++;
+			assertTrue(i < Segment.DELTA_SIZE_BEFORE_FOLD);  // it should have folded long before now
+		}
+		for (int j = 0; j < i; j++) {
+			assertEquals(createValue("value" + j), segment.get(createKey(j, j % 10)));
+		}
+	}
+
 	@Test
 	public void testRange() throws Exception {
 		long segmentSize = getTimeCollection().getSegmentManager().getSegmentSize();
@@ -343,6 +525,55 @@ public class SegmentTest extends BlueDbDiskTestBase {
 		assertEquals(1, countFiles(segment10));
 	}
 
+	@Test
+	public void test_count() throws Exception {
+		Segment<TestValue> segment = getSegment();
+		segment.insert(createKey(1, 1), createValue("Anna"));
+		segment.insert(createKey(2, 2), createValue("Bob"));
+		segment.insert(createKey(3, 3), createValue("Chuck"));
+		assertEquals(3, segment.count(Long.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE));
+		assertEquals(2, segment.count(Long.MIN_VALUE, 2, 3));
+		assertEquals(1, segment.count(2, 0, 3));  // already counted up to 2
+
+		segment.rollup(new Range(0, getTimeSegmentManager().getSegmentSize() - 1));
+		assertEquals(3, segment.count(Long.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE));
+		assertEquals(2, segment.count(Long.MIN_VALUE, 2, 3));
+		assertEquals(1, segment.count(2, 0, 3));
+		assertEquals(0, segment.count(Long.MIN_VALUE, 4, 10));
+	}
+
+	@Test
+	public void test_count_delta() throws Exception {
+		Segment<TestValue> segment = getDeltaSegment();
+		BlueKey key1 = createKey(1, 42);
+		BlueKey key2 = createKey(2, 43);
+		segment.insert(key1, createValue("Anna"));
+		segment.foldDelta();
+		segment.insert(key2, createValue("Bob"));
+		segment.delete(key1);
+		assertTrue(deltaExists(segment));
+		assertEquals(1, segment.count(Long.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE));
+		assertEquals(0, segment.count(Long.MIN_VALUE, 40, 42));
+	}
+
+	@Test
+	public void test_getChunkRangesInOrder() throws Exception {
+		Segment<TestValue> segment = getSegment();
+		segment.insert(createKey(1, 1), createValue("Anna"));
+		segment.insert(createKey(3, 3), createValue("Chuck"));
+		assertEquals(Arrays.asList(new Range(1, 1), new Range(3, 3)), segment.getChunkRangesInOrder());
+		assertEquals(getAllFileRangesInOrder(segment), segment.getChunkRangesInOrder());
+
+		Range rollupRange = new Range(0, getTimeSegmentManager().getSegmentSize() - 1);
+		segment.rollup(rollupRange);
+		assertEquals(Arrays.asList(rollupRange), segment.getChunkRangesInOrder());
+		assertEquals(getAllFileRangesInOrder(segment), segment.getChunkRangesInOrder());
+
+		Segment<TestValue> otherInstance = getTimeSegmentManager().toSegment(segment.getPath());
+		assertEquals(Arrays.asList(rollupRange), otherInstance.getChunkRangesInOrder());
+		assertEquals(createValue("Chuck"), otherInstance.get(createKey(3, 3)));
+	}
+
 	@Test
 	public void test_rollup() throws Exception {
 		Segment<TestValue> segment = getSegment();
@@ -372,6 +603,28 @@ public class SegmentTest extends BlueDbDiskTestBase {
 		assertEquals(1, countFiles(segment));
 	}
 
+	@Test
+	public void test_rollup_keepsFooter() throws Exception {
+		Segment<TestValue> segment = getSegment();
+		segment.insert(createKey(1, 1), createValue("Anna"));
+		segment.insert(createKey(2, 2), createValue("Bob"));
+		segment.insert(createKey(3, 3), createValue("Chuck"));
+		assertEquals(3, countFiles(segment));
+
+		Range rollupRange = new Range(0, getTimeCollection().getSegmentManager().getSegmentSize() - 1);
+		segment.rollup(rollupRange);
+		assertEquals(1, countFiles(segment));
+		try (BlueObjectInput<BlueEntity<TestValue>> input = segment.getObjectInputFor(1)) {
+			assertTrue(input.hasKeyOffsetFooter());  // the source files were spliced together along with their footers
+			assertEquals(3, input.countRecordsBetween(Long.MIN_VALUE, Long.MAX_VALUE));
+			assertEquals(1, input.countRecordsBetween(2, 2));
+		}
+		assertEquals(createValue("Anna"), segment.get(createKey(1, 1)));
+		assertEquals(createValue("Bob"), segment.get(createKey(2, 2)));
+		assertEquals(createValue("Chuck"), segment.get(createKey(3, 3)));
+		assertEquals(Arrays.asList(createValue("Anna"), createValue("Bob"), createValue("Chuck")), getAll(segment));
+	}
+
 	@Test
 	public void test_rollup_removeEmptyFiles() throws Exception {
 		Segment<TestValue> segment = getSegment();
@@ -832,4 +1085,21 @@ public class SegmentTest extends BlueDbDiskTestBase {
 		assertEquals(6, getTimeCollection().query().where(value -> "Ben".equals(value.getName())).getList().get(0).getCupcakes());
 		assertEquals(5, getTimeCollection().query().where(value -> "Weston".equals(value.getName())).getList().get(0).getCupcakes());
 	}
+
+	private Segment<TestValue> getDeltaSegment() throws BlueDbException {
+		BlueCollectionOnDisk<TestValue> collection = db().collectionBuilder("delta_collection", TimeKey.class, TestValue.class)
+				.withWriteMode(WriteMode.APPEND_DELTA)
+				.build();
+		return collection.getSegmentManager().getSegment(42);
+	}
+
+	private static boolean deltaExists(Segment<?> segment) {
+		try (BlueReadLock<Path> lock = segment.acquireDeltaReadLock()) {
+			return lock.getKey().toFile().exists();
+		}
+	}
+
+	private static List<Range> getAllFileRangesInOrder(Segment<?> segment) {
+		return Segment.getAllFileRangesInOrder(segment.getPath());
+	}
 }
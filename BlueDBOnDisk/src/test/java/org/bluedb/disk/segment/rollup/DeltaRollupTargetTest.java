@@ -0,0 +1,21 @@
+package org.bluedb.disk.segment.rollup;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.bluedb.disk.segment.Range;
+
+public class DeltaRollupTargetTest {
+
+	@Test
+	public void test_equals() {
+		Range range = new Range(0, 99);
+		DeltaRollupTarget deltaTarget = new DeltaRollupTarget(0, range, 10);
+		DeltaRollupTarget deltaTargetCopy = new DeltaRollupTarget(0, range, 20);
+		RollupTarget chunkTarget = new RollupTarget(0, range, 10);
+		assertEquals(deltaTarget, deltaTargetCopy);
+		assertEquals(deltaTarget.hashCode(), deltaTargetCopy.hashCode());
+		assertFalse(deltaTarget.equals(chunkTarget));  // folding a delta isn't the same as rolling up the segment
+		assertFalse(chunkTarget.equals(deltaTarget));
+		assertEquals(10, deltaTarget.getWriteRollupDelay());
+	}
+}
@@ -0,0 +1,82 @@
+package org.bluedb.disk.segment.rollup;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.bluedb.api.exceptions.BlueDbException;
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.TimeKey;
+import org.bluedb.disk.BlueDbDiskTestBase;
+import org.bluedb.disk.TestValue;
+import org.bluedb.disk.collection.BlueCollectionOnDisk;
+import org.bluedb.disk.collection.CollectionTestTools;
+import org.bluedb.disk.segment.Range;
+import org.bluedb.disk.segment.Segment;
+import org.bluedb.disk.segment.SegmentDelta;
+import org.bluedb.disk.segment.WriteMode;
+
+public class DeltaRollupTaskTest extends BlueDbDiskTestBase {
+
+	@Test
+	public void test_run() throws BlueDbException {
+		BlueCollectionOnDisk<TestValue> collection = getDeltaCollection();
+		BlueKey key1At1 = createKey(1, 1);
+		BlueKey key3At3 = createKey(3, 3);
+		TestValue value1 = createValue("Anna");
+		TestValue value3 = createValue("Chuck");
+
+		collection.insert(key1At1, value1);
+		collection.insert(key3At3, value3);
+		Segment<TestValue> segment = collection.getSegmentManager().getSegment(key1At1.getGroupingNumber());
+		File deltaFile = new File(segment.getPath().toFile(), SegmentDelta.FILENAME);
+		assertTrue(deltaFile.exists());
+		assertEquals(1, segment.getPath().toFile().listFiles().length);
+
+		DeltaRollupTarget target = new DeltaRollupTarget(segment.getRange().getStart(), segment.getRange(), 0);
+		DeltaRollupTask<TestValue> task = new DeltaRollupTask<>(collection, target);
+		task.run();
+
+		assertFalse(deltaFile.exists());
+		List<TestValue> values = collection.query().getList();
+		assertEquals(2, values.size());
+		assertEquals(value1, collection.get(key1At1));
+		assertEquals(value3, collection.get(key3At3));
+	}
+
+	@Test
+	public void test_scheduledByWrites() throws BlueDbException {
+		BlueCollectionOnDisk<TestValue> collection = getDeltaCollection();
+		BlueKey key1At1 = createKey(1, 1);
+		TestValue value1 = createValue("Anna");
+		collection.insert(key1At1, value1);
+
+		Segment<TestValue> segment = collection.getSegmentManager().getSegment(key1At1.getGroupingNumber());
+		DeltaRollupTarget target = new DeltaRollupTarget(segment.getRange().getStart(), segment.getRange(), 0);
+		RollupScheduler scheduler = collection.getRollupScheduler();
+		assertTrue(scheduler.getScheduledRollupTime(target) < Long.MAX_VALUE);
+
+		scheduler.scheduleRollup(target);
+		CollectionTestTools.waitForExecutorToFinish(collection);
+		File deltaFile = new File(segment.getPath().toFile(), SegmentDelta.FILENAME);
+		assertFalse(deltaFile.exists());
+		assertEquals(value1, collection.get(key1At1));
+	}
+
+	@Test
+	public void test_toString() {
+		long segmentGroupingNumber = 71;
+		DeltaRollupTarget target = new DeltaRollupTarget(segmentGroupingNumber, new Range(71, 80), 0);
+		DeltaRollupTask<?> task = new DeltaRollupTask<>(null, target);
+		String taskString = task.toString();
+		assertTrue(taskString.contains(String.valueOf(segmentGroupingNumber)));
+		assertTrue(taskString.contains(task.getClass().getSimpleName()));
+	}
+
+	private BlueCollectionOnDisk<TestValue> getDeltaCollection() throws BlueDbException {
+		return db().collectionBuilder("delta_collection", TimeKey.class, TestValue.class)
+				.withWriteMode(WriteMode.APPEND_DELTA)
+				.build();
+	}
+}
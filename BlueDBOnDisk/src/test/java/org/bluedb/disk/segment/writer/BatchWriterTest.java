@@ -1,6 +1,8 @@
 package org.bluedb.disk.segment.writer;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyObject;
 
 import java.io.Serializable;
@@ -17,13 +19,18 @@ import org.mockito.stubbing.Answer;
 import org.bluedb.api.exceptions.BlueDbException;
 import org.bluedb.api.keys.BlueKey;
 import org.bluedb.api.keys.LongKey;
+import org.bluedb.disk.Blutils;
 import org.bluedb.disk.file.BlueObjectInput;
 import org.bluedb.disk.file.BlueObjectOutput;
 import org.bluedb.disk.recovery.IndividualChange;
 import org.bluedb.disk.serialization.BlueEntity;
+import org.bluedb.disk.serialization.BlueSerializer;
+import org.bluedb.disk.serialization.KeyValueRecord;
+import org.bluedb.disk.serialization.ThreadLocalFstSerializer;
 
 public class BatchWriterTest {
 	
+	private static BlueSerializer serializer = new ThreadLocalFstSerializer(new Class<?>[] {});
 	private static BlueKey key1 = new LongKey(1);
 	private static BlueKey key2 = new LongKey(2);
 	private static BlueKey key3 = new LongKey(3);
@@ -74,13 +81,44 @@ public class BatchWriterTest {
 		assertEquals(Arrays.asList(value1at1, value3at3, value5bAt5, value7at7), results);
 	}
 
-	private static <T extends Serializable> BlueObjectInput<T> createMockInput(List<T> values) throws BlueDbException {
-		final LinkedList<T> inputValues = new LinkedList<>(values);
+	@Test
+	public void testListener() throws Exception {
+		List<BlueEntity<String>> initialValues = Arrays.asList(value3at3, value5at5, value7at7);
+		BlueObjectInput<BlueEntity<String>> mockInput = createMockInput(initialValues);
+		
+		List<BlueEntity<String>> results = new ArrayList<>();
+		BlueObjectOutput<BlueEntity<String>> mockOutput = createMockOutput(results);
+
+		List<IndividualChange<String>> merged = new ArrayList<>();
+		List<IndividualChange<String>> insert1andDelete3andUpdate5 = Arrays.asList(insert1, new IndividualChange<>(key3, null, null), new IndividualChange<>(key5, null, "5b"));
+		BatchWriter<String> batchWriter = new BatchWriter<>(insert1andDelete3andUpdate5, merged::addAll);
+		batchWriter.process(mockInput, mockOutput);
+		
+		assertEquals(Arrays.asList(value1at1, value5bAt5, value7at7), results);
+		assertEquals(Arrays.asList(key1, key3, key5), Blutils.map(merged, IndividualChange::getKey));
+		assertEquals(Arrays.asList(null, "3", "5"), Blutils.map(merged, IndividualChange::getOldValue));  // read while merging
+		assertEquals(Arrays.asList("1", null, "5b"), Blutils.map(merged, IndividualChange::getNewValue));
+	}
+
+	private static <T extends Serializable> BlueObjectInput<BlueEntity<T>> createMockInput(List<BlueEntity<T>> values) throws BlueDbException {
+		final LinkedList<BlueEntity<T>> inputValues = new LinkedList<>(values);
 		@SuppressWarnings("unchecked")
-		BlueObjectInput<T> mockOutput = Mockito.mock(BlueObjectInput.class);
+		BlueObjectInput<BlueEntity<T>> mockOutput = Mockito.mock(BlueObjectInput.class);
 		Mockito.doAnswer((x) -> !inputValues.isEmpty()).when(mockOutput).hasNext();
 		Mockito.doAnswer((x) -> inputValues.poll()).when(mockOutput).next();
 		Mockito.doAnswer((x) -> inputValues.peek()).when(mockOutput).peek();
+		Mockito.doAnswer((x) -> inputValues.isEmpty() ? null : inputValues.peek().getKey()).when(mockOutput).peekKey();
+		Mockito.doAnswer((x) -> inputValues.isEmpty() ? null : KeyValueRecord.toBytes(serializer, inputValues.poll())).when(mockOutput).nextWithoutDeserializing();
+		Mockito.doAnswer((x) -> inputValues.poll() != null).when(mockOutput).skipNext();
+		Mockito.doAnswer((x) -> {
+			if (inputValues.isEmpty()) {
+				return false;
+			}
+			@SuppressWarnings("unchecked")
+			BlueObjectOutput<BlueEntity<T>> output = (BlueObjectOutput<BlueEntity<T>>) x.getArguments()[0];
+			output.writeBytes(KeyValueRecord.toBytes(serializer, inputValues.poll()), (long) x.getArguments()[1]);
+			return true;
+		}).when(mockOutput).copyNextTo(any(), anyLong());
 		return mockOutput;
 	}
 
@@ -97,6 +135,16 @@ public class BatchWriterTest {
 			}
 		};
 		Mockito.doAnswer(mockAnswer).when(mockOutput).write(anyObject());
+		Answer<T> mockCopyAnswer = new Answer<T>() {
+			@Override
+			public T answer(InvocationOnMock invocation) throws Throwable {
+				@SuppressWarnings("unchecked")
+				T outputValue = (T) KeyValueRecord.readEntity(serializer, (byte[]) invocation.getArguments()[0], null);
+				results.add(outputValue);
+				return null;
+			}
+		};
+		Mockito.doAnswer(mockCopyAnswer).when(mockOutput).writeBytes(any(byte[].class), anyLong());
 		return mockOutput;
 	}
 }
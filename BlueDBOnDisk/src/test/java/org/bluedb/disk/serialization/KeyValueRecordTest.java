@@ -0,0 +1,85 @@
+package org.bluedb.disk.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import org.bluedb.api.keys.BlueKey;
+import org.bluedb.api.keys.TimeFrameKey;
+import org.bluedb.disk.TestValue;
+import org.bluedb.disk.serialization.validation.SerializationException;
+
+public class KeyValueRecordTest {
+
+	private static final BlueSerializer serializer = new ThreadLocalFstSerializer(ThreadLocalFstSerializer.getClassesToAlwaysRegister().toArray(new Class<?>[0]));
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		BlueKey key = new TimeFrameKey(1, 5, 9);
+		BlueEntity<TestValue> entity = new BlueEntity<>(key, new TestValue("Anna", 3));
+		byte[] bytes = KeyValueRecord.toBytes(serializer, entity);
+
+		assertTrue(KeyValueRecord.isKeyValueRecord(bytes));
+		assertEquals(5, KeyValueRecord.readGroupingNumber(bytes));
+		assertEquals(key, KeyValueRecord.readKey(serializer, bytes));
+		assertEquals(entity, KeyValueRecord.readEntity(serializer, bytes, null));
+		assertEquals(entity, KeyValueRecord.readEntity(serializer, bytes, key));
+	}
+
+	@Test
+	public void testRoundTrip_nullValue() throws Exception {
+		BlueEntity<TestValue> entity = new BlueEntity<>(new TimeFrameKey(1, 5, 9), null);
+		byte[] bytes = KeyValueRecord.toBytes(serializer, entity);
+		assertEquals(entity, KeyValueRecord.readEntity(serializer, bytes, null));
+	}
+
+	@Test
+	public void testIsKeyValueRecord() {
+		BlueEntity<TestValue> entity = new BlueEntity<>(new TimeFrameKey(1, 5, 9), new TestValue("Anna", 3));
+		assertFalse(KeyValueRecord.isKeyValueRecord(serializer.serializeObjectToByteArray(entity)));
+		BlueSerializer unregisteredSerializer = new ThreadLocalFstSerializer(new Class<?>[] {});
+		assertFalse(KeyValueRecord.isKeyValueRecord(unregisteredSerializer.serializeObjectToByteArray(entity)));
+		assertFalse(KeyValueRecord.isKeyValueRecord(null));
+		assertFalse(KeyValueRecord.isKeyValueRecord(new byte[] {0x7F, 0x42, 0x4B, 0x56}));  // too short for the header
+	}
+
+	@Test
+	public void testReadKey_corrupted() {
+		BlueEntity<TestValue> entity = new BlueEntity<>(new TimeFrameKey(1, 5, 9), new TestValue("Anna", 3));
+		byte[] bytes = KeyValueRecord.toBytes(serializer, entity);
+		byte[] truncated = Arrays.copyOf(bytes, 20);
+		try {
+			KeyValueRecord.readKey(serializer, truncated);
+			fail();
+		} catch (SerializationException e) {
+		}
+	}
+
+	@Test
+	public void testWrite_reusedBuffer() throws Exception {
+		BlueKey key = new TimeFrameKey(1, 5, 9);
+		BlueEntity<TestValue> entity = new BlueEntity<>(key, new TestValue("Anna", 3));
+		byte[] buffer = new byte[1024];
+		Arrays.fill(buffer, (byte) 7);  // leftovers from a longer record
+		int length = KeyValueRecord.write(serializer, entity, buffer);
+
+		assertArrayEquals(KeyValueRecord.toBytes(serializer, entity), Arrays.copyOf(buffer, length));
+		assertTrue(KeyValueRecord.isKeyValueRecord(buffer, length));
+		assertEquals(key, KeyValueRecord.readKey(serializer, buffer, length));
+		assertEquals(entity, KeyValueRecord.readEntity(serializer, buffer, length, null));
+		assertEquals(entity, KeyValueRecord.readEntity(serializer, buffer, length, key));
+	}
+
+	@Test
+	public void testWrite_bufferTooSmall() {
+		BlueEntity<TestValue> entity = new BlueEntity<>(new TimeFrameKey(1, 5, 9), new TestValue("Anna", 3));
+		assertEquals(-1, KeyValueRecord.write(serializer, entity, new byte[8]));
+		assertEquals(-1, KeyValueRecord.write(serializer, entity, new byte[20]));
+	}
+}
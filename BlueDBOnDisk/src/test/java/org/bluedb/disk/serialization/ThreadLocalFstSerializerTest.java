@@ -1,8 +1,11 @@
 package org.bluedb.disk.serialization;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -10,6 +13,7 @@ import java.util.Random;
 import java.util.UUID;
 
 import org.junit.Test;
+import org.bluedb.TestUtils;
 
 import org.bluedb.api.keys.TimeFrameKey;
 import org.bluedb.disk.TestValue;
@@ -23,6 +27,7 @@ import org.bluedb.disk.models.calls.RecordingStatus;
 import org.bluedb.disk.models.calls.Timeframe;
 import org.bluedb.disk.serialization.validation.ObjectValidation;
 import org.bluedb.disk.serialization.validation.SerializationException;
+import org.bluedb.disk.serialization.validation.ValidationMode;
 
 public class ThreadLocalFstSerializerTest {
 	
@@ -147,6 +152,34 @@ public class ThreadLocalFstSerializerTest {
 		call.setAccountCodes(accountCodes);
 	}
 
+	@Test
+	public void testValidationMode() throws Exception {
+		byte[] corruptBytes = Files.readAllBytes(TestUtils.getResourcePath("corruptCall-1.bin"));
+
+		ThreadLocalFstSerializer fullSerializer = new ThreadLocalFstSerializer(Call.getClassesToRegister());
+		assertEquals(ValidationMode.FULL, fullSerializer.getValidationMode());
+		try {
+			fullSerializer.deserializeObjectFromByteArray(corruptBytes);
+			fail();
+		} catch(SerializationException e) {}
+
+		ThreadLocalFstSerializer offSerializer = new ThreadLocalFstSerializer(ValidationMode.OFF, Call.getClassesToRegister());
+		assertNotNull(offSerializer.deserializeObjectFromByteArray(corruptBytes));  // trusted, so the bad field isn't noticed
+
+		ThreadLocalFstSerializer sampledSerializer = new ThreadLocalFstSerializer(ValidationMode.SAMPLED, Call.getClassesToRegister());
+		int validatedCount = 0;
+		int attempts = ThreadLocalFstSerializer.VALIDATION_SAMPLE_RATE * 20;
+		for (int i = 0; i < attempts; i++) {
+			try {
+				sampledSerializer.deserializeObjectFromByteArray(corruptBytes);
+			} catch(SerializationException e) {
+				validatedCount++;
+			}
+		}
+		assertTrue(validatedCount > 0);
+		assertTrue(validatedCount < attempts);
+	}
+
 	private void setRecordingAsSaved(Call call) {
 		long eventId = call.getEvents().get(0).getEventId();
 		call.setRecordingsOnEventAsSaved(eventId);
@@ -165,6 +165,29 @@ public class ObjectValidationTest {
 		try {ObjectValidation.validateFieldValueType(stringField, true); fail();} catch(SerializationException s) {}
 	}
 
+	@Test
+	public void testCanSkip() {
+		Assert.assertTrue(ObjectValidation.canSkip(int[].class));
+		Assert.assertTrue(ObjectValidation.canSkip(Integer.class));
+		Assert.assertTrue(ObjectValidation.canSkip(PrimitivesOnly.class));
+		Assert.assertFalse(ObjectValidation.canSkip(Object[].class));
+		Assert.assertFalse(ObjectValidation.canSkip(TestValue.class));
+		Assert.assertFalse(ObjectValidation.canSkip(TypeValidationTestObject.class));
+	}
+
+	private static class PrimitivesOnly {
+		@SuppressWarnings("unused") int i;
+		@SuppressWarnings("unused") long j;
+	}
+
+	@Test
+	public void testValidateSkippableObjects() throws Exception {
+		ObjectValidation.validateFieldValueTypesForObject(null);
+		ObjectValidation.validateFieldValueTypesForObject(5);
+		ObjectValidation.validateFieldValueTypesForObject(new long[] {1, 2, 3});
+		ObjectValidation.validateFieldValueTypesForObject(new Object[] {null, 1, "a", new int[] {1}, new TestValue("Bob")});
+	}
+
 	@Test
 	public void testConstructor() {
 		new ObjectValidation(); // this test is stupid but needed to get 100% coverage